@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.rtiapi.data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rti.dds.infrastructure.StringSeq;
+import com.rti.dds.subscription.SampleInfo;
+import com.rti.dds.subscription.Subscriber;
+
+/**
+ * Subscribes to ice::CompactSampleArray and presents the decoded samples to
+ * {@link SampleArrayInstanceModelListener}s as ice::SampleArray, so a consumer of
+ * waveforms may be pointed at either topic.  The samples handed to listeners are
+ * reused for every callback on the same thread and must be copied if retained.
+ * There is no ice.SampleArrayDataReader behind this model; listeners receive a
+ * null reader.
+ */
+public class CompactSampleArrayInstanceModelImpl implements SampleArrayInstanceModel {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactSampleArrayInstanceModelImpl.class);
+
+    private final InstanceModelImpl<ice.CompactSampleArray, ice.CompactSampleArrayDataReader, ice.CompactSampleArrayDataWriter> compact;
+    private final Map<InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader>, Decoder> decoders = new ConcurrentHashMap<>();
+
+    public CompactSampleArrayInstanceModelImpl(String topic) {
+        compact = new InstanceModelImpl<ice.CompactSampleArray, ice.CompactSampleArrayDataReader, ice.CompactSampleArrayDataWriter>(topic,
+                ice.CompactSampleArray.class, ice.CompactSampleArrayDataReader.class, ice.CompactSampleArrayDataWriter.class,
+                ice.CompactSampleArrayTypeSupport.class, ice.CompactSampleArraySeq.class);
+    }
+
+    private static final class Scratch {
+        final ice.SampleArray sample = new ice.SampleArray();
+        byte[] payload = new byte[2048];
+        float[] values = new float[1024];
+    }
+
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        protected Scratch initialValue() {
+            return new Scratch();
+        };
+    };
+
+    private static ice.SampleArray keys(ice.CompactSampleArray data, ice.SampleArray sample) {
+        sample.unique_device_identifier = data.unique_device_identifier;
+        sample.metric_id = data.metric_id;
+        sample.vendor_metric_id = data.vendor_metric_id;
+        sample.instance_id = data.instance_id;
+        sample.unit_id = data.unit_id;
+        sample.frequency = data.frequency;
+        sample.values.userData.clear();
+        return sample;
+    }
+
+    /**
+     * @return the decoded sample or null if the payload could not be decoded
+     */
+    static ice.SampleArray decode(ice.CompactSampleArray data, Scratch scratch) {
+        ice.SampleArray sample = keys(data, scratch.sample);
+        sample.device_time.sec = data.device_time.sec;
+        sample.device_time.nanosec = data.device_time.nanosec;
+        sample.presentation_time.sec = data.presentation_time.sec;
+        sample.presentation_time.nanosec = data.presentation_time.nanosec;
+
+        int length = data.payload.userData.size();
+        if (scratch.payload.length < length) {
+            scratch.payload = new byte[length];
+        }
+        scratch.payload = data.payload.userData.toArrayByte(scratch.payload);
+        try {
+            scratch.values = WaveformCodec.decode(data.encoding, data.scale, data.offset, data.sample_count, scratch.payload, length, scratch.values);
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping undecodable " + data.metric_id + " from " + data.unique_device_identifier + ": " + e.getMessage());
+            return null;
+        }
+        for (int i = 0; i < data.sample_count; i++) {
+            sample.values.userData.addFloat(scratch.values[i]);
+        }
+        return sample;
+    }
+
+    private final class Decoder implements InstanceModelListener<ice.CompactSampleArray, ice.CompactSampleArrayDataReader> {
+        private final InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener;
+
+        Decoder(InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void instanceAlive(ReaderInstanceModel<ice.CompactSampleArray, ice.CompactSampleArrayDataReader> model,
+                ice.CompactSampleArrayDataReader reader, ice.CompactSampleArray data, SampleInfo sampleInfo) {
+            Scratch s = scratch.get();
+            ice.SampleArray sample = sampleInfo.valid_data ? decode(data, s) : null;
+            // an undecodable first sample still announces the instance, without values
+            listener.instanceAlive(CompactSampleArrayInstanceModelImpl.this, null,
+                    null == sample ? keys(data, s.sample) : sample, sampleInfo);
+        }
+
+        @Override
+        public void instanceNotAlive(ReaderInstanceModel<ice.CompactSampleArray, ice.CompactSampleArrayDataReader> model,
+                ice.CompactSampleArrayDataReader reader, ice.CompactSampleArray keyHolder, SampleInfo sampleInfo) {
+            listener.instanceNotAlive(CompactSampleArrayInstanceModelImpl.this, null, keys(keyHolder, scratch.get().sample), sampleInfo);
+        }
+
+        @Override
+        public void instanceSample(ReaderInstanceModel<ice.CompactSampleArray, ice.CompactSampleArrayDataReader> model,
+                ice.CompactSampleArrayDataReader reader, ice.CompactSampleArray data, SampleInfo sampleInfo) {
+            ice.SampleArray sample = decode(data, scratch.get());
+            if (null != sample) {
+                listener.instanceSample(CompactSampleArrayInstanceModelImpl.this, null, sample, sampleInfo);
+            }
+        }
+    }
+
+    private Decoder decoder(InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener) {
+        return decoders.computeIfAbsent(listener, Decoder::new);
+    }
+
+    @Override
+    public void addListener(InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener) {
+        compact.addListener(decoder(listener));
+    }
+
+    @Override
+    public void iterateAndAddListener(InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener) {
+        compact.iterateAndAddListener(decoder(listener));
+    }
+
+    @Override
+    public void iterate(InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener) {
+        compact.iterate(new Decoder(listener));
+    }
+
+    @Override
+    public void iterateAndAddListener(InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener, int maxSamples) {
+        compact.iterateAndAddListener(decoder(listener), maxSamples);
+    }
+
+    @Override
+    public void removeListener(InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> listener) {
+        Decoder decoder = decoders.remove(listener);
+        if (null != decoder) {
+            compact.removeListener(decoder);
+        }
+    }
+
+    @Override
+    public void startReader(Subscriber subscriber, EventLoop eventLoop, String expression, StringSeq params, String qosLibrary, String qosProfile) {
+        compact.startReader(subscriber, eventLoop, expression, params, qosLibrary, qosProfile);
+    }
+
+    @Override
+    public void startReader(Subscriber subscriber, EventLoop eventLoop, String qosLibrary, String qosProfile) {
+        compact.startReader(subscriber, eventLoop, qosLibrary, qosProfile);
+    }
+
+    @Override
+    public void startReader(Subscriber subscriber, EventLoop eventLoop) {
+        compact.startReader(subscriber, eventLoop);
+    }
+
+    @Override
+    public void stopReader() {
+        compact.stopReader();
+    }
+
+    /**
+     * @return null, samples are read from the CompactSampleArray topic
+     */
+    @Override
+    public ice.SampleArrayDataReader getReader() {
+        return null;
+    }
+
+    public ice.CompactSampleArrayDataReader getCompactReader() {
+        return compact.getReader();
+    }
+
+    @Override
+    public EventLoop getEventLoop() {
+        return compact.getEventLoop();
+    }
+
+    @Override
+    public int size() {
+        return compact.size();
+    }
+}
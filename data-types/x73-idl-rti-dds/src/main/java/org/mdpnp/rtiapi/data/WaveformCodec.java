@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.rtiapi.data;
+
+import java.util.Arrays;
+
+/**
+ * Quantizes waveform samples into the 16-bit codes carried by ice::CompactSampleArray
+ * and back.  Sample i is represented as offset + scale * code(i) with codes in
+ * [-32767, 32767]; -32768 is reserved for NaN, which is also what infinite samples
+ * decode as.  The payload holds either 16-bit
+ * little-endian codes or a zigzag varint of the first code followed by the
+ * differences between consecutive codes, whichever is smaller.  Smooth physiological
+ * waves mostly move by less than 64 counts per sample so the varint form usually
+ * needs a single byte per sample.
+ * <p>
+ * Given the resolution of the device's converter the encoding is exact as long as the
+ * samples of one block span fewer than 65535 steps; otherwise, or if no resolution is
+ * known, the scale is fitted to the block and the error is at most half a step.
+ * <p>
+ * An instance keeps the result of the last {@link #encode(float[], int, float)} and is not
+ * thread safe.
+ */
+public class WaveformCodec {
+    /**
+     * These mirror ice::CompactEncodingInt16 and ice::CompactEncodingDeltaVarint
+     */
+    public static final byte INT16 = 0;
+    public static final byte DELTA_VARINT = 1;
+
+    public static final int MAX_CODE = Short.MAX_VALUE;
+    public static final int NAN_CODE = Short.MIN_VALUE;
+
+    /**
+     * Fixed fields of the compact header, scale, offset, encoding and sample_count
+     */
+    public static final int HEADER_BYTES = 4 + 4 + 1 + 4;
+
+    private float scale, offset;
+    private byte encoding;
+    private int count;
+    private int[] codes = new int[1024];
+    private byte[] payload = new byte[2048];
+    private int length;
+
+    /**
+     * @param values samples to encode
+     * @param count number of samples
+     * @param resolution value of one converter step, or 0 to fit the scale to the samples
+     */
+    public void encode(float[] values, int count, float resolution) {
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            float v = values[i];
+            if (!Float.isFinite(v)) {
+                continue;
+            }
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+        if (min > max) {
+            // Nothing but NaN
+            min = max = 0f;
+        }
+
+        scale = 0f;
+        if (resolution > 0f) {
+            // Snap the offset to the converter grid so that codes remain exact
+            offset = resolution * Math.round((min + (max - min) / 2f) / resolution);
+            if ((max - offset) / resolution <= MAX_CODE && (offset - min) / resolution <= MAX_CODE) {
+                scale = resolution;
+            }
+        }
+        if (0f == scale) {
+            offset = min + (max - min) / 2f;
+            scale = max > min ? (max - min) / (2f * MAX_CODE) : 1f;
+        }
+
+        if (codes.length < count) {
+            codes = new int[count];
+        }
+        int varintLength = 0;
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            float v = values[i];
+            int code;
+            if (!Float.isFinite(v)) {
+                code = NAN_CODE;
+            } else {
+                code = Math.round((v - offset) / scale);
+                code = code > MAX_CODE ? MAX_CODE : code < -MAX_CODE ? -MAX_CODE : code;
+            }
+            codes[i] = code;
+            varintLength += varintSize(zigzag(code - last));
+            last = code;
+        }
+
+        this.count = count;
+        if (varintLength < 2 * count) {
+            encoding = DELTA_VARINT;
+            ensurePayload(varintLength);
+            last = 0;
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                pos = writeVarint(payload, pos, zigzag(codes[i] - last));
+                last = codes[i];
+            }
+            length = pos;
+        } else {
+            encoding = INT16;
+            ensurePayload(2 * count);
+            for (int i = 0; i < count; i++) {
+                payload[2 * i] = (byte) codes[i];
+                payload[2 * i + 1] = (byte) (codes[i] >> 8);
+            }
+            length = 2 * count;
+        }
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public float getOffset() {
+        return offset;
+    }
+
+    public byte getEncoding() {
+        return encoding;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return buffer holding {@link #getLength()} bytes of encoded samples, reused by the next encode
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the decoded samples, values if it was large enough or else a new array
+     * @throws IllegalArgumentException if the payload is truncated or the encoding unknown
+     */
+    public static float[] decode(byte encoding, float scale, float offset, int count, byte[] payload, int length, float[] values) {
+        if (null == values || values.length < count) {
+            values = new float[count];
+        }
+        switch (encoding) {
+        case INT16:
+            if (length < 2 * count) {
+                throw new IllegalArgumentException("Expected " + (2 * count) + " bytes for " + count + " samples, got " + length);
+            }
+            for (int i = 0; i < count; i++) {
+                int code = (short) ((payload[2 * i] & 0xFF) | (payload[2 * i + 1] << 8));
+                values[i] = NAN_CODE == code ? Float.NaN : offset + scale * code;
+            }
+            break;
+        case DELTA_VARINT:
+            int pos = 0, code = 0;
+            for (int i = 0; i < count; i++) {
+                int v = 0, shift = 0;
+                byte b;
+                do {
+                    if (pos >= length) {
+                        throw new IllegalArgumentException("Payload of " + length + " bytes ends after " + i + " of " + count + " samples");
+                    }
+                    b = payload[pos++];
+                    v |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                code += (v >>> 1) ^ -(v & 1);
+                values[i] = NAN_CODE == code ? Float.NaN : offset + scale * code;
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown encoding " + encoding);
+        }
+        return values;
+    }
+
+    private void ensurePayload(int size) {
+        if (payload.length < size) {
+            payload = Arrays.copyOf(payload, Math.max(size, payload.length << 1));
+        }
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int varintSize(int v) {
+        return v < 0x80 ? 1 : v < 0x4000 ? 2 : 3;
+    }
+
+    private static int writeVarint(byte[] buf, int pos, int v) {
+        while ((v & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return pos;
+    }
+}
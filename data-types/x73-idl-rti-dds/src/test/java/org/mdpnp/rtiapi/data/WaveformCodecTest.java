@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.rtiapi.data;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class WaveformCodecTest {
+
+    private static final Logger log = LoggerFactory.getLogger(WaveformCodecTest.class);
+
+    private static float[] decode(WaveformCodec codec) {
+        return WaveformCodec.decode(codec.getEncoding(), codec.getScale(), codec.getOffset(), codec.getCount(), codec.getPayload(),
+                codec.getLength(), null);
+    }
+
+    /**
+     * 12-bit converter counts of a wave with the given resolution
+     */
+    private static float[] adc(int count, float resolution, double hertz, int frequency, double amplitude, Random random) {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            double v = amplitude * Math.sin(2.0 * Math.PI * hertz * i / frequency) + random.nextGaussian() * 2.0 * resolution;
+            values[i] = resolution * Math.max(-2048, Math.min(2047, Math.round(v / resolution)));
+        }
+        return values;
+    }
+
+    @Test
+    public void testExactWithResolution() {
+        WaveformCodec codec = new WaveformCodec();
+        float resolution = 0.005f;
+        float[] values = adc(500, resolution, 1.2, 500, 2.0, new Random(0L));
+        codec.encode(values, values.length, resolution);
+        Assert.assertEquals(WaveformCodec.DELTA_VARINT, codec.getEncoding());
+        Assert.assertEquals(resolution, codec.getScale(), 0f);
+        float[] decoded = decode(codec);
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(values[i], decoded[i], resolution * 1e-3f);
+        }
+        Assert.assertTrue("Expected less than 2 bytes per sample, got " + codec.getLength(), codec.getLength() < values.length * 2);
+    }
+
+    @Test
+    public void testFittedScale() {
+        WaveformCodec codec = new WaveformCodec();
+        Random random = new Random(1L);
+        float[] values = new float[1024];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000f + 300f * random.nextFloat();
+        }
+        codec.encode(values, values.length, 0f);
+        // white noise across the whole range does not delta encode well
+        Assert.assertEquals(WaveformCodec.INT16, codec.getEncoding());
+        Assert.assertEquals(2048, codec.getLength());
+        float[] decoded = decode(codec);
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(values[i], decoded[i], codec.getScale() / 2f + 1e-4f);
+        }
+
+        // a resolution too fine for the range falls back to a fitted scale
+        codec.encode(values, values.length, 1e-4f);
+        Assert.assertTrue(codec.getScale() > 1e-4f);
+        decoded = decode(codec);
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(values[i], decoded[i], codec.getScale() / 2f + 1e-4f);
+        }
+    }
+
+    @Test
+    public void testSpecialValues() {
+        WaveformCodec codec = new WaveformCodec();
+        float[] values = new float[] { 3f, Float.NaN, 3f, Float.POSITIVE_INFINITY, 4f };
+        codec.encode(values, values.length, 0f);
+        float[] decoded = decode(codec);
+        Assert.assertEquals(3f, decoded[0], 1e-4f);
+        Assert.assertTrue(Float.isNaN(decoded[1]));
+        Assert.assertEquals(3f, decoded[2], 1e-4f);
+        Assert.assertTrue(Float.isNaN(decoded[3]));
+        Assert.assertEquals(4f, decoded[4], 1e-4f);
+
+        // constant and empty blocks
+        codec.encode(new float[] { 7f, 7f, 7f }, 3, 0f);
+        Assert.assertArrayEquals(new float[] { 7f, 7f, 7f }, decode(codec), 0f);
+        Assert.assertEquals(3, codec.getLength());
+        codec.encode(new float[0], 0, 0f);
+        Assert.assertEquals(0, codec.getLength());
+        Assert.assertEquals(0, decode(codec).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        WaveformCodec codec = new WaveformCodec();
+        float[] values = adc(100, 1f, 1.0, 100, 1000.0, new Random(2L));
+        codec.encode(values, values.length, 1f);
+        WaveformCodec.decode(codec.getEncoding(), codec.getScale(), codec.getOffset(), codec.getCount(), codec.getPayload(), codec.getLength() - 1, null);
+    }
+
+    /**
+     * 60 beds each with four ECG leads at 500Hz, pleth and arterial pressure at 125Hz,
+     * CO2 and respiration at 62Hz (converter counts, 4 writes a second per wave).
+     * Compares payload bytes on the wire and the cost of encoding and decoding.
+     */
+    @Test
+    public void testSixtyBedsEightWaves() {
+        final int beds = 60;
+        final int seconds = Integer.getInteger("WaveformCodecTest.seconds", 60);
+        final int[] frequency = new int[] { 500, 500, 500, 500, 125, 125, 62, 62 };
+        final float[] resolution = new float[] { 0.0025f, 0.0025f, 0.0025f, 0.0025f, 0.05f, 0.1f, 0.05f, 0.01f };
+        final double[] amplitude = new double[] { 1.0, 1.5, 0.8, 1.2, 40.0, 60.0, 20.0, 5.0 };
+        final double[] baseline = new double[] { 0.0, 0.0, 0.0, 0.0, 50.0, 90.0, 20.0, 0.0 };
+
+        Random random = new Random(3L);
+        float[][] blocks = new float[frequency.length][];
+        for (int w = 0; w < frequency.length; w++) {
+            // eight seconds of signal, cut into quarter second writes below
+            blocks[w] = adc(frequency[w] * 8, resolution[w], 1.25, frequency[w], amplitude[w], random);
+            for (int i = 0; i < blocks[w].length; i++) {
+                blocks[w][i] += (float) baseline[w];
+            }
+        }
+
+        WaveformCodec codec = new WaveformCodec();
+        float[] decoded = new float[1024];
+        float[] copy = new float[1024];
+        long floatBytes = 0L, compactBytes = 0L, samples = 0L, writes = 0L;
+        long encodeNanos = 0L, decodeNanos = 0L, copyNanos = 0L;
+        double maxError = 0.0;
+        for (int s = 0; s < seconds * 4; s++) {
+            for (int bed = 0; bed < beds; bed++) {
+                for (int w = 0; w < frequency.length; w++) {
+                    int count = frequency[w] / 4;
+                    int from = ((s + bed) % 32) * count;
+                    float[] values = new float[count];
+                    System.arraycopy(blocks[w], from, values, 0, count);
+
+                    long t0 = System.nanoTime();
+                    System.arraycopy(values, 0, copy, 0, count);
+                    long t1 = System.nanoTime();
+                    codec.encode(values, count, resolution[w]);
+                    long t2 = System.nanoTime();
+                    decoded = WaveformCodec.decode(codec.getEncoding(), codec.getScale(), codec.getOffset(), codec.getCount(),
+                            codec.getPayload(), codec.getLength(), decoded);
+                    long t3 = System.nanoTime();
+                    copyNanos += t1 - t0;
+                    encodeNanos += t2 - t1;
+                    decodeNanos += t3 - t2;
+
+                    for (int i = 0; i < count; i++) {
+                        maxError = Math.max(maxError, Math.abs(decoded[i] - values[i]) / resolution[w]);
+                    }
+                    floatBytes += 4 + 4L * count;
+                    compactBytes += WaveformCodec.HEADER_BYTES + 4 + codec.getLength();
+                    samples += count;
+                    writes++;
+                }
+            }
+        }
+        log.info(String.format("%d beds x %d waves, %d writes of %d samples: float %.1f kB/s, compact %.1f kB/s (%.0f%% saved, %.2f bytes per sample)",
+                beds, frequency.length, writes, samples, floatBytes / 1024.0 / seconds, compactBytes / 1024.0 / seconds,
+                100.0 * (floatBytes - compactBytes) / floatBytes, (compactBytes - writes * (WaveformCodec.HEADER_BYTES + 4)) / (double) samples));
+        log.info(String.format("encode %.1fns, decode %.1fns, copy %.1fns per sample; %.2f%% of a core for encoding %d samples/s",
+                encodeNanos / (double) samples, decodeNanos / (double) samples, copyNanos / (double) samples,
+                100.0 * encodeNanos / (seconds * 1e9), samples / seconds));
+        Assert.assertTrue("Lost more than rounding error: " + maxError + " steps", maxError < 1e-2);
+        Assert.assertTrue(compactBytes * 2 < floatBytes);
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full disclosure load of 60 beds with one 500Hz ECG lead each, delivered in 100ms blocks.
+ * {@link #append(Appender)} writes two minutes of that load into an empty archive, the score
+ * is milliseconds per two minutes and must stay well below 120000 for the archive to keep up.
+ * {@link #read(Filled)} reads a random 10s range of one bed out of two minutes already
+ * archived; the score is reads per second.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WaveformArchiveBenchmark {
+    private static final int BEDS = 60, FREQUENCY = 500, BLOCK_SIZE = 50, SECONDS = 120;
+
+    private static File createRoot() throws IOException {
+        File root = File.createTempFile("WaveformArchiveBenchmark-", "");
+        root.delete();
+        root.mkdirs();
+        return root;
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (null != files) {
+            for (File c : files) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+
+    private static WaveformArchive.Channel[] channels(WaveformArchive archive) throws IOException {
+        WaveformArchive.Channel[] channels = new WaveformArchive.Channel[BEDS];
+        for (int i = 0; i < BEDS; i++) {
+            channels[i] = archive.getChannel(new WaveformArchive.Key("BED-" + i, "MDC_ECG_LEAD_II", 0, FREQUENCY));
+        }
+        return channels;
+    }
+
+    private static void fill(WaveformArchive.Channel[] channels, long t0) throws IOException {
+        float[] block = new float[BLOCK_SIZE];
+        int blocks = SECONDS * FREQUENCY / BLOCK_SIZE;
+        for (int b = 0; b < blocks; b++) {
+            long t = t0 + b * BLOCK_SIZE * 1000L / FREQUENCY;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                block[i] = (float) Math.sin((b * BLOCK_SIZE + i) * 2.0 * Math.PI / FREQUENCY);
+            }
+            for (WaveformArchive.Channel c : channels) {
+                c.append(t, block, 0, BLOCK_SIZE);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Appender {
+        File root;
+        WaveformArchive archive;
+        WaveformArchive.Channel[] channels;
+        long t0;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            root = createRoot();
+            archive = new WaveformArchive(root, WaveformArchive.DEFAULT_RETENTION, TimeUnit.MINUTES.toMillis(1L));
+            channels = channels(archive);
+            t0 = System.currentTimeMillis() - SECONDS * 1000L;
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            archive.close();
+            delete(root);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Filled {
+        File root;
+        WaveformArchive archive;
+        WaveformArchive.Channel[] channels;
+        long t0;
+        final Random random = new Random(0L);
+        final float[] scratch = new float[FREQUENCY * 10];
+        final WaveformArchive.BlockHandler handler = new WaveformArchive.BlockHandler() {
+            @Override
+            public void block(long startTime, int frequency, float[] values, int offset, int length) {
+            }
+        };
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            root = createRoot();
+            archive = new WaveformArchive(root, WaveformArchive.DEFAULT_RETENTION, TimeUnit.MINUTES.toMillis(1L));
+            channels = channels(archive);
+            t0 = System.currentTimeMillis() - SECONDS * 1000L;
+            fill(channels, t0);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            archive.close();
+            delete(root);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void append(Appender state) throws IOException {
+        fill(state.channels, state.t0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int read(Filled state) throws IOException {
+        long from = state.t0 + (long) (state.random.nextDouble() * (SECONDS - 10) * 1000L);
+        int read = state.channels[state.random.nextInt(BEDS)].read(from, from + 10000L, state.scratch, state.handler);
+        if (10 * FREQUENCY != read) {
+            throw new IllegalStateException("Read " + read + " samples of a 10s range");
+        }
+        return read;
+    }
+}
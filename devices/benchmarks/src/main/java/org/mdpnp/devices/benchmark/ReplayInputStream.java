@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.benchmark;
+
+import java.io.InputStream;
+
+/**
+ * Serves a captured byte stream to a parser as if it were arriving from a device. Reads return at most
+ * chunk bytes, mimicking the short reads of a serial port, and the end of the capture is reported as
+ * end of file. {@link #rewind()} starts the capture over so that one parser instance, along with any
+ * buffering it does, can be fed the same capture again and again.
+ */
+public class ReplayInputStream extends InputStream {
+    private final byte[] data;
+    private final int chunk;
+    private int position;
+
+    public ReplayInputStream(byte[] data) {
+        this(data, Integer.MAX_VALUE);
+    }
+
+    public ReplayInputStream(byte[] data, int chunk) {
+        this.data = data;
+        this.chunk = chunk;
+    }
+
+    public ReplayInputStream rewind() {
+        position = 0;
+        return this;
+    }
+
+    public int length() {
+        return data.length;
+    }
+
+    @Override
+    public int read() {
+        return position < data.length ? (0xFF & data[position++]) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= data.length) {
+            return -1;
+        }
+        len = Math.min(Math.min(len, chunk), data.length - position);
+        System.arraycopy(data, position, b, off, len);
+        position += len;
+        return len;
+    }
+
+    @Override
+    public int available() {
+        return Math.min(chunk, data.length - position);
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.cpc.bernoulli;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feeds a subscription stream of per-second device updates from ten beds, numerics, settings and two
+ * waveforms each, from {@link BernoulliGenerator} through {@link Bernoulli#process(java.io.InputStream)} and, for
+ * comparison, {@link Bernoulli#processWithSAX(java.io.InputStream)}. Every update is one message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BernoulliBenchmark {
+    private static final int BEDS = 10;
+    private static final int SECONDS = 30;
+    private static final int MESSAGES = BEDS * SECONDS;
+    private static final byte[] CLOSE = "</cpcs>".getBytes(Charset.forName("UTF-8"));
+
+    private byte[] capture, document;
+    private Bernoulli bernoulli;
+    private int devices, waveforms;
+
+    @Setup
+    public void setUp() throws IOException {
+        capture = BernoulliGenerator.capture(BEDS, SECONDS);
+        // SAX reads the capture as a single document so its root element must be closed for the
+        // parser to finish at the end of the capture instead of reporting a truncated document
+        document = new byte[capture.length + CLOSE.length];
+        System.arraycopy(capture, 0, document, 0, capture.length);
+        System.arraycopy(CLOSE, 0, document, capture.length, CLOSE.length);
+        bernoulli = new Bernoulli() {
+            @Override
+            protected void device(String bid, String make, String model) {
+                devices++;
+            }
+
+            @Override
+            protected void measurementGroup(String name, Number[] n, int frequency) {
+                waveforms++;
+            }
+        };
+        devices = 0;
+        waveforms = 0;
+        process(new ByteCounter());
+        processWithSAX(new ByteCounter());
+        if (devices != 2 * MESSAGES || waveforms != 2 * BernoulliGenerator.WAVEFORMS * MESSAGES) {
+            throw new IllegalStateException("Expected " + 2 * MESSAGES + " updates but received " + devices + " with " + waveforms + " waveforms");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int process(ByteCounter counter) {
+        bernoulli.process(new ByteArrayInputStream(capture));
+        counter.bytes += capture.length;
+        return devices;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int processWithSAX(ByteCounter counter) {
+        bernoulli.processWithSAX(new ByteArrayInputStream(document));
+        counter.bytes += document.length;
+        return devices;
+    }
+}
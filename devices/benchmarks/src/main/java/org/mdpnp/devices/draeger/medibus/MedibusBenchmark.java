@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.draeger.medibus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.mdpnp.devices.draeger.medibus.types.Command;
+import org.mdpnp.devices.draeger.medibus.types.MeasuredDataCP1;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feeds measured data responses through {@link Medibus#receive()}. The I/O multiplexor thread that
+ * splits realtime from slow data is part of the receive path, so a Medibus is built for every pass over
+ * the capture and its startup is spread over the responses in the capture.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MedibusBenchmark {
+    private static final int MESSAGES = 1000;
+
+    private static final MeasuredDataCP1[] MEASURED = new MeasuredDataCP1[] { MeasuredDataCP1.Compliance, MeasuredDataCP1.Resistance,
+            MeasuredDataCP1.MinimalAirwayPressure, MeasuredDataCP1.MeanBreathingPressure, MeasuredDataCP1.PlateauPressure,
+            MeasuredDataCP1.PEEPBreathingPressure, MeasuredDataCP1.PeakBreathingPressure, MeasuredDataCP1.TidalVolume,
+            MeasuredDataCP1.SpontaneousRespiratoryRate, MeasuredDataCP1.RespiratoryMinuteVolume, MeasuredDataCP1.RespiratoryRate,
+            MeasuredDataCP1.InspO2, MeasuredDataCP1.EndTidalCO2Percent, MeasuredDataCP1.RapidShallowBreathingIndex,
+            MeasuredDataCP1.InspCO2mmHg, MeasuredDataCP1.EndTidalCO2mmHg };
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private byte[] capture;
+    private int received;
+
+    static byte[] capture(int count) throws IOException {
+        ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        Medibus writer = new Medibus(new ByteArrayInputStream(NO_BYTES), capture);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            payload.reset();
+            for (int j = 0; j < MEASURED.length; j++) {
+                Medibus.sendASCIIHex(payload, MEASURED[j].toByte());
+                payload.write(String.format("%4d", (i + 7 * j) % 1000).getBytes("ASCII"));
+            }
+            writer.sendResponse(Command.ReqMeasuredDataCP1, payload);
+        }
+        return capture.toByteArray();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        for (MeasuredDataCP1 m : MEASURED) {
+            if (m != MeasuredDataCP1.fromByteIf(m.toByte())) {
+                throw new IllegalStateException("No code for " + m);
+            }
+        }
+        capture = capture(MESSAGES);
+        received = 0;
+        receive(new ByteCounter());
+        if (received != MESSAGES) {
+            throw new IllegalStateException("Expected " + MESSAGES + " responses but received " + received);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int receive(ByteCounter counter) throws IOException {
+        Medibus medibus = new Medibus(new ByteArrayInputStream(capture), new ByteArrayOutputStream()) {
+            @Override
+            protected void receiveMeasuredData(int codepage, Data[] data) {
+                received++;
+            }
+        };
+        while (medibus.receive()) {
+        }
+        counter.bytes += capture.length;
+        return received;
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.ge.serial;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.DeviceClock;
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.mdpnp.devices.benchmark.ReplayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feeds bed parameter update messages through {@link GESerial#receive()}, one message per read as they
+ * arrive from the monitor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GESerialBenchmark {
+    private static final int MESSAGES = 100;
+    private static final int PARAMETERS = 8;
+
+    private static final int HEADER_LENGTH = 60;
+    private static final int PARAMETER_LENGTH = 68;
+
+    private ReplayInputStream in;
+    private GESerial geSerial;
+    private int numerics;
+
+    static byte[] message(int seq, int parameters) {
+        int dataCount = 6 + PARAMETER_LENGTH * parameters;
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_LENGTH + dataCount + 2).order(ByteOrder.BIG_ENDIAN);
+        bb.put(new byte[] { 0x40, 0, 0, 0, 0, 0 });
+        bb.put(new byte[6]);
+        bb.putShort((short) 201).putShort((short) 20);
+        bb.putShort((short) 0).putShort((short) seq).putShort((short) 1).putShort((short) 0);
+        bb.put(new byte[32]);
+        bb.putShort((short) 0).putShort((short) dataCount);
+        bb.put(new byte[] { 0, 0, 0, 1, (byte) parameters, 0 });
+        for (int p = 0; p < parameters; p++) {
+            int start = bb.position();
+            bb.put((byte) 1).put((byte) p).putShort((short) 0);
+            bb.putShort((short) (60 + p + seq % 20)).putShort((short) (80 + p)).putShort((short) (0 == p % 2 ? -32767 : 100 + p));
+            bb.position(start + PARAMETER_LENGTH - 4);
+            bb.put((byte) (2 + p % 4)).put((byte) p).put((byte) 0).put((byte) 0);
+        }
+        bb.putShort((short) 0);
+        return bb.array();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        for (int i = 0; i < MESSAGES; i++) {
+            capture.write(message(i, PARAMETERS));
+        }
+        in = new ReplayInputStream(capture.toByteArray(), capture.size() / MESSAGES);
+        geSerial = new GESerial(in, new ByteArrayOutputStream()) {
+            @Override
+            protected void receiveNumeric(DeviceClock.Reading sampleTime, int partype, int parcode, int index, Short value) {
+                numerics++;
+            }
+        };
+        numerics = 0;
+        receive(new ByteCounter());
+        if (numerics != MESSAGES * PARAMETERS * 3) {
+            throw new IllegalStateException("Expected " + (MESSAGES * PARAMETERS * 3) + " numerics but received " + numerics);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int receive(ByteCounter counter) throws IOException {
+        in.rewind();
+        while (geSerial.receive()) {
+        }
+        counter.bytes += in.length();
+        return numerics;
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.history;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.InstanceKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 60 beds, each with 12 numerics at 1Hz kept for an hour and 8 waves (4 ECG leads at
+ * 500Hz, 2 at 125Hz and 2 at 62Hz) kept for two minutes, about 150MB off heap once full.
+ * {@link #append()} adds one more second of the whole load to the full store; the queries
+ * are those an application makes of one instance.  Scores are microseconds per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HistoryStoreBenchmark {
+    private static final int BEDS = 60, NUMERICS = 12;
+    private static final int[] FREQUENCY = { 500, 500, 500, 500, 125, 125, 62, 62 };
+    private static final long NUMERIC_DURATION = TimeUnit.HOURS.toMillis(1L), WAVEFORM_DURATION = TimeUnit.MINUTES.toMillis(2L);
+
+    private final InstanceKeys keys = new InstanceKeys();
+    private final InstanceKeys.Key[][] numerics = new InstanceKeys.Key[BEDS][NUMERICS];
+    private final InstanceKeys.Key[][] waves = new InstanceKeys.Key[BEDS][FREQUENCY.length];
+    private final float[][] second = new float[FREQUENCY.length][];
+    private final Random random = new Random(0L);
+    private HistoryStore store;
+    private long t0, end;
+    private int seconds;
+    private long sink;
+
+    private final HistoryStore.Visitor visitor = new HistoryStore.Visitor() {
+        @Override
+        public void sample(long time, float value) {
+            sink += time;
+        }
+    };
+
+    private final HistoryStore.BucketVisitor bucketVisitor = new HistoryStore.BucketVisitor() {
+        @Override
+        public void bucket(long start, float min, float max, float mean, int count) {
+            sink += count;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        store = new HistoryStore(NUMERIC_DURATION, WAVEFORM_DURATION);
+        for (int bed = 0; bed < BEDS; bed++) {
+            for (int m = 0; m < NUMERICS; m++) {
+                numerics[bed][m] = keys.intern("BED-" + bed, "NUMERIC-" + m, "", 0, "MDC_DIM_DIMLESS");
+            }
+            for (int w = 0; w < FREQUENCY.length; w++) {
+                waves[bed][w] = keys.intern("BED-" + bed, "WAVE-" + w, "", 0, "MDC_DIM_DIMLESS", FREQUENCY[w]);
+            }
+        }
+        for (int w = 0; w < FREQUENCY.length; w++) {
+            second[w] = new float[FREQUENCY[w]];
+            for (int i = 0; i < FREQUENCY[w]; i++) {
+                second[w][i] = (float) Math.sin(i * 2.0 * Math.PI / FREQUENCY[w]);
+            }
+        }
+        t0 = System.currentTimeMillis() - NUMERIC_DURATION;
+        // an hour of numerics, the waveforms of the last four minutes
+        long w0 = NUMERIC_DURATION / 1000L - 240L;
+        for (seconds = 0; seconds < NUMERIC_DURATION / 1000L;) {
+            appendSecond(seconds >= w0);
+        }
+        end = t0 + seconds * 1000L;
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.clear();
+    }
+
+    private void appendSecond(boolean withWaves) {
+        long t = t0 + seconds * 1000L;
+        for (int bed = 0; bed < BEDS; bed++) {
+            for (int m = 0; m < NUMERICS; m++) {
+                store.addNumeric(numerics[bed][m], t, 60f + (seconds + m) % 7);
+            }
+        }
+        if (withWaves) {
+            // in quarter second blocks
+            for (int q = 0; q < 4; q++) {
+                for (int bed = 0; bed < BEDS; bed++) {
+                    for (int w = 0; w < FREQUENCY.length; w++) {
+                        int count = FREQUENCY[w] / 4;
+                        store.addSamples(waves[bed][w], t + q * 250L + 249L, second[w], q * count, count);
+                    }
+                }
+            }
+        }
+        seconds++;
+    }
+
+    @Benchmark
+    public void append() {
+        appendSecond(true);
+    }
+
+    @Benchmark
+    public boolean latest() {
+        return store.get(numerics[random.nextInt(BEDS)][random.nextInt(NUMERICS)]).latest(visitor);
+    }
+
+    /**
+     * 10s of a 500Hz wave
+     */
+    @Benchmark
+    public int range() {
+        long from = end - 10000L - random.nextInt(100000);
+        return store.get(waves[random.nextInt(BEDS)][random.nextInt(4)]).range(from, from + 10000L, visitor);
+    }
+
+    /**
+     * 2 minutes of a 500Hz wave into 800 buckets
+     */
+    @Benchmark
+    public int downsampleWave() {
+        return store.get(waves[random.nextInt(BEDS)][random.nextInt(4)]).downsample(end - WAVEFORM_DURATION, end, 800, bucketVisitor);
+    }
+
+    /**
+     * An hour of a numeric into 360 buckets
+     */
+    @Benchmark
+    public int downsampleNumeric() {
+        return store.get(numerics[random.nextInt(BEDS)][random.nextInt(NUMERICS)]).downsample(t0, end, 360, bucketVisitor);
+    }
+}
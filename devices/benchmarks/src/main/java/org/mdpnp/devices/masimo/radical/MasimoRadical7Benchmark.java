@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.masimo.radical;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses a minute of Radical-7 serial output, one line per message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MasimoRadical7Benchmark {
+    private static final int MESSAGES = 60;
+
+    private MasimoRadical7 radical7;
+    private String[] lines;
+    private int next;
+
+    static String[] lines(int count) {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = String.format(Locale.US, "10/19/26 14:32:%02d SN=0000123456 SPO2=%03d%% BPM=%03d PI=%05.2f%% SPCO=--.-%% SPMET=00.4%% DESAT=-- "
+                    + "PIDELTA=+-- PVI=%03d ALARM=0000 EXC=000000", i % 60, 95 + i % 5, 60 + i % 30, 1.0 + (i % 40) / 10.0, 10 + i % 20);
+        }
+        return lines;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        radical7 = new MasimoRadical7();
+        lines = lines(MESSAGES);
+        for (String line : lines) {
+            if (!radical7.parseLine(line) || null == radical7.getSpO2() || null == radical7.getHeartRate()) {
+                throw new IllegalStateException("Unparsed line " + line);
+            }
+        }
+    }
+
+    @Benchmark
+    public Integer parseLine(ByteCounter counter) throws Exception {
+        String line = lines[next];
+        next = next + 1 == lines.length ? 0 : next + 1;
+        radical7.parseLine(line);
+        // lines are terminated with CR LF
+        counter.bytes += line.length() + 2;
+        return radical7.getHeartRate();
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.metrics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of recording for an ICU of 60 beds, each with 4 devices publishing numerics and
+ * waveforms: {@link #record()} looks up the stream of a sample and records its latencies, the
+ * score is samples per second; {@link #report()} formats all 480 streams, the score is
+ * reports per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataMetricsBenchmark {
+    private static final String[] TOPICS = { "Numeric", "SampleArray" };
+
+    private final DataMetrics metrics = new DataMetrics();
+    private final String[] udis = new String[60 * 4];
+    private final long[] latency = new long[1024];
+    private long t0;
+    private int sample;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < udis.length; i++) {
+            udis[i] = "DEVICE-" + i;
+        }
+        Random random = new Random(0L);
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = (long) (2e6 * Math.exp(random.nextGaussian()));
+        }
+        t0 = System.currentTimeMillis() * 1000000L;
+        // every stream exists and has a history to report
+        for (int j = 0; j < udis.length * TOPICS.length * 100; j++) {
+            record();
+        }
+    }
+
+    @Benchmark
+    public StreamMetrics record() {
+        long l = latency[sample & 1023];
+        StreamMetrics m = metrics.get(udis[sample % udis.length], TOPICS[(sample / udis.length) & 1]);
+        m.record(t0 + sample * 1000L, l, l + 5000000L);
+        sample++;
+        return m;
+    }
+
+    @Benchmark
+    public String[] report() {
+        return metrics.report(t0 + sample * 1000L);
+    }
+}
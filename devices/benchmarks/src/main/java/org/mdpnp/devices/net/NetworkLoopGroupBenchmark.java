@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 50 simulated monitors each answer a poll with a burst of datagrams and the gateway has to
+ * take all of them before the next poll. Compares one loop reading one datagram per wakeup
+ * with a group of loops draining {@link DatagramBatch}es; the score is datagrams per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NetworkLoopGroupBenchmark {
+    private static final int MONITORS = 50, BURST = 8, DATAGRAM_SIZE = 1000;
+
+    /**
+     * Receiving end of a simulated monitor
+     */
+    private static class Monitor implements NetworkConnection {
+        private final boolean batched;
+        private final ByteBuffer single = ByteBuffer.allocateDirect(DATAGRAM_SIZE);
+        private final AtomicInteger received = new AtomicInteger();
+        private volatile NetworkLoop networkLoop;
+
+        Monitor(boolean batched) {
+            this.batched = batched;
+        }
+
+        @Override
+        public void read(SelectionKey sk) throws IOException {
+            DatagramChannel channel = (DatagramChannel) sk.channel();
+            if (batched) {
+                received.addAndGet(networkLoop.getDatagramBatch(DATAGRAM_SIZE).receive(channel));
+            } else {
+                single.clear();
+                if (null != channel.receive(single)) {
+                    received.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void write(SelectionKey sk) throws IOException {
+        }
+
+        @Override
+        public void registered(NetworkLoop networkLoop, SelectionKey sk) {
+            this.networkLoop = networkLoop;
+        }
+
+        @Override
+        public void unregistered(NetworkLoop networkLoop, SelectionKey sk) {
+        }
+    }
+
+    @Param({ "1", "4" })
+    public int shards;
+
+    @Param({ "false", "true" })
+    public boolean batched;
+
+    private NetworkLoopGroup group;
+    private final Monitor[] monitors = new Monitor[MONITORS];
+    private final DatagramChannel[] receivers = new DatagramChannel[MONITORS];
+    private final DatagramChannel[] senders = new DatagramChannel[MONITORS];
+    private final int[] expected = new int[MONITORS];
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(DATAGRAM_SIZE);
+    private int sent, lost;
+
+    @Setup
+    public void setUp() throws IOException {
+        group = new NetworkLoopGroup(shards);
+        group.start();
+        for (int i = 0; i < MONITORS; i++) {
+            monitors[i] = new Monitor(batched);
+            receivers[i] = DatagramChannel.open();
+            receivers[i].configureBlocking(false);
+            receivers[i].bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            senders[i] = DatagramChannel.open();
+            senders[i].connect(receivers[i].getLocalAddress());
+            group.register(monitors[i], receivers[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        group.cancelThreadAndWait();
+        for (int i = 0; i < MONITORS; i++) {
+            senders[i].close();
+            receivers[i].close();
+        }
+        if (lost > sent / 2) {
+            throw new IllegalStateException("Most datagrams were lost");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MONITORS * BURST)
+    public void poll() throws IOException {
+        for (int i = 0; i < MONITORS; i++) {
+            for (int j = 0; j < BURST; j++) {
+                datagram.clear();
+                senders[i].write(datagram);
+            }
+            expected[i] += BURST;
+            sent += BURST;
+        }
+        for (int i = 0; i < MONITORS; i++) {
+            long giveup = System.nanoTime() + TimeUnit.SECONDS.toNanos(1L);
+            while (monitors[i].received.get() < expected[i]) {
+                if (System.nanoTime() - giveup >= 0L) {
+                    // dropped by the socket, carry on from what arrived
+                    lost += expected[i] - monitors[i].received.get();
+                    expected[i] = monitors[i].received.get();
+                    break;
+                }
+                LockSupport.parkNanos(1000L);
+            }
+        }
+    }
+}
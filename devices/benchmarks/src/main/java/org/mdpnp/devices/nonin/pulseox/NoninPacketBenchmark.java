@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.nonin.pulseox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes serial data format 7, one 25 frame packet per message. The input cycles through one second
+ * (three packets) of a synthetic pleth.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NoninPacketBenchmark {
+    private static final int PACKETS = 3;
+
+    private final Packet packet = new Packet();
+    private byte[] data;
+    private int offset;
+
+    static byte[] packets(int count) {
+        byte[] b = new byte[count * Packet.LENGTH];
+        int heartRate = 72, spo2 = 98;
+        for (int p = 0; p < count; p++) {
+            for (int f = 0; f < Packet.FRAMES; f++) {
+                int off = (p * Packet.FRAMES + f) * Packet.FRAME_LENGTH;
+                int pleth = (int) (32768 + 20000 * Math.sin(2.0 * Math.PI * (p * Packet.FRAMES + f) / 75.0));
+                b[off + 0] = (byte) (0x80 | (0 == f ? 0x01 : 0x00));
+                b[off + 1] = (byte) (pleth >> 8);
+                b[off + 2] = (byte) pleth;
+                switch (f) {
+                case 1:
+                case 14:
+                case 20:
+                case 22:
+                    b[off + 3] = (byte) heartRate;
+                    break;
+                case 2:
+                case 8:
+                case 9:
+                case 10:
+                case 15:
+                case 16:
+                    b[off + 3] = (byte) spo2;
+                    break;
+                default:
+                    b[off + 3] = 0;
+                }
+                b[off + 4] = (byte) (((0xFF & b[off]) + (0xFF & b[off + 1]) + (0xFF & b[off + 2]) + (0xFF & b[off + 3])) % 256);
+            }
+        }
+        return b;
+    }
+
+    @Setup
+    public void setUp() {
+        data = packets(PACKETS);
+        for (int i = 0; i < PACKETS; i++) {
+            packet.set(data, i * Packet.LENGTH, 0);
+            if (72 != packet.getAvgHeartRateFourBeat() || 98 != packet.getAvgSpO2FourBeat()) {
+                throw new IllegalStateException("Packet decoded incorrectly");
+            }
+        }
+    }
+
+    @Benchmark
+    public int decode(ByteCounter counter) {
+        packet.set(data, offset, 0);
+        offset = offset + Packet.LENGTH == data.length ? 0 : offset + Packet.LENGTH;
+        counter.bytes += Packet.LENGTH;
+        return packet.getPleth(packet.getCurrentFrame());
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.oridion.capnostream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.DeviceClock;
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.mdpnp.devices.benchmark.ReplayInputStream;
+import org.mdpnp.devices.oridion.capnostream.Capnostream.CO2Units;
+import org.mdpnp.devices.oridion.capnostream.Capnostream.PulseOximetry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feeds a minute of Capnostream traffic, the 20Hz CO2 waveform and a numerics message every second,
+ * through {@link Capnostream#receive()}. Waveform values are spread so that the escaped 0x80 and 0x85
+ * bytes are exercised.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CapnostreamBenchmark {
+    private static final int SECONDS = 60;
+    private static final int WAVE_PER_SECOND = 20;
+    private static final int MESSAGES = SECONDS * (1 + WAVE_PER_SECOND);
+
+    private ReplayInputStream in;
+    private Capnostream capnostream;
+    private int received;
+
+    static byte[] capture(int seconds) throws IOException {
+        ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        Capnostream writer = new Capnostream(new DeviceClock.WallClock(), new ByteArrayInputStream(new byte[0]), capture);
+        byte[] payload = new byte[32];
+        long time = 1792412325L;
+        int msg = 0;
+        for (int s = 0; s < seconds; s++) {
+            for (int w = 0; w < WAVE_PER_SECOND; w++) {
+                double co2 = 38.0 * Math.max(0.0, Math.sin(Math.PI * (s * WAVE_PER_SECOND + w) / 40.0));
+                payload[0] = (byte) msg++;
+                payload[1] = (byte) co2;
+                payload[2] = (byte) (256 * (co2 - Math.floor(co2)));
+                payload[3] = 0;
+                writer.sendCommand(Capnostream.Response.CO2Wave.getCode(), payload, 4);
+            }
+            long t = time + s;
+            payload[0] = (byte) (t >> 24);
+            payload[1] = (byte) (t >> 16);
+            payload[2] = (byte) (t >> 8);
+            payload[3] = (byte) t;
+            // etCO2, FiCO2, respiratory rate, SpO2, pulse rate
+            payload[4] = 38;
+            payload[5] = 0;
+            payload[6] = 14;
+            payload[7] = 97;
+            payload[8] = 72;
+            for (int i = 9; i < 25; i++) {
+                payload[i] = 0;
+            }
+            payload[25] = (byte) CO2Units.mmHg.getCode();
+            payload[26] = 0;
+            writer.sendCommand(Capnostream.Response.Numerics.getCode(), payload, 27);
+        }
+        return capture.toByteArray();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        in = new ReplayInputStream(capture(SECONDS));
+        capnostream = new Capnostream(new DeviceClock.WallClock(), in, new ByteArrayOutputStream());
+        capnostream.addListener(new CapnostreamListener() {
+            @Override
+            public void deviceIdSoftwareVersion(String softwareVersion, Date softwareReleaseDate, PulseOximetry pulseOximetry, String revision,
+                    String number) {
+            }
+
+            @Override
+            public void numerics(DeviceClock.Reading sampleTime, int etCO2, int FiCO2, int respiratoryRate, int spo2, int pulserate,
+                    int slowStatus, int CO2ActiveAlarms, int SpO2, int extendedCO2Status, int etCo2AlarmHigh, int etCo2AlarmLow, int rrAlarmHigh,
+                    int rrAlarmLow, int fico2AlarmHigh, int spo2AlarmHigh, int spo2AlarmLow, int pulseAlarmHigh, int pulseAlarmLow, CO2Units units,
+                    int extendedCO2Status2) {
+                received++;
+            }
+
+            @Override
+            public void co2Wave(DeviceClock.Reading sampleTime, int messageNumber, double co2, int status) {
+                received++;
+            }
+        });
+        received = 0;
+        receive(new ByteCounter());
+        if (received != MESSAGES) {
+            throw new IllegalStateException("Expected " + MESSAGES + " messages but received " + received);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int receive(ByteCounter counter) throws IOException {
+        in.rewind();
+        capnostream.receive();
+        counter.bytes += in.length();
+        return received;
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.io.util.Bits;
+import org.mdpnp.devices.philips.intellivue.attribute.Attribute;
+import org.mdpnp.devices.philips.intellivue.attribute.AttributeFactory;
+import org.mdpnp.devices.philips.intellivue.data.AttributeId;
+import org.mdpnp.devices.philips.intellivue.data.AttributeValueList;
+import org.mdpnp.devices.philips.intellivue.data.CompoundNumericObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.EnumValue;
+import org.mdpnp.devices.philips.intellivue.data.Label;
+import org.mdpnp.devices.philips.intellivue.data.NomPartition;
+import org.mdpnp.devices.philips.intellivue.data.NumericObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.OIDType;
+import org.mdpnp.devices.philips.intellivue.data.ObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.RelativeTime;
+import org.mdpnp.devices.philips.intellivue.data.SampleArrayObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.SampleArraySpecification;
+import org.mdpnp.devices.philips.intellivue.data.SimpleColor;
+import org.mdpnp.devices.philips.intellivue.data.TextId;
+import org.mdpnp.devices.philips.intellivue.data.Type;
+import org.mdpnp.devices.philips.intellivue.data.UnitCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses the observations of an extended numeric poll result into an {@link AttributeValueList}
+ * per observation, as ObservationPollImpl does, and reads what the Intellivue adapter reads of
+ * each. Compares the eager parse with the lazy one; the score is poll results per second and
+ * gc.alloc.rate.norm (from -prof gc) is bytes allocated per poll result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AttributeValueListBenchmark {
+    private static final int OBSERVATIONS = 48;
+
+    private final Attribute<NumericObservedValue> observed = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS,
+            NumericObservedValue.class);
+    private final Attribute<CompoundNumericObservedValue> compoundObserved = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_CMPD_VAL_OBS,
+            CompoundNumericObservedValue.class);
+    private final Attribute<RelativeTime> period = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
+    private final Attribute<SampleArraySpecification> spec = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_SPECN,
+            SampleArraySpecification.class);
+    private final Attribute<SampleArrayObservedValue> v = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_VAL_OBS,
+            SampleArrayObservedValue.class);
+    private final Attribute<RelativeTime> time = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_STAMP_REL, RelativeTime.class);
+
+    private ByteBuffer result;
+
+    private static byte[] opaque(AttributeId id, int length) {
+        byte[] b = new byte[4 + length];
+        ByteBuffer bb = ByteBuffer.wrap(b);
+        Bits.putUnsignedShort(bb, id.asInt());
+        Bits.putUnsignedShort(bb, length);
+        for (int i = 0; i < length; i++) {
+            bb.put((byte) (id.asInt() + i));
+        }
+        return b;
+    }
+
+    @Setup
+    public void setUp() {
+        ByteBuffer bb = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            Bits.putUnsignedShort(bb, 0x100 + i);
+            AttributeValueList attrs = new AttributeValueList();
+
+            Attribute<Type> type = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_ID_TYPE, Type.class);
+            type.getValue().setNomPartition(NomPartition.Scada);
+            type.getValue().setOidType(OIDType.lookup(ObservedValue.NOM_PULS_OXIM_SAT_O2.asInt()));
+            attrs.add(type);
+
+            Attribute<TextId> label = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_ID_LABEL, TextId.class);
+            label.getValue().setTextId(Label.NLS_NOM_PULS_OXIM_SAT_O2.asLong());
+            attrs.add(label);
+
+            Attribute<org.mdpnp.devices.philips.intellivue.data.String> labelString = AttributeFactory.getAttribute(
+                    AttributeId.NOM_ATTR_ID_LABEL_STRING, org.mdpnp.devices.philips.intellivue.data.String.class);
+            labelString.getValue().setString("SpO₂ r");
+            attrs.add(labelString);
+
+            attrs.add(AttributeId.NOM_ATTR_DISP_RES.asOid(), opaque(AttributeId.NOM_ATTR_DISP_RES, 2));
+            Attribute<EnumValue<SimpleColor>> color = AttributeFactory.getEnumAttribute(AttributeId.NOM_ATTR_COLOR.asOid(), SimpleColor.class);
+            color.getValue().setEnum(SimpleColor.Cyan);
+            attrs.add(color);
+            attrs.add(AttributeId.NOM_ATTR_METRIC_INFO_LABEL.asOid(), opaque(AttributeId.NOM_ATTR_METRIC_INFO_LABEL, 12));
+            attrs.add(AttributeId.NOM_ATTR_METRIC_STAT.asOid(), opaque(AttributeId.NOM_ATTR_METRIC_STAT, 2));
+            attrs.add(AttributeId.NOM_ATTR_VAL_ENUM_OBS.asOid(), opaque(AttributeId.NOM_ATTR_VAL_ENUM_OBS, 8));
+
+            Attribute<NumericObservedValue> observed = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS, NumericObservedValue.class);
+            observed.getValue().setPhysioId(OIDType.lookup(ObservedValue.NOM_PULS_OXIM_SAT_O2.asInt()));
+            observed.getValue().setUnitCode(OIDType.lookup(UnitCode.NOM_DIM_PERCENT.asInt()));
+            observed.getValue().getValue().setFloat(90 + i % 10);
+            attrs.add(observed);
+
+            Attribute<RelativeTime> time = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_STAMP_REL, RelativeTime.class);
+            time.getValue().setRelativeTime(1000L * i);
+            attrs.add(time);
+
+            attrs.format(bb);
+        }
+        bb.flip();
+        result = bb;
+
+        if (parse(false) != parse(true)) {
+            throw new IllegalStateException("The lazy parse read different values");
+        }
+    }
+
+    private double parse(boolean lazy) {
+        result.rewind();
+        double sum = 0.0;
+        while (result.hasRemaining()) {
+            Bits.getUnsignedShort(result);
+            AttributeValueList attrs = new AttributeValueList(lazy);
+            attrs.parse(result);
+            // the attributes the adapter asks of every observation
+            Attribute<NumericObservedValue> o = attrs.getAttribute(observed);
+            if (null != attrs.getAttribute(compoundObserved) || null != attrs.getAttribute(period) || null != attrs.getAttribute(spec)
+                    || null != attrs.getAttribute(v)) {
+                throw new IllegalStateException("Unexpected attribute");
+            }
+            Attribute<RelativeTime> t = attrs.getAttribute(time);
+            sum += o.getValue().getValue().getDouble() + t.getValue().getRelativeTime();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double eager() {
+        return parse(false);
+    }
+
+    @Benchmark
+    public double lazy() {
+        return parse(true);
+    }
+}
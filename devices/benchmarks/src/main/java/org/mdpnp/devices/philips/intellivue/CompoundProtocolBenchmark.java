@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataResult;
+import org.mdpnp.devices.philips.intellivue.action.ObservationPoll;
+import org.mdpnp.devices.philips.intellivue.action.SingleContextPoll;
+import org.mdpnp.devices.philips.intellivue.action.impl.ExtendedPollDataResultImpl;
+import org.mdpnp.devices.philips.intellivue.action.impl.ObservationPollImpl;
+import org.mdpnp.devices.philips.intellivue.action.impl.SingleContextPollImpl;
+import org.mdpnp.devices.philips.intellivue.attribute.Attribute;
+import org.mdpnp.devices.philips.intellivue.attribute.AttributeFactory;
+import org.mdpnp.devices.philips.intellivue.data.AttributeId;
+import org.mdpnp.devices.philips.intellivue.data.CompoundNumericObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.NumericObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.ObjectClass;
+import org.mdpnp.devices.philips.intellivue.data.ObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.RelativeTime;
+import org.mdpnp.devices.philips.intellivue.data.SampleArrayCompoundObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.SampleArrayObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.SampleArraySpecification;
+import org.mdpnp.devices.philips.intellivue.data.UnitCode;
+import org.mdpnp.devices.philips.intellivue.dataexport.CommandType;
+import org.mdpnp.devices.philips.intellivue.dataexport.DataExportResult;
+import org.mdpnp.devices.philips.intellivue.dataexport.command.ActionResult;
+import org.mdpnp.devices.philips.intellivue.dataexport.command.impl.ActionResultImpl;
+import org.mdpnp.devices.philips.intellivue.dataexport.impl.DataExportResultImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses extended poll results, the bulk of the traffic from a monitor, with {@link CompoundProtocol}.
+ * Each datagram carries a 250Hz ECG and a 125Hz pleth sample array along with a few numerics, laid out
+ * the way {@link SimulatedPulseOximeterImpl} sends them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CompoundProtocolBenchmark {
+    private static final int NUMERICS = 4;
+
+    private final Protocol protocol = new CompoundProtocol();
+    private ByteBuffer datagram;
+    private int length;
+
+    private static ObservationPoll sampleArray(int handle, ObservedValue physioId, int samples, long periodMicroseconds) {
+        Attribute<SampleArraySpecification> spec = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_SPECN, SampleArraySpecification.class);
+        Attribute<RelativeTime> period = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
+        Attribute<SampleArrayCompoundObservedValue> sacov = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_CMPD_VAL_OBS,
+                SampleArrayCompoundObservedValue.class);
+
+        SampleArrayObservedValue sa = new SampleArrayObservedValue();
+        int byteLength = Short.SIZE / Byte.SIZE * samples;
+        short[] values = new short[byteLength];
+        for (int i = 0; i < samples; i++) {
+            int v = (int) (2048 + 1024 * Math.sin(2.0 * Math.PI * i / samples));
+            values[2 * i] = (short) (0xFF & (v >> Byte.SIZE));
+            values[2 * i + 1] = (short) (0xFF & v);
+        }
+        sa.setValue(values);
+        sa.setLength(byteLength);
+        sa.setPhysioId(physioId.asOID());
+        sacov.getValue().getList().add(sa);
+        spec.getValue().setArraySize(samples);
+        spec.getValue().setSampleSize((short) Short.SIZE);
+        spec.getValue().setSignificantBits((short) 12);
+        period.getValue().fromMicroseconds(periodMicroseconds);
+
+        ObservationPoll op = new ObservationPollImpl();
+        op.getHandle().setHandle(handle);
+        op.getAttributes().add(spec);
+        op.getAttributes().add(period);
+        op.getAttributes().add(sacov);
+        return op;
+    }
+
+    private static ObservationPoll numeric(int handle, ObservedValue physioId, UnitCode unitCode, float value) {
+        Attribute<NumericObservedValue> nov = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS, NumericObservedValue.class);
+        nov.getValue().setPhysioId(physioId.asOID());
+        nov.getValue().setUnitCode(unitCode.asOID());
+        nov.getValue().getValue().setFloat(value);
+
+        ObservationPoll op = new ObservationPollImpl();
+        op.getHandle().setHandle(handle);
+        op.getAttributes().add(nov);
+        return op;
+    }
+
+    static DataExportResult extendedPollResult() {
+        ExtendedPollDataResult ePollResult = new ExtendedPollDataResultImpl();
+        ePollResult.setPolledAttributeGroup(AttributeId.NOM_ATTR_GRP_METRIC_VAL_OBS.asOid());
+        ePollResult.getAbsoluteTime().setNow();
+        SingleContextPoll scp = new SingleContextPollImpl();
+        ePollResult.getPollInfoList().add(scp);
+
+        scp.getPollInfo().add(sampleArray(1, ObservedValue.NOM_ECG_ELEC_POTL_II, 64, 4000L));
+        ObservationPoll pleth = sampleArray(2, ObservedValue.NOM_PLETH, 32, 8000L);
+        Attribute<CompoundNumericObservedValue> cnov = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_CMPD_VAL_OBS,
+                CompoundNumericObservedValue.class);
+        NumericObservedValue pulse = new NumericObservedValue();
+        pulse.setPhysioId(ObservedValue.NOM_PLETH_PULS_RATE.asOID());
+        pulse.setUnitCode(UnitCode.NOM_DIM_BEAT_PER_MIN.asOID());
+        pulse.getValue().setFloat(72f);
+        NumericObservedValue spo2 = new NumericObservedValue();
+        spo2.setPhysioId(ObservedValue.NOM_PULS_OXIM_SAT_O2.asOID());
+        spo2.setUnitCode(UnitCode.NOM_DIM_PERCENT.asOID());
+        spo2.getValue().setFloat(98f);
+        cnov.getValue().getList().add(pulse);
+        cnov.getValue().getList().add(spo2);
+        pleth.getAttributes().add(cnov);
+        scp.getPollInfo().add(pleth);
+
+        scp.getPollInfo().add(numeric(3, ObservedValue.NOM_ECG_CARD_BEAT_RATE, UnitCode.NOM_DIM_BEAT_PER_MIN, 72f));
+        scp.getPollInfo().add(numeric(4, ObservedValue.NOM_RESP_RATE, UnitCode.NOM_DIM_RESP_PER_MIN, 14f));
+        scp.getPollInfo().add(numeric(5, ObservedValue.NOM_PRESS_BLD_ART_ABP_SYS, UnitCode.NOM_DIM_MMHG, 120f));
+        scp.getPollInfo().add(numeric(6, ObservedValue.NOM_PRESS_BLD_ART_ABP_DIA, UnitCode.NOM_DIM_MMHG, 80f));
+
+        ActionResult actionResult = new ActionResultImpl();
+        actionResult.setActionType(ObjectClass.NOM_ACT_POLL_MDIB_DATA_EXT.asOID());
+        actionResult.setAction(ePollResult);
+
+        DataExportResult der = new DataExportResultImpl();
+        der.setCommandType(CommandType.ConfirmedAction);
+        der.setCommand(actionResult);
+        der.setInvoke(1);
+        return der;
+    }
+
+    @Setup
+    public void setUp() {
+        datagram = ByteBuffer.allocate(Intellivue.BUFFER_SIZE);
+        protocol.format(extendedPollResult(), datagram);
+        length = datagram.position();
+
+        Message message = parse(new ByteCounter());
+        if (!(message instanceof DataExportResult) || !(((DataExportResult) message).getCommand() instanceof ActionResult)) {
+            throw new IllegalStateException("Unexpected parse result " + message);
+        }
+        ExtendedPollDataResult result = (ExtendedPollDataResult) ((ActionResult) ((DataExportResult) message).getCommand()).getAction();
+        if (2 + NUMERICS != result.getPollInfoList().get(0).getPollInfo().size()) {
+            throw new IllegalStateException("Unexpected poll result " + result);
+        }
+    }
+
+    @Benchmark
+    public Message parse(ByteCounter counter) {
+        datagram.clear();
+        datagram.limit(length);
+        counter.bytes += length;
+        return protocol.parse(datagram);
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mdpnp.devices.net.NetworkLoop;
+import org.mdpnp.devices.philips.intellivue.data.AttributeId;
+import org.mdpnp.devices.philips.intellivue.data.OIDType;
+import org.mdpnp.devices.philips.intellivue.data.ObjectClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Requests sent by an Intellivue registered on its own NetworkLoop to a channel standing in
+ * for the monitor, which just keeps the socket buffer empty. Compares an extended poll written
+ * from its pre-encoded template with a get formatted through the CompoundProtocol. Run with
+ * -t 4 for several producers and -prof gc for gc.alloc.rate.norm; the score is sends per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IntellivueSendBenchmark {
+    private static final OIDType TIME = OIDType.lookup(AttributeId.NOM_ATTR_TIME_ABS.asInt());
+
+    private NetworkLoop loop;
+    private Thread thread, sink;
+    private Intellivue intellivue;
+    private DatagramChannel monitor, channel;
+
+    @Setup
+    public void setUp() throws IOException {
+        loop = new NetworkLoop();
+        intellivue = new Intellivue();
+        monitor = DatagramChannel.open();
+        monitor.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(monitor.getLocalAddress());
+        monitor.connect(channel.getLocalAddress());
+        loop.register(intellivue, channel);
+        thread = new Thread(loop, "NetworkLoop");
+        thread.setDaemon(true);
+        thread.start();
+
+        sink = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer bb = ByteBuffer.allocateDirect(Intellivue.BUFFER_SIZE);
+                try {
+                    while (true) {
+                        bb.clear();
+                        monitor.receive(bb);
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }, "Monitor");
+        sink.setDaemon(true);
+        sink.start();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        loop.cancelThreadAndWait();
+        channel.close();
+        monitor.close();
+        sink.join();
+    }
+
+    @Benchmark
+    public int preEncodedPoll() {
+        while (true) {
+            try {
+                return intellivue.requestExtendedPoll(ObjectClass.NOM_MOC_VMO_METRIC_NU, 3600000L);
+            } catch (IOException e) {
+                // back off while the loop catches up
+                LockSupport.parkNanos(50000L);
+            }
+        }
+    }
+
+    @Benchmark
+    public int formattedGet() {
+        while (true) {
+            try {
+                return intellivue.requestGet(TIME);
+            } catch (IOException e) {
+                LockSupport.parkNanos(50000L);
+            }
+        }
+    }
+}
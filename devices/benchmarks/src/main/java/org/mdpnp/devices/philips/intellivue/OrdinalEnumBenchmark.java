@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.philips.intellivue.data.AttributeId;
+import org.mdpnp.devices.philips.intellivue.data.Label;
+import org.mdpnp.devices.philips.intellivue.data.ObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.UnitCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The nomenclature lookups made decoding the observations of an extended poll result: for each
+ * observation the attribute ids, the physio id, the unit and the label. Compares the boxed HashMap
+ * the lookups used to go through with {@link OrdinalEnum.Lookup}; the score is lookups per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrdinalEnumBenchmark {
+    private static final AttributeId[] ATTRIBUTES = { AttributeId.NOM_ATTR_ID_HANDLE, AttributeId.NOM_ATTR_ID_TYPE,
+            AttributeId.NOM_ATTR_METRIC_STAT, AttributeId.NOM_ATTR_NU_VAL_OBS, AttributeId.NOM_ATTR_ID_LABEL,
+            AttributeId.NOM_ATTR_TIME_STAMP_ABS };
+    // 64 observations per poll result, 16 poll results
+    private static final int OBSERVATIONS = 64 * 16;
+    // the attribute ids, then the physio id, unit and label of each observation
+    private static final int LOOKUPS = OBSERVATIONS * (6 + 3);
+
+    private final int[] attributeKeys = new int[OBSERVATIONS * ATTRIBUTES.length];
+    private final int[] observedKeys = new int[OBSERVATIONS];
+    private final int[] unitKeys = new int[OBSERVATIONS];
+    private final long[] labelKeys = new long[OBSERVATIONS];
+
+    private Map<Integer, AttributeId> attributeMap;
+    private Map<Integer, ObservedValue> observedMap;
+    private Map<Integer, UnitCode> unitMap;
+    private Map<Long, Label> labelMap;
+
+    @Setup
+    public void setUp() {
+        ObservedValue[] observed = ObservedValue.values();
+        UnitCode[] units = UnitCode.values();
+        Label[] labels = Label.values();
+
+        Random random = new Random(0);
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            for (int j = 0; j < ATTRIBUTES.length; j++) {
+                attributeKeys[i * ATTRIBUTES.length + j] = ATTRIBUTES[j].asInt();
+            }
+            observedKeys[i] = observed[random.nextInt(observed.length)].asInt();
+            unitKeys[i] = units[random.nextInt(units.length)].asInt();
+            labelKeys[i] = labels[random.nextInt(labels.length)].asLong();
+        }
+
+        attributeMap = hashMap(AttributeId.values());
+        observedMap = hashMap(observed);
+        unitMap = hashMap(units);
+        labelMap = new HashMap<Long, Label>();
+        for (Label l : labels) {
+            labelMap.put(l.asLong(), l);
+        }
+
+        if (LOOKUPS != hashMap() || LOOKUPS != lookup()) {
+            throw new IllegalStateException("Not every key was found");
+        }
+    }
+
+    private static <T extends OrdinalEnum.IntType> Map<Integer, T> hashMap(T[] values) {
+        Map<Integer, T> map = new HashMap<Integer, T>();
+        for (T t : values) {
+            map.put(t.asInt(), t);
+        }
+        return map;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int hashMap() {
+        int hits = 0;
+        for (int i = 0; i < attributeKeys.length; i++) {
+            hits += null == attributeMap.get(attributeKeys[i]) ? 0 : 1;
+        }
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            hits += null == observedMap.get(observedKeys[i]) ? 0 : 1;
+            hits += null == unitMap.get(unitKeys[i]) ? 0 : 1;
+            hits += null == labelMap.get(labelKeys[i]) ? 0 : 1;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup() {
+        int hits = 0;
+        for (int i = 0; i < attributeKeys.length; i++) {
+            hits += null == AttributeId.valueOf(attributeKeys[i]) ? 0 : 1;
+        }
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            hits += null == ObservedValue.valueOf(observedKeys[i]) ? 0 : 1;
+            hits += null == UnitCode.valueOf(unitKeys[i]) ? 0 : 1;
+            hits += null == Label.valueOf(labelKeys[i]) ? 0 : 1;
+        }
+        return hits;
+    }
+}
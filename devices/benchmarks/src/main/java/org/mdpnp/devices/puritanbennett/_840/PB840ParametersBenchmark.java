@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.puritanbennett._840;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.mdpnp.devices.benchmark.ReplayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feeds alternating MISCF and MISCA responses through {@link PB840Parameters#receive()},
+ * consuming numerics as floats the way DemoPB840 does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PB840ParametersBenchmark {
+    private static final int MESSAGES = 100;
+
+    private ReplayInputStream in;
+    private PB840Parameters pb840;
+    private int lines, dates, numerics;
+
+    private static String field(int[] times, int[] dates, int id, int fieldNumber, int seq) {
+        for (int t : times) {
+            if (t == fieldNumber) {
+                return String.format("%02d:%02d ", 14, seq % 60);
+            }
+        }
+        for (int d : dates) {
+            if (d == fieldNumber) {
+                return "OCT 19 2026 ";
+            }
+        }
+        if (id == fieldNumber) {
+            return "840 3510083331    ";
+        }
+        switch (fieldNumber % 5) {
+        case 0:
+            return "NORMAL";
+        case 1:
+            return String.format("%-6d", 10 + (fieldNumber + seq) % 90);
+        case 2:
+            return String.format(Locale.US, "%-6.2f", 0.25 + fieldNumber / 100.0);
+        case 3:
+            return "OFF   ";
+        default:
+            return String.format(Locale.US, "%-6.1f", 5.0 + (seq % 10) / 10.0);
+        }
+    }
+
+    /**
+     * A response as it comes off the wire, e.g. MISCF,1225,169,&lt;STX&gt;fields,&lt;ETX&gt;&lt;CR&gt;
+     */
+    static String response(String type, int fieldCount, int[] times, int[] dates, int id, int seq) {
+        StringBuilder body = new StringBuilder();
+        body.append('\u0002');
+        for (int i = 0; i < fieldCount; i++) {
+            body.append(field(times, dates, id, 5 + i, seq)).append(',');
+        }
+        body.append('\u0003').append('\r');
+        return type + "," + body.length() + "," + fieldCount + "," + body;
+    }
+
+    static byte[] capture(int count) throws IOException {
+        ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            String s = 0 == i % 2 ? response("MISCF", 169, new int[] { 5 }, new int[] { 7 }, 6, i) : response("MISCA", 97, new int[] { 5, 60 },
+                    new int[] { 8, 62 }, 6, i);
+            capture.write(s.getBytes("ASCII"));
+        }
+        return capture.toByteArray();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        in = new ReplayInputStream(capture(MESSAGES));
+        pb840 = new PB840Parameters(in, new ByteArrayOutputStream()) {
+            @Override
+            public void receiveEndResponse() {
+                lines++;
+            }
+
+            @Override
+            public void receiveDate(int month, int day, int year) {
+                dates++;
+            }
+
+            @Override
+            public void receiveNumeric(String name, Units units, float value) {
+                numerics++;
+            }
+        };
+        lines = 0;
+        receive(new ByteCounter());
+        if (lines != MESSAGES || dates != MESSAGES / 2 * 3 || 0 == numerics) {
+            throw new IllegalStateException("Expected " + MESSAGES + " responses but received " + lines + " with " + dates + " dates and " + numerics
+                    + " numerics");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int receive(ByteCounter counter) throws IOException {
+        in.rewind();
+        pb840.receive();
+        counter.bytes += in.length();
+        return lines;
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.zephyr.biopatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.DeviceClock;
+import org.mdpnp.devices.benchmark.ByteCounter;
+import org.mdpnp.devices.benchmark.ReplayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feeds a minute of BioPatch traffic, one general data packet and four ECG waveform packets per second,
+ * through {@link BioPatch#receive()} in 64 byte reads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BioPatchBenchmark {
+    private static final int SECONDS = 60;
+    private static final int ECG_PER_SECOND = 4;
+    private static final int MESSAGES = SECONDS * (1 + ECG_PER_SECOND);
+    private static final int READ_SIZE = 64;
+
+    private ReplayInputStream in;
+    private BioPatch bioPatch;
+    private int received;
+
+    private static void timestamp(ByteBuffer bb, long ms) {
+        bb.putShort((short) 2026).put((byte) 10).put((byte) 19).putInt((int) (ms % 86400000L));
+    }
+
+    static byte[] capture(int seconds) throws IOException {
+        ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        BioPatch writer = new BioPatch(new DeviceClock.WallClock(), new ByteArrayInputStream(new byte[0]), capture);
+        ByteBuffer payload = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+        int seq = 0;
+        for (int s = 0; s < seconds; s++) {
+            long ms = 52325000L + s * 1000L;
+            payload.clear();
+            payload.put((byte) seq++);
+            timestamp(payload, ms);
+            payload.putShort((short) (70 + s % 5)).putShort((short) 145).putShort((short) 345);
+            // remainder of the general data packet that the driver does not interpret
+            payload.position(53);
+            writer.send(BioPatch.GENERAL_DATA_PACKET, payload.array(), 0, payload.position());
+
+            for (int e = 0; e < ECG_PER_SECOND; e++) {
+                payload.clear();
+                payload.put((byte) seq++);
+                timestamp(payload, ms + e * 252L);
+                for (int i = 0; i < 79; i++) {
+                    payload.put((byte) (31 * (i + e)));
+                }
+                writer.send(BioPatch.ECG_DATA_PACKET, payload.array(), 0, payload.position());
+            }
+        }
+        return capture.toByteArray();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        in = new ReplayInputStream(capture(SECONDS), READ_SIZE);
+        bioPatch = new BioPatch(new DeviceClock.WallClock(), in, new ByteArrayOutputStream()) {
+            @Override
+            protected void receiveGeneralDataPacket(DeviceClock.Reading timeofday, int sequenceNumber, Integer heartrate,
+                    Float respirationRate, Float skinTemperature) {
+                received++;
+            }
+
+            @Override
+            protected void receiveECGDataPacket(DeviceClock.Reading timeofday, Number[] values) {
+                received++;
+            }
+        };
+        received = 0;
+        receive(new ByteCounter());
+        if (received != MESSAGES) {
+            throw new IllegalStateException("Expected " + MESSAGES + " messages but received " + received);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int receive(ByteCounter counter) throws IOException {
+        in.rewind();
+        while (bioPatch.receive()) {
+        }
+        counter.bytes += in.length();
+        return received;
+    }
+}
@@ -10,6 +10,25 @@ public interface DeviceClock {
      */
     Reading instant();
 
+    /**
+     * Allocation free alternative to {@link #instant()} for the sample path; the reading
+     * is only good until the holder is filled again.  Clocks that cannot do better than
+     * instant() inherit this adapter.
+     *
+     * @return the holder, filled with the current instant
+     */
+    default MutableReading instant(MutableReading reading) {
+        return reading.set(instant());
+    }
+
+    static long toEpochNanos(Instant t) {
+        return t.getEpochSecond() * 1000000000L + t.getNano();
+    }
+
+    static Instant toInstant(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1000000000L), Math.floorMod(epochNanos, 1000000000L));
+    }
+
     /**
      * A point on the time-line as perceived by the instance of the clock that is returning this reading.
      *
@@ -26,8 +45,128 @@ public interface DeviceClock {
         boolean hasDeviceTime();
         Instant getDeviceTime();
         Reading refineResolutionForFrequency(int hertz, int size);
+
+        /**
+         * @return getTime() in nanoseconds since the epoch
+         */
+        default long getTimeNanos() {
+            return toEpochNanos(getTime());
+        }
+
+        /**
+         * @return getDeviceTime() in nanoseconds since the epoch, 0 if there is no device time
+         */
+        default long getDeviceTimeNanos() {
+            Instant t = getDeviceTime();
+            return null == t ? 0L : toEpochNanos(t);
+        }
     };
 
+    /**
+     * A reading in primitive epoch nanoseconds that is filled in place rather than
+     * allocated per sample.  The Instant accessors remain for existing callers but
+     * allocate; the sample path should use getTimeNanos and getDeviceTimeNanos.
+     */
+    public static class MutableReading implements Reading {
+
+        /**
+         * Lets the clock that filled a reading coarsen its time once the sample
+         * array frequencies it is used for are known.
+         */
+        public interface Resolution {
+            void ensureResolutionForFrequency(int hertz, int size);
+            long truncate(long epochNanos);
+        }
+
+        private long time, deviceTime;
+        private boolean hasDeviceTime;
+        private Resolution resolution;
+        // a copied reading of another kind that still decides its own resolution
+        private Reading source;
+
+        public MutableReading set(long epochNanos) {
+            return set(epochNanos, null);
+        }
+
+        public MutableReading set(long epochNanos, Resolution resolution) {
+            this.time = epochNanos;
+            this.resolution = resolution;
+            this.source = null;
+            this.hasDeviceTime = false;
+            this.deviceTime = 0L;
+            return this;
+        }
+
+        public MutableReading setDeviceTime(long epochNanos) {
+            this.deviceTime = epochNanos;
+            this.hasDeviceTime = true;
+            return this;
+        }
+
+        /**
+         * Copies another reading, which may then be reused by its owner.  The copy
+         * is refined for a frequency the way the original would have been.
+         */
+        public MutableReading set(Reading reading) {
+            if (reading instanceof MutableReading) {
+                MutableReading r = (MutableReading) reading;
+                time = r.time;
+                resolution = r.resolution;
+                source = r.source;
+            } else if (reading instanceof CombinedReading) {
+                // the reference reading decides the resolution
+                set(((CombinedReading) reading).ref);
+            } else {
+                time = reading.getTimeNanos();
+                resolution = null;
+                source = reading;
+            }
+            hasDeviceTime = reading.hasDeviceTime();
+            deviceTime = hasDeviceTime ? reading.getDeviceTimeNanos() : 0L;
+            return this;
+        }
+
+        @Override
+        public long getTimeNanos() {
+            return null == resolution ? time : resolution.truncate(time);
+        }
+
+        @Override
+        public long getDeviceTimeNanos() {
+            return deviceTime;
+        }
+
+        @Override
+        public Instant getTime() {
+            return toInstant(getTimeNanos());
+        }
+
+        @Override
+        public boolean hasDeviceTime() {
+            return hasDeviceTime;
+        }
+
+        @Override
+        public Instant getDeviceTime() {
+            return hasDeviceTime ? toInstant(deviceTime) : null;
+        }
+
+        @Override
+        public Reading refineResolutionForFrequency(int hertz, int size) {
+            if (null != resolution) {
+                resolution.ensureResolutionForFrequency(hertz, size);
+            } else if (null != source) {
+                time = source.refineResolutionForFrequency(hertz, size).getTimeNanos();
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return hasDeviceTime ? getTime() + " " + getDeviceTime() : getTime().toString();
+        }
+    }
+
 
     public static class WallClock implements DeviceClock {
 
@@ -36,6 +175,11 @@ public interface DeviceClock {
             return new ReadingImpl(getTimeInMillis());
         }
 
+        @Override
+        public MutableReading instant(MutableReading reading) {
+            return reading.set(getTimeInMillis() * 1000000L);
+        }
+
         protected long getTimeInMillis()
         {
             return System.currentTimeMillis();
@@ -125,6 +269,16 @@ public interface DeviceClock {
             return dev.getTime();
         }
 
+        @Override
+        public long getTimeNanos() {
+            return ref.getTimeNanos();
+        }
+
+        @Override
+        public long getDeviceTimeNanos() {
+            return dev.getTimeNanos();
+        }
+
         @Override
         public Reading refineResolutionForFrequency(int hertz, int size) {
             ref.refineResolutionForFrequency(hertz, size);
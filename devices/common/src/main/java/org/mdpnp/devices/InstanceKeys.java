@@ -0,0 +1,386 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.Arrays;
+
+/**
+ * Interns the composite key of a Numeric or SampleArray instance
+ * (unique_device_identifier, metric_id, vendor_metric_id, instance_id,
+ * unit_id, frequency) so that consumers can identify an instance by a dense
+ * ordinal rather than by hashing and comparing its strings on every sample.
+ * Devices and metrics get dense ordinals of their own so that per-device or
+ * per-metric state can live in arrays.
+ * <p>
+ * Interning is meant to happen once per DDS instance handle; lookups of an
+ * existing key do not allocate. The keys of a device that is gone are released
+ * with {@link #removeDevice(String)} and their ordinals handed out again, so
+ * holders of a key check {@link Key#isReleased()} and intern it again rather
+ * than keep using it. Device and metric ordinals are never reused.
+ *
+ */
+public final class InstanceKeys {
+    public static final int NONE = -1;
+
+    private static final InstanceKeys DEFAULT = new InstanceKeys();
+
+    /**
+     * @return the keys shared by everything in this process
+     */
+    public static InstanceKeys getDefault() {
+        return DEFAULT;
+    }
+
+    public static final class Key {
+        private final int ordinal, deviceOrdinal, metricOrdinal;
+        private final String uniqueDeviceIdentifier, metricId, vendorMetricId, unitId;
+        private final int instanceId, frequency;
+        private final int hash;
+        private volatile boolean released;
+
+        private Key(int ordinal, int deviceOrdinal, int metricOrdinal, String uniqueDeviceIdentifier, String metricId, String vendorMetricId,
+                int instanceId, String unitId, int frequency, int hash) {
+            this.ordinal = ordinal;
+            this.deviceOrdinal = deviceOrdinal;
+            this.metricOrdinal = metricOrdinal;
+            this.uniqueDeviceIdentifier = uniqueDeviceIdentifier;
+            this.metricId = metricId;
+            this.vendorMetricId = vendorMetricId;
+            this.instanceId = instanceId;
+            this.unitId = unitId;
+            this.frequency = frequency;
+            this.hash = hash;
+        }
+
+        private boolean matches(int deviceOrdinal, int metricOrdinal, String vendorMetricId, int instanceId, String unitId, int frequency) {
+            return this.deviceOrdinal == deviceOrdinal && this.metricOrdinal == metricOrdinal && this.instanceId == instanceId
+                    && this.frequency == frequency && this.vendorMetricId.equals(vendorMetricId) && this.unitId.equals(unitId);
+        }
+
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        public int getDeviceOrdinal() {
+            return deviceOrdinal;
+        }
+
+        public int getMetricOrdinal() {
+            return metricOrdinal;
+        }
+
+        public String getUniqueDeviceIdentifier() {
+            return uniqueDeviceIdentifier;
+        }
+
+        public String getMetricId() {
+            return metricId;
+        }
+
+        public String getVendorMetricId() {
+            return vendorMetricId;
+        }
+
+        public int getInstanceId() {
+            return instanceId;
+        }
+
+        public String getUnitId() {
+            return unitId;
+        }
+
+        /**
+         * @return sampling frequency in Hz, zero for numerics
+         */
+        public int getFrequency() {
+            return frequency;
+        }
+
+        /**
+         * @return true once the key has been removed; its ordinal may then belong to another key
+         */
+        public boolean isReleased() {
+            return released;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        // interned; equality is identity
+
+        @Override
+        public String toString() {
+            return "#" + ordinal + " " + uniqueDeviceIdentifier + "/" + metricId + "/" + vendorMetricId + "/" + instanceId + "/" + unitId
+                    + (0 == frequency ? "" : "/" + frequency + "Hz");
+        }
+    }
+
+    /**
+     * Open addressed string to ordinal table; keeps the first instance of
+     * each string seen so that interned strings can be compared by identity.
+     */
+    private static final class Names {
+        private String[] table = new String[64];
+        private int[] ordinals = new int[64];
+        private volatile String[] byOrdinal = new String[32];
+        private int size;
+
+        int find(String s) {
+            int mask = table.length - 1;
+            for (int i = s.hashCode() & mask;; i = (i + 1) & mask) {
+                String t = table[i];
+                if (null == t) {
+                    return NONE;
+                } else if (t == s || t.equals(s)) {
+                    return ordinals[i];
+                }
+            }
+        }
+
+        int intern(String s) {
+            int ordinal = find(s);
+            if (NONE != ordinal) {
+                return ordinal;
+            }
+            if (2 * (size + 1) > table.length) {
+                rehash(table.length * 2);
+            }
+            insert(s, size);
+            String[] byOrdinal = this.byOrdinal;
+            if (size == byOrdinal.length) {
+                byOrdinal = Arrays.copyOf(byOrdinal, size * 2);
+            }
+            byOrdinal[size] = s;
+            this.byOrdinal = byOrdinal;
+            return size++;
+        }
+
+        String get(int ordinal) {
+            return byOrdinal[ordinal];
+        }
+
+        private void insert(String s, int ordinal) {
+            int mask = table.length - 1;
+            int i = s.hashCode() & mask;
+            while (null != table[i]) {
+                i = (i + 1) & mask;
+            }
+            table[i] = s;
+            ordinals[i] = ordinal;
+        }
+
+        private void rehash(int capacity) {
+            String[] oldTable = table;
+            int[] oldOrdinals = ordinals;
+            table = new String[capacity];
+            ordinals = new int[capacity];
+            for (int i = 0; i < oldTable.length; i++) {
+                if (null != oldTable[i]) {
+                    insert(oldTable[i], oldOrdinals[i]);
+                }
+            }
+        }
+    }
+
+    private final Names devices = new Names();
+    private final Names metrics = new Names();
+    private Key[] table = new Key[256];
+    private volatile Key[] byOrdinal = new Key[128];
+    private int size;
+    // ordinals of released keys, handed out before new ones
+    private int[] free = new int[16];
+    private int freeCount;
+
+    private static int hash(int deviceOrdinal, int metricOrdinal, String vendorMetricId, int instanceId, String unitId, int frequency) {
+        int h = deviceOrdinal;
+        h = 31 * h + metricOrdinal;
+        h = 31 * h + vendorMetricId.hashCode();
+        h = 31 * h + instanceId;
+        h = 31 * h + unitId.hashCode();
+        h = 31 * h + frequency;
+        return h ^ (h >>> 16);
+    }
+
+    private static String nonNull(String s) {
+        return null == s ? "" : s;
+    }
+
+    /**
+     * @return the key, created on first use
+     */
+    public synchronized Key intern(String uniqueDeviceIdentifier, String metricId, String vendorMetricId, int instanceId, String unitId,
+            int frequency) {
+        int device = devices.intern(nonNull(uniqueDeviceIdentifier));
+        int metric = metrics.intern(nonNull(metricId));
+        vendorMetricId = nonNull(vendorMetricId);
+        unitId = nonNull(unitId);
+        int hash = hash(device, metric, vendorMetricId, instanceId, unitId, frequency);
+        Key key = find(device, metric, vendorMetricId, instanceId, unitId, frequency, hash);
+        if (null != key) {
+            return key;
+        }
+        if (2 * (size + 1) > table.length) {
+            Key[] old = table;
+            table = new Key[old.length * 2];
+            for (Key k : old) {
+                if (null != k) {
+                    insert(k);
+                }
+            }
+        }
+        int ordinal = freeCount > 0 ? free[--freeCount] : size++;
+        key = new Key(ordinal, device, metric, devices.get(device), metrics.get(metric), vendorMetricId, instanceId, unitId, frequency, hash);
+        insert(key);
+        Key[] byOrdinal = this.byOrdinal;
+        if (ordinal == byOrdinal.length) {
+            byOrdinal = Arrays.copyOf(byOrdinal, ordinal * 2);
+        }
+        byOrdinal[ordinal] = key;
+        this.byOrdinal = byOrdinal;
+        return key;
+    }
+
+    /**
+     * Numerics have no frequency
+     */
+    public Key intern(String uniqueDeviceIdentifier, String metricId, String vendorMetricId, int instanceId, String unitId) {
+        return intern(uniqueDeviceIdentifier, metricId, vendorMetricId, instanceId, unitId, 0);
+    }
+
+    /**
+     * @return the key or null if it has never been interned
+     */
+    public synchronized Key find(String uniqueDeviceIdentifier, String metricId, String vendorMetricId, int instanceId, String unitId,
+            int frequency) {
+        int device = devices.find(nonNull(uniqueDeviceIdentifier));
+        int metric = metrics.find(nonNull(metricId));
+        if (NONE == device || NONE == metric) {
+            return null;
+        }
+        vendorMetricId = nonNull(vendorMetricId);
+        unitId = nonNull(unitId);
+        return find(device, metric, vendorMetricId, instanceId, unitId, frequency, hash(device, metric, vendorMetricId, instanceId, unitId, frequency));
+    }
+
+    private Key find(int device, int metric, String vendorMetricId, int instanceId, String unitId, int frequency, int hash) {
+        int mask = table.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            Key k = table[i];
+            if (null == k) {
+                return null;
+            } else if (k.hash == hash && k.matches(device, metric, vendorMetricId, instanceId, unitId, frequency)) {
+                return k;
+            }
+        }
+    }
+
+    private void insert(Key key) {
+        int mask = table.length - 1;
+        int i = key.hash & mask;
+        while (null != table[i]) {
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+    }
+
+    /**
+     * Releases every key of the device, for instance once it is lost, so that its
+     * ordinals can be reused.
+     *
+     * @return number of keys released
+     */
+    public synchronized int removeDevice(String uniqueDeviceIdentifier) {
+        int device = devices.find(nonNull(uniqueDeviceIdentifier));
+        if (NONE == device) {
+            return 0;
+        }
+        Key[] byOrdinal = this.byOrdinal;
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            Key k = byOrdinal[i];
+            if (null != k && k.deviceOrdinal == device) {
+                k.released = true;
+                byOrdinal[i] = null;
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, freeCount * 2);
+                }
+                free[freeCount++] = i;
+                n++;
+            }
+        }
+        if (n > 0) {
+            // open addressing leaves no holes to mark, so put the remaining keys back
+            Key[] old = table;
+            table = new Key[old.length];
+            for (Key k : old) {
+                if (null != k && !k.released) {
+                    insert(k);
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the key with the given ordinal, null if it has been released
+     */
+    public Key get(int ordinal) {
+        return byOrdinal[ordinal];
+    }
+
+    /**
+     * @return the number of ordinals handed out so far, released ones included;
+     *         ordinals are below this
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return a dense ordinal for the device, created on first use
+     */
+    public synchronized int deviceOrdinal(String uniqueDeviceIdentifier) {
+        return devices.intern(nonNull(uniqueDeviceIdentifier));
+    }
+
+    /**
+     * @return the device's ordinal or {@link #NONE} if it has never been seen
+     */
+    public synchronized int findDevice(String uniqueDeviceIdentifier) {
+        return devices.find(nonNull(uniqueDeviceIdentifier));
+    }
+
+    /**
+     * @return a dense ordinal for the metric, created on first use
+     */
+    public synchronized int metricOrdinal(String metricId) {
+        return metrics.intern(nonNull(metricId));
+    }
+
+    /**
+     * @return the metric's ordinal or {@link #NONE} if it has never been seen
+     */
+    public synchronized int findMetric(String metricId) {
+        return metrics.find(nonNull(metricId));
+    }
+
+    public String getUniqueDeviceIdentifier(int deviceOrdinal) {
+        return devices.get(deviceOrdinal);
+    }
+
+    public String getMetricId(int metricOrdinal) {
+        return metrics.get(metricOrdinal);
+    }
+}
@@ -0,0 +1,523 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Full-disclosure waveform storage. Samples are kept per (device, metric, instance, frequency)
+ * channel in a directory of memory-mapped, fixed size segment files of primitive floats.
+ * Each segment carries a sparse index of contiguous runs so that locating a timestamp is a
+ * binary search over the segments followed by a binary search over the runs of one segment.
+ * Whole segments are deleted once their newest sample is older than the retention period.
+ *
+ * Appends for a channel must be in time order; a block that starts before the most recent
+ * run of its channel is dropped.
+ */
+public class WaveformArchive implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WaveformArchive.class);
+
+    public static final long DEFAULT_RETENTION = TimeUnit.HOURS.toMillis(72L);
+    public static final long DEFAULT_SEGMENT_SPAN = TimeUnit.HOURS.toMillis(1L);
+
+    private static final String CHANNEL_PROPERTIES = "channel.properties";
+    private static final long PURGE_INTERVAL = TimeUnit.MINUTES.toMillis(1L);
+
+    /**
+     * Receives the samples of a range read. The values array is reused between calls.
+     */
+    public interface BlockHandler {
+        void block(long startTime, int frequency, float[] values, int offset, int length);
+    }
+
+    public static final class Key {
+        private final String uniqueDeviceIdentifier;
+        private final String metricId;
+        private final int instanceId;
+        private final int frequency;
+
+        public Key(String uniqueDeviceIdentifier, String metricId, int instanceId, int frequency) {
+            if (frequency <= 0) {
+                throw new IllegalArgumentException("Invalid frequency " + frequency + " for " + uniqueDeviceIdentifier + " " + metricId);
+            }
+            this.uniqueDeviceIdentifier = uniqueDeviceIdentifier;
+            this.metricId = metricId;
+            this.instanceId = instanceId;
+            this.frequency = frequency;
+        }
+
+        public String getUniqueDeviceIdentifier() {
+            return uniqueDeviceIdentifier;
+        }
+
+        public String getMetricId() {
+            return metricId;
+        }
+
+        public int getInstanceId() {
+            return instanceId;
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+
+        String toDirectoryName() {
+            String s = uniqueDeviceIdentifier + "-" + metricId + "-" + instanceId + "-" + frequency;
+            // sanitized names can collide so qualify them with the hash of the real key
+            return s.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Integer.toHexString(hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            int h = uniqueDeviceIdentifier.hashCode();
+            h = 31 * h + metricId.hashCode();
+            h = 31 * h + instanceId;
+            h = 31 * h + frequency;
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return instanceId == k.instanceId && frequency == k.frequency && uniqueDeviceIdentifier.equals(k.uniqueDeviceIdentifier)
+                    && metricId.equals(k.metricId);
+        }
+
+        @Override
+        public String toString() {
+            return uniqueDeviceIdentifier + " " + metricId + " " + instanceId + " " + frequency + "Hz";
+        }
+    }
+
+    public final class Channel {
+        private final Key key;
+        private final File directory;
+        // ordered by time, the last one is the head when it is still writable
+        private final List<WaveformSegment> segments = new ArrayList<>();
+        private WaveformSegment head;
+        private long droppedBlocks;
+        private String vendorMetricId = "";
+        private String unitId;
+
+        private Channel(Key key, File directory) {
+            this.key = key;
+            this.directory = directory;
+        }
+
+        private void load() throws IOException {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(WaveformSegment.SUFFIX));
+            if (null == files) {
+                return;
+            }
+            Arrays.sort(files, (f1, f2) -> Long.compare(segmentStart(f1), segmentStart(f2)));
+            for (File f : files) {
+                try {
+                    WaveformSegment s = WaveformSegment.open(f);
+                    if (s.isEmpty()) {
+                        f.delete();
+                    } else {
+                        segments.add(s);
+                    }
+                } catch (IOException e) {
+                    log.warn("Ignoring unreadable segment " + f, e);
+                }
+            }
+        }
+
+        public Key getKey() {
+            return key;
+        }
+
+        public synchronized String getVendorMetricId() {
+            return vendorMetricId;
+        }
+
+        /**
+         * @return the unit of the samples, null when it was never recorded
+         */
+        public synchronized String getUnitId() {
+            return unitId;
+        }
+
+        synchronized void describe(String vendorMetricId, String unitId) throws IOException {
+            if (null == vendorMetricId) {
+                vendorMetricId = "";
+            }
+            if (vendorMetricId.equals(this.vendorMetricId) && (null == unitId ? null == this.unitId : unitId.equals(this.unitId))) {
+                return;
+            }
+            this.vendorMetricId = vendorMetricId;
+            this.unitId = unitId;
+            writeProperties(directory, key, vendorMetricId, unitId);
+        }
+
+        public synchronized long getFirstTime() {
+            return segments.isEmpty() ? Long.MIN_VALUE : segments.get(0).getFirstTime();
+        }
+
+        public synchronized long getLastTime() {
+            return segments.isEmpty() ? Long.MIN_VALUE : segments.get(segments.size() - 1).getLastTime();
+        }
+
+        public synchronized int getSegmentCount() {
+            return segments.size();
+        }
+
+        public synchronized long getDroppedBlocks() {
+            return droppedBlocks;
+        }
+
+        /**
+         * @param startTime time of values[off] in milliseconds since the epoch
+         */
+        public synchronized void append(long startTime, float[] values, int off, int len) throws IOException {
+            // samples up to the end of what is already recorded are dropped
+            int done = 0;
+            if (!segments.isEmpty()) {
+                WaveformSegment last = segments.get(segments.size() - 1);
+                double periodMs = 1000.0 / key.frequency;
+                if (startTime <= last.getLastTime() + periodMs / 2.0) {
+                    done = (int) Math.min(len, (long) Math.floor((last.getLastTime() - startTime + periodMs / 2.0) / periodMs) + 1L);
+                }
+                if (done >= len) {
+                    if (0 == droppedBlocks++) {
+                        log.warn("Dropping out of order samples for " + key + " at " + startTime);
+                    }
+                    return;
+                }
+            }
+
+            while (done < len) {
+                // from the sample count so that rounding does not accumulate from block to block
+                long time = startTime + Math.round(done * 1000.0 / key.frequency);
+                if (null == head || head.isFull() || (time - head.getFirstTime()) >= segmentSpan && !head.isEmpty()) {
+                    roll(time);
+                }
+                int n = head.append(time, values, off + done, len - done);
+                if (0 == n) {
+                    // index filled up without any room for samples
+                    roll(time);
+                    continue;
+                }
+                done += n;
+            }
+        }
+
+        private void roll(long startTime) throws IOException {
+            if (null != head) {
+                head.seal();
+                head = null;
+            } else if (!segments.isEmpty()) {
+                // pick up where an earlier session left off
+                WaveformSegment last = segments.get(segments.size() - 1);
+                if (!last.isFull() && startTime - last.getFirstTime() < segmentSpan) {
+                    last.reopen();
+                    head = last;
+                    return;
+                }
+            }
+            int capacity = (int) Math.min(Integer.MAX_VALUE / 8, (long) Math.ceil(segmentSpan / 1000.0 * key.frequency * 1.1) + 1L);
+            int maxEntries = Math.max(1024, capacity / 16);
+            File f = new File(directory, Long.toString(startTime) + WaveformSegment.SUFFIX);
+            head = WaveformSegment.create(f, key.frequency, capacity, maxEntries);
+            segments.add(head);
+            purge(System.currentTimeMillis() - retention);
+        }
+
+        /**
+         * Delivers all samples with fromTime &lt;= time &lt; toTime in order.
+         *
+         * @return the number of samples delivered
+         */
+        public synchronized int read(long fromTime, long toTime, BlockHandler handler) throws IOException {
+            return read(fromTime, toTime, new float[4096], handler);
+        }
+
+        public synchronized int read(long fromTime, long toTime, float[] scratch, BlockHandler handler) throws IOException {
+            int n = 0;
+            for (int i = floorSegment(fromTime); i < segments.size(); i++) {
+                WaveformSegment s = segments.get(i);
+                if (s.getFirstTime() >= toTime) {
+                    break;
+                }
+                n += s.read(fromTime, toTime, scratch, handler);
+            }
+            return n;
+        }
+
+        private int floorSegment(long time) {
+            int lo = 0, hi = segments.size() - 1, found = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (segments.get(mid).getFirstTime() <= time) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Deletes segments that hold nothing newer than the cutoff.
+         *
+         * @return number of segments deleted
+         */
+        synchronized int purge(long cutoff) {
+            int n = 0;
+            while (!segments.isEmpty()) {
+                WaveformSegment s = segments.get(0);
+                if (s.isEmpty() || s.getLastTime() >= cutoff) {
+                    break;
+                }
+                segments.remove(0);
+                if (s == head) {
+                    head = null;
+                }
+                if (!s.delete()) {
+                    log.warn("Unable to delete expired segment " + s.getFile());
+                }
+                n++;
+            }
+            return n;
+        }
+
+        synchronized void close() {
+            if (null != head) {
+                head.seal();
+                head = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return key.toString() + " " + segments;
+        }
+    }
+
+    private final File root;
+    private final long retention;
+    private final long segmentSpan;
+    private final Map<Key, Channel> channels = new HashMap<>();
+    private long lastPurge;
+
+    public WaveformArchive(File root) throws IOException {
+        this(root, DEFAULT_RETENTION, DEFAULT_SEGMENT_SPAN);
+    }
+
+    /**
+     * Opens (or creates) an archive, picking up any channels already on disk.
+     *
+     * @param retention how long samples are kept, in milliseconds
+     * @param segmentSpan time span covered by one segment file, in milliseconds;
+     *        this is also the granularity of retention.
+     */
+    public WaveformArchive(File root, long retention, long segmentSpan) throws IOException {
+        if (segmentSpan <= 0L || retention <= 0L) {
+            throw new IllegalArgumentException("retention and segment span must be positive");
+        }
+        this.root = root;
+        this.retention = retention;
+        this.segmentSpan = segmentSpan;
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Unable to create archive directory " + root);
+        }
+        File[] dirs = root.listFiles(File::isDirectory);
+        if (null != dirs) {
+            for (File d : dirs) {
+                Properties p = readProperties(d);
+                Key key = null == p ? null : readKey(d, p);
+                if (null != key) {
+                    Channel c = new Channel(key, d);
+                    c.vendorMetricId = p.getProperty("vendor_metric_id", "");
+                    c.unitId = p.getProperty("unit_id");
+                    c.load();
+                    channels.put(key, c);
+                }
+            }
+        }
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public long getRetention() {
+        return retention;
+    }
+
+    public synchronized Collection<Channel> getChannels() {
+        return new ArrayList<>(channels.values());
+    }
+
+    public synchronized Channel getChannel(Key key) throws IOException {
+        Channel c = channels.get(key);
+        if (null == c) {
+            File d = new File(root, key.toDirectoryName());
+            if (!d.isDirectory() && !d.mkdirs()) {
+                throw new IOException("Unable to create channel directory " + d);
+            }
+            if (!new File(d, CHANNEL_PROPERTIES).exists()) {
+                writeProperties(d, key, "", null);
+            }
+            c = new Channel(key, d);
+            c.load();
+            channels.put(key, c);
+        }
+        return c;
+    }
+
+    /**
+     * Like {@link #getChannel(Key)} but also records the vendor metric and the unit
+     * of the samples with the channel, replacing whatever was recorded before.
+     */
+    public Channel getChannel(Key key, String vendorMetricId, String unitId) throws IOException {
+        Channel c = getChannel(key);
+        c.describe(vendorMetricId, unitId);
+        return c;
+    }
+
+    /**
+     * Appends a block of samples, creating the channel on first use.
+     *
+     * @param startTime time of values[off] in milliseconds since the epoch
+     */
+    public void append(Key key, long startTime, float[] values, int off, int len) throws IOException {
+        append(getChannel(key), startTime, values, off, len);
+    }
+
+    /**
+     * Appends a block of samples, creating the channel on first use and keeping
+     * the vendor metric and unit of the channel up to date.
+     *
+     * @param startTime time of values[off] in milliseconds since the epoch
+     */
+    public void append(Key key, String vendorMetricId, String unitId, long startTime, float[] values, int off, int len) throws IOException {
+        append(getChannel(key, vendorMetricId, unitId), startTime, values, off, len);
+    }
+
+    private void append(Channel c, long startTime, float[] values, int off, int len) throws IOException {
+        c.append(startTime, values, off, len);
+
+        long now = System.currentTimeMillis();
+        boolean sweep;
+        synchronized (this) {
+            sweep = now - lastPurge >= PURGE_INTERVAL;
+            if (sweep) {
+                lastPurge = now;
+            }
+        }
+        if (sweep) {
+            // devices that went away never roll their channel so sweep them from here
+            purge(now);
+        }
+    }
+
+    /**
+     * Deletes every segment whose newest sample is older than now minus the retention period.
+     *
+     * @return number of segments deleted
+     */
+    public int purge(long now) {
+        int n = 0;
+        for (Channel c : getChannels()) {
+            n += c.purge(now - retention);
+        }
+        if (n > 0) {
+            log.info("Purged " + n + " expired waveform segments from " + root);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Channel c : channels.values()) {
+            c.close();
+        }
+    }
+
+    private static long segmentStart(File f) {
+        String n = f.getName();
+        try {
+            return Long.parseLong(n.substring(0, n.length() - WaveformSegment.SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void writeProperties(File dir, Key key, String vendorMetricId, String unitId) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("unique_device_identifier", key.uniqueDeviceIdentifier);
+        p.setProperty("metric_id", key.metricId);
+        p.setProperty("instance_id", Integer.toString(key.instanceId));
+        p.setProperty("frequency", Integer.toString(key.frequency));
+        p.setProperty("vendor_metric_id", vendorMetricId);
+        if (null != unitId) {
+            p.setProperty("unit_id", unitId);
+        }
+        try (OutputStream os = new FileOutputStream(new File(dir, CHANNEL_PROPERTIES))) {
+            p.store(os, "waveform archive channel");
+        }
+    }
+
+    private static Properties readProperties(File dir) {
+        File f = new File(dir, CHANNEL_PROPERTIES);
+        if (!f.isFile()) {
+            return null;
+        }
+        Properties p = new Properties();
+        try (InputStream is = new FileInputStream(f)) {
+            p.load(is);
+            return p;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable channel " + dir, e);
+            return null;
+        }
+    }
+
+    private static Key readKey(File dir, Properties p) {
+        try {
+            return new Key(p.getProperty("unique_device_identifier"), p.getProperty("metric_id"),
+                    Integer.parseInt(p.getProperty("instance_id")), Integer.parseInt(p.getProperty("frequency")));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring unreadable channel " + dir, e);
+            return null;
+        }
+    }
+}
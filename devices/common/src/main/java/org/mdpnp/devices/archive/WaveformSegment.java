@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One file of a {@link WaveformArchive} channel. The file is a fixed size
+ * header, followed by a sparse time index and then the raw float samples.
+ * <pre>
+ *   header   64 bytes    magic, version, frequency, capacity, maxEntries,
+ *                        entryCount, sampleCount, firstTime, lastTime,
+ *                        start of the last run
+ *   index    maxEntries  (startTime:long, offset:int, count:int)
+ *   samples  capacity    float
+ * </pre>
+ * An index entry describes a run of samples that are contiguous at the nominal
+ * frequency so a stream without gaps costs a single entry no matter how it was
+ * chunked by the device. Only the head segment of a channel is mapped for
+ * writing; sealed segments keep their header in memory and are mapped read-only
+ * the first time a range is requested, that mapping then serving every later read.
+ */
+final class WaveformSegment {
+
+    static final String SUFFIX = ".wfa";
+
+    private static final int MAGIC   = 0x57464131; // "WFA1"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE  = 64;
+    private static final int ENTRY_SIZE   = 16;
+
+    private static final int OFF_MAGIC       = 0;
+    private static final int OFF_VERSION     = 4;
+    private static final int OFF_FREQUENCY   = 8;
+    private static final int OFF_CAPACITY    = 12;
+    private static final int OFF_MAX_ENTRIES = 16;
+    private static final int OFF_ENTRY_COUNT = 20;
+    private static final int OFF_SAMPLE_COUNT= 24;
+    private static final int OFF_FIRST_TIME  = 32;
+    private static final int OFF_LAST_TIME   = 40;
+    private static final int OFF_LAST_ENTRY  = 48;
+
+    private final File file;
+    private final int frequency;
+    private final double periodMs;
+    private final int capacity;
+    private final int maxEntries;
+
+    private int entryCount;
+    private int sampleCount;
+    private long firstTime;
+    private long lastTime;
+    private long lastEntryStart = Long.MIN_VALUE;
+
+    // only present while this is the head segment of its channel
+    private MappedByteBuffer mapped;
+    private ByteBuffer header;
+    private FloatBuffer samples;
+    // sealed segments only, mapped by the first read
+    private ByteBuffer readOnlyIndex;
+    private FloatBuffer readOnlySamples;
+
+    private WaveformSegment(File file, int frequency, int capacity, int maxEntries) {
+        this.file = file;
+        this.frequency = frequency;
+        this.periodMs = 1000.0 / frequency;
+        this.capacity = capacity;
+        this.maxEntries = maxEntries;
+    }
+
+    static WaveformSegment create(File file, int frequency, int capacity, int maxEntries) throws IOException {
+        WaveformSegment s = new WaveformSegment(file, frequency, capacity, maxEntries);
+        s.map(FileChannel.MapMode.READ_WRITE);
+        s.header.putInt(OFF_MAGIC, MAGIC);
+        s.header.putInt(OFF_VERSION, VERSION);
+        s.header.putInt(OFF_FREQUENCY, frequency);
+        s.header.putInt(OFF_CAPACITY, capacity);
+        s.header.putInt(OFF_MAX_ENTRIES, maxEntries);
+        s.header.putInt(OFF_ENTRY_COUNT, 0);
+        s.header.putInt(OFF_SAMPLE_COUNT, 0);
+        return s;
+    }
+
+    /**
+     * Reads only the header of an existing segment; the samples stay on disk.
+     */
+    static WaveformSegment open(File file) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel fc = raf.getChannel();
+            while (bb.hasRemaining()) {
+                if (fc.read(bb) < 0) {
+                    throw new IOException("Truncated header in " + file);
+                }
+            }
+        }
+        if (bb.getInt(OFF_MAGIC) != MAGIC || bb.getInt(OFF_VERSION) != VERSION) {
+            throw new IOException("Not a waveform segment " + file);
+        }
+        WaveformSegment s = new WaveformSegment(file, bb.getInt(OFF_FREQUENCY), bb.getInt(OFF_CAPACITY), bb.getInt(OFF_MAX_ENTRIES));
+        s.entryCount = bb.getInt(OFF_ENTRY_COUNT);
+        s.sampleCount = bb.getInt(OFF_SAMPLE_COUNT);
+        s.firstTime = bb.getLong(OFF_FIRST_TIME);
+        s.lastTime = bb.getLong(OFF_LAST_TIME);
+        if (s.entryCount > 0) {
+            s.lastEntryStart = bb.getLong(OFF_LAST_ENTRY);
+        }
+        return s;
+    }
+
+    /**
+     * Re-opens a segment written by an earlier session for further appends.
+     */
+    void reopen() throws IOException {
+        if (null == mapped) {
+            map(FileChannel.MapMode.READ_WRITE);
+            readOnlyIndex = null;
+            readOnlySamples = null;
+        }
+    }
+
+    private long fileSize() {
+        return HEADER_SIZE + (long) maxEntries * ENTRY_SIZE + (long) capacity * 4L;
+    }
+
+    private int samplesOffset() {
+        return HEADER_SIZE + maxEntries * ENTRY_SIZE;
+    }
+
+    private void map(FileChannel.MapMode mode) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, FileChannel.MapMode.READ_ONLY.equals(mode) ? "r" : "rw")) {
+            // the mapping stays valid after the channel is closed
+            mapped = raf.getChannel().map(mode, 0L, fileSize());
+        }
+        header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        samples = samplesView(mapped);
+    }
+
+    private FloatBuffer samplesView(ByteBuffer bb) {
+        ByteBuffer dup = bb.duplicate();
+        dup.position(samplesOffset());
+        return dup.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getFrequency() {
+        return frequency;
+    }
+
+    long getFirstTime() {
+        return firstTime;
+    }
+
+    long getLastTime() {
+        return lastTime;
+    }
+
+    int getSampleCount() {
+        return sampleCount;
+    }
+
+    boolean isEmpty() {
+        return 0 == sampleCount;
+    }
+
+    boolean isFull() {
+        return sampleCount >= capacity || entryCount >= maxEntries;
+    }
+
+    /**
+     * @return start time of the most recent index entry, Long.MIN_VALUE if there is none
+     */
+    long getLastEntryStart() {
+        return lastEntryStart;
+    }
+
+    private static int entryOffset(int n) {
+        return HEADER_SIZE + n * ENTRY_SIZE;
+    }
+
+    private long sampleTime(long start, int n) {
+        return start + Math.round(n * periodMs);
+    }
+
+    /**
+     * Appends as many of the values as fit in this segment.
+     *
+     * @param startTime time of values[off] in milliseconds since the epoch
+     * @return the number of values actually written
+     */
+    int append(long startTime, float[] values, int off, int len) {
+        if (null == mapped) {
+            throw new IllegalStateException("Segment " + file + " is sealed");
+        }
+        int n = Math.min(len, capacity - sampleCount);
+        if (n <= 0) {
+            return 0;
+        }
+
+        boolean extend = false;
+        if (entryCount > 0) {
+            int last = entryOffset(entryCount - 1);
+            long expected = sampleTime(header.getLong(last), header.getInt(last + 12));
+            extend = Math.abs(startTime - expected) <= periodMs / 2.0;
+        }
+        if (!extend && entryCount >= maxEntries) {
+            return 0;
+        }
+
+        FloatBuffer dst = samples.duplicate();
+        dst.position(sampleCount);
+        dst.put(values, off, n);
+
+        if (extend) {
+            int last = entryOffset(entryCount - 1);
+            int count = header.getInt(last + 12) + n;
+            header.putInt(last + 12, count);
+            lastTime = sampleTime(header.getLong(last), count - 1);
+        } else {
+            int e = entryOffset(entryCount);
+            header.putLong(e, startTime);
+            header.putInt(e + 8, sampleCount);
+            header.putInt(e + 12, n);
+            if (0 == entryCount) {
+                firstTime = startTime;
+                header.putLong(OFF_FIRST_TIME, firstTime);
+            }
+            entryCount++;
+            lastEntryStart = startTime;
+            lastTime = sampleTime(startTime, n - 1);
+            header.putLong(OFF_LAST_ENTRY, lastEntryStart);
+            header.putInt(OFF_ENTRY_COUNT, entryCount);
+        }
+        sampleCount += n;
+        header.putLong(OFF_LAST_TIME, lastTime);
+        // sample count last; a reader of a torn file never sees unwritten samples
+        header.putInt(OFF_SAMPLE_COUNT, sampleCount);
+        return n;
+    }
+
+    /**
+     * Flushes the head segment and drops its mapping.
+     */
+    void seal() {
+        if (null != mapped) {
+            mapped.force();
+            mapped = null;
+            header = null;
+            samples = null;
+        }
+    }
+
+    /**
+     * Binary search for the last index entry that starts at or before the time.
+     */
+    private static int floorEntry(ByteBuffer index, int entryCount, long time) {
+        int lo = 0, hi = entryCount - 1, found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getLong(entryOffset(mid)) <= time) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Delivers every sample with fromTime &lt;= time &lt; toTime to the handler,
+     * one call per contiguous run (or per scratch buffer full).
+     *
+     * @return number of samples delivered
+     */
+    int read(long fromTime, long toTime, float[] scratch, WaveformArchive.BlockHandler handler) throws IOException {
+        if (0 == sampleCount || toTime <= firstTime || fromTime > lastTime) {
+            return 0;
+        }
+        ByteBuffer index;
+        FloatBuffer data;
+        if (null != mapped) {
+            index = header;
+            data = samples.duplicate();
+        } else {
+            if (null == readOnlyIndex) {
+                MappedByteBuffer ro;
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                    ro = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, fileSize());
+                }
+                readOnlyIndex = ro.order(ByteOrder.LITTLE_ENDIAN);
+                readOnlySamples = samplesView(ro);
+            }
+            index = readOnlyIndex;
+            data = readOnlySamples.duplicate();
+        }
+
+        int delivered = 0;
+        for (int e = floorEntry(index, entryCount, fromTime); e < entryCount; e++) {
+            int eo = entryOffset(e);
+            long start = index.getLong(eo);
+            if (start >= toTime) {
+                break;
+            }
+            int offset = index.getInt(eo + 8);
+            int count = index.getInt(eo + 12);
+
+            int first = fromTime <= start ? 0 : (int) Math.min(count, (long) Math.ceil((fromTime - start) / periodMs));
+            int end = (int) Math.min(count, (long) Math.ceil((toTime - start) / periodMs));
+            // guard against rounding at the edges of the requested range
+            while (first < end && sampleTime(start, first) < fromTime) {
+                first++;
+            }
+            while (end > first && sampleTime(start, end - 1) >= toTime) {
+                end--;
+            }
+
+            while (first < end) {
+                int n = Math.min(scratch.length, end - first);
+                data.position(offset + first);
+                data.get(scratch, 0, n);
+                handler.block(sampleTime(start, first), frequency, scratch, 0, n);
+                delivered += n;
+                first += n;
+            }
+        }
+        return delivered;
+    }
+
+    boolean delete() {
+        seal();
+        readOnlyIndex = null;
+        readOnlySamples = null;
+        return file.delete();
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + " [" + firstTime + ".." + lastTime + "] " + sampleCount + "/" + capacity + " samples, " + entryCount + " runs";
+    }
+}
@@ -0,0 +1,438 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.history;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.InstanceKeys;
+
+/**
+ * Recent history of every Numeric and SampleArray instance seen by a supervisor,
+ * shared by its applications so that each need not keep its own copy.  Every instance
+ * has a ring of (time, value) pairs held off the Java heap and trimmed to a fixed
+ * duration; numerics and waveforms have durations of their own.  Instances are
+ * identified by their {@link InstanceKeys.Key}, waveforms being the keys with a
+ * frequency.  The history of an instance is kept until it is removed, which the owner
+ * of the store does when the instance or its device goes away; nothing is recorded
+ * for a key that has been released.
+ * <p>
+ * A ring starts small and doubles as needed up to what its duration requires at the
+ * instance's frequency (or at {@link #MAX_NUMERIC_RATE} for numerics), after which the
+ * oldest values are overwritten.  Times are milliseconds, stored as 32 bit offsets from
+ * an origin per ring, and must not go backwards within an instance; values that would
+ * are dropped and counted.
+ */
+public class HistoryStore {
+
+    public static final long DEFAULT_NUMERIC_DURATION = TimeUnit.HOURS.toMillis(1L);
+    public static final long DEFAULT_WAVEFORM_DURATION = TimeUnit.MINUTES.toMillis(2L);
+
+    /**
+     * Upper bound on the rate at which numerics are retained, in Hz
+     */
+    public static final int MAX_NUMERIC_RATE = 16;
+
+    static final int RECORD_BYTES = 8;
+    private static final int INITIAL_CAPACITY = 64;
+
+    public interface Visitor {
+        void sample(long time, float value);
+    }
+
+    public interface BucketVisitor {
+        /**
+         * @param start start time of the bucket
+         * @param count number of values in the bucket, never zero
+         */
+        void bucket(long start, float min, float max, float mean, int count);
+    }
+
+    private final long numericDuration, waveformDuration;
+    private volatile Series[] series = new Series[256];
+
+    public HistoryStore() {
+        this(DEFAULT_NUMERIC_DURATION, DEFAULT_WAVEFORM_DURATION);
+    }
+
+    /**
+     * @param numericDuration milliseconds of numerics to retain
+     * @param waveformDuration milliseconds of waveforms to retain
+     */
+    public HistoryStore(long numericDuration, long waveformDuration) {
+        if (numericDuration <= 0L || waveformDuration <= 0L || numericDuration > Integer.MAX_VALUE / 2 || waveformDuration > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Unsupported duration " + numericDuration + " " + waveformDuration);
+        }
+        this.numericDuration = numericDuration;
+        this.waveformDuration = waveformDuration;
+    }
+
+    public long getNumericDuration() {
+        return numericDuration;
+    }
+
+    public long getWaveformDuration() {
+        return waveformDuration;
+    }
+
+    /**
+     * @return the history of the instance or null if nothing has been recorded for it
+     */
+    public Series get(InstanceKeys.Key key) {
+        Series[] series = this.series;
+        int ordinal = key.getOrdinal();
+        Series s = ordinal < series.length ? series[ordinal] : null;
+        // the ordinal may since have been handed to another key
+        return null != s && s.key == key ? s : null;
+    }
+
+    /**
+     * @return the history of the instance, null if its key has been released
+     */
+    private Series getOrCreate(InstanceKeys.Key key) {
+        Series s = get(key);
+        if (null == s) {
+            synchronized (this) {
+                s = get(key);
+                // checked under the lock so that removeDevice can't miss a series created for a released key
+                if (null == s && !key.isReleased()) {
+                    Series[] series = this.series;
+                    if (key.getOrdinal() >= series.length) {
+                        series = Arrays.copyOf(series, Math.max(key.getOrdinal() + 1, series.length * 2));
+                    }
+                    long maxCapacity;
+                    if (key.getFrequency() > 0) {
+                        maxCapacity = waveformDuration * key.getFrequency() / 1000L + key.getFrequency();
+                        s = new Series(key, waveformDuration, (int) Math.min(Integer.MAX_VALUE / RECORD_BYTES, maxCapacity));
+                    } else {
+                        maxCapacity = numericDuration * MAX_NUMERIC_RATE / 1000L + INITIAL_CAPACITY;
+                        s = new Series(key, numericDuration, (int) Math.min(Integer.MAX_VALUE / RECORD_BYTES, maxCapacity));
+                    }
+                    series[key.getOrdinal()] = s;
+                    this.series = series;
+                }
+            }
+        }
+        return s;
+    }
+
+    public void addNumeric(InstanceKeys.Key key, long time, float value) {
+        Series s = getOrCreate(key);
+        if (null != s) {
+            s.add(time, value);
+        }
+    }
+
+    /**
+     * @param endTime time of the last sample, as for a SampleArray
+     */
+    public void addSamples(InstanceKeys.Key key, long endTime, float[] values, int offset, int length) {
+        if (key.getFrequency() <= 0) {
+            throw new IllegalArgumentException("No frequency for samples of " + key);
+        }
+        Series s = getOrCreate(key);
+        if (null != s) {
+            s.add(endTime, key.getFrequency(), values, offset, length);
+        }
+    }
+
+    /**
+     * Forgets the history of the instance; its off heap buffer is released once collected.
+     *
+     * @return false if there was none
+     */
+    public synchronized boolean remove(InstanceKeys.Key key) {
+        if (null == get(key)) {
+            return false;
+        }
+        Series[] series = this.series;
+        series[key.getOrdinal()] = null;
+        this.series = series;
+        return true;
+    }
+
+    /**
+     * Forgets the history of every instance of the device, including those of keys
+     * already released.
+     *
+     * @return number of instances forgotten
+     */
+    public synchronized int removeDevice(int deviceOrdinal) {
+        Series[] series = this.series;
+        int n = 0;
+        for (int i = 0; i < series.length; i++) {
+            if (null != series[i] && series[i].key.getDeviceOrdinal() == deviceOrdinal) {
+                series[i] = null;
+                n++;
+            }
+        }
+        this.series = series;
+        return n;
+    }
+
+    /**
+     * @return number of instances with a history
+     */
+    public int size() {
+        int n = 0;
+        for (Series s : series) {
+            if (null != s) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return bytes held off heap by all of the rings
+     */
+    public long getMemoryUsed() {
+        long bytes = 0L;
+        for (Series s : series) {
+            if (null != s) {
+                bytes += s.getMemoryUsed();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Forgets everything; the off heap buffers are released once collected.
+     */
+    public synchronized void clear() {
+        series = new Series[256];
+    }
+
+    public static final class Series {
+        private final InstanceKeys.Key key;
+        private final long duration;
+        private final int maxCapacity;
+
+        private ByteBuffer buffer;
+        private int capacity;
+        // physical index of the oldest record and number of records
+        private int head, size;
+        private long origin;
+        private long dropped;
+
+        Series(InstanceKeys.Key key, long duration, int maxCapacity) {
+            this.key = key;
+            this.duration = duration;
+            this.maxCapacity = Math.max(maxCapacity, 1);
+            this.capacity = Math.min(INITIAL_CAPACITY, this.maxCapacity);
+            this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+        }
+
+        public InstanceKeys.Key getKey() {
+            return key;
+        }
+
+        private int physical(int index) {
+            int p = head + index;
+            return p >= capacity ? p - capacity : p;
+        }
+
+        private long timeAt(int index) {
+            return origin + buffer.getInt(physical(index) * RECORD_BYTES);
+        }
+
+        private float valueAt(int index) {
+            return buffer.getFloat(physical(index) * RECORD_BYTES + 4);
+        }
+
+        private void append(long time, float value) {
+            if (size > 0) {
+                long last = timeAt(size - 1);
+                if (time < last) {
+                    dropped++;
+                    return;
+                }
+            } else {
+                origin = time;
+            }
+            // trim to the duration
+            long oldest = time - duration;
+            while (size > 0 && timeAt(0) < oldest) {
+                head = physical(1);
+                size--;
+            }
+            if (size == capacity) {
+                if (capacity < maxCapacity) {
+                    grow();
+                } else {
+                    head = physical(1);
+                    size--;
+                }
+            }
+            if (time - origin > Integer.MAX_VALUE) {
+                rebase(size > 0 ? timeAt(0) : time);
+            }
+            int p = physical(size) * RECORD_BYTES;
+            buffer.putInt(p, (int) (time - origin));
+            buffer.putFloat(p + 4, value);
+            size++;
+        }
+
+        private void grow() {
+            int newCapacity = (int) Math.min(maxCapacity, 2L * capacity);
+            ByteBuffer newBuffer = ByteBuffer.allocateDirect(newCapacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < size; i++) {
+                int p = physical(i) * RECORD_BYTES;
+                newBuffer.putLong(i * RECORD_BYTES, buffer.getLong(p));
+            }
+            buffer = newBuffer;
+            capacity = newCapacity;
+            head = 0;
+        }
+
+        private void rebase(long newOrigin) {
+            int shift = (int) (newOrigin - origin);
+            for (int i = 0; i < size; i++) {
+                int p = physical(i) * RECORD_BYTES;
+                buffer.putInt(p, buffer.getInt(p) - shift);
+            }
+            origin = newOrigin;
+        }
+
+        synchronized void add(long time, float value) {
+            append(time, value);
+        }
+
+        synchronized void add(long endTime, int frequency, float[] values, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                append(endTime - (length - 1 - i) * 1000L / frequency, values[offset + i]);
+            }
+        }
+
+        /**
+         * @return index of the first record at or after time
+         */
+        private int lowerBound(long time) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timeAt(mid) < time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * @return false if there is no history
+         */
+        public synchronized boolean latest(Visitor visitor) {
+            if (0 == size) {
+                return false;
+            }
+            visitor.sample(timeAt(size - 1), valueAt(size - 1));
+            return true;
+        }
+
+        /**
+         * Visits the values from (inclusive) to (exclusive) in time order
+         *
+         * @return number of values visited
+         */
+        public synchronized int range(long from, long to, Visitor visitor) {
+            int n = 0;
+            for (int i = lowerBound(from); i < size; i++) {
+                long t = timeAt(i);
+                if (t >= to) {
+                    break;
+                }
+                visitor.sample(t, valueAt(i));
+                n++;
+            }
+            return n;
+        }
+
+        /**
+         * Summarizes the values from (inclusive) to (exclusive) in buckets of equal
+         * duration; empty buckets are skipped.  Minimum and maximum keep the peaks of a
+         * waveform that is drawn at a lower resolution than it was sampled.
+         *
+         * @return number of values summarized
+         */
+        public synchronized int downsample(long from, long to, int buckets, BucketVisitor visitor) {
+            if (buckets <= 0 || to <= from) {
+                throw new IllegalArgumentException("Cannot divide " + from + " to " + to + " into " + buckets);
+            }
+            double width = (to - from) / (double) buckets;
+            int n = 0;
+            int bucket = -1, count = 0;
+            float min = 0f, max = 0f;
+            double sum = 0.0;
+            for (int i = lowerBound(from); i < size; i++) {
+                long t = timeAt(i);
+                if (t >= to) {
+                    break;
+                }
+                int b = Math.min(buckets - 1, (int) ((t - from) / width));
+                if (b != bucket) {
+                    if (count > 0) {
+                        visitor.bucket(from + (long) Math.ceil(bucket * width), min, max, (float) (sum / count), count);
+                    }
+                    bucket = b;
+                    count = 0;
+                    sum = 0.0;
+                    min = Float.POSITIVE_INFINITY;
+                    max = Float.NEGATIVE_INFINITY;
+                }
+                float v = valueAt(i);
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                sum += v;
+                count++;
+                n++;
+            }
+            if (count > 0) {
+                visitor.bucket(from + (long) Math.ceil(bucket * width), min, max, (float) (sum / count), count);
+            }
+            return n;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        /**
+         * @return time of the oldest value, Long.MIN_VALUE if there is none
+         */
+        public synchronized long getFirstTime() {
+            return 0 == size ? Long.MIN_VALUE : timeAt(0);
+        }
+
+        /**
+         * @return time of the newest value, Long.MIN_VALUE if there is none
+         */
+        public synchronized long getLastTime() {
+            return 0 == size ? Long.MIN_VALUE : timeAt(size - 1);
+        }
+
+        /**
+         * @return values refused for going back in time
+         */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        public synchronized long getMemoryUsed() {
+            return (long) capacity * RECORD_BYTES;
+        }
+    }
+}
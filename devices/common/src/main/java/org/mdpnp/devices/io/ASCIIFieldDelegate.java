@@ -116,6 +116,8 @@ public class ASCIIFieldDelegate implements Runnable {
                     return null;
                 }
             }
+            // setters, filters and fire methods are usually private to the parser
+            method.setAccessible(true);
             return method;
         } catch (Throwable t) {
             return null;
@@ -149,7 +151,6 @@ public class ASCIIFieldDelegate implements Runnable {
                         this.field.setAccessible(true);
                     }
                 } else {
-                    this.method.setAccessible(true);
                     this.field = null;
                 }
             }
@@ -211,7 +212,6 @@ public class ASCIIFieldDelegate implements Runnable {
                 fireMethod = methodIfAvailable(type, name, new Class<?>[] { type }, null);
             }
             if (null != fireMethod) {
-                fireMethod.setAccessible(true);
                 this.fireMethod = fireMethod;
                 return true;
             } else {
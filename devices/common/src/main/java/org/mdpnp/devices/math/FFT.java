@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.math;
+
+/**
+ * In place complex discrete Fourier transform of a fixed length, radix-2 for
+ * powers of two and Bluestein's chirp-z algorithm over a radix-2 transform
+ * otherwise. Transforms are unnormalized. Instances keep their twiddle tables
+ * and are safe to share between threads.
+ */
+final class FFT {
+    private final int n;
+    // radix-2
+    private final double[] cos, sin;
+    private final int[] bitReverse;
+    // Bluestein
+    private final FFT inner;
+    private final double[] chirpRe, chirpIm, kernelRe, kernelIm;
+    private final ThreadLocal<double[][]> scratch;
+
+    FFT(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("length must be positive, not " + n);
+        }
+        this.n = n;
+        if (0 == (n & (n - 1))) {
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int k = 0; k < n / 2; k++) {
+                cos[k] = Math.cos(2.0 * Math.PI * k / n);
+                sin[k] = Math.sin(2.0 * Math.PI * k / n);
+            }
+            bitReverse = new int[n];
+            int bits = Integer.numberOfTrailingZeros(n);
+            for (int i = 0; i < n; i++) {
+                bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+            inner = null;
+            chirpRe = chirpIm = kernelRe = kernelIm = null;
+            scratch = null;
+        } else {
+            cos = sin = null;
+            bitReverse = null;
+            final int m = Integer.highestOneBit(2 * n - 1) << 1;
+            inner = new FFT(m);
+            chirpRe = new double[n];
+            chirpIm = new double[n];
+            for (int k = 0; k < n; k++) {
+                // k^2 mod 2n keeps the angle small and accurate
+                long kk = ((long) k * k) % (2L * n);
+                chirpRe[k] = Math.cos(Math.PI * kk / n);
+                chirpIm[k] = -Math.sin(Math.PI * kk / n);
+            }
+            kernelRe = new double[m];
+            kernelIm = new double[m];
+            kernelRe[0] = chirpRe[0];
+            kernelIm[0] = -chirpIm[0];
+            for (int k = 1; k < n; k++) {
+                kernelRe[k] = kernelRe[m - k] = chirpRe[k];
+                kernelIm[k] = kernelIm[m - k] = -chirpIm[k];
+            }
+            inner.transform(kernelRe, kernelIm, false);
+            scratch = new ThreadLocal<double[][]>() {
+                @Override
+                protected double[][] initialValue() {
+                    return new double[2][m];
+                }
+            };
+        }
+    }
+
+    int length() {
+        return n;
+    }
+
+    /**
+     * @param inverse
+     *            e^(+2&pi;ink/N) instead of e^(-2&pi;ink/N), without the 1/N
+     */
+    void transform(double[] re, double[] im, boolean inverse) {
+        if (null != inner) {
+            bluestein(re, im, inverse);
+        } else {
+            radix2(re, im, inverse);
+        }
+    }
+
+    private void radix2(double[] re, double[] im, boolean inverse) {
+        for (int i = 0; i < n; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >>> 1;
+            int step = n / size;
+            for (int i = 0; i < n; i += size) {
+                for (int j = 0, k = 0; j < half; j++, k += step) {
+                    double wr = cos[k];
+                    double wi = inverse ? sin[k] : -sin[k];
+                    int a = i + j, b = a + half;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    private void bluestein(double[] re, double[] im, boolean inverse) {
+        double[][] s = scratch.get();
+        double[] ar = s[0], ai = s[1];
+        final int m = ar.length;
+        // the inverse is the conjugate of the forward transform of the
+        // conjugate
+        final double sign = inverse ? -1.0 : 1.0;
+        for (int k = 0; k < n; k++) {
+            double xr = re[k], xi = sign * im[k];
+            ar[k] = xr * chirpRe[k] - xi * chirpIm[k];
+            ai[k] = xr * chirpIm[k] + xi * chirpRe[k];
+        }
+        for (int k = n; k < m; k++) {
+            ar[k] = 0.0;
+            ai[k] = 0.0;
+        }
+        inner.transform(ar, ai, false);
+        for (int k = 0; k < m; k++) {
+            double r = ar[k] * kernelRe[k] - ai[k] * kernelIm[k];
+            ai[k] = ar[k] * kernelIm[k] + ai[k] * kernelRe[k];
+            ar[k] = r;
+        }
+        inner.transform(ar, ai, true);
+        final double scale = 1.0 / m;
+        for (int k = 0; k < n; k++) {
+            double cr = ar[k] * scale, ci = ai[k] * scale;
+            re[k] = cr * chirpRe[k] - ci * chirpIm[k];
+            im[k] = sign * (cr * chirpIm[k] + ci * chirpRe[k]);
+        }
+    }
+}
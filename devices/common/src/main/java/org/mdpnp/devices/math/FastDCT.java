@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.math;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * O(N log N) drop in for {@link DCT}. The orthonormal DCT-II and its inverse
+ * (DCT-III) are computed with Makhoul's reordering over a complex FFT of the
+ * same length; any length is supported. Twiddle tables are computed once per
+ * length and shared, see {@link #forLength(int)}.
+ */
+public final class FastDCT {
+
+    private static final ConcurrentMap<Integer, FastDCT> cache = new ConcurrentHashMap<Integer, FastDCT>();
+
+    /**
+     * @return the shared transform for n points
+     */
+    public static FastDCT forLength(int n) {
+        FastDCT dct = cache.get(n);
+        if (null == dct) {
+            dct = new FastDCT(n);
+            FastDCT existing = cache.putIfAbsent(n, dct);
+            if (null != existing) {
+                dct = existing;
+            }
+        }
+        return dct;
+    }
+
+    public static double[] idct(double[] coeffs, double[] results) {
+        return idct(coeffs, 0, coeffs.length, results);
+    }
+
+    public static double[] idct(double[] coeffs, int coff, int clen, double[] results) {
+        if (clen > results.length) {
+            // more coefficients than points isn't an inverse of anything
+            // this class computes; keep the reference behavior
+            return DCT.idct(coeffs, coff, clen, results);
+        }
+        forLength(results.length).idct(coeffs, coff, clen, results, 0);
+        return results;
+    }
+
+    public static double[] dct(double[] d) {
+        return dct(d, null);
+    }
+
+    public static double[] dct(double[] d, double[] r) {
+        if (null == r) {
+            r = new double[d.length];
+        }
+        forLength(d.length).dct(d, 0, r, 0);
+        return r;
+    }
+
+    private final int n;
+    private final FFT fft;
+    // cos and sin of pi*k/2n
+    private final double[] cos, sin;
+    private final double dcScale, acScale;
+    private final ThreadLocal<double[][]> scratch;
+
+    private FastDCT(final int n) {
+        this.n = n;
+        this.fft = new FFT(n);
+        cos = new double[n];
+        sin = new double[n];
+        for (int k = 0; k < n; k++) {
+            cos[k] = Math.cos(Math.PI * k / (2.0 * n));
+            sin[k] = Math.sin(Math.PI * k / (2.0 * n));
+        }
+        dcScale = Math.sqrt(1.0 / n);
+        acScale = Math.sqrt(2.0 / n);
+        scratch = new ThreadLocal<double[][]>() {
+            @Override
+            protected double[][] initialValue() {
+                return new double[2][n];
+            }
+        };
+    }
+
+    public int getLength() {
+        return n;
+    }
+
+    /**
+     * Orthonormal DCT-II of n values, as {@link DCT#dct(double[], double[])}
+     */
+    public void dct(double[] d, int off, double[] r, int roff) {
+        double[][] s = scratch.get();
+        double[] re = s[0], im = s[1];
+        // even samples ascending then odd samples descending
+        for (int i = 0, half = (n + 1) / 2; i < half; i++) {
+            re[i] = d[off + 2 * i];
+        }
+        for (int i = 0, half = n / 2; i < half; i++) {
+            re[n - 1 - i] = d[off + 2 * i + 1];
+        }
+        Arrays.fill(im, 0.0);
+        fft.transform(re, im, false);
+        r[roff] = re[0] * dcScale;
+        for (int k = 1; k < n; k++) {
+            r[roff + k] = (re[k] * cos[k] + im[k] * sin[k]) * acScale;
+        }
+    }
+
+    /**
+     * Inverse of {@link #dct(double[], int, double[], int)} (DCT-III) from the
+     * first clen coefficients, the rest taken as zero. Writes n results, as
+     * {@link DCT#idct(double[], int, int, double[], int, int)} with rlen n.
+     */
+    public void idct(double[] coeffs, int coff, int clen, double[] r, int roff) {
+        if (clen > n) {
+            throw new IllegalArgumentException(clen + " coefficients for " + n + " points");
+        }
+        double[][] s = scratch.get();
+        double[] re = s[0], im = s[1];
+        for (int k = 0; k < n; k++) {
+            double a = k < clen ? coeffs[coff + k] : 0.0;
+            if (0 == k) {
+                a *= Math.sqrt(2.0);
+            }
+            // X(n-k) with X(n) == 0
+            double b = k > 0 && n - k < clen ? -coeffs[coff + n - k] : 0.0;
+            re[k] = a * cos[k] - b * sin[k];
+            im[k] = a * sin[k] + b * cos[k];
+        }
+        fft.transform(re, im, true);
+        final double scale = acScale * 0.5;
+        for (int i = 0, half = (n + 1) / 2; i < half; i++) {
+            r[roff + 2 * i] = re[i] * scale;
+        }
+        for (int i = 0, half = n / 2; i < half; i++) {
+            r[roff + 2 * i + 1] = re[n - 1 - i] * scale;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publication metrics of every device seen by a supervisor, one {@link StreamMetrics}
+ * per device and topic.  Lookups on the sample path allocate nothing once a stream
+ * exists.
+ */
+public class DataMetrics {
+
+    // topic -> unique_device_identifier -> metrics
+    private final Map<String, Map<String, StreamMetrics>> streams = new ConcurrentHashMap<>();
+
+    public StreamMetrics get(String uniqueDeviceIdentifier, String topic) {
+        Map<String, StreamMetrics> byDevice = streams.get(topic);
+        if (null == byDevice) {
+            byDevice = streams.computeIfAbsent(topic, (t) -> new ConcurrentHashMap<>());
+        }
+        StreamMetrics m = byDevice.get(uniqueDeviceIdentifier);
+        if (null == m) {
+            m = byDevice.computeIfAbsent(uniqueDeviceIdentifier, (udi) -> new StreamMetrics(udi, topic));
+        }
+        return m;
+    }
+
+    /**
+     * @return the stream, null if nothing was recorded for it
+     */
+    public StreamMetrics find(String uniqueDeviceIdentifier, String topic) {
+        Map<String, StreamMetrics> byDevice = streams.get(topic);
+        return null == byDevice ? null : byDevice.get(uniqueDeviceIdentifier);
+    }
+
+    public List<StreamMetrics> getStreams() {
+        List<StreamMetrics> list = new ArrayList<>();
+        streams.values().forEach((byDevice) -> list.addAll(byDevice.values()));
+        list.sort((a, b) -> {
+            int c = a.getUniqueDeviceIdentifier().compareTo(b.getUniqueDeviceIdentifier());
+            return 0 != c ? c : a.getTopic().compareTo(b.getTopic());
+        });
+        return list;
+    }
+
+    /**
+     * Forgets every stream of a device, e.g. when it is no longer alive
+     */
+    public void remove(String uniqueDeviceIdentifier) {
+        streams.values().forEach((byDevice) -> byDevice.remove(uniqueDeviceIdentifier));
+    }
+
+    public void reset() {
+        streams.values().forEach((byDevice) -> byDevice.values().forEach(StreamMetrics::reset));
+    }
+
+    public void clear() {
+        streams.clear();
+    }
+
+    /**
+     * One line per stream: rate, then transport and device lag as median / 99th
+     * percentile / max in milliseconds
+     *
+     * @param now nanoseconds since the epoch
+     */
+    public String[] report(long now) {
+        List<StreamMetrics> list = getStreams();
+        String[] lines = new String[list.size()];
+        for (int i = 0; i < lines.length; i++) {
+            StreamMetrics m = list.get(i);
+            LatencyHistogram transport = m.getTransport();
+            LatencyHistogram lag = m.getDeviceLag();
+            lines[i] = String.format("%s %s %.1f/s transport %s device %s", m.getUniqueDeviceIdentifier(), m.getTopic(), m.getRate(now),
+                    summary(transport), summary(lag));
+        }
+        return lines;
+    }
+
+    static String summary(LatencyHistogram h) {
+        if (0L == h.getCount()) {
+            return "-";
+        }
+        return String.format("%.1f/%.1f/%.1fms", h.getValueAtPercentile(50.0) / 1e6, h.getValueAtPercentile(99.0) / 1e6, h.getMax() / 1e6);
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of latencies in the manner of an HdrHistogram: buckets are linear within
+ * each power of two, so that every recorded value is known to within a fixed relative
+ * precision (here 1 part in 32) across the whole range while the histogram stays a
+ * small, fixed size.  Latencies are given in nanoseconds and kept in microseconds up to
+ * {@link #MAX_VALUE}, about 71 minutes; longer latencies are counted against the top
+ * bucket.  Negative latencies, which only arise from uncorrected clock skew, are counted
+ * as zero and also separately.
+ * <p>
+ * Not thread safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+    private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+    /**
+     * Largest distinguishable latency, in microseconds
+     */
+    public static final long MAX_VALUE = (1L << 32) - 1L;
+
+    private final int[] counts = new int[index(MAX_VALUE) + 1];
+    private long count, negativeCount, sum;
+    private long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+
+    static int index(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros | SUB_BUCKET_MASK) - SUB_BUCKET_BITS;
+        return (bucket << SUB_BUCKET_HALF_BITS) + (int) (micros >>> bucket);
+    }
+
+    /**
+     * @return the largest value in microseconds that falls into the bucket at index
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = (index >> SUB_BUCKET_HALF_BITS) - 1;
+        long sub = (index & ((1 << SUB_BUCKET_HALF_BITS) - 1)) + (1 << SUB_BUCKET_HALF_BITS);
+        return ((sub + 1L) << bucket) - 1L;
+    }
+
+    /**
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < min) {
+            min = nanos;
+        }
+        if (nanos > max) {
+            max = nanos;
+        }
+        long micros = nanos / 1000L;
+        if (micros < 0L) {
+            negativeCount++;
+            micros = 0L;
+        } else if (micros > MAX_VALUE) {
+            micros = MAX_VALUE;
+        }
+        counts[index(micros)]++;
+        sum += micros;
+        count++;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        negativeCount += other.negativeCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = negativeCount = sum = 0L;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getNegativeCount() {
+        return negativeCount;
+    }
+
+    /**
+     * @return smallest recorded latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMin() {
+        return 0L == count ? 0L : min;
+    }
+
+    /**
+     * @return largest recorded latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return 0L == count ? 0L : max;
+    }
+
+    /**
+     * @return mean latency in nanoseconds, negative latencies counting as zero
+     */
+    public double getMean() {
+        return 0L == count ? 0.0 : 1000.0 * sum / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return latency in nanoseconds at or below which the given percentage of recorded
+     *         latencies fall, to within the precision of the histogram
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (0L == count) {
+            return 0L;
+        }
+        long target = Math.max(1L, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * count));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(max, 1000L * highestEquivalentValue(i) + 999L);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Receive rate and latencies of one device's samples on one topic.  The rate is the
+ * mean over the last {@link #RATE_WINDOW} whole seconds of reception time.  Two latencies
+ * are kept: transport, from the writer's source timestamp to reception, and device lag,
+ * from the device's own timestamp for the sample to reception.  Both are expected to be
+ * corrected for the skew of the remote clock by the caller.
+ */
+public class StreamMetrics {
+
+    /**
+     * Seconds over which the receive rate is averaged
+     */
+    public static final int RATE_WINDOW = 10;
+
+    private final String uniqueDeviceIdentifier;
+    private final String topic;
+
+    private final LatencyHistogram transport = new LatencyHistogram();
+    private final LatencyHistogram deviceLag = new LatencyHistogram();
+
+    // samples received in each of the last RATE_WINDOW seconds and in the current one
+    private final int[] perSecond = new int[RATE_WINDOW + 1];
+    private long second = -1L, firstSecond = -1L;
+    private long count, lastReceived;
+
+    public StreamMetrics(String uniqueDeviceIdentifier, String topic) {
+        this.uniqueDeviceIdentifier = uniqueDeviceIdentifier;
+        this.topic = topic;
+    }
+
+    public String getUniqueDeviceIdentifier() {
+        return uniqueDeviceIdentifier;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @param received reception time in nanoseconds since the epoch
+     * @param transportLatency nanoseconds from source timestamp to reception
+     */
+    public synchronized void record(long received, long transportLatency) {
+        count(received);
+        transport.record(transportLatency);
+    }
+
+    /**
+     * @param received reception time in nanoseconds since the epoch
+     * @param transportLatency nanoseconds from source timestamp to reception
+     * @param deviceLag nanoseconds from device time to reception
+     */
+    public synchronized void record(long received, long transportLatency, long deviceLag) {
+        count(received);
+        transport.record(transportLatency);
+        this.deviceLag.record(deviceLag);
+    }
+
+    private void count(long received) {
+        advance(received / 1000000000L);
+        perSecond[(int) (second % perSecond.length)]++;
+        if (received > lastReceived) {
+            lastReceived = received;
+        }
+        count++;
+    }
+
+    private void advance(long now) {
+        if (second < 0L) {
+            second = firstSecond = now;
+        } else if (now > second) {
+            if (now - second >= perSecond.length) {
+                Arrays.fill(perSecond, 0);
+            } else {
+                for (long s = second + 1L; s <= now; s++) {
+                    perSecond[(int) (s % perSecond.length)] = 0;
+                }
+            }
+            second = now;
+        }
+    }
+
+    /**
+     * @param now nanoseconds since the epoch
+     * @return samples per second received over the last {@link #RATE_WINDOW} whole
+     *         seconds, or over as many of them as there have been
+     */
+    public synchronized double getRate(long now) {
+        if (second < 0L) {
+            return 0.0;
+        }
+        advance(now / 1000000000L);
+        int seconds = (int) Math.min(RATE_WINDOW, second - firstSecond);
+        if (seconds <= 0) {
+            return 0.0;
+        }
+        long n = 0L;
+        for (int i = 1; i <= seconds; i++) {
+            n += perSecond[(int) ((second - i) % perSecond.length)];
+        }
+        return (double) n / seconds;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return reception time of the latest sample in nanoseconds since the epoch
+     */
+    public synchronized long getLastReceived() {
+        return lastReceived;
+    }
+
+    /**
+     * @return a copy of the transport latencies
+     */
+    public synchronized LatencyHistogram getTransport() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.add(transport);
+        return h;
+    }
+
+    /**
+     * @return a copy of the device lags
+     */
+    public synchronized LatencyHistogram getDeviceLag() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.add(deviceLag);
+        return h;
+    }
+
+    public synchronized void reset() {
+        transport.reset();
+        deviceLag.reset();
+        Arrays.fill(perSecond, 0);
+        second = firstSecond = -1L;
+        count = lastReceived = 0L;
+    }
+
+    @Override
+    public String toString() {
+        return uniqueDeviceIdentifier + " " + topic;
+    }
+}
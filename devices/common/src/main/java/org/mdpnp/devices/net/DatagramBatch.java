@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * A fixed set of reusable receive buffers into which all datagrams pending on a
+ * channel are drained in one go, so a readiness event costs one wakeup for as
+ * many datagrams as have arrived (up to the batch size) rather than one each.
+ * <p>
+ * Not thread safe; a {@link NetworkLoop} hands out a single batch to be used
+ * from its own thread while a connection handles a readiness event.
+ */
+public class DatagramBatch {
+    /**
+     * Bounds the datagrams taken from one channel per wakeup so that a busy
+     * peer does not starve the other channels on the same selector
+     */
+    public static final int DEFAULT_SIZE = 16;
+
+    private final ByteBuffer[] buffers;
+    private final SocketAddress[] addresses;
+    private final int bufferSize;
+    private int count;
+
+    public DatagramBatch(int bufferSize) {
+        this(DEFAULT_SIZE, bufferSize);
+    }
+
+    public DatagramBatch(int size, int bufferSize) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive, not " + size);
+        }
+        this.buffers = new ByteBuffer[size];
+        this.addresses = new SocketAddress[size];
+        this.bufferSize = bufferSize;
+        for (int i = 0; i < size; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(bufferSize);
+            buffers[i].order(ByteOrder.BIG_ENDIAN);
+        }
+    }
+
+    /**
+     * Receives datagrams from a non-blocking channel until none is pending or
+     * the batch is full. Buffers from the previous call are overwritten.
+     *
+     * @return the number of datagrams received, each flipped and ready to read
+     */
+    public int receive(DatagramChannel channel) throws IOException {
+        count = 0;
+        while (count < buffers.length) {
+            ByteBuffer bb = buffers[count];
+            bb.clear();
+            SocketAddress sockaddr = channel.receive(bb);
+            if (null == sockaddr) {
+                break;
+            }
+            bb.flip();
+            addresses[count++] = sockaddr;
+        }
+        for (int i = count; i < addresses.length && null != addresses[i]; i++) {
+            addresses[i] = null;
+        }
+        return count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public ByteBuffer getBuffer(int i) {
+        if (i >= count) {
+            throw new IndexOutOfBoundsException(i + " >= " + count);
+        }
+        return buffers[i];
+    }
+
+    public SocketAddress getAddress(int i) {
+        if (i >= count) {
+            throw new IndexOutOfBoundsException(i + " >= " + count);
+        }
+        return addresses[i];
+    }
+
+    public int getSize() {
+        return buffers.length;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -63,7 +63,7 @@ public class NetworkLoop implements Runnable {
     private final TaskQueue taskQueue = new TaskQueue();
     private LoopState loopState = LoopState.New;
 
-    private Thread myThread;
+    private volatile Thread myThread;
 
     private static final Logger log = LoggerFactory.getLogger(NetworkLoop.class);
 
@@ -341,6 +341,8 @@ public class NetworkLoop implements Runnable {
                     // }
                     // }
                 }
+                // otherwise keys stay selected and are read again on every pass
+                keys.clear();
             }
         } catch(Throwable t) {
             log.error("NetworkLoop.runLoop exiting on uncaught Throwable; this should not happen", t);
@@ -378,6 +380,23 @@ public class NetworkLoop implements Runnable {
         select.wakeup();
     }
 
+    /**
+     * Waits for another thread to enter runLoop
+     *
+     * @return false if runLoop had not been entered before the timeout elapsed
+     */
+    public synchronized boolean awaitRunLoop(long timeout) throws InterruptedException {
+        long giveup = System.currentTimeMillis() + timeout;
+        while (LoopState.New.equals(loopState)) {
+            long now = System.currentTimeMillis();
+            if (now >= giveup) {
+                return false;
+            }
+            this.wait(giveup - now);
+        }
+        return true;
+    }
+
     public void cancelThreadAndWait() {
         cancelThread();
         synchronized (this) {
@@ -405,6 +424,30 @@ public class NetworkLoop implements Runnable {
         select.wakeup();
     }
 
+    /**
+     * @return true when called from the thread running this loop
+     */
+    public boolean isLoopThread() {
+        return Thread.currentThread().equals(myThread);
+    }
+
+    private DatagramBatch datagramBatch;
+
+    /**
+     * Receive buffers shared by all connections on this loop. Only to be used
+     * from within {@link NetworkConnection#read(SelectionKey)}, and the
+     * contents are only valid until that call returns.
+     *
+     * @param bufferSize
+     *            the largest datagram the caller expects
+     */
+    public DatagramBatch getDatagramBatch(int bufferSize) {
+        if (null == datagramBatch || datagramBatch.getBufferSize() < bufferSize) {
+            datagramBatch = new DatagramBatch(bufferSize);
+        }
+        return datagramBatch;
+    }
+
     @Override
     public void run() {
         runLoop();
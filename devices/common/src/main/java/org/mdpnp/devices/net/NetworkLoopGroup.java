@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads connections over several {@link NetworkLoop}s, each running its own
+ * selector thread and task queue. A connection is bound to one loop (the one
+ * with the fewest connections at the time) from its first registration until
+ * its last channel is unregistered, so all of its reads, writes and tasks stay
+ * on one thread.
+ */
+public class NetworkLoopGroup {
+    private static final Logger log = LoggerFactory.getLogger(NetworkLoopGroup.class);
+
+    private static final class Affinity {
+        private final int shard;
+        private int keys;
+
+        Affinity(int shard) {
+            this.shard = shard;
+        }
+    }
+
+    private final NetworkLoop[] loops;
+    private final Thread[] threads;
+    private final int[] connections;
+    private final Map<NetworkConnection, Affinity> affinity = new HashMap<NetworkConnection, Affinity>();
+    private final ThreadGroup threadGroup;
+    private final String name;
+    private boolean started;
+
+    public NetworkLoopGroup(int shards) throws IOException {
+        this(null, "NetworkLoop", shards);
+    }
+
+    public NetworkLoopGroup(ThreadGroup threadGroup, String name, int shards) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive, not " + shards);
+        }
+        this.threadGroup = threadGroup;
+        this.name = name;
+        loops = new NetworkLoop[shards];
+        threads = new Thread[shards];
+        connections = new int[shards];
+        for (int i = 0; i < shards; i++) {
+            loops[i] = new NetworkLoop();
+        }
+    }
+
+    /**
+     * Starts one daemon thread per loop
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("NetworkLoopGroup already started");
+        }
+        started = true;
+        for (int i = 0; i < loops.length; i++) {
+            final NetworkLoop loop = loops[i];
+            threads[i] = new Thread(threadGroup, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loop.runLoop();
+                    } finally {
+                        log.info("NetworkLoop.runLoop ended");
+                    }
+                }
+            }, name + "-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        for (NetworkLoop loop : loops) {
+            try {
+                if (!loop.awaitRunLoop(5000L)) {
+                    throw new IllegalStateException("RunLoop not started after five seconds");
+                }
+            } catch (InterruptedException e) {
+                log.error("Interrupted", e);
+            }
+        }
+    }
+
+    private int leastLoaded() {
+        int shard = 0;
+        for (int i = 1; i < connections.length; i++) {
+            if (connections[i] < connections[shard]) {
+                shard = i;
+            }
+        }
+        return shard;
+    }
+
+    private Affinity affinity(NetworkConnection conn) {
+        Affinity a = affinity.get(conn);
+        if (null == a) {
+            int shard = leastLoaded();
+            a = new Affinity(shard);
+            affinity.put(conn, a);
+            connections[shard]++;
+        }
+        return a;
+    }
+
+    private synchronized void release(NetworkConnection conn) {
+        Affinity a = affinity.get(conn);
+        if (null != a && --a.keys <= 0) {
+            affinity.remove(conn);
+            connections[a.shard]--;
+        }
+    }
+
+    /**
+     * @return the loop that services the specified connection, or the loop it
+     *         would be bound to next if it has none; only a registration or
+     *         {@link #bind(NetworkConnection)} binds it
+     */
+    public synchronized NetworkLoop loopFor(NetworkConnection conn) {
+        Affinity a = affinity.get(conn);
+        return loops[null == a ? leastLoaded() : a.shard];
+    }
+
+    /**
+     * Holds the specified connection on its loop until
+     * {@link #unbind(NetworkConnection)}, whether or not it has channels
+     * registered. For a connection that reconnects and also schedules its own
+     * tasks on the loop, which must not move to another loop in between.
+     *
+     * @return the loop that services the connection
+     */
+    public synchronized NetworkLoop bind(NetworkConnection conn) {
+        Affinity a = affinity(conn);
+        a.keys++;
+        return loops[a.shard];
+    }
+
+    /**
+     * Releases the hold taken by {@link #bind(NetworkConnection)}
+     */
+    public void unbind(NetworkConnection conn) {
+        release(conn);
+    }
+
+    public SelectionKey register(NetworkConnection conn, SelectableChannel channel) throws ClosedChannelException {
+        NetworkLoop loop;
+        synchronized (this) {
+            Affinity a = affinity(conn);
+            a.keys++;
+            loop = loops[a.shard];
+        }
+        boolean registered = false;
+        try {
+            SelectionKey key = loop.register(conn, channel);
+            registered = true;
+            return key;
+        } finally {
+            if (!registered) {
+                release(conn);
+            }
+        }
+    }
+
+    public void unregister(SelectionKey key, NetworkConnection conn) {
+        NetworkLoop loop;
+        synchronized (this) {
+            Affinity a = affinity.get(conn);
+            if (null == a) {
+                throw new IllegalArgumentException("Connection is not registered with this group: " + conn);
+            }
+            loop = loops[a.shard];
+        }
+        try {
+            loop.unregister(key, conn);
+        } finally {
+            release(conn);
+        }
+    }
+
+    /**
+     * Schedules a task on the loop of the specified connection
+     */
+    public void add(NetworkConnection conn, TaskQueue.Task<?> task) {
+        loopFor(conn).add(task);
+    }
+
+    public int getShardCount() {
+        return loops.length;
+    }
+
+    public NetworkLoop getLoop(int shard) {
+        return loops[shard];
+    }
+
+    public synchronized int getConnectionCount(int shard) {
+        return connections[shard];
+    }
+
+    public void cancelThreadAndWait() {
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+        }
+        for (NetworkLoop loop : loops) {
+            loop.clearTasks();
+            loop.cancelThread();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                log.error("Interrupted", e);
+            }
+        }
+    }
+}
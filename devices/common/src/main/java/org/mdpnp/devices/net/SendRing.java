@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.net;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of outgoing datagrams with any number of producers and a
+ * single consumer, normally the {@link NetworkLoop} thread servicing the
+ * connection. Producers encode straight into a preallocated slot and never
+ * block each other beyond a compare-and-set on the tail; nothing is allocated
+ * per message.
+ * <p>
+ * A producer {@link #claim()}s a slot, fills {@link #getBuffer(long)} and then
+ * either {@link #publish(long)}es or {@link #cancel(long)}s it. The consumer
+ * takes slots in claim order with {@link #peek()} and {@link #remove()}.
+ */
+public class SendRing {
+    private final ByteBuffer[] slots;
+    /**
+     * For each slot the claim that may take it next (free), or that claim plus
+     * one once it has been published
+     */
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    private final int mask;
+    private long head;
+
+    /**
+     * @param capacity
+     *            number of slots, rounded up to a power of two
+     * @param slotSize
+     *            the largest datagram that can be queued
+     */
+    public SendRing(int capacity, int slotSize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, not " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        slots = new ByteBuffer[size];
+        sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = ByteBuffer.allocateDirect(slotSize);
+            slots[i].order(ByteOrder.BIG_ENDIAN);
+            sequence.set(i, i);
+        }
+    }
+
+    /**
+     * @return a claim on an empty slot or -1 if all slots are waiting to be
+     *         sent
+     */
+    public long claim() {
+        while (true) {
+            long t = tail.get();
+            long seq = sequence.get((int) t & mask);
+            if (seq < t) {
+                return -1L;
+            } else if (seq == t && tail.compareAndSet(t, t + 1)) {
+                ByteBuffer bb = slots[(int) t & mask];
+                bb.clear();
+                return t;
+            }
+        }
+    }
+
+    public ByteBuffer getBuffer(long claim) {
+        return slots[(int) claim & mask];
+    }
+
+    /**
+     * Hands the slot to the consumer, everything from the start of the buffer
+     * up to its position is sent
+     */
+    public void publish(long claim) {
+        slots[(int) claim & mask].flip();
+        sequence.set((int) claim & mask, claim + 1);
+    }
+
+    /**
+     * Gives up a claim, the consumer skips the slot
+     */
+    public void cancel(long claim) {
+        ByteBuffer bb = slots[(int) claim & mask];
+        bb.clear();
+        bb.limit(0);
+        sequence.set((int) claim & mask, claim + 1);
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return the oldest published datagram or null if there is none (or the
+     *         oldest claim is still being filled)
+     */
+    public ByteBuffer peek() {
+        int i = (int) head & mask;
+        return sequence.get(i) == head + 1 ? slots[i] : null;
+    }
+
+    /**
+     * Consumer only, frees the slot returned by {@link #peek()}
+     */
+    public void remove() {
+        int i = (int) head & mask;
+        if (sequence.get(i) != head + 1) {
+            throw new IllegalStateException("Nothing to remove");
+        }
+        sequence.set(i, head + slots.length);
+        head++;
+    }
+
+    /**
+     * Consumer only
+     */
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+}
@@ -13,6 +13,7 @@
 package org.mdpnp.devices.net;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -175,6 +176,24 @@ public class TaskQueue {
         queue.add(task);
     }
 
+    /**
+     * Removes a task that has not yet come due. A recurrent task that is
+     * running at the time adds itself back unless its interval is cleared
+     * first.
+     *
+     * @return true if the task was queued
+     */
+    public synchronized boolean remove(Task<?> task) {
+        // by identity; the ordering of tasks due at the same time is arbitrary
+        for (Iterator<Task<?>> itr = queue.iterator(); itr.hasNext();) {
+            if (itr.next() == task) {
+                itr.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
     public synchronized void clear() {
         queue.clear();
     }
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mdpnp.devices.archive.WaveformArchive;
+
+/**
+ * Replays the waveforms held in a {@link WaveformArchive}. The archive keeps
+ * contiguous runs of samples rather than the arrays as they were published so
+ * the runs are cut back into blocks of a fixed duration; a block never spans
+ * a gap in the recording. Channels are read a window at a time so memory use
+ * does not depend on the length of the recording.
+ *
+ */
+public class ArchiveReplaySource implements ReplaySource {
+    public static final long DEFAULT_BLOCK_MILLIS = 250L;
+    private static final long WINDOW = 10000L;
+
+    private final MergedReplaySource merged;
+
+    public ArchiveReplaySource(WaveformArchive archive) {
+        this(archive, Long.MIN_VALUE, Long.MAX_VALUE, DEFAULT_BLOCK_MILLIS);
+    }
+
+    /**
+     * @param fromTime
+     *            first sample time to replay (inclusive)
+     * @param toTime
+     *            last sample time to replay (exclusive)
+     * @param blockMillis
+     *            duration of each replayed sample array
+     */
+    public ArchiveReplaySource(WaveformArchive archive, long fromTime, long toTime, long blockMillis) {
+        if (blockMillis <= 0L) {
+            throw new IllegalArgumentException("blockMillis must be positive: " + blockMillis);
+        }
+        List<ReplaySource> cursors = new ArrayList<ReplaySource>();
+        for (WaveformArchive.Channel c : archive.getChannels()) {
+            if (c.getSegmentCount() > 0 && c.getFirstTime() < toTime && c.getLastTime() >= fromTime) {
+                cursors.add(new Cursor(c, Math.max(fromTime, c.getFirstTime()), Math.min(toTime, c.getLastTime() + 1L), blockMillis));
+            }
+        }
+        merged = new MergedReplaySource(cursors.toArray(new ReplaySource[cursors.size()]));
+    }
+
+    @Override
+    public ReplayRecord next() throws IOException {
+        return merged.next();
+    }
+
+    @Override
+    public void close() throws IOException {
+        merged.close();
+    }
+
+    private static final class Cursor implements ReplaySource, WaveformArchive.BlockHandler {
+        private final WaveformArchive.Channel channel;
+        private final WaveformArchive.Key key;
+        private final double periodMs;
+        private final double tolerance;
+        private final long end;
+        private final float[] scratch = new float[4096];
+        private final float[] pending;
+        private final ArrayDeque<ReplayRecord> ready = new ArrayDeque<ReplayRecord>();
+        private int pendingCount;
+        private long pendingStart;
+        private long position;
+
+        Cursor(WaveformArchive.Channel channel, long fromTime, long toTime, long blockMillis) {
+            this.channel = channel;
+            this.key = channel.getKey();
+            this.periodMs = 1000.0 / key.getFrequency();
+            this.tolerance = Math.max(1.0, periodMs / 2.0);
+            this.position = fromTime;
+            this.end = toTime;
+            this.pending = new float[(int) Math.max(1L, blockMillis * key.getFrequency() / 1000L)];
+        }
+
+        @Override
+        public ReplayRecord next() throws IOException {
+            while (ready.isEmpty() && position < end) {
+                long to = end - position > WINDOW ? position + WINDOW : end;
+                channel.read(position, to, scratch, this);
+                position = to;
+            }
+            if (ready.isEmpty() && pendingCount > 0) {
+                flush();
+            }
+            return ready.poll();
+        }
+
+        @Override
+        public void block(long startTime, int frequency, float[] values, int offset, int length) {
+            if (pendingCount > 0 && Math.abs(startTime - expectedTime()) > tolerance) {
+                flush();
+            }
+            int i = 0;
+            while (i < length) {
+                if (0 == pendingCount) {
+                    pendingStart = startTime + Math.round(i * periodMs);
+                }
+                int n = Math.min(pending.length - pendingCount, length - i);
+                System.arraycopy(values, offset + i, pending, pendingCount, n);
+                pendingCount += n;
+                i += n;
+                if (pendingCount == pending.length) {
+                    flush();
+                }
+            }
+        }
+
+        private long expectedTime() {
+            return pendingStart + Math.round(pendingCount * periodMs);
+        }
+
+        private void flush() {
+            ready.add(new ReplayRecord(key.getUniqueDeviceIdentifier(), key.getMetricId(), channel.getVendorMetricId(), key.getInstanceId(),
+                    channel.getUnitId(), key.getFrequency(), expectedTime(), Arrays.copyOf(pending, pendingCount)));
+            pendingCount = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
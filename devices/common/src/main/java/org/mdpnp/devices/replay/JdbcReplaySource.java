@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Reads numerics back out of the VITAL_VALUES table written by the data
+ * recorder's JDBC persister. The persister also writes one row per waveform
+ * sample, marked with the FREQUENCY of the waveform; those rows are skipped
+ * and waveforms are replayed from a full-disclosure archive instead (see
+ * {@link ArchiveReplaySource}). Tables written before the vendor metric and
+ * unit columns were added are still read; their rows replay without a unit.
+ * Tables without the FREQUENCY column cannot tell the two apart and every
+ * row is replayed as a numeric.
+ *
+ */
+public class JdbcReplaySource implements ReplaySource {
+    static final String SELECT = "SELECT DEVICE_ID, METRIC_ID, INSTANCE_ID, TIME_TICK, VITAL_VALUE, VENDOR_METRIC_ID, UNIT_ID FROM VITAL_VALUES";
+    static final String SELECT_WITHOUT_UNITS = "SELECT DEVICE_ID, METRIC_ID, INSTANCE_ID, TIME_TICK, VITAL_VALUE FROM VITAL_VALUES";
+    static final String NUMERICS = "FREQUENCY IS NULL";
+
+    private final PreparedStatement statement;
+    private final boolean units;
+    private ResultSet resultSet;
+
+    /**
+     * Replays everything in the table.
+     */
+    public JdbcReplaySource(Connection conn) throws SQLException {
+        units = hasColumns(conn, SELECT);
+        statement = conn.prepareStatement((units ? SELECT : SELECT_WITHOUT_UNITS) + (hasFrequency(conn) ? " WHERE " + NUMERICS : "")
+                + " ORDER BY TIME_TICK");
+        statement.setFetchSize(1000);
+    }
+
+    /**
+     * Replays rows with fromTime &lt;= TIME_TICK &lt; toTime.
+     */
+    public JdbcReplaySource(Connection conn, long fromTime, long toTime) throws SQLException {
+        units = hasColumns(conn, SELECT);
+        statement = conn.prepareStatement((units ? SELECT : SELECT_WITHOUT_UNITS) + " WHERE TIME_TICK >= ? AND TIME_TICK < ?"
+                + (hasFrequency(conn) ? " AND " + NUMERICS : "") + " ORDER BY TIME_TICK");
+        statement.setFetchSize(1000);
+        statement.setTimestamp(1, new Timestamp(fromTime));
+        statement.setTimestamp(2, new Timestamp(toTime));
+    }
+
+    @Override
+    public ReplayRecord next() throws IOException {
+        try {
+            if (null == resultSet) {
+                resultSet = statement.executeQuery();
+            }
+            if (!resultSet.next()) {
+                return null;
+            }
+            if (units) {
+                return new ReplayRecord(resultSet.getString(1), resultSet.getString(2), resultSet.getString(6), resultSet.getInt(3),
+                        resultSet.getString(7), resultSet.getTimestamp(4).getTime(), (float) resultSet.getDouble(5));
+            } else {
+                return new ReplayRecord(resultSet.getString(1), resultSet.getString(2), resultSet.getInt(3),
+                        resultSet.getTimestamp(4).getTime(), (float) resultSet.getDouble(5));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static boolean hasFrequency(Connection conn) {
+        return hasColumns(conn, "SELECT FREQUENCY FROM VITAL_VALUES");
+    }
+
+    private static boolean hasColumns(Connection conn, String select) {
+        // some drivers only check the columns on execution so run an empty query
+        try (Statement s = conn.createStatement()) {
+            s.executeQuery(select + " WHERE 1 = 0").close();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
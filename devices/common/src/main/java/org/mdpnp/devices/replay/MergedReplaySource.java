@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Interleaves several time ordered sources into one, e.g. numerics from a
+ * database export with waveforms from a full-disclosure archive.
+ *
+ */
+public class MergedReplaySource implements ReplaySource {
+    private static final class Head {
+        final ReplaySource source;
+        ReplayRecord record;
+
+        Head(ReplaySource source, ReplayRecord record) {
+            this.source = source;
+            this.record = record;
+        }
+    }
+
+    private static final Comparator<Head> BY_TIME = new Comparator<Head>() {
+        @Override
+        public int compare(Head o1, Head o2) {
+            return Long.compare(o1.record.getTime(), o2.record.getTime());
+        }
+    };
+
+    private final ReplaySource[] sources;
+    private PriorityQueue<Head> heads;
+
+    public MergedReplaySource(ReplaySource... sources) {
+        this.sources = sources;
+    }
+
+    @Override
+    public ReplayRecord next() throws IOException {
+        if (null == heads) {
+            heads = new PriorityQueue<Head>(Math.max(1, sources.length), BY_TIME);
+            for (ReplaySource s : sources) {
+                ReplayRecord r = s.next();
+                if (null != r) {
+                    heads.add(new Head(s, r));
+                }
+            }
+        }
+        Head h = heads.poll();
+        if (null == h) {
+            return null;
+        }
+        ReplayRecord r = h.record;
+        h.record = h.source.next();
+        if (null != h.record) {
+            heads.add(h);
+        }
+        return r;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException first = null;
+        for (ReplaySource s : sources) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                if (null == first) {
+                    first = e;
+                }
+            }
+        }
+        if (null != first) {
+            throw first;
+        }
+    }
+}
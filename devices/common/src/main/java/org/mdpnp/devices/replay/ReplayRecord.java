@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import java.util.Arrays;
+
+/**
+ * One recorded observation to be replayed; either a single numeric value or a
+ * block of waveform samples. The time of a sample array is the time of its
+ * last sample, which is when the device would originally have published it.
+ *
+ */
+public final class ReplayRecord {
+    private final String uniqueDeviceIdentifier;
+    private final String metricId;
+    private final String vendorMetricId;
+    private final int instanceId;
+    private final String unitId;
+    private final int frequency;
+    private final long time;
+    private final float value;
+    private final float[] values;
+
+    public ReplayRecord(String uniqueDeviceIdentifier, String metricId, int instanceId, long time, float value) {
+        this(uniqueDeviceIdentifier, metricId, "", instanceId, null, time, value);
+    }
+
+    public ReplayRecord(String uniqueDeviceIdentifier, String metricId, String vendorMetricId, int instanceId, String unitId, long time,
+            float value) {
+        this.uniqueDeviceIdentifier = uniqueDeviceIdentifier;
+        this.metricId = metricId;
+        this.vendorMetricId = vendorMetricId;
+        this.instanceId = instanceId;
+        this.unitId = unitId;
+        this.frequency = 0;
+        this.time = time;
+        this.value = value;
+        this.values = null;
+    }
+
+    public ReplayRecord(String uniqueDeviceIdentifier, String metricId, int instanceId, int frequency, long time, float[] values) {
+        this(uniqueDeviceIdentifier, metricId, "", instanceId, null, frequency, time, values);
+    }
+
+    public ReplayRecord(String uniqueDeviceIdentifier, String metricId, String vendorMetricId, int instanceId, String unitId, int frequency,
+            long time, float[] values) {
+        if (frequency <= 0) {
+            throw new IllegalArgumentException("frequency must be positive: " + frequency);
+        }
+        this.uniqueDeviceIdentifier = uniqueDeviceIdentifier;
+        this.metricId = metricId;
+        this.vendorMetricId = vendorMetricId;
+        this.instanceId = instanceId;
+        this.unitId = unitId;
+        this.frequency = frequency;
+        this.time = time;
+        this.value = Float.NaN;
+        this.values = values;
+    }
+
+    public String getUniqueDeviceIdentifier() {
+        return uniqueDeviceIdentifier;
+    }
+
+    public String getMetricId() {
+        return metricId;
+    }
+
+    public String getVendorMetricId() {
+        return vendorMetricId;
+    }
+
+    public int getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * @return the recorded unit, null for recordings that did not keep one
+     */
+    public String getUnitId() {
+        return unitId;
+    }
+
+    /**
+     * @return sampling frequency in Hz, zero for numerics
+     */
+    public int getFrequency() {
+        return frequency;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    public float[] getValues() {
+        return values;
+    }
+
+    public boolean isSampleArray() {
+        return null != values;
+    }
+
+    /**
+     * @return number of samples carried; one for a numeric
+     */
+    public int size() {
+        return null == values ? 1 : values.length;
+    }
+
+    @Override
+    public String toString() {
+        return uniqueDeviceIdentifier + "/" + metricId + "/" + instanceId + "@" + time + " "
+                + (null == values ? Float.toString(value) : frequency + "Hz " + Arrays.toString(values));
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+/**
+ * Running totals for a replay; updated by the replay thread and safe to read
+ * from any other thread.
+ *
+ */
+public class ReplayStatistics {
+    private long startNanos;
+    private long lastNanos;
+    private long published;
+    private long samples;
+    private long driftSumNanos;
+    private long driftMaxNanos;
+    private long recordTime;
+
+    synchronized void start(long nanos) {
+        startNanos = nanos;
+        lastNanos = nanos;
+        published = 0L;
+        samples = 0L;
+        driftSumNanos = 0L;
+        driftMaxNanos = 0L;
+    }
+
+    synchronized void published(ReplayRecord record, long nanos, long driftNanos) {
+        lastNanos = nanos;
+        published++;
+        samples += record.size();
+        driftSumNanos += driftNanos;
+        if (driftNanos > driftMaxNanos) {
+            driftMaxNanos = driftNanos;
+        }
+        recordTime = record.getTime();
+    }
+
+    /**
+     * @return number of records (numerics and sample arrays) published
+     */
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return number of values published, counting each waveform sample
+     */
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return recorded time of the most recently published record
+     */
+    public synchronized long getRecordTime() {
+        return recordTime;
+    }
+
+    private double elapsedSeconds() {
+        return (lastNanos - startNanos) / 1000000000.0;
+    }
+
+    /**
+     * @return records published per second of wall time
+     */
+    public synchronized double getPublishRate() {
+        double s = elapsedSeconds();
+        return s > 0.0 ? published / s : 0.0;
+    }
+
+    /**
+     * @return values published per second of wall time
+     */
+    public synchronized double getSampleRate() {
+        double s = elapsedSeconds();
+        return s > 0.0 ? samples / s : 0.0;
+    }
+
+    /**
+     * @return mean lateness of a publication relative to its scheduled time in
+     *         microseconds
+     */
+    public synchronized double getMeanDriftMicros() {
+        return published > 0L ? driftSumNanos / 1000.0 / published : 0.0;
+    }
+
+    /**
+     * @return worst lateness of a publication relative to its scheduled time in
+     *         microseconds
+     */
+    public synchronized long getMaxDriftMicros() {
+        return driftMaxNanos / 1000L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d records (%d values) in %.3fs, %.1f records/s, drift mean %.1fus max %dus", published, samples,
+                elapsedSeconds(), getPublishRate(), getMeanDriftMicros(), getMaxDriftMicros());
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plays a {@link ReplaySource} into a {@link Sink} at a chosen multiple of real
+ * time while preserving the spacing between records. A record recorded dt
+ * after the first one is published dt/speed after the replay started. With
+ * {@link #MAX_SPEED} records are published as fast as the sink accepts them.
+ * <p>
+ * The speed may be changed while the replay is running; the schedule is
+ * re-anchored at the current position so the change takes effect without a
+ * jump.
+ *
+ */
+public class Replayer {
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private static final Logger log = LoggerFactory.getLogger(Replayer.class);
+
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(100L);
+
+    public interface Sink {
+        /**
+         * @param record
+         *            the recorded observation
+         * @param replayTime
+         *            wall clock time in ms at which the record was scheduled;
+         *            the original time mapped onto the replay timeline
+         */
+        void publish(ReplayRecord record, long replayTime);
+    }
+
+    private final ReplaySource source;
+    private final Sink sink;
+    private final ReplayStatistics statistics = new ReplayStatistics();
+    private volatile double speed = 1.0;
+    private volatile boolean stopped;
+
+    public Replayer(ReplaySource source, Sink sink) {
+        this.source = source;
+        this.sink = sink;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @param speed
+     *            multiple of real time, {@link #MAX_SPEED} for as fast as
+     *            possible
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0.0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    public ReplayStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Asks a running {@link #replay()} to return before its next publication.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Publishes every record of the source on the calling thread.
+     *
+     * @return number of records published
+     */
+    public long replay() throws IOException, InterruptedException {
+        stopped = false;
+        final long startNanos = System.nanoTime();
+        final long startMillis = System.currentTimeMillis();
+        statistics.start(startNanos);
+
+        double appliedSpeed = Double.NaN;
+        long anchorNanos = startNanos;
+        long anchorTime = 0L;
+
+        ReplayRecord r;
+        while (!stopped && null != (r = source.next())) {
+            long target;
+            for (;;) {
+                double s = speed;
+                long now = System.nanoTime();
+                if (s != appliedSpeed) {
+                    // re-anchor at the current position on the recorded timeline
+                    if (!Double.isNaN(appliedSpeed) && !Double.isInfinite(appliedSpeed)) {
+                        anchorTime += (long) ((now - anchorNanos) / 1000000.0 * appliedSpeed);
+                        anchorTime = Math.min(anchorTime, r.getTime());
+                    } else {
+                        anchorTime = r.getTime();
+                    }
+                    anchorNanos = now;
+                    appliedSpeed = s;
+                }
+                if (Double.isInfinite(s)) {
+                    target = now;
+                    break;
+                }
+                target = anchorNanos + (long) ((r.getTime() - anchorTime) * 1000000.0 / s);
+                long remaining = target - now;
+                if (remaining <= 0L) {
+                    break;
+                }
+                LockSupport.parkNanos(Math.min(remaining, MAX_PARK));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (stopped) {
+                    return statistics.getPublished();
+                }
+            }
+            long dispatched = System.nanoTime();
+            sink.publish(r, startMillis + TimeUnit.NANOSECONDS.toMillis(target - startNanos));
+            statistics.published(r, System.nanoTime(), Math.max(0L, dispatched - target));
+        }
+        log.info("Replay finished: " + statistics);
+        return statistics.getPublished();
+    }
+}
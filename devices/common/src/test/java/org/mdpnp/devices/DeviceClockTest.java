@@ -6,6 +6,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -117,6 +118,29 @@ public class DeviceClockTest {
 
   }
 
+  @Test
+  public void testMutableReading() throws Exception {
+    Instant t = Instant.ofEpochSecond(507296353L, 40123456L);
+    DeviceClock.MutableReading r = new DeviceClock.MutableReading().set(DeviceClock.toEpochNanos(t));
+    Assert.assertEquals(t, r.getTime());
+    Assert.assertFalse(r.hasDeviceTime());
+    Assert.assertNull(r.getDeviceTime());
+
+    r.setDeviceTime(DeviceClock.toEpochNanos(t) - 50000000L);
+    Assert.assertEquals(t.minusMillis(50L), r.getDeviceTime());
+
+    // the nanosecond accessors agree with the Instant ones on the legacy readings
+    DeviceClock.Reading combined = new DeviceClock.CombinedReading(new DeviceClock.ReadingImpl(t.toEpochMilli()),
+        new DeviceClock.ReadingImpl(t.toEpochMilli() - 50L));
+    DeviceClock.MutableReading copy = new DeviceClock.MutableReading().set(combined);
+    Assert.assertEquals(combined.getTime(), copy.getTime());
+    Assert.assertEquals(combined.getDeviceTime(), copy.getDeviceTime());
+
+    // and instants before the epoch survive the round trip
+    Instant before = Instant.ofEpochSecond(-10L, 1L);
+    Assert.assertEquals(before, DeviceClock.toInstant(DeviceClock.toEpochNanos(before)));
+  }
+
   // This was modeled after the Draeger Clock
   //
   static class DeviceClockImpl implements DeviceClock  {
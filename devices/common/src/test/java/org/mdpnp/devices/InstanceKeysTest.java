@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.replay.ReplayRecord;
+import org.mdpnp.devices.replay.ReplaySource;
+import org.mdpnp.devices.replay.Replayer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class InstanceKeysTest {
+
+    private static final Logger log = LoggerFactory.getLogger(InstanceKeysTest.class);
+
+    @Test
+    public void testIntern() {
+        InstanceKeys keys = new InstanceKeys();
+        InstanceKeys.Key a = keys.intern("UDI-A", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        // equal strings that are not the same instances
+        InstanceKeys.Key b = keys.intern(new String("UDI-A"), new String("MDC_PULS_OXIM_SAT_O2"), new String(""), 0, new String("MDC_DIM_PERCENT"));
+        Assert.assertSame(a, b);
+        Assert.assertEquals(0, a.getOrdinal());
+        Assert.assertEquals(0, a.getFrequency());
+
+        InstanceKeys.Key c = keys.intern("UDI-A", "MDC_PULS_OXIM_PULS_RATE", "", 0, "MDC_DIM_BEAT_PER_MIN");
+        InstanceKeys.Key d = keys.intern("UDI-B", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        InstanceKeys.Key e = keys.intern("UDI-B", "MDC_PULS_OXIM_SAT_O2", "", 1, "MDC_DIM_PERCENT");
+        InstanceKeys.Key f = keys.intern("UDI-B", "MDC_PULS_OXIM_SAT_O2", "", 1, "MDC_DIM_PERCENT", 100);
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4), Arrays.asList(c.getOrdinal(), d.getOrdinal(), e.getOrdinal(), f.getOrdinal()));
+        Assert.assertEquals(5, keys.size());
+        Assert.assertSame(e, keys.get(3));
+
+        Assert.assertEquals(a.getDeviceOrdinal(), c.getDeviceOrdinal());
+        Assert.assertEquals(1, d.getDeviceOrdinal());
+        Assert.assertEquals(a.getMetricOrdinal(), d.getMetricOrdinal());
+        Assert.assertEquals(1, keys.findDevice("UDI-B"));
+        Assert.assertEquals(InstanceKeys.NONE, keys.findDevice("UDI-C"));
+        Assert.assertEquals(2, keys.deviceOrdinal("UDI-C"));
+        Assert.assertEquals("UDI-C", keys.getUniqueDeviceIdentifier(2));
+        Assert.assertEquals("MDC_PULS_OXIM_PULS_RATE", keys.getMetricId(c.getMetricOrdinal()));
+
+        // the first instance of each string is kept
+        Assert.assertSame(a.getUniqueDeviceIdentifier(), b.getUniqueDeviceIdentifier());
+
+        Assert.assertSame(f, keys.find("UDI-B", "MDC_PULS_OXIM_SAT_O2", "", 1, "MDC_DIM_PERCENT", 100));
+        Assert.assertNull(keys.find("UDI-B", "MDC_PULS_OXIM_SAT_O2", "", 2, "MDC_DIM_PERCENT", 100));
+        Assert.assertNull(keys.find("UDI-D", "MDC_PULS_OXIM_SAT_O2", "", 1, "MDC_DIM_PERCENT", 100));
+
+        // missing fields are empty strings as in the IDL types
+        Assert.assertSame(keys.intern("UDI-A", null, null, 0, null), keys.intern("UDI-A", "", "", 0, ""));
+    }
+
+    @Test
+    public void testGrowth() {
+        InstanceKeys keys = new InstanceKeys();
+        List<InstanceKeys.Key> l = new ArrayList<InstanceKeys.Key>();
+        for (int bed = 0; bed < 200; bed++) {
+            for (int metric = 0; metric < 50; metric++) {
+                l.add(keys.intern("UDI-" + bed, "METRIC-" + metric, "", 0, "UNIT"));
+            }
+        }
+        Assert.assertEquals(10000, keys.size());
+        for (int i = 0; i < l.size(); i++) {
+            InstanceKeys.Key k = l.get(i);
+            Assert.assertEquals(i, k.getOrdinal());
+            Assert.assertSame(k, keys.get(i));
+            Assert.assertSame(k, keys.intern("UDI-" + (i / 50), "METRIC-" + (i % 50), "", 0, "UNIT"));
+            Assert.assertEquals(i / 50, k.getDeviceOrdinal());
+            Assert.assertEquals(i % 50, k.getMetricOrdinal());
+        }
+    }
+
+    @Test
+    public void testRemoveDevice() {
+        InstanceKeys keys = new InstanceKeys();
+        InstanceKeys.Key a = keys.intern("UDI-A", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        InstanceKeys.Key b = keys.intern("UDI-B", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        InstanceKeys.Key c = keys.intern("UDI-A", "MDC_ECG_LEAD_II", "", 0, "MDC_DIM_MILLI_VOLT", 500);
+        Assert.assertEquals(0, keys.removeDevice("UDI-C"));
+        Assert.assertEquals(2, keys.removeDevice("UDI-A"));
+        Assert.assertTrue(a.isReleased());
+        Assert.assertTrue(c.isReleased());
+        Assert.assertFalse(b.isReleased());
+        Assert.assertNull(keys.get(a.getOrdinal()));
+        Assert.assertNull(keys.find("UDI-A", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT", 0));
+        Assert.assertSame(b, keys.find("UDI-B", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT", 0));
+
+        // the device comes back with new keys on the old ordinals
+        InstanceKeys.Key a2 = keys.intern("UDI-A", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        InstanceKeys.Key d = keys.intern("UDI-D", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        Assert.assertNotSame(a, a2);
+        Assert.assertFalse(a2.isReleased());
+        Assert.assertEquals(a.getDeviceOrdinal(), a2.getDeviceOrdinal());
+        Assert.assertEquals(Arrays.asList(0, 2), Arrays.asList(Math.min(a2.getOrdinal(), d.getOrdinal()), Math.max(a2.getOrdinal(), d.getOrdinal())));
+        Assert.assertEquals(3, keys.size());
+        Assert.assertSame(a2, keys.get(a2.getOrdinal()));
+        Assert.assertSame(d, keys.get(d.getOrdinal()));
+
+        // devices that come and go don't grow the keys
+        for (int i = 0; i < 1000; i++) {
+            keys.intern("UDI-E", "MDC_PULS_OXIM_SAT_O2", "", i % 10, "MDC_DIM_PERCENT");
+            if (9 == i % 10) {
+                keys.removeDevice("UDI-E");
+            }
+        }
+        Assert.assertEquals(13, keys.size());
+    }
+
+    @Test
+    public void testConcurrentIntern() throws Exception {
+        final InstanceKeys keys = new InstanceKeys();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<InstanceKeys.Key[]>> results = new ArrayList<Future<InstanceKeys.Key[]>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(new Callable<InstanceKeys.Key[]>() {
+                    @Override
+                    public InstanceKeys.Key[] call() {
+                        InstanceKeys.Key[] k = new InstanceKeys.Key[2000];
+                        for (int i = 0; i < k.length; i++) {
+                            k[i] = keys.intern("UDI-" + (i % 40), "METRIC-" + (i / 40), "", 0, "UNIT");
+                        }
+                        return k;
+                    }
+                }));
+            }
+            InstanceKeys.Key[] first = results.get(0).get();
+            for (Future<InstanceKeys.Key[]> f : results) {
+                Assert.assertArrayEquals(first, f.get());
+            }
+            Assert.assertEquals(2000, keys.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static final String[] METRICS = { "MDC_PULS_OXIM_SAT_O2", "MDC_PULS_OXIM_PULS_RATE", "MDC_ECG_HEART_RATE", "MDC_TTHOR_RESP_RATE",
+            "MDC_AWAY_CO2_ET", "MDC_AWAY_RESP_RATE", "MDC_PRESS_BLD_ART_ABP_SYS", "MDC_PRESS_BLD_ART_ABP_DIA", "MDC_PRESS_BLD_ART_ABP_MEAN",
+            "MDC_TEMP_BLD", "MDC_PRESS_CUFF_SYS", "MDC_PRESS_CUFF_DIA" };
+
+    /**
+     * One numeric per metric per bed every second, with fresh strings in
+     * every sample as a DataReader would deliver them. The instance handle of
+     * the last record is left in {@link #handle}.
+     */
+    private static class Beds implements ReplaySource {
+        final int beds, seconds;
+        final long t0 = 1000000000L;
+        int next, handle;
+
+        Beds(int beds, int seconds) {
+            this.beds = beds;
+            this.seconds = seconds;
+        }
+
+        @Override
+        public ReplayRecord next() {
+            int instances = beds * METRICS.length;
+            if (next >= instances * seconds) {
+                return null;
+            }
+            handle = next % instances;
+            int second = next / instances;
+            next++;
+            return new ReplayRecord(new String("BED-" + (handle / METRICS.length)), new String(METRICS[handle % METRICS.length]), 0,
+                    t0 + second * 1000L, second);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static abstract class Consumer implements Replayer.Sink {
+        final Beds beds;
+        double total;
+
+        Consumer(Beds beds) {
+            this.beds = beds;
+        }
+    }
+
+    /**
+     * Keyed by strings the way the exporters and vital model match samples
+     */
+    private static class StringConsumer extends Consumer {
+        final Map<String, String> patients = new HashMap<String, String>();
+        final Map<String, List<float[]>> values = new HashMap<String, List<float[]>>();
+        final Map<String, List<ReplayRecord>> keys = new HashMap<String, List<ReplayRecord>>();
+
+        StringConsumer(Beds beds) {
+            super(beds);
+            for (int bed = 0; bed < beds.beds; bed++) {
+                patients.put("BED-" + bed, "MRN-" + bed);
+            }
+        }
+
+        @Override
+        public void publish(ReplayRecord record, long replayTime) {
+            String patient = patients.get(record.getUniqueDeviceIdentifier());
+            List<ReplayRecord> k = keys.get(patient);
+            List<float[]> v = values.get(patient);
+            if (null == k) {
+                keys.put(patient, k = new ArrayList<ReplayRecord>());
+                values.put(patient, v = new ArrayList<float[]>());
+            }
+            for (int i = 0; i < k.size(); i++) {
+                ReplayRecord r = k.get(i);
+                if (r.getInstanceId() == record.getInstanceId() && r.getMetricId().equals(record.getMetricId())
+                        && r.getUniqueDeviceIdentifier().equals(record.getUniqueDeviceIdentifier())) {
+                    v.get(i)[0] = record.getValue();
+                    total += record.getValue();
+                    return;
+                }
+            }
+            k.add(record);
+            v.add(new float[] { record.getValue() });
+            total += record.getValue();
+        }
+    }
+
+    /**
+     * Interns once per instance handle then works by ordinal
+     */
+    private static class InternedConsumer extends Consumer {
+        final InstanceKeys instanceKeys = new InstanceKeys();
+        final InstanceKeys.Key[] byHandle;
+        String[] patients = new String[0];
+        float[] values = new float[0];
+
+        InternedConsumer(Beds beds) {
+            super(beds);
+            byHandle = new InstanceKeys.Key[beds.beds * METRICS.length];
+            for (int bed = 0; bed < beds.beds; bed++) {
+                int device = instanceKeys.deviceOrdinal("BED-" + bed);
+                if (device >= patients.length) {
+                    patients = Arrays.copyOf(patients, device + 1);
+                }
+                patients[device] = "MRN-" + bed;
+            }
+        }
+
+        @Override
+        public void publish(ReplayRecord record, long replayTime) {
+            InstanceKeys.Key key = byHandle[beds.handle];
+            if (null == key) {
+                key = byHandle[beds.handle] = instanceKeys.intern(record.getUniqueDeviceIdentifier(), record.getMetricId(), "",
+                        record.getInstanceId(), "");
+                if (key.getOrdinal() >= values.length) {
+                    values = Arrays.copyOf(values, Math.max(16, 2 * key.getOrdinal()));
+                }
+            }
+            Assert.assertNotNull(patients[key.getDeviceOrdinal()]);
+            values[key.getOrdinal()] = record.getValue();
+            total += record.getValue();
+        }
+    }
+
+    private static long[] run(Consumer consumer) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        Replayer replayer = new Replayer(consumer.beds, consumer);
+        replayer.setSpeed(Replayer.MAX_SPEED);
+        long cpu = threads.getThreadCpuTime(id);
+        long allocated = threads.getThreadAllocatedBytes(id);
+        long n = replayer.replay();
+        return new long[] { n, threads.getThreadCpuTime(id) - cpu, threads.getThreadAllocatedBytes(id) - allocated };
+    }
+
+    private static Consumer idle(Beds beds) {
+        return new Consumer(beds) {
+            @Override
+            public void publish(ReplayRecord record, long replayTime) {
+            }
+        };
+    }
+
+    @Test
+    public void testSixtyBedNumericReplay() throws Exception {
+        final int beds = 60;
+        final int seconds = Integer.getInteger("InstanceKeysTest.seconds", 300);
+        final int rounds = Integer.getInteger("InstanceKeysTest.rounds", 5);
+        // best of several rounds of each so that the difference is not noise
+        long[] baseline = null, s = null, k = null;
+        StringConsumer strings = null;
+        InternedConsumer interned = null;
+        for (int round = 0; round < rounds; round++) {
+            baseline = best(baseline, run(idle(new Beds(beds, seconds))));
+            strings = new StringConsumer(new Beds(beds, seconds));
+            s = best(s, run(strings));
+            interned = new InternedConsumer(new Beds(beds, seconds));
+            k = best(k, run(interned));
+        }
+
+        Assert.assertEquals(baseline[0], s[0]);
+        Assert.assertEquals(baseline[0], k[0]);
+        Assert.assertEquals(strings.total, interned.total, 0.0);
+        Assert.assertEquals(beds * METRICS.length, interned.instanceKeys.size());
+
+        long n = baseline[0];
+        log.info(String.format("%d beds, %d numerics: replay alone %.0fns %.0fB per sample", beds, n, 1.0 * baseline[1] / n, 1.0 * baseline[2] / n));
+        log.info(String.format("string keys %.0fns %.1fB per sample", 1.0 * s[1] / n, 1.0 * s[2] / n));
+        log.info(String.format("interned keys %.0fns %.1fB per sample", 1.0 * k[1] / n, 1.0 * k[2] / n));
+    }
+
+    private static long[] best(long[] best, long[] run) {
+        if (null == best) {
+            return run;
+        }
+        return new long[] { run[0], Math.min(best[1], run[1]), Math.min(best[2], run[2]) };
+    }
+}
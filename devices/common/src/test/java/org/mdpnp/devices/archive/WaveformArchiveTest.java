@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WaveformArchiveTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("WaveformArchiveTest-", "");
+        root.delete();
+        root.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (null != files) {
+            for (File c : files) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+
+    /**
+     * appends count samples in blocks of blockSize, value of every sample is its index
+     */
+    private static void fill(WaveformArchive.Channel c, long t0, int frequency, int first, int count, int blockSize) throws IOException {
+        float[] block = new float[blockSize];
+        for (int n = first; n < first + count; n += blockSize) {
+            for (int i = 0; i < blockSize; i++) {
+                block[i] = n + i;
+            }
+            c.append(t0 + n * 1000L / frequency, block, 0, blockSize);
+        }
+    }
+
+    private static class Collector implements WaveformArchive.BlockHandler {
+        int count;
+        float first = Float.NaN, last = Float.NaN;
+        long firstTime = Long.MIN_VALUE;
+        int blocks;
+
+        @Override
+        public void block(long startTime, int frequency, float[] values, int offset, int length) {
+            if (0 == count) {
+                first = values[offset];
+                firstTime = startTime;
+            } else {
+                Assert.assertEquals("Samples are not contiguous", last + 1f, values[offset], 0f);
+            }
+            for (int i = 1; i < length; i++) {
+                Assert.assertEquals("Samples are not contiguous", values[offset + i - 1] + 1f, values[offset + i], 0f);
+            }
+            last = values[offset + length - 1];
+            count += length;
+            blocks++;
+        }
+    }
+
+    @Test
+    public void testRangeRead() throws Exception {
+        long t0 = System.currentTimeMillis();
+        try (WaveformArchive archive = new WaveformArchive(root)) {
+            WaveformArchive.Channel c = archive.getChannel(new WaveformArchive.Key("DEVICE0", "MDC_ECG_LEAD_II", 0, 500));
+            fill(c, t0, 500, 0, 5000, 50);
+
+            Assert.assertEquals(t0, c.getFirstTime());
+            Assert.assertEquals(t0 + 4999 * 2, c.getLastTime());
+            Assert.assertEquals(1, c.getSegmentCount());
+
+            Collector col = new Collector();
+            int n = c.read(t0 + 1000L, t0 + 2000L, col);
+            Assert.assertEquals(500, n);
+            Assert.assertEquals(500f, col.first, 0f);
+            Assert.assertEquals(999f, col.last, 0f);
+            Assert.assertEquals(t0 + 1000L, col.firstTime);
+            // 100 blocks without gaps collapse into a single indexed run
+            Assert.assertEquals(1, col.blocks);
+
+            // a timestamp between two samples seeks to the next sample
+            col = new Collector();
+            c.read(t0 + 1001L, t0 + 1011L, col);
+            Assert.assertEquals(501f, col.first, 0f);
+            Assert.assertEquals(505f, col.last, 0f);
+
+            // outside of the recorded data
+            Assert.assertEquals(0, c.read(t0 - 10000L, t0, new Collector()));
+            Assert.assertEquals(0, c.read(t0 + 10000L, t0 + 20000L, new Collector()));
+        }
+    }
+
+    @Test
+    public void testGapsAndSegments() throws Exception {
+        long t0 = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5L);
+        try (WaveformArchive archive = new WaveformArchive(root, WaveformArchive.DEFAULT_RETENTION, 10000L)) {
+            WaveformArchive.Channel c = archive.getChannel(new WaveformArchive.Key("DEVICE0", "MDC_PRESS_BLD_ART_ABP", 1, 125));
+            // 60 seconds of data, then a 30 second dropout, then another 60 seconds
+            fill(c, t0, 125, 0, 7500, 25);
+            fill(c, t0, 125, 11250, 7500, 25);
+
+            Assert.assertTrue("Expected the data to span several segments", c.getSegmentCount() >= 12);
+
+            // straddles the dropout
+            Collector col = new Collector() {
+                @Override
+                public void block(long startTime, int frequency, float[] values, int offset, int length) {
+                    if (count == 125) {
+                        // skip over the gap
+                        last = 11250 - 1;
+                    }
+                    super.block(startTime, frequency, values, offset, length);
+                }
+            };
+            int n = c.read(t0 + 59000L, t0 + 91000L, col);
+            Assert.assertEquals(250, n);
+            Assert.assertEquals(7375f, col.first, 0f);
+            Assert.assertEquals(11374f, col.last, 0f);
+
+            // everything
+            Assert.assertEquals(15000, c.read(Long.MIN_VALUE, Long.MAX_VALUE, (t, f, v, o, l) -> { }));
+
+            // out of order data is refused
+            float[] late = new float[] { -1f };
+            c.append(t0 + 1000L, late, 0, 1);
+            Assert.assertEquals(1L, c.getDroppedBlocks());
+            Assert.assertEquals(15000, c.read(Long.MIN_VALUE, Long.MAX_VALUE, (t, f, v, o, l) -> { }));
+        }
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        long now = System.currentTimeMillis();
+        long t0 = now - TimeUnit.HOURS.toMillis(2L);
+        try (WaveformArchive archive = new WaveformArchive(root, TimeUnit.HOURS.toMillis(1L), TimeUnit.MINUTES.toMillis(10L))) {
+            WaveformArchive.Channel c = archive.getChannel(new WaveformArchive.Key("DEVICE0", "MDC_PULS_OXIM_PLETH", 0, 10));
+            // two hours worth at 10Hz ending now, expired segments go as new ones are started
+            fill(c, t0, 10, 0, 72000, 10);
+            long cutoff = now - TimeUnit.HOURS.toMillis(1L);
+            Assert.assertTrue("Expired segments were kept", c.getFirstTime() > cutoff - TimeUnit.MINUTES.toMillis(10L));
+            Assert.assertEquals(0, c.read(t0, cutoff - TimeUnit.MINUTES.toMillis(10L), (t, f, v, o, l) -> { }));
+            int before = c.getSegmentCount();
+            Assert.assertTrue(before >= 6);
+
+            // half an hour later
+            Assert.assertEquals(3, archive.purge(now + TimeUnit.MINUTES.toMillis(30L)));
+            Assert.assertEquals(before - 3, c.getSegmentCount());
+            Assert.assertTrue(c.getFirstTime() > cutoff + TimeUnit.MINUTES.toMillis(20L));
+
+            File[] files = root.listFiles()[0].listFiles((d, name) -> name.endsWith(".wfa"));
+            Assert.assertEquals(c.getSegmentCount(), files.length);
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        long t0 = System.currentTimeMillis();
+        WaveformArchive.Key key = new WaveformArchive.Key("DEVICE/0", "MDC_ECG_LEAD_V1", 0, 250);
+        try (WaveformArchive archive = new WaveformArchive(root)) {
+            fill(archive.getChannel(key, "ECG V1", "MDC_DIM_MILLI_VOLT"), t0, 250, 0, 2500, 25);
+        }
+        try (WaveformArchive archive = new WaveformArchive(root)) {
+            Assert.assertEquals(1, archive.getChannels().size());
+            WaveformArchive.Channel c = archive.getChannels().iterator().next();
+            Assert.assertEquals(key, c.getKey());
+            Assert.assertEquals("ECG V1", c.getVendorMetricId());
+            Assert.assertEquals("MDC_DIM_MILLI_VOLT", c.getUnitId());
+            Assert.assertEquals(t0 + 2499 * 4, c.getLastTime());
+
+            // carries on in the same segment
+            fill(c, t0, 250, 2500, 2500, 25);
+            Assert.assertEquals(1, c.getSegmentCount());
+            Collector col = new Collector();
+            Assert.assertEquals(5000, c.read(t0, t0 + 20000L, col));
+            Assert.assertEquals(0f, col.first, 0f);
+            Assert.assertEquals(4999f, col.last, 0f);
+        }
+    }
+
+    @Test
+    public void testOverlappingBlocks() throws Exception {
+        long t0 = System.currentTimeMillis();
+        try (WaveformArchive archive = new WaveformArchive(root)) {
+            WaveformArchive.Channel c = archive.getChannel(new WaveformArchive.Key("DEVICE0", "MDC_ECG_LEAD_II", 0, 250));
+            fill(c, t0, 250, 0, 100, 100);
+            // resent with half of the block already recorded
+            fill(c, t0, 250, 50, 100, 100);
+            Assert.assertEquals(0L, c.getDroppedBlocks());
+            Assert.assertEquals(t0 + 149 * 4, c.getLastTime());
+
+            Collector col = new Collector();
+            Assert.assertEquals(150, c.read(Long.MIN_VALUE, Long.MAX_VALUE, col));
+            Assert.assertEquals(0f, col.first, 0f);
+            Assert.assertEquals(149f, col.last, 0f);
+
+            // nothing new at all
+            fill(c, t0, 250, 100, 50, 50);
+            Assert.assertEquals(1L, c.getDroppedBlocks());
+            Assert.assertEquals(150, c.read(Long.MIN_VALUE, Long.MAX_VALUE, (t, f, v, o, l) -> { }));
+        }
+    }
+
+    @Test
+    public void testNoDriftAcrossSegments() throws Exception {
+        long t0 = System.currentTimeMillis();
+        try (WaveformArchive archive = new WaveformArchive(root, WaveformArchive.DEFAULT_RETENTION, 1000L)) {
+            WaveformArchive.Channel c = archive.getChannel(new WaveformArchive.Key("DEVICE0", "MDC_PRESS_BLD_ART_ABP", 0, 300));
+            // one long block at a period of 3.33ms split over many segments
+            fill(c, t0, 300, 0, 3000, 3000);
+            Assert.assertTrue(c.getSegmentCount() >= 10);
+            Assert.assertEquals(t0 + Math.round(2999 * 1000.0 / 300), c.getLastTime());
+
+            Collector col = new Collector();
+            Assert.assertEquals(3000, c.read(Long.MIN_VALUE, Long.MAX_VALUE, col));
+            Assert.assertEquals(2999f, col.last, 0f);
+        }
+    }
+
+    @Test
+    public void testRepeatedSealedReads() throws Exception {
+        long t0 = System.currentTimeMillis();
+        try (WaveformArchive archive = new WaveformArchive(root, WaveformArchive.DEFAULT_RETENTION, 1000L)) {
+            WaveformArchive.Channel c = archive.getChannel(new WaveformArchive.Key("DEVICE0", "MDC_ECG_LEAD_II", 0, 100));
+            fill(c, t0, 100, 0, 500, 10);
+            Assert.assertTrue(c.getSegmentCount() > 1);
+            for (int i = 0; i < 3; i++) {
+                Collector col = new Collector();
+                Assert.assertEquals(100, c.read(t0, t0 + 1000L, col));
+                Assert.assertEquals(0f, col.first, 0f);
+                Assert.assertEquals(99f, col.last, 0f);
+            }
+        }
+    }
+}
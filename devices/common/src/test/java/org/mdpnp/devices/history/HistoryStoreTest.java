@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.InstanceKeys;
+
+public class HistoryStoreTest {
+
+    private final InstanceKeys keys = new InstanceKeys();
+
+    private static class Collector implements HistoryStore.Visitor {
+        final List<Long> times = new ArrayList<Long>();
+        final List<Float> values = new ArrayList<Float>();
+
+        @Override
+        public void sample(long time, float value) {
+            times.add(time);
+            values.add(value);
+        }
+    }
+
+    @Test
+    public void testNumerics() {
+        HistoryStore store = new HistoryStore(60000L, 10000L);
+        InstanceKeys.Key hr = keys.intern("DEVICE0", "MDC_PULS_OXIM_PULS_RATE", "", 0, "MDC_DIM_BEAT_PER_MIN");
+        Assert.assertNull(store.get(hr));
+
+        long t0 = 1000000L;
+        // 3 minutes at 1Hz, only the last minute is kept
+        for (int i = 0; i < 180; i++) {
+            store.addNumeric(hr, t0 + i * 1000L, 60 + i % 10);
+        }
+        HistoryStore.Series s = store.get(hr);
+        Assert.assertEquals(61, s.size());
+        Assert.assertEquals(t0 + 119000L, s.getFirstTime());
+        Assert.assertEquals(t0 + 179000L, s.getLastTime());
+
+        Collector c = new Collector();
+        Assert.assertTrue(s.latest(c));
+        Assert.assertEquals(t0 + 179000L, (long) c.times.get(0));
+        Assert.assertEquals(69f, c.values.get(0), 0f);
+
+        c = new Collector();
+        Assert.assertEquals(10, s.range(t0 + 150000L, t0 + 160000L, c));
+        Assert.assertEquals(t0 + 150000L, (long) c.times.get(0));
+        Assert.assertEquals(60f, c.values.get(0), 0f);
+        Assert.assertEquals(t0 + 159000L, (long) c.times.get(9));
+
+        // out of order values are refused
+        store.addNumeric(hr, t0, 1f);
+        Assert.assertEquals(1L, s.getDropped());
+        Assert.assertEquals(61, s.size());
+    }
+
+    @Test
+    public void testWaveformAndDownsample() {
+        HistoryStore store = new HistoryStore(60000L, 10000L);
+        InstanceKeys.Key ecg = keys.intern("DEVICE0", "MDC_ECG_LEAD_II", "", 0, "MDC_DIM_DIMLESS", 500);
+        long t0 = 5000000L;
+        float[] block = new float[50];
+        // 20 seconds in 100ms blocks, each sample's value is its index
+        for (int b = 0; b < 200; b++) {
+            for (int i = 0; i < 50; i++) {
+                block[i] = b * 50 + i;
+            }
+            store.addSamples(ecg, t0 + b * 100L + 98L, block, 0, 50);
+        }
+        HistoryStore.Series s = store.get(ecg);
+        // the ring is bounded to 10s plus a second of slack at 500Hz
+        Assert.assertTrue(s.getMemoryUsed() <= 5500L * HistoryStore.RECORD_BYTES);
+        Assert.assertEquals(t0 + 19998L, s.getLastTime());
+        Assert.assertEquals(t0 + 9998L, s.getFirstTime());
+
+        Collector c = new Collector();
+        Assert.assertEquals(500, s.range(t0 + 15000L, t0 + 16000L, c));
+        Assert.assertEquals(7500f, c.values.get(0), 0f);
+        Assert.assertEquals(7999f, c.values.get(499), 0f);
+
+        final List<float[]> buckets = new ArrayList<float[]>();
+        int n = s.downsample(t0 + 15000L, t0 + 16000L, 10, (start, min, max, mean, count) -> {
+            buckets.add(new float[] { start - (t0 + 15000L), min, max, mean, count });
+        });
+        Assert.assertEquals(500, n);
+        Assert.assertEquals(10, buckets.size());
+        for (int i = 0; i < 10; i++) {
+            float[] b = buckets.get(i);
+            Assert.assertEquals(i * 100f, b[0], 0f);
+            Assert.assertEquals(7500f + i * 50, b[1], 0f);
+            Assert.assertEquals(7549f + i * 50, b[2], 0f);
+            Assert.assertEquals(7524.5f + i * 50, b[3], 1e-3f);
+            Assert.assertEquals(50f, b[4], 0f);
+        }
+
+        try {
+            store.addSamples(keys.intern("DEVICE0", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT"), t0, block, 0, 1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testLongRunningOrigin() {
+        HistoryStore store = new HistoryStore(1000L, 1000L);
+        InstanceKeys.Key k = keys.intern("DEVICE0", "MDC_TEMP_BLD", "", 0, "MDC_DIM_DEGC");
+        long t0 = 0L;
+        // past the reach of 32 bit offsets from the first time
+        for (long t = t0; t < t0 + 3L * Integer.MAX_VALUE; t += Integer.MAX_VALUE / 4) {
+            store.addNumeric(k, t, t / 1000f);
+            store.addNumeric(k, t + 500L, t / 1000f + 1f);
+        }
+        HistoryStore.Series s = store.get(k);
+        Assert.assertEquals(2, s.size());
+        Collector c = new Collector();
+        s.range(Long.MIN_VALUE, Long.MAX_VALUE, c);
+        Assert.assertEquals(c.times.get(0) + 500L, (long) c.times.get(1));
+        Assert.assertEquals(s.getLastTime(), (long) c.times.get(1));
+        Assert.assertTrue(s.getLastTime() > 2L * Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testRemove() {
+        HistoryStore store = new HistoryStore(60000L, 10000L);
+        InstanceKeys.Key spo2 = keys.intern("BED-1", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        InstanceKeys.Key ecg = keys.intern("BED-1", "MDC_ECG_LEAD_II", "", 0, "MDC_DIM_MILLI_VOLT", 100);
+        InstanceKeys.Key other = keys.intern("BED-2", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        store.addNumeric(spo2, 1000L, 97f);
+        store.addSamples(ecg, 1000L, new float[] { 1f, 2f }, 0, 2);
+        store.addNumeric(other, 1000L, 95f);
+        Assert.assertEquals(3, store.size());
+
+        Assert.assertTrue(store.remove(other));
+        Assert.assertFalse(store.remove(other));
+        Assert.assertNull(store.get(other));
+        Assert.assertEquals(2, store.size());
+
+        // the device is lost; its keys are released and its ordinals reused
+        keys.removeDevice("BED-1");
+        Assert.assertEquals(2, store.removeDevice(spo2.getDeviceOrdinal()));
+        Assert.assertEquals(0, store.size());
+        store.addNumeric(spo2, 2000L, 98f);
+        Assert.assertNull("Recorded for a released key", store.get(spo2));
+
+        InstanceKeys.Key reused = keys.intern("BED-3", "MDC_PULS_OXIM_SAT_O2", "", 0, "MDC_DIM_PERCENT");
+        Assert.assertTrue(reused.getOrdinal() == spo2.getOrdinal() || reused.getOrdinal() == ecg.getOrdinal());
+        store.addNumeric(reused, 3000L, 99f);
+        Assert.assertNull(store.get(spo2));
+        Assert.assertNull(store.get(ecg));
+        Assert.assertEquals(1, store.get(reused).size());
+    }
+
+    @Test
+    public void testRingSizing() {
+        HistoryStore store = new HistoryStore(60000L, 10000L);
+        InstanceKeys.Key hr = keys.intern("DEVICE0", "MDC_PULS_OXIM_PULS_RATE", "", 0, "MDC_DIM_BEAT_PER_MIN");
+        InstanceKeys.Key fast = keys.intern("DEVICE0", "MDC_PRESS_AWAY", "", 0, "MDC_DIM_CM_H2O");
+        InstanceKeys.Key pleth = keys.intern("DEVICE0", "MDC_PULS_OXIM_PLETH", "", 0, "MDC_DIM_DIMLESS", 125);
+        long t0 = 1000000L;
+
+        // a minute at 1Hz fits the initial ring
+        for (int i = 0; i < 600; i++) {
+            store.addNumeric(hr, t0 + i * 1000L, 60f);
+        }
+        Assert.assertEquals(61, store.get(hr).size());
+        Assert.assertEquals(64L * HistoryStore.RECORD_BYTES, store.get(hr).getMemoryUsed());
+
+        // a numeric faster than MAX_NUMERIC_RATE keeps less than the duration
+        for (int i = 0; i < 12000; i++) {
+            store.addNumeric(fast, t0 + i * 10L, i);
+        }
+        int numericCapacity = (int) (60000L * HistoryStore.MAX_NUMERIC_RATE / 1000L + 64L);
+        HistoryStore.Series s = store.get(fast);
+        Assert.assertEquals(numericCapacity, s.size());
+        Assert.assertEquals((long) numericCapacity * HistoryStore.RECORD_BYTES, s.getMemoryUsed());
+        Assert.assertEquals(t0 + 119990L, s.getLastTime());
+        Assert.assertEquals(t0 + (12000 - numericCapacity) * 10L, s.getFirstTime());
+
+        // 30s of 125Hz in 200ms blocks, the ring doubles up to 10s plus a second of slack
+        float[] block = new float[25];
+        for (int b = 0; b < 150; b++) {
+            for (int i = 0; i < block.length; i++) {
+                block[i] = b * 25 + i;
+            }
+            store.addSamples(pleth, t0 + b * 200L + 192L, block, 0, block.length);
+        }
+        s = store.get(pleth);
+        Assert.assertEquals(10000 / 8 + 1, s.size());
+        Assert.assertEquals((10L + 1L) * 125L * HistoryStore.RECORD_BYTES, s.getMemoryUsed());
+        Assert.assertEquals(t0 + 29992L, s.getLastTime());
+        Assert.assertEquals(t0 + 19992L, s.getFirstTime());
+
+        // a block from the past is dropped sample by sample
+        store.addSamples(pleth, t0 + 100 * 200L + 192L, block, 0, block.length);
+        Assert.assertEquals(25L, s.getDropped());
+        Assert.assertEquals(10000 / 8 + 1, s.size());
+        Assert.assertEquals(t0 + 29992L, s.getLastTime());
+
+        Assert.assertEquals(3, store.size());
+        store.clear();
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(0L, store.getMemoryUsed());
+    }
+}
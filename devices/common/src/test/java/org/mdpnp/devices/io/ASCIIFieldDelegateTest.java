@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ASCIIFieldDelegateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static class Oximeter extends ASCIIFieldDelegate {
+        private Integer spo2, pulseRate;
+        private int fired;
+
+        Oximeter(URL properties) throws Exception {
+            super(properties);
+        }
+
+        // Like the Masimo alarm marker, a leading '*' is not part of the value
+        private String unmark(String s) {
+            return s.startsWith("*") ? s.substring(1) : s;
+        }
+
+        private void fire() {
+            fired++;
+        }
+    }
+
+    private URL properties(String... lines) throws Exception {
+        File file = folder.newFile("fields.properties");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), "ASCII")) {
+            for (String line : lines) {
+                w.write(line);
+                w.write('\n');
+            }
+        }
+        return file.toURI().toURL();
+    }
+
+    @Test
+    public void testPrivateFilter() throws Exception {
+        Oximeter oximeter = new Oximeter(properties("SPO2=(\\S+) PR=(\\S+)", "\tspo2\tunmark", "\tpulseRate\tunmark", "\tfire"));
+        assertTrue(oximeter.parseLine("SPO2=97 PR=*72"));
+        assertEquals(1, oximeter.fired);
+        assertEquals(Integer.valueOf(97), oximeter.spo2);
+        assertEquals(Integer.valueOf(72), oximeter.pulseRate);
+    }
+}
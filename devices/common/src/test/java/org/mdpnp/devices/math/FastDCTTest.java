@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.math;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FastDCTTest {
+
+    private static final int[] LENGTHS = { 1, 2, 3, 5, 7, 8, 16, 60, 64, 100, 127, 128, 200, 250, 255, 256, 500, 1000, 1024 };
+
+    private static double[] random(Random random, int n) {
+        double[] d = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = random.nextGaussian() * 100.0;
+        }
+        return d;
+    }
+
+    private static void assertClose(double[] expected, double[] actual) {
+        double scale = 1.0;
+        for (double e : expected) {
+            scale = Math.max(scale, Math.abs(e));
+        }
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("at " + i + " of " + expected.length, expected[i], actual[i], 1e-9 * scale);
+        }
+    }
+
+    @Test
+    public void testDct() {
+        Random random = new Random(0L);
+        for (int n : LENGTHS) {
+            double[] d = random(random, n);
+            assertClose(DCT.dct(d), FastDCT.dct(d));
+        }
+    }
+
+    @Test
+    public void testIdct() {
+        Random random = new Random(1L);
+        for (int n : LENGTHS) {
+            double[] c = random(random, n);
+            assertClose(DCT.idct(c, new double[n]), FastDCT.idct(c, new double[n]));
+            // fewer coefficients than points, as the simulators use
+            int clen = Math.max(1, n / 3);
+            assertClose(DCT.idct(c, 0, clen, new double[n]), FastDCT.idct(c, 0, clen, new double[n]));
+            assertClose(DCT.idct(c, 1, clen - 1, new double[n]), FastDCT.idct(c, 1, clen - 1, new double[n]));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(2L);
+        for (int n : LENGTHS) {
+            double[] d = random(random, n);
+            assertClose(d, FastDCT.idct(FastDCT.dct(d), new double[n]));
+        }
+    }
+
+    @Test
+    public void testMoreCoefficientsThanPoints() {
+        double[] c = random(new Random(3L), 60);
+        assertClose(DCT.idct(c, new double[40]), FastDCT.idct(c, new double[40]));
+    }
+
+    @Test
+    public void testShared() {
+        Assert.assertSame(FastDCT.forLength(300), FastDCT.forLength(300));
+        Assert.assertEquals(300, FastDCT.forLength(300).getLength());
+    }
+}
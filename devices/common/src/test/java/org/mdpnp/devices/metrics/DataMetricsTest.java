@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DataMetricsTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testRate() {
+        StreamMetrics m = new StreamMetrics("DEVICE0", "Numeric");
+        long t0 = 1400000000L * SECOND;
+        Assert.assertEquals(0.0, m.getRate(t0), 0.0);
+
+        // 4Hz for 20 seconds
+        for (int i = 0; i < 80; i++) {
+            m.record(t0 + i * SECOND / 4L, 1000000L);
+        }
+        Assert.assertEquals(80L, m.getCount());
+        Assert.assertEquals(4.0, m.getRate(t0 + 20L * SECOND), 0.0);
+
+        // then 10Hz for 5 seconds, half of the window
+        for (int i = 0; i < 50; i++) {
+            m.record(t0 + 20L * SECOND + i * SECOND / 10L, 1000000L);
+        }
+        Assert.assertEquals(7.0, m.getRate(t0 + 25L * SECOND), 0.0);
+
+        // silence
+        Assert.assertEquals(5.0, m.getRate(t0 + 30L * SECOND), 0.0);
+        Assert.assertEquals(0.0, m.getRate(t0 + 60L * SECOND), 0.0);
+
+        // a stream younger than the window is averaged over its age
+        StreamMetrics young = new StreamMetrics("DEVICE1", "Numeric");
+        for (int i = 0; i < 6; i++) {
+            young.record(t0 + i * SECOND / 2L, 1000000L);
+        }
+        Assert.assertEquals(2.0, young.getRate(t0 + 3L * SECOND), 0.0);
+    }
+
+    @Test
+    public void testStreams() {
+        DataMetrics metrics = new DataMetrics();
+        long now = System.currentTimeMillis() * 1000000L;
+        metrics.get("B", "Numeric").record(now, 2000000L, 4000000L);
+        metrics.get("A", "SampleArray").record(now, 1000000L);
+        metrics.get("A", "Numeric").record(now, 3000000L, 5000000L);
+        Assert.assertSame(metrics.get("A", "Numeric"), metrics.find("A", "Numeric"));
+        Assert.assertNull(metrics.find("C", "Numeric"));
+
+        String[] report = metrics.report(now);
+        Assert.assertEquals(3, report.length);
+        Assert.assertTrue(report[0], report[0].startsWith("A Numeric"));
+        Assert.assertTrue(report[1], report[1].startsWith("A SampleArray") && report[1].endsWith("device -"));
+        Assert.assertTrue(report[2], report[2].startsWith("B Numeric"));
+
+        Assert.assertEquals(1L, metrics.get("A", "Numeric").getDeviceLag().getCount());
+        metrics.reset();
+        Assert.assertEquals(0L, metrics.get("A", "Numeric").getCount());
+
+        metrics.remove("A");
+        Assert.assertEquals(1, metrics.getStreams().size());
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testIndexing() {
+        // contiguous, monotonic and every value within its bucket
+        int last = -1;
+        for (long v = 0L; v < 1000000L; v++) {
+            int i = LatencyHistogram.index(v);
+            Assert.assertTrue(i == last || i == last + 1);
+            Assert.assertTrue(v <= LatencyHistogram.highestEquivalentValue(i));
+            if (i > 0) {
+                Assert.assertTrue(v > LatencyHistogram.highestEquivalentValue(i - 1));
+            }
+            last = i;
+        }
+        Assert.assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(LatencyHistogram.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Random random = new Random(0L);
+        LatencyHistogram h = new LatencyHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // log normal around 5ms with a long tail
+            values[i] = (long) (5e6 * Math.exp(random.nextGaussian()));
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        Assert.assertEquals(values.length, h.getCount());
+        Assert.assertEquals(values[0], h.getMin());
+        Assert.assertEquals(values[values.length - 1], h.getMax());
+        for (double p : new double[] { 1.0, 50.0, 90.0, 99.0, 99.9 }) {
+            long exact = values[(int) Math.ceil(p / 100.0 * values.length) - 1];
+            long estimate = h.getValueAtPercentile(p);
+            Assert.assertTrue(p + "th percentile " + estimate + " below " + exact, estimate >= exact);
+            Assert.assertTrue(p + "th percentile " + estimate + " too far from " + exact, estimate <= exact + exact / 32L + 1000L);
+        }
+        Assert.assertEquals(h.getMax(), h.getValueAtPercentile(100.0));
+        Assert.assertEquals(Arrays.stream(values).average().getAsDouble(), h.getMean(), 1000.0);
+    }
+
+    @Test
+    public void testOutOfRange() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-2000000L);
+        h.record(Long.MAX_VALUE);
+        Assert.assertEquals(2L, h.getCount());
+        Assert.assertEquals(1L, h.getNegativeCount());
+        Assert.assertEquals(-2000000L, h.getMin());
+        Assert.assertEquals(0L, h.getValueAtPercentile(50.0) / 1000L);
+        // latencies beyond the range saturate it
+        Assert.assertEquals(1000L * LatencyHistogram.MAX_VALUE + 999L, h.getValueAtPercentile(100.0));
+
+        LatencyHistogram total = new LatencyHistogram();
+        total.add(h);
+        total.add(h);
+        Assert.assertEquals(4L, total.getCount());
+        h.reset();
+        Assert.assertEquals(0L, h.getCount());
+        Assert.assertEquals(0L, h.getValueAtPercentile(99.0));
+    }
+}
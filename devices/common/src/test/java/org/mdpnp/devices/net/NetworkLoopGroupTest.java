@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NetworkLoopGroupTest {
+
+    private static final int DATAGRAM_SIZE = 1000;
+
+    /**
+     * Receiving end of a simulated monitor, either reading one datagram per
+     * wakeup or draining everything pending into the loop's shared buffers
+     */
+    private static class Monitor implements NetworkConnection {
+        private final boolean batched;
+        private final ByteBuffer single = ByteBuffer.allocateDirect(DATAGRAM_SIZE);
+        private final AtomicInteger received = new AtomicInteger();
+        private final AtomicInteger wakeups = new AtomicInteger();
+        private volatile NetworkLoop networkLoop;
+        private volatile Thread thread;
+
+        Monitor(boolean batched) {
+            this.batched = batched;
+        }
+
+        @Override
+        public void read(SelectionKey sk) throws IOException {
+            DatagramChannel channel = (DatagramChannel) sk.channel();
+            thread = Thread.currentThread();
+            wakeups.incrementAndGet();
+            if (batched) {
+                DatagramBatch batch = networkLoop.getDatagramBatch(DATAGRAM_SIZE);
+                int n = batch.receive(channel);
+                for (int i = 0; i < n; i++) {
+                    Assert.assertEquals(DATAGRAM_SIZE, batch.getBuffer(i).remaining());
+                }
+                received.addAndGet(n);
+            } else {
+                single.clear();
+                if (null != channel.receive(single)) {
+                    received.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void write(SelectionKey sk) throws IOException {
+        }
+
+        @Override
+        public void registered(NetworkLoop networkLoop, SelectionKey sk) {
+            this.networkLoop = networkLoop;
+        }
+
+        @Override
+        public void unregistered(NetworkLoop networkLoop, SelectionKey sk) {
+        }
+    }
+
+    private static DatagramChannel receiver() throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return channel;
+    }
+
+    private static DatagramChannel sender(DatagramChannel receiver) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.connect(receiver.getLocalAddress());
+        return channel;
+    }
+
+    private static void send(DatagramChannel sender, int count) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(DATAGRAM_SIZE);
+        for (int i = 0; i < count; i++) {
+            bb.clear();
+            sender.write(bb);
+        }
+    }
+
+    private static void awaitReceived(Monitor monitor, int count, long timeout) throws InterruptedException {
+        long giveup = System.currentTimeMillis() + timeout;
+        while (monitor.received.get() < count && System.currentTimeMillis() < giveup) {
+            Thread.sleep(1L);
+        }
+    }
+
+    @Test
+    public void testDrainBatch() throws Exception {
+        NetworkLoop loop = new NetworkLoop();
+        Monitor monitor = new Monitor(true);
+        try (DatagramChannel r = receiver(); DatagramChannel s = sender(r)) {
+            loop.register(monitor, r);
+            // queued up before the loop is running so the first wakeup sees them all
+            send(s, 10);
+            Thread.sleep(100L);
+            Thread t = new Thread(loop, "NetworkLoop");
+            t.setDaemon(true);
+            t.start();
+            awaitReceived(monitor, 10, 5000L);
+            loop.cancelThreadAndWait();
+        }
+        Assert.assertEquals(10, monitor.received.get());
+        Assert.assertEquals(1, monitor.wakeups.get());
+    }
+
+    @Test
+    public void testAffinity() throws Exception {
+        NetworkLoopGroup group = new NetworkLoopGroup(3);
+        group.start();
+        Monitor[] monitors = new Monitor[6];
+        DatagramChannel[] channels = new DatagramChannel[monitors.length * 2];
+        SelectionKey[] keys = new SelectionKey[channels.length];
+        try {
+            for (int i = 0; i < monitors.length; i++) {
+                monitors[i] = new Monitor(true);
+                // a connection with two channels stays on one loop
+                for (int j = 0; j < 2; j++) {
+                    channels[2 * i + j] = receiver();
+                    keys[2 * i + j] = group.register(monitors[i], channels[2 * i + j]);
+                }
+                Assert.assertSame(keys[2 * i].selector(), keys[2 * i + 1].selector());
+            }
+            for (int shard = 0; shard < group.getShardCount(); shard++) {
+                Assert.assertEquals(2, group.getConnectionCount(shard));
+            }
+
+            for (int i = 0; i < channels.length; i++) {
+                try (DatagramChannel s = sender(channels[i])) {
+                    send(s, 1);
+                }
+            }
+            for (int i = 0; i < monitors.length; i++) {
+                awaitReceived(monitors[i], 2, 5000L);
+                Assert.assertEquals(2, monitors[i].received.get());
+                Assert.assertSame(group.loopFor(monitors[i]), monitors[i].networkLoop);
+            }
+
+            // the binding outlives the first channel but not the last
+            NetworkLoop loop = group.loopFor(monitors[0]);
+            group.unregister(keys[0], monitors[0]);
+            Assert.assertSame(loop, group.loopFor(monitors[0]));
+            group.unregister(keys[1], monitors[0]);
+            int total = 0;
+            for (int shard = 0; shard < group.getShardCount(); shard++) {
+                total += group.getConnectionCount(shard);
+            }
+            Assert.assertEquals(5, total);
+        } finally {
+            group.cancelThreadAndWait();
+            for (DatagramChannel c : channels) {
+                if (null != c) {
+                    c.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        NetworkLoopGroup group = new NetworkLoopGroup(2);
+        group.start();
+        Monitor monitor = new Monitor(true);
+        try (DatagramChannel first = receiver(); DatagramChannel second = receiver()) {
+            NetworkLoop loop = group.bind(monitor);
+            // reconnecting leaves no channels registered for a moment
+            group.unregister(group.register(monitor, first), monitor);
+            // but another connection must not take the bound loop's place
+            Monitor other = new Monitor(true);
+            Assert.assertNotSame(loop, group.loopFor(other));
+            // looking it up doesn't bind it
+            Assert.assertEquals(1, group.getConnectionCount(0) + group.getConnectionCount(1));
+            SelectionKey key = group.register(monitor, second);
+            Assert.assertSame(loop, monitor.networkLoop);
+            group.unregister(key, monitor);
+            Assert.assertSame(loop, group.loopFor(monitor));
+            group.unbind(monitor);
+            Assert.assertEquals(0, group.getConnectionCount(0) + group.getConnectionCount(1));
+        } finally {
+            group.cancelThreadAndWait();
+        }
+    }
+}
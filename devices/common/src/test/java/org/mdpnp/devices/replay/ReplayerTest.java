@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.archive.WaveformArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReplayerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayerTest.class);
+
+    private static class ListSource implements ReplaySource {
+        private final Iterator<ReplayRecord> itr;
+
+        ListSource(List<ReplayRecord> records) {
+            itr = records.iterator();
+        }
+
+        @Override
+        public ReplayRecord next() {
+            return itr.hasNext() ? itr.next() : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class Capture implements Replayer.Sink {
+        final List<ReplayRecord> records = new ArrayList<ReplayRecord>();
+        final List<Long> replayTimes = new ArrayList<Long>();
+        final List<Long> wallNanos = new ArrayList<Long>();
+
+        @Override
+        public void publish(ReplayRecord record, long replayTime) {
+            records.add(record);
+            replayTimes.add(replayTime);
+            wallNanos.add(System.nanoTime());
+        }
+    }
+
+    private static List<ReplayRecord> numerics(String udi, long t0, long interval, int count) {
+        List<ReplayRecord> l = new ArrayList<ReplayRecord>();
+        for (int i = 0; i < count; i++) {
+            l.add(new ReplayRecord(udi, "MDC_PULS_OXIM_SAT_O2", 0, t0 + i * interval, i));
+        }
+        return l;
+    }
+
+    @Test
+    public void testSpacingAtSpeed() throws Exception {
+        // 2 seconds of recording every 40ms replayed at 4x should take about 500ms
+        Capture capture = new Capture();
+        Replayer replayer = new Replayer(new ListSource(numerics("A", 1000000L, 40L, 51)), capture);
+        replayer.setSpeed(4.0);
+        long start = System.nanoTime();
+        Assert.assertEquals(51L, replayer.replay());
+        double elapsedMs = (System.nanoTime() - start) / 1000000.0;
+        log.info("4x replay " + replayer.getStatistics());
+
+        Assert.assertEquals(500.0, elapsedMs, 100.0);
+        for (int i = 1; i < capture.records.size(); i++) {
+            Assert.assertEquals("replay timeline spacing", 10L, capture.replayTimes.get(i) - capture.replayTimes.get(i - 1), 1L);
+        }
+        // the schedule is absolute so lateness does not accumulate
+        double lastWallMs = (capture.wallNanos.get(50) - capture.wallNanos.get(0)) / 1000000.0;
+        Assert.assertEquals(500.0, lastWallMs, 20.0);
+        Assert.assertTrue(replayer.getStatistics().getMeanDriftMicros() < 10000.0);
+        Assert.assertEquals(25.0 * 4, replayer.getStatistics().getPublishRate(), 20.0);
+    }
+
+    @Test
+    public void testMaxSpeed() throws Exception {
+        final int n = 200000;
+        Capture capture = new Capture();
+        Replayer replayer = new Replayer(new ListSource(numerics("A", 0L, 1000L, n)), capture);
+        replayer.setSpeed(Replayer.MAX_SPEED);
+        Assert.assertEquals(n, replayer.replay());
+        log.info("max speed replay " + replayer.getStatistics());
+        Assert.assertEquals(n, capture.records.size());
+        // more than two days of once a second numerics can not have been paced
+        Assert.assertTrue(replayer.getStatistics().getPublishRate() > 10000.0);
+        Assert.assertEquals(n - 1, capture.records.get(n - 1).getValue(), 0f);
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        final Replayer replayer = new Replayer(new ListSource(numerics("A", 0L, 1000L, 100)), new Capture());
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replayer.replay();
+                } catch (Exception e) {
+                    log.error("replay failed", e);
+                }
+            }
+        });
+        t.start();
+        Thread.sleep(1500L);
+        replayer.stop();
+        t.join(1000L);
+        Assert.assertFalse(t.isAlive());
+        Assert.assertEquals(2L, replayer.getStatistics().getPublished());
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        MergedReplaySource merged = new MergedReplaySource(new ListSource(numerics("A", 0L, 3L, 100)),
+                new ListSource(numerics("B", 1L, 5L, 60)), new ListSource(new ArrayList<ReplayRecord>()));
+        long last = Long.MIN_VALUE;
+        int a = 0, b = 0;
+        ReplayRecord r;
+        while (null != (r = merged.next())) {
+            Assert.assertTrue(r.getTime() >= last);
+            last = r.getTime();
+            if ("A".equals(r.getUniqueDeviceIdentifier())) {
+                Assert.assertEquals(a++, r.getValue(), 0f);
+            } else {
+                Assert.assertEquals(b++, r.getValue(), 0f);
+            }
+        }
+        Assert.assertEquals(100, a);
+        Assert.assertEquals(60, b);
+        merged.close();
+    }
+
+    @Test
+    public void testArchiveSource() throws Exception {
+        File root = File.createTempFile("ReplayerTest-", "");
+        root.delete();
+        root.mkdirs();
+        try (WaveformArchive archive = new WaveformArchive(root)) {
+            long t0 = System.currentTimeMillis();
+            WaveformArchive.Key ecg = new WaveformArchive.Key("A", "MDC_ECG_LEAD_II", 0, 500);
+            WaveformArchive.Key pleth = new WaveformArchive.Key("B", "MDC_PULS_OXIM_PLETH", 0, 100);
+            // 20s of ECG with a 2s hole in the middle, published 50 samples at a time
+            float[] block = new float[50];
+            for (int i = 0; i < 10000; i += 50) {
+                if (i >= 5000 && i < 6000) {
+                    continue;
+                }
+                for (int j = 0; j < 50; j++) {
+                    block[j] = i + j;
+                }
+                archive.append(ecg, "ECG II", "MDC_DIM_MILLI_VOLT", t0 + i * 2L, block, 0, 50);
+            }
+            for (int i = 0; i < 2000; i += 50) {
+                for (int j = 0; j < 50; j++) {
+                    block[j] = i + j;
+                }
+                archive.append(pleth, t0 + i * 10L, block, 0, 50);
+            }
+
+            ArchiveReplaySource source = new ArchiveReplaySource(archive);
+            int ecgSamples = 0, plethSamples = 0;
+            float ecgNext = 0f;
+            long last = Long.MIN_VALUE;
+            ReplayRecord r;
+            while (null != (r = source.next())) {
+                Assert.assertTrue(r.isSampleArray());
+                Assert.assertTrue("records out of order", r.getTime() >= last);
+                last = r.getTime();
+                float[] v = r.getValues();
+                if ("A".equals(r.getUniqueDeviceIdentifier())) {
+                    Assert.assertEquals(500, r.getFrequency());
+                    Assert.assertEquals("ECG II", r.getVendorMetricId());
+                    Assert.assertEquals("MDC_DIM_MILLI_VOLT", r.getUnitId());
+                    Assert.assertEquals("250ms blocks", 125, v.length);
+                    if (ecgNext == 5000f) {
+                        ecgNext = 6000f;
+                    }
+                    Assert.assertEquals(ecgNext, v[0], 0f);
+                    // time of a block is the end of its last sample
+                    Assert.assertEquals(t0 + (long) (v[0] + v.length) * 2L, r.getTime());
+                    ecgNext = v[v.length - 1] + 1f;
+                    ecgSamples += v.length;
+                } else {
+                    Assert.assertEquals(100, r.getFrequency());
+                    Assert.assertEquals(25, v.length);
+                    Assert.assertNull(r.getUnitId());
+                    plethSamples += v.length;
+                }
+            }
+            source.close();
+            Assert.assertEquals(9000, ecgSamples);
+            Assert.assertEquals(2000, plethSamples);
+
+            // a range that starts and ends mid block
+            source = new ArchiveReplaySource(archive, t0 + 101L, t0 + 1001L, 100L);
+            int n = 0;
+            while (null != (r = source.next())) {
+                if ("A".equals(r.getUniqueDeviceIdentifier())) {
+                    n += r.size();
+                }
+            }
+            source.close();
+            Assert.assertEquals(450, n);
+        } finally {
+            for (File f : root.listFiles()) {
+                for (File g : f.listFiles()) {
+                    g.delete();
+                }
+                f.delete();
+            }
+            root.delete();
+        }
+    }
+
+    @Test
+    public void testJdbcSource() throws SQLException, IOException {
+        Connection conn = DriverManager.getConnection("jdbc:hsqldb:mem:replay", "sa", "");
+        try {
+            conn.createStatement().execute("CREATE TABLE VITAL_VALUES (DEVICE_ID VARCHAR(25), METRIC_ID VARCHAR(25), "
+                    + "INSTANCE_ID INTEGER, TIME_TICK TIMESTAMP, PATIENT_ID VARCHAR(25), VITAL_VALUE DOUBLE)");
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO VITAL_VALUES VALUES(?,?,?,?,?,?)");
+            // inserted out of order on purpose
+            for (int i = 9; i >= 0; i--) {
+                insert.setString(1, i % 2 == 0 ? "A" : "B");
+                insert.setString(2, "MDC_PULS_OXIM_PULS_RATE");
+                insert.setInt(3, 0);
+                insert.setTimestamp(4, new Timestamp(1000000L + i * 1000L));
+                insert.setString(5, "");
+                insert.setDouble(6, 60.0 + i);
+                insert.executeUpdate();
+            }
+
+            JdbcReplaySource source = new JdbcReplaySource(conn);
+            ReplayRecord r;
+            int i = 0;
+            while (null != (r = source.next())) {
+                Assert.assertFalse(r.isSampleArray());
+                Assert.assertEquals(1000000L + i * 1000L, r.getTime());
+                Assert.assertEquals(60f + i, r.getValue(), 0f);
+                Assert.assertEquals(i % 2 == 0 ? "A" : "B", r.getUniqueDeviceIdentifier());
+                // recorded before the unit was kept
+                Assert.assertNull(r.getUnitId());
+                i++;
+            }
+            source.close();
+            Assert.assertEquals(10, i);
+
+            source = new JdbcReplaySource(conn, 1002000L, 1005000L);
+            i = 0;
+            while (null != (r = source.next())) {
+                Assert.assertEquals(1002000L + i * 1000L, r.getTime());
+                i++;
+            }
+            source.close();
+            Assert.assertEquals(3, i);
+        } finally {
+            conn.createStatement().execute("SHUTDOWN");
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testJdbcSourceUnits() throws SQLException, IOException {
+        Connection conn = DriverManager.getConnection("jdbc:hsqldb:mem:replayunits", "sa", "");
+        try {
+            conn.createStatement().execute("CREATE TABLE VITAL_VALUES (DEVICE_ID VARCHAR(25), METRIC_ID VARCHAR(25), "
+                    + "INSTANCE_ID INTEGER, TIME_TICK TIMESTAMP, PATIENT_ID VARCHAR(25), VITAL_VALUE DOUBLE, "
+                    + "VENDOR_METRIC_ID VARCHAR(64), UNIT_ID VARCHAR(25))");
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO VITAL_VALUES VALUES(?,?,?,?,?,?,?,?)");
+            insert.setString(1, "A");
+            insert.setString(2, "MDC_PULS_OXIM_PULS_RATE");
+            insert.setInt(3, 0);
+            insert.setTimestamp(4, new Timestamp(1000000L));
+            insert.setString(5, "");
+            insert.setDouble(6, 60.0);
+            insert.setString(7, "PLETH PR");
+            insert.setString(8, "MDC_DIM_BEAT_PER_MIN");
+            insert.executeUpdate();
+
+            JdbcReplaySource source = new JdbcReplaySource(conn);
+            ReplayRecord r = source.next();
+            Assert.assertEquals("PLETH PR", r.getVendorMetricId());
+            Assert.assertEquals("MDC_DIM_BEAT_PER_MIN", r.getUnitId());
+            Assert.assertEquals(60f, r.getValue(), 0f);
+            Assert.assertNull(source.next());
+            source.close();
+        } finally {
+            conn.createStatement().execute("SHUTDOWN");
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testJdbcSourceSkipsWaveforms() throws SQLException, IOException {
+        Connection conn = DriverManager.getConnection("jdbc:hsqldb:mem:replaywaveforms", "sa", "");
+        try {
+            conn.createStatement().execute("CREATE TABLE VITAL_VALUES (DEVICE_ID VARCHAR(25), METRIC_ID VARCHAR(25), "
+                    + "INSTANCE_ID INTEGER, TIME_TICK TIMESTAMP, PATIENT_ID VARCHAR(25), VITAL_VALUE DOUBLE, "
+                    + "VENDOR_METRIC_ID VARCHAR(64), UNIT_ID VARCHAR(25), FREQUENCY INTEGER)");
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO VITAL_VALUES VALUES(?,?,?,?,?,?,?,?,?)");
+            // a numeric each second among the samples of a 50Hz waveform
+            for (int i = 0; i < 200; i++) {
+                boolean numeric = i % 50 == 0;
+                insert.setString(1, "A");
+                insert.setString(2, numeric ? "MDC_PULS_OXIM_PULS_RATE" : "MDC_PULS_OXIM_PLETH");
+                insert.setInt(3, 0);
+                insert.setTimestamp(4, new Timestamp(1000000L + i * 20L));
+                insert.setString(5, "");
+                insert.setDouble(6, numeric ? 60.0 : i);
+                insert.setString(7, "");
+                insert.setString(8, "");
+                if (numeric) {
+                    insert.setNull(9, Types.INTEGER);
+                } else {
+                    insert.setInt(9, 50);
+                }
+                insert.executeUpdate();
+            }
+
+            JdbcReplaySource source = new JdbcReplaySource(conn);
+            ReplayRecord r;
+            int i = 0;
+            while (null != (r = source.next())) {
+                Assert.assertEquals("MDC_PULS_OXIM_PULS_RATE", r.getMetricId());
+                Assert.assertEquals(1000000L + i * 1000L, r.getTime());
+                i++;
+            }
+            source.close();
+            Assert.assertEquals(4, i);
+
+            source = new JdbcReplaySource(conn, 1001000L, 1003000L);
+            i = 0;
+            while (null != (r = source.next())) {
+                Assert.assertEquals(60f, r.getValue(), 0f);
+                i++;
+            }
+            source.close();
+            Assert.assertEquals(2, i);
+        } finally {
+            conn.createStatement().execute("SHUTDOWN");
+            conn.close();
+        }
+    }
+}
@@ -174,6 +174,10 @@ public class BioPatch {
                     if(buffer.remaining()>=(bytes+2)) {
                         consume(buffer, messageId, bytes);
                         buffer.mark();
+                    } else {
+                        // The rest of this frame is yet to arrive; scanning on into
+                        // its payload for another STX would lose it
+                        return;
                     }
                     break;
                     
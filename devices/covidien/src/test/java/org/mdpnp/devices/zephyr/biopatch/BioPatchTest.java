@@ -4,8 +4,16 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mdpnp.devices.DeviceClock;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 
 /**
  *
@@ -34,4 +42,50 @@ public class BioPatchTest {
         Assert.assertEquals("Bad day",    10, cal.get(Calendar.HOUR_OF_DAY));
         Assert.assertEquals("Bad day",    17, cal.get(Calendar.MINUTE));
     }
+
+    @Test
+    public void testFrameSplitAcrossReads() throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(15).order(ByteOrder.LITTLE_ENDIAN);
+        // 2ms into the day puts STX, 0, 0 in the timestamp, which reads as an empty frame
+        payload.put((byte) 1).putShort((short) 2015).put((byte) 10).put((byte) 13).putInt(2);
+        payload.putShort((short) 72).putShort((short) 145).putShort((short) 345);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        new BioPatch(new DeviceClock.WallClock(), new ByteArrayInputStream(new byte[0]), frame).send(BioPatch.GENERAL_DATA_PACKET,
+                payload.array(), 0, payload.capacity());
+        final byte[] bytes = frame.toByteArray();
+
+        // the first read ends inside the payload, after the STX in the timestamp
+        InputStream in = new InputStream() {
+            private final int[] reads = { 14, bytes.length };
+            private int pos, read;
+
+            @Override
+            public int read() throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (pos == bytes.length) {
+                    return -1;
+                }
+                int n = Math.min(len, Math.min(reads[read++], bytes.length) - pos);
+                System.arraycopy(bytes, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+        };
+
+        final List<Integer> heartRates = new ArrayList<Integer>();
+        BioPatch bioPatch = new BioPatch(new DeviceClock.WallClock(), in, new ByteArrayOutputStream()) {
+            @Override
+            protected void receiveGeneralDataPacket(DeviceClock.Reading timeofday, int sequenceNumber, Integer heartrate,
+                    Float respirationRate, Float skinTemperature) {
+                heartRates.add(heartrate);
+            }
+        };
+        while (bioPatch.receive()) {
+        }
+        Assert.assertEquals(Arrays.asList(72), heartRates);
+    }
 }
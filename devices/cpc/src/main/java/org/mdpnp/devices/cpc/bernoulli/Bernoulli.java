@@ -180,7 +180,32 @@ public class Bernoulli implements ContentHandler, ErrorHandler {
         }
     }
 
+    private final BernoulliParser parser = new BernoulliParser(this);
+
+    /**
+     * Parses the subscription stream until it ends
+     * 
+     * @param is
+     *            the stream from the gateway
+     */
     public void process(InputStream is) {
+        try {
+            parser.parse(is);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the subscription stream with SAX, as {@link #process(InputStream)}
+     * did before {@link BernoulliParser}. Every update is delivered through the
+     * String callbacks and a stream that stops without closing the injected
+     * root element ends in a fatal error.
+     * 
+     * @param is
+     *            the stream from the gateway
+     */
+    public void processWithSAX(InputStream is) {
 
         try {
             // We're going to make this look like a regular XML document by
@@ -262,10 +287,29 @@ public class Bernoulli implements ContentHandler, ErrorHandler {
         measurement(name, value);
     }
 
+    /**
+     * Called instead of {@link #setting(String, String)} when the value parses
+     * as a number. The default implementation calls it anyway with the text
+     * exactly as the gateway sent it.
+     */
+    protected void setting(String name, float value) {
+        setting(name, parser.numberText(value));
+    }
+
     protected void measurement(String name, String value) {
 
     }
 
+    /**
+     * Called instead of {@link #measurement(String, String)} when the value
+     * parses as a number, sparing a subclass that wants the number from
+     * parsing it again. The default implementation calls the String callback
+     * with the text exactly as the gateway sent it.
+     */
+    protected void measurement(String name, float value) {
+        measurement(name, parser.numberText(value));
+    }
+
     protected void measurementGroup(String name, Number[] n, int frequency) {
 
     }
@@ -278,8 +322,20 @@ public class Bernoulli implements ContentHandler, ErrorHandler {
         int pointBytes = Integer.parseInt(values.get("PointBytes"));
         int offset = Integer.parseInt(values.get("Offset"));
         int gain = Integer.parseInt(values.get("Gain"));
+        measurementGroup(name, hertz, wave, wave.length, points, pointBytes, offset, gain);
+    }
+
+    /**
+     * Scales the points of a decoded waveform and passes them on to
+     * {@link #measurementGroup(String, Number[], int)}
+     */
+    protected void measurementGroup(String name, int hertz, byte[] wave, int waveLength, int points, int pointBytes, int offset, int gain) {
+        if (waveLength < points * pointBytes) {
+            log.warn(name + " has " + waveLength + " bytes for " + points + " points of " + pointBytes + " bytes");
+            return;
+        }
         Number[] n = new Number[points];
-        ByteBuffer bb = ByteBuffer.wrap(wave).order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer bb = ByteBuffer.wrap(wave, 0, waveLength).order(ByteOrder.BIG_ENDIAN);
 
         switch (pointBytes) {
         case 1:
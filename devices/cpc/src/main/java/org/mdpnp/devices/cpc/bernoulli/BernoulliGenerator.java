@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.cpc.bernoulli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.mdpnp.devices.io.util.Base64;
+
+/**
+ * Generates the subscription stream of a Bernoulli gateway fronting a number of beds. Every
+ * second each bed sends one &lt;cpc&gt; update with its status, location, {@link #SETTINGS}
+ * settings, {@link #NUMERICS} numerics and {@link #WAVEFORMS} waveforms (ECG at 250Hz in two byte
+ * points and pleth at 125Hz in one byte points).  For throughput tests of {@link Bernoulli}.
+ */
+public class BernoulliGenerator {
+    public static final int SETTINGS = 2, NUMERICS = 8, WAVEFORMS = 2;
+
+    private final int beds;
+    private int seq;
+
+    public BernoulliGenerator(int beds) {
+        this.beds = beds;
+    }
+
+    public int getBeds() {
+        return beds;
+    }
+
+    private static String wave(int points, int pointBytes, int phase) {
+        ByteBuffer bb = ByteBuffer.allocate(points * pointBytes);
+        for (int i = 0; i < points; i++) {
+            int v = (int) ((1 << (8 * pointBytes - 1)) * (1.0 + 0.9 * Math.sin(2.0 * Math.PI * (i + phase) / points)));
+            if (2 == pointBytes) {
+                bb.putShort((short) v);
+            } else {
+                bb.put((byte) v);
+            }
+        }
+        return Base64.encodeToString(bb.array(), false);
+    }
+
+    private static void waveform(StringBuilder sb, String name, int hertz, int pointBytes, int phase) {
+        sb.append("<mg name=\"").append(name).append("\">");
+        sb.append("<m name=\"Hz\">").append(hertz).append("</m>");
+        sb.append("<m name=\"Points\">").append(hertz).append("</m>");
+        sb.append("<m name=\"PointBytes\">").append(pointBytes).append("</m>");
+        sb.append("<m name=\"Offset\">0</m><m name=\"Gain\">1</m>");
+        sb.append("<m name=\"Wave\">").append(wave(hertz, pointBytes, phase)).append("</m>");
+        sb.append("</mg>");
+    }
+
+    /**
+     * Appends the update of one bed for the given second
+     */
+    public void update(StringBuilder sb, int bed, int second) {
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+        sb.append("<cpc seq=\"").append(seq++).append("\" datetime=\"2014-06-01 12:").append(String.format("%02d:%02d", (second / 60) % 60, second % 60))
+                .append("\" version=\"4.0\" type=\"PDS\">");
+        sb.append("<device bid=\"BED_").append(bed).append("\" make=\"Philips\" model=\"MP70\" seq=\"").append(second).append("\">");
+        sb.append("<status>UP</status><location>ICU ").append(bed).append("</location>");
+        sb.append("<settings><s name=\"HR_ECG_MODE\">1</s><s name=\"RR_APNEA\">20</s></settings>");
+        sb.append("<measurements>");
+        sb.append("<m name=\"HR\">").append(60 + (second + bed) % 30).append("</m>");
+        sb.append("<m name=\"SPO2\">").append(95 + (second + bed) % 5).append("</m>");
+        sb.append("<m name=\"RR\">").append(12 + (second + bed) % 8).append("</m>");
+        sb.append("<m name=\"ETCO2\">").append(35 + (second + bed) % 6).append("</m>");
+        sb.append("<m name=\"NIBP_SYS\">120</m><m name=\"NIBP_DIAS\">80</m><m name=\"NIBP_MEAN\">93</m>");
+        sb.append("<m name=\"T1\">").append(36 + (second + bed) % 3).append('.').append(second % 10).append("</m>");
+        waveform(sb, "ECG", 250, 2, second * 250);
+        waveform(sb, "PLETH", 125, 1, second * 125);
+        sb.append("</measurements>");
+        sb.append("</device></cpc>");
+    }
+
+    /**
+     * Writes the updates of every bed for the given number of seconds
+     */
+    public void write(OutputStream out, int seconds) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < seconds; s++) {
+            for (int b = 0; b < beds; b++) {
+                sb.setLength(0);
+                update(sb, b, s);
+                out.write(sb.toString().getBytes("UTF-8"));
+            }
+        }
+    }
+
+    /**
+     * @return the updates of the given number of beds for the given number of seconds
+     */
+    public static byte[] capture(int beds, int seconds) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BernoulliGenerator(beds).write(out, seconds);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,707 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.cpc.bernoulli;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pull parser for the subscription stream of a Bernoulli gateway.
+ * <p>
+ * The gateway sends one &lt;cpc&gt; document after another, each with its own XML declaration, so
+ * the stream as a whole is not well formed. Rather than disguise it as a document for SAX this
+ * parser walks the bytes itself. Element and attribute names are matched straight from the input
+ * against {@link Element} and {@link Attribute}; measurement names, device identifiers, status and
+ * location are interned in a {@link StringTable}; text and waveforms are collected in reused
+ * buffers and numbers are parsed from the bytes. Results are delivered through the callbacks of
+ * {@link Bernoulli}.
+ * <p>
+ * Only the markup the gateway produces is handled: elements, attributes, character and the
+ * predefined entity references, CDATA, comments and processing instructions. Anything else is
+ * skipped to the next '&gt;'.
+ */
+class BernoulliParser {
+    private static final Logger log = LoggerFactory.getLogger(BernoulliParser.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    enum Element {
+        CPCS("cpcs"), CPC("cpc"), DEVICE("device"), STATUS("status"), LOCATION("location"), SETTINGS("settings"), S("s"),
+        MEASUREMENTS("measurements"), M("m"), MG("mg"), ALARMS("alarms"), UNKNOWN(null);
+
+        private final byte[] name;
+
+        private Element(String name) {
+            this.name = null == name ? null : name.getBytes(UTF8);
+        }
+
+        // values() copies the array on every call
+        private static final Element[] elements = values();
+
+        static Element forName(byte[] b, int length) {
+            for (Element e : elements) {
+                if (null != e.name && BernoulliParser.equals(e.name, b, length)) {
+                    return e;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
+    enum Attribute {
+        BID("bid"), MAKE("make"), MODEL("model"), NAME("name"), UNKNOWN(null);
+
+        private final byte[] name;
+
+        private Attribute(String name) {
+            this.name = null == name ? null : name.getBytes(UTF8);
+        }
+
+        private static final Attribute[] attributes = values();
+
+        static Attribute forName(byte[] b, int length) {
+            for (Attribute a : attributes) {
+                if (null != a.name && BernoulliParser.equals(a.name, b, length)) {
+                    return a;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
+    private static boolean equals(byte[] name, byte[] b, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Maps byte sequences to interned Strings without decoding them on a hit. Bounded so that a
+     * stream of distinct values (e.g. free text) cannot grow it without limit.
+     */
+    static final class StringTable {
+        private final byte[][] keys;
+        private final String[] values;
+        private final int mask;
+        private int size;
+
+        StringTable(int capacity) {
+            keys = new byte[capacity][];
+            values = new String[capacity];
+            mask = capacity - 1;
+        }
+
+        String get(byte[] b, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + b[i];
+            }
+            hash ^= hash >>> 16;
+            for (int i = hash & mask;; i = (i + 1) & mask) {
+                byte[] key = keys[i];
+                if (null == key) {
+                    String s = new String(b, 0, length, UTF8).intern();
+                    // Keep the table at most half full so probes stay short
+                    if (2 * size < keys.length) {
+                        keys[i] = Arrays.copyOf(b, length);
+                        values[i] = s;
+                        size++;
+                    }
+                    return s;
+                } else if (BernoulliParser.equals(key, b, length)) {
+                    return values[i];
+                }
+            }
+        }
+    }
+
+    private static final int[] BASE64 = new int[256];
+    static {
+        Arrays.fill(BASE64, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private static final double[] POW10 = new double[19];
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10.0;
+        }
+    }
+
+    // Measurements within a waveform measurement group
+    private static final int HZ = 1, POINTS = 2, POINT_BYTES = 4, OFFSET = 8, GAIN = 16, WAVE = 32, ALL = 63;
+
+    private final Bernoulli bernoulli;
+    private final StringTable strings = new StringTable(1024);
+
+    private InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position, limit;
+
+    private byte[] name = new byte[64];
+    private int nameLength;
+    private byte[] value = new byte[256];
+    private int valueLength;
+    private byte[] text = new byte[4096];
+    private int textLength;
+    private byte[] wave = new byte[1024];
+    private int waveLength;
+
+    // The element whose text is being collected
+    private Element textElement;
+    private String bid, make, model, attributeName;
+    private String setting, measurement, measurementGroup;
+    private int hertz, points, pointBytes, offset, gain, present;
+    /** true while a parsed number is being delivered from the text buffer */
+    private boolean number;
+
+    BernoulliParser(Bernoulli bernoulli) {
+        this.bernoulli = bernoulli;
+    }
+
+    private String text() {
+        return new String(text, 0, textLength, UTF8);
+    }
+
+    /**
+     * @return the text of the number being delivered, as the gateway sent it (e.g. "0.50" or
+     *         "05"), or Float.toString(value) when the value did not come from this parser
+     */
+    String numberText(float value) {
+        return number ? text() : Float.toString(value);
+    }
+
+    /**
+     * Parses until the end of the stream
+     */
+    void parse(InputStream in) throws IOException {
+        this.in = in;
+        position = limit = 0;
+        textElement = null;
+        setting = measurement = measurementGroup = null;
+        try {
+            int b;
+            while ((b = read()) >= 0) {
+                if ('<' == b) {
+                    markup();
+                } else if (null != textElement) {
+                    if ('&' == b) {
+                        reference();
+                    } else {
+                        append(b);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            log.debug("Stream ended within markup");
+        } finally {
+            this.in = null;
+        }
+    }
+
+    private int read() throws IOException {
+        while (position == limit) {
+            position = 0;
+            limit = in.read(buffer, 0, buffer.length);
+            if (limit < 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return 0xFF & buffer[position++];
+    }
+
+    private int readRequired() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return ' ' == b || '\t' == b || '\r' == b || '\n' == b;
+    }
+
+    private void append(int b) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, 2 * text.length);
+        }
+        text[textLength++] = (byte) b;
+    }
+
+    private void appendValue(int b) {
+        if (valueLength == value.length) {
+            value = Arrays.copyOf(value, 2 * value.length);
+        }
+        value[valueLength++] = (byte) b;
+    }
+
+    private void appendName(int b) {
+        if (nameLength == name.length) {
+            name = Arrays.copyOf(name, 2 * name.length);
+        }
+        name[nameLength++] = (byte) b;
+    }
+
+    /**
+     * Reads a name whose first byte has been read and returns the byte that ended it
+     */
+    private int name(int b) throws IOException {
+        nameLength = 0;
+        while (!isWhitespace(b) && '>' != b && '/' != b && '=' != b) {
+            appendName(b);
+            b = readRequired();
+        }
+        return b;
+    }
+
+    private int skipWhitespace(int b) throws IOException {
+        while (isWhitespace(b)) {
+            b = readRequired();
+        }
+        return b;
+    }
+
+    /**
+     * Consumes a character or entity reference following '&amp;' and appends its UTF-8 encoding
+     * to the text being collected (or to the attribute value)
+     */
+    private int decodeReference() throws IOException {
+        nameLength = 0;
+        int b;
+        while (';' != (b = readRequired())) {
+            appendName(b);
+            if (nameLength > 8) {
+                return -1;
+            }
+        }
+        if (nameLength > 1 && '#' == name[0]) {
+            int codePoint = 0;
+            boolean hex = 'x' == name[1] || 'X' == name[1];
+            for (int i = hex ? 2 : 1; i < nameLength; i++) {
+                int digit = Character.digit(name[i], hex ? 16 : 10);
+                if (digit < 0) {
+                    return -1;
+                }
+                codePoint = codePoint * (hex ? 16 : 10) + digit;
+            }
+            return codePoint;
+        } else if (2 == nameLength && 'l' == name[0] && 't' == name[1]) {
+            return '<';
+        } else if (2 == nameLength && 'g' == name[0] && 't' == name[1]) {
+            return '>';
+        } else if (3 == nameLength && 'a' == name[0] && 'm' == name[1] && 'p' == name[2]) {
+            return '&';
+        } else if (4 == nameLength && 'q' == name[0] && 'u' == name[1] && 'o' == name[2] && 't' == name[3]) {
+            return '"';
+        } else if (4 == nameLength && 'a' == name[0] && 'p' == name[1] && 'o' == name[2] && 's' == name[3]) {
+            return '\'';
+        } else {
+            return -1;
+        }
+    }
+
+    private void reference() throws IOException {
+        int codePoint = decodeReference();
+        if (codePoint < 0) {
+            log.debug("Unsupported reference in text");
+            return;
+        }
+        byte[] utf8 = codePoint < 0x80 ? null : new String(Character.toChars(codePoint)).getBytes(UTF8);
+        if (null == utf8) {
+            append(codePoint);
+        } else {
+            for (byte u : utf8) {
+                append(0xFF & u);
+            }
+        }
+    }
+
+    private void markup() throws IOException {
+        int b = readRequired();
+        if ('?' == b) {
+            skipPast('?', '>');
+        } else if ('!' == b) {
+            b = readRequired();
+            if ('-' == b) {
+                readRequired();
+                skipPast('-', '-');
+                while ('>' != readRequired()) {
+                }
+            } else if ('[' == b) {
+                // <![CDATA[ ... ]]>
+                for (int i = 0; i < 6; i++) {
+                    readRequired();
+                }
+                cdata();
+            } else {
+                while ('>' != b) {
+                    b = readRequired();
+                }
+            }
+        } else if ('/' == b) {
+            b = skipWhitespace(name(readRequired()));
+            while ('>' != b) {
+                b = readRequired();
+            }
+            end(Element.forName(name, nameLength));
+        } else {
+            b = name(b);
+            Element element = Element.forName(name, nameLength);
+            bid = make = model = attributeName = null;
+            for (;;) {
+                b = skipWhitespace(b);
+                if ('>' == b) {
+                    start(element);
+                    break;
+                } else if ('/' == b) {
+                    while ('>' != b) {
+                        b = readRequired();
+                    }
+                    start(element);
+                    end(element);
+                    break;
+                } else {
+                    b = skipWhitespace(name(b));
+                    Attribute attribute = Attribute.forName(name, nameLength);
+                    if ('=' != b) {
+                        // Not well formed; give up on this tag
+                        while ('>' != b) {
+                            b = readRequired();
+                        }
+                        break;
+                    }
+                    b = attributeValue(skipWhitespace(readRequired()), attribute);
+                }
+            }
+        }
+    }
+
+    private void skipPast(int first, int second) throws IOException {
+        int prior = readRequired();
+        for (;;) {
+            int b = readRequired();
+            if (first == prior && second == b) {
+                return;
+            }
+            prior = b;
+        }
+    }
+
+    private void cdata() throws IOException {
+        int brackets = 0;
+        for (;;) {
+            int b = readRequired();
+            if (']' == b) {
+                brackets++;
+            } else {
+                if ('>' == b && brackets >= 2) {
+                    brackets -= 2;
+                    b = -1;
+                }
+                if (null != textElement) {
+                    for (; brackets > 0; brackets--) {
+                        append(']');
+                    }
+                }
+                brackets = 0;
+                if (b < 0) {
+                    return;
+                } else if (null != textElement) {
+                    append(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a quoted attribute value and returns the byte that follows it
+     */
+    private int attributeValue(int quote, Attribute attribute) throws IOException {
+        valueLength = 0;
+        int b;
+        while (quote != (b = readRequired())) {
+            if (Attribute.UNKNOWN == attribute) {
+                continue;
+            }
+            if ('&' == b) {
+                int codePoint = decodeReference();
+                if (codePoint >= 0x80) {
+                    for (byte u : new String(Character.toChars(codePoint)).getBytes(UTF8)) {
+                        appendValue(0xFF & u);
+                    }
+                } else if (codePoint >= 0) {
+                    appendValue(codePoint);
+                }
+            } else {
+                appendValue(b);
+            }
+        }
+        switch (attribute) {
+        case BID:
+            bid = strings.get(value, valueLength);
+            break;
+        case MAKE:
+            make = strings.get(value, valueLength);
+            break;
+        case MODEL:
+            model = strings.get(value, valueLength);
+            break;
+        case NAME:
+            attributeName = strings.get(value, valueLength);
+            break;
+        default:
+            break;
+        }
+        return readRequired();
+    }
+
+    private void collect(Element element) {
+        textElement = element;
+        textLength = 0;
+    }
+
+    private void start(Element element) {
+        switch (element) {
+        case DEVICE:
+            bernoulli.device(bid, make, model);
+            break;
+        case S:
+            setting = attributeName;
+            collect(element);
+            break;
+        case M:
+            measurement = attributeName;
+            collect(element);
+            break;
+        case MG:
+            measurementGroup = attributeName;
+            present = 0;
+            break;
+        case STATUS:
+        case LOCATION:
+            collect(element);
+            break;
+        case UNKNOWN:
+            if (log.isDebugEnabled()) {
+                log.debug("Unknown element " + new String(name, 0, nameLength, UTF8));
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void end(Element element) {
+        switch (element) {
+        case S:
+            if (null != setting && textLength > 0) {
+                float f = parseFloat(text, textLength);
+                if (Float.isNaN(f)) {
+                    bernoulli.setting(setting, text());
+                } else {
+                    number = true;
+                    try {
+                        bernoulli.setting(setting, f);
+                    } finally {
+                        number = false;
+                    }
+                }
+            }
+            setting = null;
+            textElement = null;
+            break;
+        case M:
+            if (null != measurement && textLength > 0) {
+                if (null != measurementGroup) {
+                    groupMember(measurement);
+                } else {
+                    float f = parseFloat(text, textLength);
+                    if (Float.isNaN(f)) {
+                        bernoulli.measurement(measurement, text());
+                    } else {
+                        number = true;
+                        try {
+                            bernoulli.measurement(measurement, f);
+                        } finally {
+                            number = false;
+                        }
+                    }
+                }
+            }
+            measurement = null;
+            textElement = null;
+            break;
+        case MG:
+            if (ALL == present) {
+                bernoulli.measurementGroup(measurementGroup, hertz, wave, waveLength, points, pointBytes, offset, gain);
+            } else {
+                log.warn("Incomplete measurement group " + measurementGroup);
+            }
+            measurementGroup = null;
+            break;
+        case STATUS:
+            if (textLength > 0) {
+                bernoulli.status(strings.get(text, textLength));
+            }
+            textElement = null;
+            break;
+        case LOCATION:
+            if (textLength > 0) {
+                bernoulli.location(strings.get(text, textLength));
+            }
+            textElement = null;
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void groupMember(String name) {
+        if ("Wave".equals(name)) {
+            decodeWave();
+            present |= WAVE;
+        } else {
+            int i = parseInt(text, textLength);
+            if (Integer.MIN_VALUE == i) {
+                log.warn("Invalid " + name + " in measurement group " + measurementGroup);
+            } else if ("Hz".equals(name)) {
+                hertz = i;
+                present |= HZ;
+            } else if ("Points".equals(name)) {
+                points = i;
+                present |= POINTS;
+            } else if ("PointBytes".equals(name)) {
+                pointBytes = i;
+                present |= POINT_BYTES;
+            } else if ("Offset".equals(name)) {
+                offset = i;
+                present |= OFFSET;
+            } else if ("Gain".equals(name)) {
+                gain = i;
+                present |= GAIN;
+            }
+        }
+    }
+
+    private void decodeWave() {
+        if (wave.length < textLength) {
+            wave = new byte[textLength];
+        }
+        waveLength = 0;
+        int bits = 0, accumulator = 0;
+        for (int i = 0; i < textLength; i++) {
+            int sextet = BASE64[0xFF & text[i]];
+            // Padding, line breaks and anything else outside the alphabet are skipped
+            if (sextet >= 0) {
+                accumulator = (accumulator << 6) | sextet;
+                bits += 6;
+                if (bits >= 8) {
+                    bits -= 8;
+                    wave[waveLength++] = (byte) (accumulator >> bits);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the value or Integer.MIN_VALUE where the text is not an integer
+     */
+    static int parseInt(byte[] b, int length) {
+        int i = 0;
+        while (i < length && isWhitespace(b[i])) {
+            i++;
+        }
+        while (length > i && isWhitespace(b[length - 1])) {
+            length--;
+        }
+        boolean negative = false;
+        if (i < length && ('-' == b[i] || '+' == b[i])) {
+            negative = '-' == b[i];
+            i++;
+        }
+        if (i == length || length - i > 9) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for (; i < length; i++) {
+            if (b[i] < '0' || b[i] > '9') {
+                return Integer.MIN_VALUE;
+            }
+            value = 10 * value + (b[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses text of the form [+-]digits[.digits], ignoring surrounding whitespace as
+     * {@link Float#parseFloat(String)} does.
+     *
+     * @return the value or {@link Float#NaN} for anything else
+     */
+    static float parseFloat(byte[] b, int length) {
+        int i = 0;
+        while (i < length && isWhitespace(b[i])) {
+            i++;
+        }
+        while (length > i && isWhitespace(b[length - 1])) {
+            length--;
+        }
+        boolean negative = false;
+        if (i < length && ('-' == b[i] || '+' == b[i])) {
+            negative = '-' == b[i];
+            i++;
+        }
+        long mantissa = 0L;
+        int digits = 0, scale = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            if (b[i] >= '0' && b[i] <= '9') {
+                if (++digits >= POW10.length) {
+                    return Float.NaN;
+                }
+                mantissa = 10L * mantissa + (b[i] - '0');
+                if (point) {
+                    scale++;
+                }
+            } else if ('.' == b[i] && !point) {
+                point = true;
+            } else {
+                return Float.NaN;
+            }
+        }
+        if (0 == digits) {
+            return Float.NaN;
+        }
+        // Both operands are exact so the quotient is correctly rounded
+        float value = (float) (mantissa / POW10[scale]);
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.cpc.bernoulli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class BernoulliParserTest {
+
+    private static final Pattern number = Pattern.compile("\\s*[+-]?(\\d+\\.?\\d*|\\.\\d+)\\s*");
+
+    /**
+     * Numbers are compared by value; otherwise by text
+     */
+    private static String value(String s) {
+        return number.matcher(s).matches() ? value(Float.parseFloat(s)) : "'" + s;
+    }
+
+    private static String value(float f) {
+        return "#" + f;
+    }
+
+    private static class Recorder extends Bernoulli {
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void status(String status) {
+            events.add("status " + status);
+        }
+
+        @Override
+        public void location(String location) {
+            events.add("location " + location);
+        }
+
+        @Override
+        protected void device(String bid, String make, String model) {
+            events.add("device " + bid + " " + make + " " + model);
+        }
+
+        @Override
+        protected void setting(String name, String value) {
+            events.add("setting " + name + " " + value(value));
+        }
+
+        @Override
+        protected void setting(String name, float value) {
+            events.add("setting " + name + " " + value(value));
+        }
+
+        @Override
+        protected void measurement(String name, String value) {
+            events.add("measurement " + name + " " + value(value));
+        }
+
+        @Override
+        protected void measurement(String name, float value) {
+            events.add("measurement " + name + " " + value(value));
+        }
+
+        @Override
+        protected void measurementGroup(String name, Number[] n, int frequency) {
+            events.add("group " + name + " " + frequency + " " + Arrays.toString(n));
+        }
+    }
+
+    /**
+     * Overrides only the String callbacks, as SAX-era subclasses do
+     */
+    private static class TextRecorder extends Bernoulli {
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        protected void setting(String name, String value) {
+            events.add("setting " + name + " " + value);
+        }
+
+        @Override
+        protected void measurement(String name, String value) {
+            events.add("measurement " + name + " " + value);
+        }
+    }
+
+    private static List<String> process(byte[] bytes) {
+        Recorder recorder = new Recorder();
+        recorder.process(new ByteArrayInputStream(bytes));
+        return recorder.events;
+    }
+
+    @Test
+    public void testEquivalence() throws IOException {
+        byte[] capture = BernoulliGenerator.capture(4, 15);
+
+        Recorder sax = new Recorder();
+        // SAX needs the root element it is given to be closed to reach the end cleanly
+        ByteArrayOutputStream closed = new ByteArrayOutputStream();
+        closed.write(capture);
+        closed.write("</cpcs>".getBytes("UTF-8"));
+        sax.processWithSAX(new ByteArrayInputStream(closed.toByteArray()));
+
+        Recorder pull = new Recorder();
+        // Deliver the stream in small pieces to exercise refilling the buffer mid-token
+        pull.process(new ByteArrayInputStream(capture) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(7, len));
+            }
+        });
+
+        int updates = 4 * 15;
+        assertEquals(updates * (3 + BernoulliGenerator.SETTINGS + BernoulliGenerator.NUMERICS + BernoulliGenerator.WAVEFORMS), sax.events.size());
+        assertEquals(sax.events.size(), pull.events.size());
+        for (int i = 0; i < sax.events.size(); i++) {
+            assertEquals("event " + i, sax.events.get(i), pull.events.get(i));
+        }
+    }
+
+    @Test
+    public void testTextEquivalence() throws IOException {
+        byte[] capture = BernoulliGenerator.capture(2, 10);
+        ByteArrayOutputStream closed = new ByteArrayOutputStream();
+        closed.write(capture);
+        closed.write("</cpcs>".getBytes("UTF-8"));
+        TextRecorder sax = new TextRecorder();
+        sax.processWithSAX(new ByteArrayInputStream(closed.toByteArray()));
+
+        TextRecorder pull = new TextRecorder();
+        pull.process(new ByteArrayInputStream(capture));
+        assertEquals(2 * 10 * (BernoulliGenerator.SETTINGS + BernoulliGenerator.NUMERICS), sax.events.size());
+        assertEquals(sax.events, pull.events);
+
+        String xml = "<cpc><device><s name=\"FIO2\">0.50</s><m name=\"HR\">072</m><m name=\"T\"> 37 </m></device></cpc>";
+        TextRecorder recorder = new TextRecorder();
+        recorder.process(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        assertEquals(Arrays.asList("setting FIO2 0.50", "measurement HR 072", "measurement T  37 "), recorder.events);
+    }
+
+    @Test
+    public void testMarkup() throws IOException {
+        String xml = "<?xml version=\"1.0\"?>\r\n<!-- a comment with <m> inside -->"
+                + "<cpc seq='1'><device bid=\"A&amp;B\" model='X &quot;1&quot;'><unknown a=\"b\"/>"
+                + "<status><![CDATA[UP]]></status><location>ICU &lt;3&gt; &#233;&#x41;</location>"
+                + "<settings><s name=\"EMPTY\"/><s name=\"MODE\">AUTO</s></settings>"
+                + "<measurements><m name=\"HR\"> 72 </m><m name=\"T\">-0.5</m><m name=\"C\">1e3</m></measurements>"
+                + "</device></cpc><?xml version=\"1.0\"?><cpc><device bid=\"B\"><m name=\"HR\">73";
+        List<String> events = process(xml.getBytes("UTF-8"));
+        assertEquals(Arrays.asList("device A&B null X \"1\"", "status UP", "location ICU <3> éA", "setting MODE 'AUTO", "measurement HR #72.0",
+                "measurement T #-0.5", "measurement C '1e3", "device B null null"), events);
+    }
+
+    @Test
+    public void testInterned() throws IOException {
+        final List<String> locations = new ArrayList<String>();
+        Bernoulli bernoulli = new Bernoulli() {
+            @Override
+            public void location(String location) {
+                locations.add(location);
+            }
+        };
+        bernoulli.process(new ByteArrayInputStream(BernoulliGenerator.capture(2, 2)));
+        assertEquals(4, locations.size());
+        assertSame(locations.get(0), locations.get(2));
+        assertSame("ICU 1", locations.get(1));
+    }
+
+    @Test
+    public void testParseFloat() throws IOException {
+        Random random = new Random(2014);
+        for (int i = 0; i < 20000; i++) {
+            String value = new java.math.BigDecimal(random.nextInt(2000000) - 1000000).movePointLeft(random.nextInt(8)).toPlainString();
+            byte[] b = value.getBytes("ASCII");
+            assertEquals(value, Float.floatToIntBits(Float.parseFloat(value)), Float.floatToIntBits(BernoulliParser.parseFloat(b, b.length)));
+        }
+        byte[] b = "OFF".getBytes("ASCII");
+        assertTrue(Float.isNaN(BernoulliParser.parseFloat(b, b.length)));
+        assertEquals(Integer.MIN_VALUE, BernoulliParser.parseInt(b, b.length));
+        b = " 250\n".getBytes("ASCII");
+        assertEquals(250, BernoulliParser.parseInt(b, b.length));
+    }
+
+    @Test
+    public void testTruncatedWave() throws IOException {
+        String xml = "<cpc><device><mg name=\"ECG\"><m name=\"Hz\">250</m><m name=\"Points\">4</m><m name=\"PointBytes\">2</m>"
+                + "<m name=\"Offset\">1</m><m name=\"Gain\">2</m><m name=\"Wave\">AAEAAgAD</m></mg>"
+                + "<mg name=\"ECG\"><m name=\"Hz\">250</m><m name=\"Points\">3</m><m name=\"PointBytes\">2</m>"
+                + "<m name=\"Offset\">1</m><m name=\"Gain\">2</m><m name=\"Wave\">AAEAAgAD</m></mg></device></cpc>";
+        InputStream in = new ByteArrayInputStream(xml.getBytes("UTF-8"));
+        Recorder recorder = new Recorder();
+        recorder.process(in);
+        // The first group has 6 bytes for 4 points of 2 bytes
+        assertEquals(Arrays.asList("device null null null", "group ECG 250 [3, 5, 7]"), recorder.events);
+    }
+}
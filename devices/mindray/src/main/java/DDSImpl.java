@@ -732,7 +732,11 @@ public class DDSImpl
   }
   
   
-  public final int WriteNumeric(final Numeric numeric)
+  /**
+   * Not final, nor is WritePatientDemographics(), so that tests can record
+   * the samples the parsers publish.
+   */
+  public int WriteNumeric(final Numeric numeric)
   {
     if (_numeric_writer == null)
     {
@@ -755,7 +759,7 @@ public class DDSImpl
   }
   
   
-  public final int WritePatientDemographics(final PatientDemographics pat_demog)
+  public int WritePatientDemographics(final PatientDemographics pat_demog)
   {
     if (_pat_demog_writer == null)
     {
@@ -0,0 +1,476 @@
+/**
+ * @file    HL7FastParser.java
+ *
+ * @brief   Parses the ORU^R01 messages of the Mindray A5 straight from the
+ * received bytes, without building the HAPI message model. The samples
+ * published are those of HL7Parser.ParseORURO1MessageToDDS(). Messages of any
+ * other form are left to HL7Parser.
+ */
+//=============================================================================
+import java.nio.charset.Charset;
+
+import ice.Numeric;
+import ice.PatientDemographics;
+import ice.PatientRace;
+import ice.PatientSex;
+
+
+/**
+ * Fast path for ORU^R01 messages. A message is first checked in full without
+ * publishing anything; only if every segment is understood are the samples
+ * published. Otherwise kFallback is returned and the message should be parsed
+ * with HAPI and HL7Parser, which shares the samples of this parser.
+ */
+public class HL7FastParser
+{
+  public static final int kParsed = 0;
+  public static final int kError = 1;
+  public static final int kFallback = 2;
+
+  private static final Charset kAscii = Charset.forName("US-ASCII");
+
+  // OBX-3 coding systems understood by HL7Parser. Codes of MDC are offset
+  // from their 11073 term codes, those of 99MNDRY are kept as is.
+  private static final byte[][] kCodingSystems = {
+    "MDC".getBytes(kAscii), "99MNDRY".getBytes(kAscii) };
+  private static final int kMDC = 0;
+  private static final int kMindray = 1;
+  private static final int[] kOBX3CodeOffsets = {
+    HL7Parser.kOBX3CodeOffset, 0 };
+  private static final int[] kOBX5CodeOffsets = {
+    HL7Parser.kOBX5CodeOffset, 0 };
+
+  // MDC_EVT_STAT_DEV for some reason requires double offset
+  private static final int kMDCEvtStatDev = 268422;
+
+  // OBX-2 value types understood by HL7Parser
+  private static final byte[][] kValueTypes = {
+    "NM".getBytes(kAscii), "SN".getBytes(kAscii), "CWE".getBytes(kAscii) };
+  private static final int kNM = 0;
+  private static final int kSN = 1;
+  private static final int kCWE = 2;
+
+  private DDSImpl _rti_dds_impl;
+  private String _statusmsg;
+  private final PatientDemographics _pat_demog;
+  private final Numeric _numeric;
+  private final int[] _date_time;
+
+
+  /**
+   * @param hl7_parser Parser for the messages left to HAPI, whose samples are
+   * filled by this parser as well
+   */
+  public HL7FastParser(final HL7Parser hl7_parser)
+  {
+    _rti_dds_impl = null;
+    _pat_demog = hl7_parser.get_pat_demog();
+    _numeric = hl7_parser.get_numeric();
+    _date_time = new int[6];
+  }
+
+
+  /**
+   * Sets DDSImpl.
+   * @param dds_impl DDSImpl to be set
+   * @return Returns zero for success
+   */
+  public final int set_rti_dds_impl(final DDSImpl dds_impl)
+  {
+    if (dds_impl == null)
+    {
+      _statusmsg = "set_rti_dds_impl() dds_impl is null";
+      return 1;
+    }
+    _rti_dds_impl = dds_impl;
+
+    return 0;
+  }
+
+
+  public final String get_statusmsg()
+  {
+    return _statusmsg;
+  }
+
+
+  /**
+   * @param scanner Scanner holding a message
+   * @return Returns true if MSH-9 of the message is ORU^R01
+   */
+  public static boolean IsORUR01(final HL7SegmentScanner scanner)
+  {
+    if (scanner.get_segment_count() == 0 || !scanner.SegmentIs(0, "MSH"))
+      return false;
+
+    scanner.SelectSegment(0);
+    return scanner.Locate(9, 0, 1, 0) && scanner.Equals("ORU")
+      && scanner.Locate(9, 0, 2, 0) && scanner.Equals("R01");
+  }
+
+
+  /**
+   * Parses an ORU^R01 message and publishes its samples.
+   * @param scanner Scanner holding the message
+   * @return Returns kParsed for success, kError where a sample could not be
+   * published and kFallback, having published nothing, where the message is
+   * to be parsed by HL7Parser
+   */
+  public final int ParseORUR01(final HL7SegmentScanner scanner)
+  {
+    int istat = Recognize(scanner);
+    if (istat != kParsed) return istat;
+
+    return Parse(scanner, true);
+  }
+
+
+  /**
+   * Checks and decodes a message without publishing it.
+   * @param scanner Scanner holding the message
+   * @return Returns kParsed if ParseORUR01() would publish the message,
+   * otherwise kFallback
+   */
+  final int Recognize(final HL7SegmentScanner scanner)
+  {
+    return Parse(scanner, false);
+  }
+
+
+  /**
+   * Walks the message as ORU^R01 of HL7 2.6 with one or more patient results,
+   * each a PID, an optional PV1 and one or more OBR followed by their OBX.
+   * Segments HL7Parser reads from HAPI's model in the same order.
+   */
+  private int Parse(final HL7SegmentScanner scanner, final boolean publish)
+  {
+    if (!IsORUR01(scanner)) return kFallback;
+
+    // HL7Parser casts to the ORU_R01 of version 2.6
+    if (!scanner.Locate(12, 0, 1, 0) || !scanner.Equals("2.6"))
+      return kFallback;
+
+    int count = scanner.get_segment_count();
+    int ix = 1;
+    if (ix == count) return kFallback;
+
+    while (ix < count)
+    {
+      if (!scanner.SegmentIs(ix, "PID")) return kFallback;
+
+      int istat = ParsePid(scanner, ix++, publish);
+      if (istat != kParsed) return istat;
+
+      int pv1 = -1;
+      if (ix < count && scanner.SegmentIs(ix, "PV1")) pv1 = ix++;
+
+      istat = ParsePV1(scanner, pv1, publish);
+      if (istat != kParsed) return istat;
+
+      if (ix == count || !scanner.SegmentIs(ix, "OBR")) return kFallback;
+
+      while (ix < count && scanner.SegmentIs(ix, "OBR"))
+      {
+        ix++;
+        while (ix < count && scanner.SegmentIs(ix, "OBX"))
+        {
+          istat = ParseOBX(scanner, ix++, publish);
+          if (istat != kParsed) return istat;
+        }
+      }
+    }
+
+    return kParsed;
+  }
+
+
+  /**
+   * Retrieve data from Patient Identifier (PID) segment.
+   */
+  private int ParsePid(final HL7SegmentScanner scanner, final int segment,
+    final boolean publish)
+  {
+    scanner.SelectSegment(segment);
+
+    // PID-3 CX-1, which HL7Parser copies even where it is empty
+    for (int ix = 0; ix < scanner.get_repetition_count(3); ix++)
+    {
+      if (!scanner.Locate(3, ix, 1, 0) || !scanner.IsPlain())
+        return kFallback;
+      if (publish)
+        _pat_demog.patient_id = scanner.Text(_pat_demog.patient_id);
+    }
+
+    // PID-5 XPN-1 surname and XPN-2 given name
+    for (int ix = 0; ix < scanner.get_repetition_count(5); ix++)
+    {
+      String family_name = null;
+      String given_name = null;
+
+      if (scanner.Locate(5, ix, 1, 1))
+      {
+        if (!scanner.IsPlain()) return kFallback;
+        family_name = scanner.Text(_pat_demog.family_name);
+      }
+
+      if (scanner.Locate(5, ix, 2, 0))
+      {
+        if (!scanner.IsPlain()) return kFallback;
+        given_name = scanner.Text(_pat_demog.given_name);
+      }
+
+      if (publish)
+      {
+        if (family_name != null) _pat_demog.family_name = family_name;
+        if (given_name != null) _pat_demog.given_name = given_name;
+        if (family_name != null && given_name != null
+          && !IsFullName(_pat_demog.name, given_name, family_name))
+            _pat_demog.name = given_name + " " + family_name;
+      }
+    }
+
+    // PID-7
+    scanner.Locate(7, 0, 0, 0);
+    if (!scanner.IsPlain() || !scanner.DateTimeValue(_date_time))
+      return kFallback;
+    if (publish)
+    {
+      _pat_demog.date_of_birth.century =
+        _date_time[0] / HL7Parser.kYearsPerCentury;
+      _pat_demog.date_of_birth.year =
+        _date_time[0] % HL7Parser.kYearsPerCentury;
+      _pat_demog.date_of_birth.month = _date_time[1];
+      _pat_demog.date_of_birth.day = _date_time[2];
+    }
+
+    // PID-8
+    PatientSex sex = PatientSex.sex_unspecified;
+    if (scanner.Locate(8, 0, 0, 0))
+    {
+      if (!scanner.IsPlain()) return kFallback;
+      if (scanner.EqualsIgnoreCase("male") || scanner.EqualsIgnoreCase("m"))
+        sex = PatientSex.male;
+      else if (scanner.EqualsIgnoreCase("female")
+        || scanner.EqualsIgnoreCase("f"))
+          sex = PatientSex.female;
+      else
+        sex = PatientSex.sex_unknown;
+    }
+    if (publish) _pat_demog.sex = sex;
+
+    // PID-10 CWE-2, the last repetition wins
+    PatientRace race = PatientRace.race_unspecified;
+    for (int ix = 0; ix < scanner.get_repetition_count(10); ix++)
+    {
+      if (!scanner.Locate(10, ix, 2, 0) || !scanner.IsPlain())
+        return kFallback;
+
+      if (scanner.EqualsIgnoreCase("caucasian"))
+        race = PatientRace.race_caucasian;
+      else if (scanner.EqualsIgnoreCase("black"))
+        race = PatientRace.race_black;
+      else
+        race = PatientRace.race_oriental;
+    }
+    if (publish) _pat_demog.race = race;
+
+    if (publish) _pat_demog.unique_device_identifier =
+      MindrayA5Reader.kMindrayUDI;
+
+    return kParsed;
+  }
+
+
+  private static boolean IsFullName(final String name,
+    final String given_name, final String family_name)
+  {
+    return name != null
+      && name.length() == given_name.length() + 1 + family_name.length()
+      && name.startsWith(given_name)
+      && name.charAt(given_name.length()) == ' '
+      && name.endsWith(family_name);
+  }
+
+
+  /**
+   * Retrieve data from Patient Visit Information (PV1) segment, which may be
+   * absent, and publish the patient demographics.
+   */
+  private int ParsePV1(final HL7SegmentScanner scanner, final int segment,
+    final boolean publish)
+  {
+    // PV1-3 PL-3
+    if (segment >= 0)
+    {
+      scanner.SelectSegment(segment);
+      if (scanner.Locate(3, 0, 3, 0))
+      {
+        if (!scanner.IsPlain()) return kFallback;
+        if (publish) _pat_demog.bed_id = scanner.Text(_pat_demog.bed_id);
+      }
+    }
+
+    if (publish && _rti_dds_impl.WritePatientDemographics(_pat_demog) != 0)
+    {
+      _statusmsg = _rti_dds_impl.get_statusmsg();
+      return kError;
+    }
+
+    return kParsed;
+  }
+
+
+  private static int MetricName(final int coding_system, final int code)
+  {
+    if (coding_system == kMDC && code == kMDCEvtStatDev)
+      return code - 2 * kOBX3CodeOffsets[kMDC];
+
+    return code - kOBX3CodeOffsets[coding_system];
+  }
+
+
+  /**
+   * Retrieve data from Observation (OBX) segment and publish it.
+   */
+  private int ParseOBX(final HL7SegmentScanner scanner, final int segment,
+    final boolean publish)
+  {
+    scanner.SelectSegment(segment);
+
+    boolean has_name = false;
+    int name = 0;
+    boolean has_value = false;
+    float value = 0;
+    boolean has_unit_code = false;
+    int unit_code = 0;
+
+    try
+    {
+      // OBX-3 CWE-3 and CWE-1
+      int coding_system = -1;
+      if (scanner.Locate(3, 0, 3, 0))
+      {
+        if (!scanner.IsPlain()) return kFallback;
+        coding_system = scanner.IndexIn(kCodingSystems);
+      }
+
+      if (scanner.Locate(3, 0, 1, 0))
+      {
+        int code = scanner.IntValue();
+        if (coding_system >= 0)
+        {
+          name = MetricName(coding_system, code);
+          has_name = true;
+        }
+      }
+
+      // OBX-4, whose last part repeats the code of OBX-3
+      if (scanner.Locate(4, 0, 0, 0))
+      {
+        if (!scanner.IsPlain() || !scanner.SelectAfterLast('.'))
+          return kFallback;
+
+        int code = scanner.IntValue();
+        if (coding_system >= 0)
+        {
+          name = MetricName(coding_system, code);
+          has_name = true;
+        }
+      }
+
+      // OBX-5 of the type in OBX-2
+      int repetitions = scanner.get_repetition_count(5);
+      if (repetitions > 1) return kFallback;
+
+      if (repetitions == 1)
+      {
+        if (!scanner.Locate(2, 0, 0, 0)) return kFallback;
+
+        switch (scanner.IndexIn(kValueTypes))
+        {
+          case kNM:
+            if (!scanner.Locate(5, 0, 0, 0) || !scanner.IsPlain())
+              return kFallback;
+            value = scanner.FloatValue();
+            if (Float.isNaN(value)) return kFallback;
+            has_value = true;
+            break;
+
+          case kSN:
+            // Only ratios, SN-2 : SN-4
+            if (!scanner.Locate(5, 0, 3, 0) || !scanner.Equals(":"))
+              return kFallback;
+            if (!scanner.Locate(5, 0, 2, 0)) return kFallback;
+            int num = scanner.IntValue();
+            if (!scanner.Locate(5, 0, 4, 0)) return kFallback;
+            int denom = scanner.IntValue();
+            value = (float) num / (float) denom;
+            has_value = true;
+            break;
+
+          case kCWE:
+            if (scanner.Locate(5, 0, 1, 0))
+            {
+              int code = scanner.IntValue();
+              if (!scanner.Locate(5, 0, 3, 0)) return kFallback;
+
+              int value_coding_system = scanner.IndexIn(kCodingSystems);
+              if (value_coding_system >= 0)
+              {
+                value = code - kOBX5CodeOffsets[value_coding_system];
+                has_value = true;
+              }
+            }
+            break;
+
+          default:
+            return kFallback;
+        }
+      }
+
+      // OBX-6 CWE-1
+      if (scanner.Locate(6, 0, 1, 0))
+      {
+        unit_code = scanner.IntValue() - HL7Parser.kOBX6CodeOffset;
+        has_unit_code = true;
+      }
+    }
+    catch (NumberFormatException exc)
+    {
+      // HL7Parser reports the error
+      return kFallback;
+    }
+
+    // OBX-14
+    scanner.Locate(14, 0, 0, 0);
+    if (!scanner.IsPlain() || !scanner.DateTimeValue(_date_time))
+      return kFallback;
+
+    if (!publish) return kParsed;
+
+    _numeric.unique_device_identifier = MindrayA5Reader.kMindrayUDI;
+    if (has_name) _numeric.name = name;
+    if (has_value) _numeric.value = value;
+    if (has_unit_code) _numeric.unit_code = unit_code;
+
+    _numeric.absolute_time_stamp.century =
+      _date_time[0] / HL7Parser.kYearsPerCentury;
+    _numeric.absolute_time_stamp.year =
+      _date_time[0] % HL7Parser.kYearsPerCentury;
+    _numeric.absolute_time_stamp.month = _date_time[1];
+    _numeric.absolute_time_stamp.day = _date_time[2];
+    _numeric.absolute_time_stamp.hour = _date_time[3];
+    _numeric.absolute_time_stamp.minute = _date_time[4];
+    _numeric.absolute_time_stamp.second = _date_time[5];
+    // HL7Parser truncates the fraction of a second to an int
+    _numeric.absolute_time_stamp.sec_fractions = 0;
+
+    if (_rti_dds_impl.WriteNumeric(_numeric) != 0)
+    {
+      _statusmsg = _rti_dds_impl.get_statusmsg();
+      return kError;
+    }
+
+    return kParsed;
+  }
+}
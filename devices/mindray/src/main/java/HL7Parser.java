@@ -89,6 +89,22 @@ public class HL7Parser
   }
 
 
+  /**
+   * Samples are filled in place from one message to the next, HL7FastParser
+   * fills the same ones so that either may parse any message.
+   */
+  final Numeric get_numeric()
+  {
+    return _numeric;
+  }
+
+
+  final PatientDemographics get_pat_demog()
+  {
+    return _pat_demog;
+  }
+
+
   /**
    * Precondition: DDSDomainParticipant has alreay been created.
    * @return Return zero for success
@@ -0,0 +1,728 @@
+/**
+ * @file    HL7SegmentScanner.java
+ *
+ * @brief   Splits HL7 v2 messages into segments, fields, repetitions and
+ * components in place. Messages are read from a stream in Minimal Lower Layer
+ * Protocol (MLLP) frames or are set directly. No strings are created unless
+ * the text of a value is requested.
+ */
+//=============================================================================
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+
+/**
+ * Indexes the segments of the current message and the fields of the selected
+ * segment. A value within a field is located with Locate() and then read with
+ * the accessors that follow it.
+ */
+public class HL7SegmentScanner
+{
+  // MLLP frame is <VT> message <FS><CR>
+  static final byte kStartBlock = 0x0B;
+  static final byte kEndBlock = 0x1C;
+  static final byte kSegmentTerminator = 0x0D;
+  static final byte kLineFeed = 0x0A;
+
+  // The A5 declares UNICODE UTF-8 in MSH-18
+  private static final Charset kCharset = Charset.forName("UTF-8");
+
+  // Powers of ten that are exact in a float, see FloatValue()
+  private static final float[] kPow10 = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f,
+    1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+  private static final int kMaxExactMantissa = 1 << 24;
+
+  private final InputStream _input;
+  private byte[] _buffer;
+  private int _position;
+  private int _scanned;
+  private int _limit;
+  private boolean _in_frame;
+  private int _message_start;
+  private int _message_end;
+
+  private int[] _segment_start;
+  private int[] _segment_end;
+  private int _segment_count;
+
+  private int _selected;
+  private int[] _field_start;
+  private int[] _field_end;
+  private int _field_count;
+
+  private byte _field_separator;
+  private byte _component_separator;
+  private byte _repetition_separator;
+  private byte _escape_character;
+  private byte _subcomponent_separator;
+
+  private int _from;
+  private int _to;
+
+
+  /**
+   * Scanner for MLLP frames read from the given stream.
+   * @param input Stream of MLLP frames
+   */
+  public HL7SegmentScanner(final InputStream input)
+  {
+    _input = input;
+    _buffer = new byte[8192];
+    _segment_start = new int[64];
+    _segment_end = new int[64];
+    _field_start = new int[64];
+    _field_end = new int[64];
+    SetDefaultEncodingCharacters();
+  }
+
+
+  /**
+   * Scanner for messages passed to SetMessage().
+   */
+  public HL7SegmentScanner()
+  {
+    this(null);
+  }
+
+
+  /**
+   * Reads up to the end of the next MLLP frame and splits its message into
+   * segments. Bytes outside of a frame are discarded. The previous message
+   * is no longer valid once this is called.
+   * @throws IOException
+   * @return Returns zero when a message was read, -1 at the end of the stream
+   */
+  public final int NextFrame() throws IOException
+  {
+    for (;;)
+    {
+      while (_scanned < _limit)
+      {
+        byte b = _buffer[_scanned++];
+        if (b == kStartBlock)
+        {
+          // A start block within a frame abandons the incomplete message
+          _in_frame = true;
+          _position = _scanned;
+        }
+        else if (!_in_frame)
+        {
+          _position = _scanned;
+        }
+        else if (b == kEndBlock)
+        {
+          _in_frame = false;
+          Split(_position, _scanned - 1);
+          _position = _scanned;
+          return 0;
+        }
+      }
+
+      if (!Fill()) return -1;
+    }
+  }
+
+
+  private boolean Fill() throws IOException
+  {
+    if (_input == null) return false;
+
+    if (_position > 0)
+    {
+      System.arraycopy(_buffer, _position, _buffer, 0, _limit - _position);
+      _limit -= _position;
+      _scanned -= _position;
+      _position = 0;
+    }
+
+    if (_limit == _buffer.length)
+      _buffer = Arrays.copyOf(_buffer, 2 * _buffer.length);
+
+    int n = _input.read(_buffer, _limit, _buffer.length - _limit);
+    if (n < 0) return false;
+
+    _limit += n;
+    return true;
+  }
+
+
+  /**
+   * Splits a message that is not framed, such as one read from a log.
+   * Segments may be terminated by CR, LF or CR LF.
+   * @param message Buffer holding the message
+   * @param offset Start of the message
+   * @param length Length of the message
+   */
+  public final void SetMessage(final byte[] message, final int offset,
+    final int length)
+  {
+    if (_buffer.length < length)
+      _buffer = new byte[length];
+
+    System.arraycopy(message, offset, _buffer, 0, length);
+    _position = _scanned = _limit = length;
+    _in_frame = false;
+    Split(0, length);
+  }
+
+
+  private void Split(final int from, final int to)
+  {
+    _message_start = from;
+    _message_end = to;
+    _segment_count = 0;
+    _selected = -1;
+    _field_count = 0;
+
+    int start = from;
+    for (int ix = from; ix <= to; ix++)
+    {
+      if (ix == to || _buffer[ix] == kSegmentTerminator
+        || _buffer[ix] == kLineFeed)
+      {
+        if (ix > start)
+        {
+          if (_segment_count == _segment_start.length)
+          {
+            _segment_start = Arrays.copyOf(_segment_start,
+              2 * _segment_count);
+            _segment_end = Arrays.copyOf(_segment_end, 2 * _segment_count);
+          }
+          _segment_start[_segment_count] = start;
+          _segment_end[_segment_count] = ix;
+          _segment_count++;
+        }
+        start = ix + 1;
+      }
+    }
+
+    SetDefaultEncodingCharacters();
+
+    // MSH-1 is the field separator and MSH-2 the remaining encoding
+    // characters in the order component, repetition, escape, subcomponent
+    if (_segment_count > 0 && SegmentIs(0, "MSH")
+      && _segment_end[0] - _segment_start[0] > 3)
+    {
+      int ix = _segment_start[0] + 3;
+      int end = _segment_end[0];
+      _field_separator = _buffer[ix++];
+      if (ix < end && _buffer[ix] != _field_separator)
+        _component_separator = _buffer[ix++];
+      if (ix < end && _buffer[ix] != _field_separator)
+        _repetition_separator = _buffer[ix++];
+      if (ix < end && _buffer[ix] != _field_separator)
+        _escape_character = _buffer[ix++];
+      if (ix < end && _buffer[ix] != _field_separator)
+        _subcomponent_separator = _buffer[ix++];
+    }
+  }
+
+
+  private void SetDefaultEncodingCharacters()
+  {
+    _field_separator = '|';
+    _component_separator = '^';
+    _repetition_separator = '~';
+    _escape_character = '\\';
+    _subcomponent_separator = '&';
+  }
+
+
+  public final int get_segment_count()
+  {
+    return _segment_count;
+  }
+
+
+  /**
+   * @param segment Index of the segment in the message
+   * @param id Three character segment ID, such as "OBX"
+   * @return Returns true if the segment has the given ID
+   */
+  public final boolean SegmentIs(final int segment, final String id)
+  {
+    int start = _segment_start[segment];
+    int end = _segment_end[segment];
+    if (end - start < 3) return false;
+
+    for (int ix = 0; ix < 3; ix++)
+    {
+      if (_buffer[start + ix] != id.charAt(ix)) return false;
+    }
+
+    // The character following MSH defines the field separator
+    return end - start == 3 || id.equals("MSH")
+      || _buffer[start + 3] == _field_separator;
+  }
+
+
+  /**
+   * Indexes the fields of a segment. Fields are numbered as in the standard,
+   * field zero is the segment ID and MSH-1 is the field separator itself.
+   * @param segment Index of the segment in the message
+   */
+  public final void SelectSegment(final int segment)
+  {
+    if (_selected == segment) return;
+
+    _selected = segment;
+    _field_count = 0;
+
+    int start = _segment_start[segment];
+    int end = _segment_end[segment];
+    int ix = Math.min(start + 3, end);
+    AddField(start, ix);
+
+    if (segment == 0 && SegmentIs(0, "MSH") && ix < end)
+    {
+      AddField(ix, ix + 1);
+      ix++;
+    }
+    else if (ix < end)
+    {
+      // Skip the separator following the segment ID
+      ix++;
+    }
+    else
+    {
+      return;
+    }
+
+    int field_start = ix;
+    for (; ix <= end; ix++)
+    {
+      if (ix == end || _buffer[ix] == _field_separator)
+      {
+        AddField(field_start, ix);
+        field_start = ix + 1;
+      }
+    }
+  }
+
+
+  private void AddField(final int from, final int to)
+  {
+    if (_field_count == _field_start.length)
+    {
+      _field_start = Arrays.copyOf(_field_start, 2 * _field_count);
+      _field_end = Arrays.copyOf(_field_end, 2 * _field_count);
+    }
+    _field_start[_field_count] = from;
+    _field_end[_field_count] = to;
+    _field_count++;
+  }
+
+
+  /**
+   * @return Returns the number of fields in the selected segment, including
+   * the segment ID
+   */
+  public final int get_field_count()
+  {
+    return _field_count;
+  }
+
+
+  /**
+   * @param field Field of the selected segment
+   * @return Returns the number of repetitions of the field, zero where the
+   * field is empty or absent
+   */
+  public final int get_repetition_count(final int field)
+  {
+    if (field >= _field_count) return 0;
+
+    int start = _field_start[field];
+    int end = _field_end[field];
+    if (start == end) return 0;
+
+    int count = 1;
+    for (int ix = start; ix < end; ix++)
+    {
+      if (_buffer[ix] == _repetition_separator) count++;
+    }
+    return count;
+  }
+
+
+  /**
+   * Locates a value of the selected segment for the accessors that follow.
+   * @param field Field, numbered as in the standard
+   * @param repetition Zero based repetition of the field
+   * @param component One based component, or zero for the whole repetition
+   * @param subcomponent One based subcomponent, or zero for the whole
+   * component
+   * @return Returns true if the value is present and not empty
+   */
+  public final boolean Locate(final int field, final int repetition,
+    final int component, final int subcomponent)
+  {
+    _from = _to = 0;
+    if (field >= _field_count) return false;
+
+    int start = _field_start[field];
+    int end = _field_end[field];
+
+    // MSH-1 and MSH-2 hold the separators themselves
+    if (_selected == 0 && field <= 2 && SegmentIs(0, "MSH"))
+    {
+      _from = start;
+      _to = end;
+      return _to > _from;
+    }
+
+    start = Part(start, end, _repetition_separator, repetition);
+    if (start < 0) return false;
+    end = _to;
+
+    if (component > 0)
+    {
+      start = Part(start, end, _component_separator, component - 1);
+      if (start < 0) return false;
+      end = _to;
+
+      if (subcomponent > 0)
+      {
+        start = Part(start, end, _subcomponent_separator, subcomponent - 1);
+        if (start < 0) return false;
+        end = _to;
+      }
+    }
+
+    _from = start;
+    _to = end;
+    return _to > _from;
+  }
+
+
+  // Start of the index'th part of [start, end) split on separator, with its
+  // end left in _to, or -1 if there are fewer parts
+  private int Part(int start, final int end, final byte separator,
+    int index)
+  {
+    for (; index > 0; index--)
+    {
+      while (start < end && _buffer[start] != separator) start++;
+      if (start == end)
+      {
+        _from = _to = 0;
+        return -1;
+      }
+      start++;
+    }
+
+    int ix = start;
+    while (ix < end && _buffer[ix] != separator) ix++;
+    _to = ix;
+    return start;
+  }
+
+
+  /**
+   * @return Returns true if the located value holds no escape sequences,
+   * components or subcomponents, so its bytes are its value
+   */
+  public final boolean IsPlain()
+  {
+    for (int ix = _from; ix < _to; ix++)
+    {
+      byte b = _buffer[ix];
+      if (b == _escape_character || b == _component_separator
+        || b == _subcomponent_separator) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * Text of the located value, reusing the previous text where the value has
+   * not changed.
+   * @param previous Text of the value in an earlier message, may be null
+   * @return Returns previous if the value equals it, otherwise a new string
+   */
+  public final String Text(final String previous)
+  {
+    return previous != null && Equals(previous) ? previous : Text();
+  }
+
+
+  /**
+   * Narrows the located value to the part following the last occurrence of
+   * the given character, as in value.substring(value.lastIndexOf(c) + 1).
+   * @return Returns false if the character does not occur
+   */
+  public final boolean SelectAfterLast(final char c)
+  {
+    for (int ix = _to - 1; ix >= _from; ix--)
+    {
+      if (_buffer[ix] == c)
+      {
+        _from = ix + 1;
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * @return Returns the located value as text
+   */
+  public final String Text()
+  {
+    return new String(_buffer, _from, _to - _from, kCharset);
+  }
+
+
+  /**
+   * @return Returns true if the located value is exactly the given ASCII text
+   */
+  public final boolean Equals(final String s)
+  {
+    if (s.length() != _to - _from) return false;
+
+    for (int ix = _from; ix < _to; ix++)
+    {
+      if (_buffer[ix] != s.charAt(ix - _from)) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * @return Returns true if the located value is the given ASCII text,
+   * ignoring case
+   */
+  public final boolean EqualsIgnoreCase(final String s)
+  {
+    if (s.length() != _to - _from) return false;
+
+    for (int ix = _from; ix < _to; ix++)
+    {
+      int b = _buffer[ix];
+      int c = s.charAt(ix - _from);
+      if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+      if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+      if (b != c) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * Looks the located value up in a table of ASCII values.
+   * @return Returns the index of the value in the table or -1
+   */
+  public final int IndexIn(final byte[][] table)
+  {
+    int length = _to - _from;
+    for (int ix = 0; ix < table.length; ix++)
+    {
+      byte[] entry = table[ix];
+      if (entry.length != length) continue;
+
+      int jx = 0;
+      while (jx < length && entry[jx] == _buffer[_from + jx]) jx++;
+      if (jx == length) return ix;
+    }
+    return -1;
+  }
+
+
+  /**
+   * Parses the located value as Integer.parseInt() would.
+   * @throws NumberFormatException if the value is not an integer
+   */
+  public final int IntValue()
+  {
+    int ix = _from;
+    boolean negative = false;
+    if (ix < _to && (_buffer[ix] == '-' || _buffer[ix] == '+'))
+    {
+      negative = _buffer[ix] == '-';
+      ix++;
+    }
+
+    // Nine digits can not overflow, leave longer values to Integer
+    if (ix == _to || _to - ix > 9) return Integer.parseInt(Text());
+
+    int value = 0;
+    for (; ix < _to; ix++)
+    {
+      byte b = _buffer[ix];
+      if (b < '0' || b > '9') throw new NumberFormatException(Text());
+      value = 10 * value + (b - '0');
+    }
+    return negative ? -value : value;
+  }
+
+
+  /**
+   * Parses a located value of the form [+-]digits[.digits] as
+   * Float.parseFloat() would.
+   * @return Returns the value or Float.NaN where the value is not of that
+   * form
+   */
+  public final float FloatValue()
+  {
+    int ix = _from;
+    boolean negative = false;
+    if (ix < _to && (_buffer[ix] == '-' || _buffer[ix] == '+'))
+    {
+      negative = _buffer[ix] == '-';
+      ix++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean point = false;
+    for (; ix < _to; ix++)
+    {
+      byte b = _buffer[ix];
+      if (b >= '0' && b <= '9')
+      {
+        digits++;
+        if (mantissa < kMaxExactMantissa)
+        {
+          mantissa = 10 * mantissa + (b - '0');
+          if (point) scale++;
+        }
+        else
+        {
+          mantissa = kMaxExactMantissa;
+        }
+      }
+      else if (b == '.' && !point)
+      {
+        point = true;
+      }
+      else
+      {
+        return Float.NaN;
+      }
+    }
+
+    if (digits == 0) return Float.NaN;
+
+    // A quotient of two floats is correctly rounded. Anything else is left
+    // to Float.
+    if (mantissa >= kMaxExactMantissa || scale >= kPow10.length)
+      return Float.parseFloat(Text());
+
+    float value = mantissa / kPow10[scale];
+    return negative ? -value : value;
+  }
+
+
+  /**
+   * Parses a located value of the form
+   * YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ] into year, month, day,
+   * hour, minute and second, zero where absent as with the HAPI DTM
+   * accessors. The fraction of a second and the time zone are checked but
+   * not returned. An empty value is all zero.
+   * @param fields Receives the six values
+   * @return Returns false where the value is not a valid date and time
+   */
+  public final boolean DateTimeValue(final int[] fields)
+  {
+    Arrays.fill(fields, 0, 6, 0);
+
+    int ix = _from;
+    int digits = 0;
+    while (ix < _to && _buffer[ix] >= '0' && _buffer[ix] <= '9')
+    {
+      ix++;
+      digits++;
+    }
+    if (ix == _from && ix == _to) return true;
+    if (digits < 4 || digits > 14 || (digits & 1) != 0) return false;
+
+    fields[0] = Digits(_from, 4);
+    for (int jx = 1; 4 + 2 * jx <= digits; jx++)
+      fields[jx] = Digits(_from + 2 + 2 * jx, 2);
+
+    if (digits >= 6 && (fields[1] < 1 || fields[1] > 12)) return false;
+    if (digits >= 8 && (fields[2] < 1
+      || fields[2] > DaysInMonth(fields[0], fields[1]))) return false;
+    if (fields[3] > 23 || fields[4] > 59 || fields[5] > 59) return false;
+
+    if (ix < _to && _buffer[ix] == '.')
+    {
+      if (digits != 14) return false;
+      int fraction = 0;
+      for (ix++; ix < _to && _buffer[ix] >= '0' && _buffer[ix] <= '9'; ix++)
+        fraction++;
+      if (fraction < 1 || fraction > 4) return false;
+    }
+
+    if (ix < _to && (_buffer[ix] == '+' || _buffer[ix] == '-'))
+    {
+      if (_to - ix != 5) return false;
+      for (int jx = ix + 1; jx < _to; jx++)
+      {
+        if (_buffer[jx] < '0' || _buffer[jx] > '9') return false;
+      }
+      if (Digits(ix + 1, 2) > 23 || Digits(ix + 3, 2) > 59) return false;
+      ix = _to;
+    }
+
+    return ix == _to;
+  }
+
+
+  private int Digits(final int from, final int count)
+  {
+    int value = 0;
+    for (int ix = from; ix < from + count; ix++)
+      value = 10 * value + (_buffer[ix] - '0');
+    return value;
+  }
+
+
+  private static int DaysInMonth(final int year, final int month)
+  {
+    switch (month)
+    {
+      case 2:
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return leap ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+
+  /**
+   * Writes the located value as it appears in the message.
+   * @throws IOException
+   */
+  public final void WriteValue(final OutputStream out) throws IOException
+  {
+    out.write(_buffer, _from, _to - _from);
+  }
+
+
+  /**
+   * @return Returns the whole message, segments terminated by CR, as text
+   */
+  public final String MessageText()
+  {
+    StringBuilder sb = new StringBuilder(_message_end - _message_start);
+    for (int ix = 0; ix < _segment_count; ix++)
+    {
+      sb.append(new String(_buffer, _segment_start[ix],
+        _segment_end[ix] - _segment_start[ix], kCharset));
+      sb.append('\r');
+    }
+    return sb.toString();
+  }
+}
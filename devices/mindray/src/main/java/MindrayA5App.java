@@ -30,6 +30,7 @@ public final class MindrayA5App
   private static int port = kDefaultPort;
   private static int domain_id = kDefaultDomainId;
   private static boolean enable_logger = false;
+  private static boolean enable_fast_path = true;
   private static String log_file_name = "";
 
 
@@ -52,6 +53,8 @@ public final class MindrayA5App
       + "   -enableLogger      Use log file to store received HL7 messages\n"
       + "   -l <file_name>     Set log file name (optional, default\n"
       + "                      \"./dat/mindray_a5_log.dat\"\n"
+      + "   -hapiOnly          Receive and parse every message with HAPI\n"
+      + "                      instead of the fast path\n"
       + "\n"
       + "Brief Description:\n"
       + "Interfaces with Mindary A5 Series Anestesia System.\n\n";
@@ -120,6 +123,10 @@ public final class MindrayA5App
       {
         enable_logger = true;
       }
+      else if (args[ix].equalsIgnoreCase("-hapiOnly"))
+      {
+        enable_fast_path = false;
+      }
       else if (args[ix].equalsIgnoreCase("-l"))
       {
         if (ix >= args.length - 1 || args[ix + 1].startsWith("-"))
@@ -160,6 +167,7 @@ public final class MindrayA5App
     MindrayA5Reader mindray_reader = new MindrayA5Reader(port);
 
     mindray_reader.set_enable_logger(enable_logger);
+    mindray_reader.set_enable_fast_path(enable_fast_path);
 
     if (log_file_name.length() > 0)
       mindray_reader.set_log_file_name(log_file_name);
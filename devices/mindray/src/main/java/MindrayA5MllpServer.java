@@ -0,0 +1,308 @@
+/**
+ * @file    MindrayA5MllpServer.java
+ *
+ * @brief   Listens on a port for HL7 messages framed with the Minimal Lower
+ * Layer Protocol (MLLP), in place of the HAPI SimpleServer. Messages go to the
+ * fast path of MindrayA5ReceiverApplication and are only parsed with HAPI
+ * where the fast path does not understand them.
+ */
+//=============================================================================
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.app.ApplicationException;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+
+
+/**
+ * Class MindrayA5MllpServer. Accepts connections from the Mindray A5 and
+ * answers every message with an acknowledgment, as SimpleServer does.
+ */
+public class MindrayA5MllpServer implements Runnable
+{
+  private static final Charset kCharset = Charset.forName("UTF-8");
+
+  private final int _port;
+  private final MindrayA5ReceiverApplication _handler;
+  private final List<Socket> _connections;
+  private final AtomicLong _control_id;
+  private ServerSocket _server_socket;
+  private Thread _thread;
+  private volatile boolean _running;
+
+
+  public MindrayA5MllpServer(final int port,
+    final MindrayA5ReceiverApplication handler)
+  {
+    _port = port;
+    _handler = handler;
+    _connections = new ArrayList<Socket>();
+    _control_id = new AtomicLong();
+  }
+
+
+  /**
+   * Binds the port and starts accepting connections.
+   * @throws IOException
+   */
+  public final void start() throws IOException
+  {
+    _server_socket = new ServerSocket(_port);
+    _running = true;
+    _thread = new Thread(this, "MindrayA5MllpServer:" + _port);
+    _thread.setDaemon(true);
+    _thread.start();
+  }
+
+
+  /**
+   * Closes the port and every connection.
+   */
+  public final void stop()
+  {
+    _running = false;
+
+    try
+    {
+      if (_server_socket != null) _server_socket.close();
+    }
+    catch (IOException exc)
+    {
+      System.out.println("stop() Exception: " + exc.getMessage());
+    }
+
+    synchronized (_connections)
+    {
+      for (Socket socket : _connections)
+      {
+        try
+        {
+          socket.close();
+        }
+        catch (IOException exc)
+        {
+          System.out.println("stop() Exception: " + exc.getMessage());
+        }
+      }
+      _connections.clear();
+    }
+  }
+
+
+  public final boolean isRunning()
+  {
+    return _running;
+  }
+
+
+  /**
+   * Accepts connections, each served by a thread of its own.
+   */
+  public final void run()
+  {
+    while (_running)
+    {
+      try
+      {
+        final Socket socket = _server_socket.accept();
+        synchronized (_connections)
+        {
+          _connections.add(socket);
+        }
+
+        Thread thread = new Thread(new Runnable()
+        {
+          public void run()
+          {
+            Serve(socket);
+          }
+        }, "MindrayA5MllpServer:" + socket.getRemoteSocketAddress());
+        thread.setDaemon(true);
+        thread.start();
+      }
+      catch (IOException exc)
+      {
+        if (_running)
+          System.out.println("run() Exception: " + exc.getMessage());
+      }
+    }
+  }
+
+
+  private void Serve(final Socket socket)
+  {
+    try
+    {
+      HL7SegmentScanner scanner =
+        new HL7SegmentScanner(socket.getInputStream());
+      OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+      PipeParser pipe_parser = new PipeParser();
+      SimpleDateFormat time_format =
+        new SimpleDateFormat("yyyyMMddHHmmss.SSSZ");
+
+      while (scanner.NextFrame() == 0)
+      {
+        // The handler and its parsers are not thread safe
+        synchronized (_handler)
+        {
+          Process(scanner, pipe_parser, time_format, out);
+        }
+        out.flush();
+      }
+    }
+    catch (IOException exc)
+    {
+      if (_running)
+        System.out.println("Serve() Exception: " + exc.getMessage());
+    }
+    finally
+    {
+      synchronized (_connections)
+      {
+        _connections.remove(socket);
+      }
+
+      try
+      {
+        socket.close();
+      }
+      catch (IOException exc)
+      {
+        System.out.println("Serve() Exception: " + exc.getMessage());
+      }
+    }
+  }
+
+
+  /**
+   * Processes one message and writes its acknowledgment.
+   */
+  private void Process(final HL7SegmentScanner scanner,
+    final PipeParser pipe_parser, final SimpleDateFormat time_format,
+    final OutputStream out) throws IOException
+  {
+    boolean oru_r01 = HL7FastParser.IsORUR01(scanner);
+
+    try
+    {
+      if (oru_r01 && _handler.ProcessRawMessage(scanner)
+        != HL7FastParser.kFallback)
+      {
+        WriteAck(scanner, "AA", time_format, out);
+        return;
+      }
+
+      if (!oru_r01)
+      {
+        // Only ORU^R01 is registered with SimpleServer
+        WriteAck(scanner, "AR", time_format, out);
+        return;
+      }
+
+      Message message = pipe_parser.parse(scanner.MessageText());
+      Message ack = _handler.processMessage(message);
+      if (ack != null)
+      {
+        out.write(HL7SegmentScanner.kStartBlock);
+        out.write(pipe_parser.encode(ack).getBytes(kCharset));
+        out.write(HL7SegmentScanner.kEndBlock);
+        out.write(HL7SegmentScanner.kSegmentTerminator);
+      }
+    }
+    catch (HL7Exception exc)
+    {
+      System.out.println("Process() Exception: " + exc.getMessage());
+      WriteAck(scanner, "AE", time_format, out);
+    }
+    catch (ApplicationException exc)
+    {
+      System.out.println("Process() Exception: " + exc.getMessage());
+      WriteAck(scanner, "AE", time_format, out);
+    }
+  }
+
+
+  /**
+   * Writes the acknowledgment HAPI would generate for the message in the
+   * scanner, with the sending and receiving application and facility
+   * swapped, followed by an MSA with the given acknowledgment code.
+   */
+  private void WriteAck(final HL7SegmentScanner scanner, final String code,
+    final SimpleDateFormat time_format, final OutputStream out)
+    throws IOException
+  {
+    if (scanner.get_segment_count() == 0 || !scanner.SegmentIs(0, "MSH"))
+      return;
+
+    scanner.SelectSegment(0);
+    if (!scanner.Locate(1, 0, 0, 0)) return;
+    byte separator = (byte) scanner.Text().charAt(0);
+
+    out.write(HL7SegmentScanner.kStartBlock);
+    Write(out, "MSH");
+    WriteField(scanner, 1, out);
+    WriteField(scanner, 2, out);
+    out.write(separator);
+    WriteField(scanner, 5, out);
+    out.write(separator);
+    WriteField(scanner, 6, out);
+    out.write(separator);
+    WriteField(scanner, 3, out);
+    out.write(separator);
+    WriteField(scanner, 4, out);
+    out.write(separator);
+    Write(out, time_format.format(new Date()));
+    out.write(separator);
+    out.write(separator);
+    Write(out, "ACK");
+    if (scanner.Locate(2, 0, 0, 0))
+    {
+      byte component_separator = (byte) scanner.Text().charAt(0);
+      out.write(component_separator);
+      if (scanner.Locate(9, 0, 2, 0)) scanner.WriteValue(out);
+      out.write(component_separator);
+      Write(out, "ACK");
+    }
+    out.write(separator);
+    Write(out, Long.toString(_control_id.incrementAndGet()));
+    out.write(separator);
+    WriteField(scanner, 11, out);
+    out.write(separator);
+    WriteField(scanner, 12, out);
+    out.write(HL7SegmentScanner.kSegmentTerminator);
+
+    Write(out, "MSA");
+    out.write(separator);
+    Write(out, code);
+    out.write(separator);
+    WriteField(scanner, 10, out);
+    out.write(HL7SegmentScanner.kSegmentTerminator);
+    out.write(HL7SegmentScanner.kEndBlock);
+    out.write(HL7SegmentScanner.kSegmentTerminator);
+  }
+
+
+  private static void WriteField(final HL7SegmentScanner scanner,
+    final int field, final OutputStream out) throws IOException
+  {
+    if (scanner.Locate(field, 0, 0, 0)) scanner.WriteValue(out);
+  }
+
+
+  private static void Write(final OutputStream out, final String s)
+    throws IOException
+  {
+    out.write(s.getBytes(kCharset));
+  }
+}
@@ -35,21 +35,25 @@ public class MindrayA5Reader
 {
   private int _port;
   private SimpleServer _server;
+  private MindrayA5MllpServer _mllp_server;
   private Application _handler;
   private DDSImpl _rti_dds_impl;
   public static final String kMindrayUDI = "Mindray A5 UDI";
   private String _statusmsg;
   private String _log_file_name = "./dat/mindray_a5_log.dat";
   private Boolean _enable_logger;
+  private boolean _enable_fast_path;
 
 
   public MindrayA5Reader(final int iport)
   {
     _port = iport;
     _server = null;
+    _mllp_server = null;
     _handler = null;
     _rti_dds_impl = null;
     _enable_logger = false;
+    _enable_fast_path = true;
   }
 
 
@@ -71,6 +75,17 @@ public class MindrayA5Reader
   }
 
 
+  /**
+   * With the fast path, messages are received by MindrayA5MllpServer and
+   * only parsed with HAPI where HL7FastParser does not understand them.
+   * Without it every message is received and parsed by HAPI.
+   */
+  public final void set_enable_fast_path(final boolean torf)
+  {
+    _enable_fast_path = torf;
+  }
+
+
   public final String get_statusmsg()
   {
     return _statusmsg;
@@ -236,10 +251,6 @@ public class MindrayA5Reader
   {
     if (WriteDeviceIdentity() != 0) return 1;
 
-    // Mindray uses Minimal Lower Layer Protocol (MLLP). Creates a SimpleServer
-    // that listens on the given port, using MLLP and a standard PipeParser.
-    _server = new SimpleServer(_port);
-
     // The server may have any number of "application" objects registered to
     // handle messages.
     _handler = new MindrayA5ReceiverApplication();
@@ -268,16 +279,32 @@ public class MindrayA5Reader
       ((MindrayA5ReceiverApplication) _handler).set_enable_logger(false);
     }
 
-    // Register application with the  message type "ORU" and trigger event 
-    // "R01".
-    _server.registerApplication("ORU", "R01", _handler);
-
     // Server is binding to port
     if (WriteDeviceConnectivity(ConnectionState.Connecting,
       ConnectionType.Network) != 0) return 1;
 
-    // Start the server and listen for messages
-    _server.start();
+    if (_enable_fast_path)
+    {
+      // Frames MLLP messages itself and passes them to the handler's fast
+      // path, falling back to HAPI for messages it does not understand.
+      _mllp_server = new MindrayA5MllpServer(_port,
+        (MindrayA5ReceiverApplication) _handler);
+      _mllp_server.start();
+    }
+    else
+    {
+      // Mindray uses Minimal Lower Layer Protocol (MLLP). Creates a
+      // SimpleServer that listens on the given port, using MLLP and a
+      // standard PipeParser.
+      _server = new SimpleServer(_port);
+
+      // Register application with the  message type "ORU" and trigger event 
+      // "R01".
+      _server.registerApplication("ORU", "R01", _handler);
+
+      // Start the server and listen for messages
+      _server.start();
+    }
 
     // Publish Device Connectivity Connected
     if (WriteDeviceConnectivity(ConnectionState.Connected,
@@ -298,7 +325,8 @@ public class MindrayA5Reader
     if (WriteDeviceConnectivity(ConnectionState.Disconnecting,
       ConnectionType.Network) != 0) return 1;
 
-    if (_server.isRunning()) _server.stop();
+    if (_server != null && _server.isRunning()) _server.stop();
+    if (_mllp_server != null && _mllp_server.isRunning()) _mllp_server.stop();
 
     // Publish Device Connectivity Disconnected
     if (WriteDeviceConnectivity(ConnectionState.Disconnected,
@@ -309,6 +337,7 @@ public class MindrayA5Reader
         return 1;
 
     _server = null;
+    _mllp_server = null;
     _handler = null;
 
     return 0;
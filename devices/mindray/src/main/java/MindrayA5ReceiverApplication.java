@@ -24,6 +24,7 @@ import ca.uhn.hl7v2.parser.PipeParser;
 public class MindrayA5ReceiverApplication implements Application
 {
   private HL7Parser _hl7_parser;
+  private HL7FastParser _fast_parser;
   private DDSImpl _rti_dds_impl;
   private String _statusmsg;
   private boolean _enable_logger;
@@ -37,6 +38,7 @@ public class MindrayA5ReceiverApplication implements Application
     _enable_logger = false;
 
     _hl7_parser = new HL7Parser();
+    _fast_parser = new HL7FastParser(_hl7_parser);
     _hl7_logger = new HL7MessageLogger();
   }
 
@@ -109,6 +111,12 @@ public class MindrayA5ReceiverApplication implements Application
       return 1;
     }
 
+    if (_fast_parser.set_rti_dds_impl(_rti_dds_impl) != 0)
+    {
+      System.out.println(_fast_parser.get_statusmsg());
+      return 1;
+    }
+
     return 0;
   }
 
@@ -159,4 +167,32 @@ public class MindrayA5ReceiverApplication implements Application
 
     return retval; 
   }
+
+
+  /**
+   * Fast path for a message received by MindrayA5MllpServer. ORU^R01
+   * messages the fast parser understands are parsed and published without
+   * HAPI, and are not printed.
+   * @param scanner Scanner holding the message
+   * @return Returns HL7FastParser.kFallback where the message has not been
+   * processed and should be parsed by HAPI and passed to processMessage()
+   * @throws HL7Exception
+   */
+  public final int ProcessRawMessage(final HL7SegmentScanner scanner)
+    throws HL7Exception
+  {
+    int istat = _fast_parser.ParseORUR01(scanner);
+    if (istat == HL7FastParser.kFallback) return istat;
+
+    if (_enable_logger)
+    {
+      // Log Mindray Message
+      if (_hl7_logger.WriteBuffer(scanner.MessageText()) != 0) return istat;
+    }
+
+    if (istat == HL7FastParser.kError)
+      System.out.println(_fast_parser.get_statusmsg());
+
+    return istat;
+  }
 }
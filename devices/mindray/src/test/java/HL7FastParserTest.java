@@ -0,0 +1,88 @@
+/**
+ * @file    HL7FastParserTest.java
+ *
+ * @brief   Tests which messages HL7FastParser takes on and which it leaves to
+ * HL7Parser.
+ */
+//=============================================================================
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class HL7FastParserTest
+{
+  private static final Charset kCharset = Charset.forName("UTF-8");
+
+  private final HL7FastParser _fast_parser =
+    new HL7FastParser(new HL7Parser());
+  private final HL7SegmentScanner _scanner = new HL7SegmentScanner();
+
+
+  private int Recognize(final String message)
+  {
+    byte[] bytes = message.getBytes(kCharset);
+    _scanner.SetMessage(bytes, 0, bytes.length);
+    return _fast_parser.Recognize(_scanner);
+  }
+
+
+  @Test
+  public void testCorpus() throws IOException
+  {
+    List<String> corpus = HL7SegmentScannerTest.ReadCorpus();
+    for (String message : corpus)
+      assertEquals(message, HL7FastParser.kParsed, Recognize(message));
+
+    // Several patient results, no PV1, no OBX-6 and partial times
+    String first = corpus.get(0);
+    String third = corpus.get(2);
+    String[] variants = {
+      first + third.substring(third.indexOf("PID")),
+      first.replace("PV1||I|OR^1^Bed3\r", ""),
+      first.replace("|264928^MDC_DIM_RESP_PER_MIN^MDC|", "||"),
+      first.replace("|19650412|", "||"),
+      first.replace("|20140328153044\rOBX|5", "|201403281530-0500\rOBX|5"),
+      first.replace("|^1^:^2|", "|<^1^:^2|"),
+      first.replace("|498|", "|1234567.891|") };
+    for (String message : variants)
+      assertEquals(message, HL7FastParser.kParsed, Recognize(message));
+  }
+
+
+  @Test
+  public void testFallback() throws IOException
+  {
+    String message = HL7SegmentScannerTest.ReadCorpus().get(0);
+
+    // Messages HAPI parses differently or that HL7Parser reports an error
+    // or fails on
+    String[] variants = {
+      message.replace("ORU^R01^ORU_R01", "ADT^A01^ADT_A01"),
+      message.replace("|P|2.6|", "|P|2.5|"),
+      message.replace("OBR|1|", "NTE|1||note\rOBR|1|"),
+      message.replace("PID|", "PD1|"),
+      message.replace("Smith^John", "Sm\\T\\ith^John"),
+      message.replace("OR^1^Bed3", "OR^1^Bed3&X"),
+      message.replace("12345^^^Hospital^PI", "12345^^^Hospital^PI~^^^X^MR"),
+      message.replace("|19650412|", "|19650231|"),
+      message.replace("|M||2106-3^Caucasian^HL70005", "|M||2106-3"),
+      message.replace("|NM|151586", "|ST|151586"),
+      message.replace("1.1.1.151586", "151586"),
+      message.replace("|5.98|", "|5.98e0|"),
+      message.replace("|498|", "|498~499|"),
+      message.replace("|^1^:^2|", "|^1^/^2|"),
+      message.replace("50005^MNDRY_MODE_VCV^99MNDRY", "50005"),
+      message.replace("|20140328153044\rOBX|5", "|20140328156044\rOBX|5") };
+    for (String variant : variants)
+    {
+      assertFalse(variant, variant.equals(message));
+      assertEquals(variant, HL7FastParser.kFallback, Recognize(variant));
+    }
+  }
+}
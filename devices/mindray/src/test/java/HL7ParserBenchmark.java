@@ -0,0 +1,110 @@
+/**
+ * @file    HL7ParserBenchmark.java
+ *
+ * @brief   Compares the HAPI parse of the A5 messages in
+ * mindray_a5_oru_r01.hl7 with HL7FastParser. Run with the main and test
+ * classes, HAPI and the corpus on the classpath:
+ *
+ *   java HL7ParserBenchmark [seconds]
+ *
+ * Publishing is left out of both. After the HAPI parse HL7Parser still walks
+ * the message model; the fast path decodes the message a second time as it
+ * publishes.
+ */
+//=============================================================================
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+
+
+public final class HL7ParserBenchmark
+{
+  private static final Charset kCharset = Charset.forName("UTF-8");
+
+  private HL7ParserBenchmark()
+  {
+  }
+
+
+  private interface Path
+  {
+    int Process(int ix) throws HL7Exception;
+  }
+
+
+  /**
+   * Runs the path over the corpus for the given time and prints messages per
+   * second and bytes allocated per message.
+   */
+  private static void Measure(final String name, final Path path,
+    final int messages, final long millis) throws HL7Exception
+  {
+    com.sun.management.ThreadMXBean thread_bean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread_id = Thread.currentThread().getId();
+
+    long count = 0;
+    long check = 0;
+    long allocated = thread_bean.getThreadAllocatedBytes(thread_id);
+    long start = System.nanoTime();
+    long end = start + millis * 1000000L;
+    long now;
+    do
+    {
+      for (int ix = 0; ix < messages; ix++) check += path.Process(ix);
+      count += messages;
+      now = System.nanoTime();
+    } while (now < end);
+    allocated = thread_bean.getThreadAllocatedBytes(thread_id) - allocated;
+
+    System.out.printf("%-6s %10.0f msgs/s %10.0f B/msg (%d)%n", name,
+      count * 1e9 / (now - start), (double) allocated / count, check);
+  }
+
+
+  public static void main(final String[] args) throws Exception
+  {
+    long millis = 1000L * (args.length > 0 ? Integer.parseInt(args[0]) : 5);
+
+    List<String> corpus = HL7SegmentScannerTest.ReadCorpus();
+    final int messages = corpus.size();
+    final String[] texts = corpus.toArray(new String[messages]);
+    final byte[][] bytes = new byte[messages][];
+    for (int ix = 0; ix < messages; ix++)
+      bytes[ix] = texts[ix].getBytes(kCharset);
+
+    final PipeParser pipe_parser = new PipeParser();
+    Path hapi = new Path()
+    {
+      public int Process(final int ix) throws HL7Exception
+      {
+        Message message = pipe_parser.parse(texts[ix]);
+        return message.getName().length();
+      }
+    };
+
+    final HL7FastParser fast_parser = new HL7FastParser(new HL7Parser());
+    final HL7SegmentScanner scanner = new HL7SegmentScanner();
+    Path fast = new Path()
+    {
+      public int Process(final int ix)
+      {
+        scanner.SetMessage(bytes[ix], 0, bytes[ix].length);
+        if (fast_parser.Recognize(scanner) != HL7FastParser.kParsed)
+          throw new IllegalStateException("Message " + ix + " falls back");
+        return scanner.get_segment_count();
+      }
+    };
+
+    // Warm up, then measure
+    for (int round = 0; round < 2; round++)
+    {
+      Measure("hapi", hapi, messages, round == 0 ? millis / 2 : millis);
+      Measure("fast", fast, messages, round == 0 ? millis / 2 : millis);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * @file    HL7ParserEquivalenceTest.java
+ *
+ * @brief   Runs the A5 messages in mindray_a5_oru_r01.hl7 through both
+ * HL7FastParser and HAPI with HL7Parser and compares every sample published.
+ */
+//=============================================================================
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uhn.hl7v2.parser.PipeParser;
+
+import org.junit.Test;
+
+import ice.AbsoluteTime;
+import ice.Numeric;
+import ice.PatientDemographics;
+
+
+public class HL7ParserEquivalenceTest
+{
+  private static final Charset kCharset = Charset.forName("UTF-8");
+
+
+  /**
+   * Records each sample as it is written, since both parsers fill their
+   * samples in place from one write to the next.
+   */
+  private static final class RecordingDDSImpl extends DDSImpl
+  {
+    final List<String> _samples = new ArrayList<String>();
+
+    @Override
+    public int WriteNumeric(final Numeric numeric)
+    {
+      AbsoluteTime time = numeric.absolute_time_stamp;
+      _samples.add("numeric " + numeric.unique_device_identifier
+        + " name=" + numeric.name + " value=" + numeric.value
+        + " unit=" + numeric.unit_code + " time=" + time.century + "/"
+        + time.year + "/" + time.month + "/" + time.day + " " + time.hour
+        + ":" + time.minute + ":" + time.second + "." + time.sec_fractions);
+      return 0;
+    }
+
+    @Override
+    public int WritePatientDemographics(final PatientDemographics pat_demog)
+    {
+      _samples.add("patient " + pat_demog.unique_device_identifier
+        + " id=" + pat_demog.patient_id + " name=" + pat_demog.name
+        + " given=" + pat_demog.given_name
+        + " family=" + pat_demog.family_name
+        + " sex=" + pat_demog.sex + " race=" + pat_demog.race
+        + " birth=" + pat_demog.date_of_birth.century + "/"
+        + pat_demog.date_of_birth.year + "/" + pat_demog.date_of_birth.month
+        + "/" + pat_demog.date_of_birth.day + " bed=" + pat_demog.bed_id);
+      return 0;
+    }
+  }
+
+
+  @Test
+  public void testCorpus() throws Exception
+  {
+    List<String> corpus = HL7SegmentScannerTest.ReadCorpus();
+
+    RecordingDDSImpl hapi_dds = new RecordingDDSImpl();
+    HL7Parser hl7_parser = new HL7Parser();
+    hl7_parser.set_rti_dds_impl(hapi_dds);
+    PipeParser pipe_parser = new PipeParser();
+
+    RecordingDDSImpl fast_dds = new RecordingDDSImpl();
+    HL7FastParser fast_parser = new HL7FastParser(new HL7Parser());
+    fast_parser.set_rti_dds_impl(fast_dds);
+    HL7SegmentScanner scanner = new HL7SegmentScanner();
+
+    for (String message : corpus)
+    {
+      int hapi_count = hapi_dds._samples.size();
+      assertEquals(message, 0,
+        hl7_parser.ParseORURO1MessageToDDS(pipe_parser.parse(message)));
+
+      int fast_count = fast_dds._samples.size();
+      byte[] bytes = message.getBytes(kCharset);
+      scanner.SetMessage(bytes, 0, bytes.length);
+      assertEquals(message, HL7FastParser.kParsed,
+        fast_parser.ParseORUR01(scanner));
+
+      assertEquals(message, hapi_dds._samples.subList(hapi_count,
+        hapi_dds._samples.size()), fast_dds._samples.subList(fast_count,
+        fast_dds._samples.size()));
+    }
+
+    // A demographics sample and at least one numeric for each message
+    assertTrue(hapi_dds._samples.size() > 2 * corpus.size());
+  }
+}
@@ -0,0 +1,246 @@
+/**
+ * @file    HL7SegmentScannerTest.java
+ *
+ * @brief   Tests MLLP framing and the in place indexing of HL7SegmentScanner
+ * against the A5 messages in mindray_a5_oru_r01.hl7.
+ */
+//=============================================================================
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class HL7SegmentScannerTest
+{
+  private static final Charset kCharset = Charset.forName("UTF-8");
+
+
+  /**
+   * @return Returns the messages of the corpus, one segment per line and
+   * messages separated by an empty line, with segments terminated by CR
+   */
+  static List<String> ReadCorpus() throws IOException
+  {
+    InputStream is = HL7SegmentScannerTest.class.getResourceAsStream(
+      "/mindray_a5_oru_r01.hl7");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int n;
+    while ((n = is.read(buffer)) > 0) bytes.write(buffer, 0, n);
+    is.close();
+
+    List<String> messages = new ArrayList<String>();
+    for (String message : new String(bytes.toByteArray(), kCharset)
+      .replace("\r", "").split("\n\n"))
+    {
+      messages.add(message.trim().replace('\n', '\r') + "\r");
+    }
+    return messages;
+  }
+
+
+  private static HL7SegmentScanner Scan(final String message)
+  {
+    HL7SegmentScanner scanner = new HL7SegmentScanner();
+    byte[] bytes = message.getBytes(kCharset);
+    scanner.SetMessage(bytes, 0, bytes.length);
+    return scanner;
+  }
+
+
+  @Test
+  public void testFrames() throws IOException
+  {
+    List<String> corpus = ReadCorpus();
+    assertEquals(4, corpus.size());
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    // Noise and the tail of a frame whose start was missed
+    stream.write("noise|OBX|1\r".getBytes(kCharset));
+    stream.write(HL7SegmentScanner.kEndBlock);
+    stream.write(HL7SegmentScanner.kSegmentTerminator);
+    // A frame abandoned by a new start block
+    stream.write(HL7SegmentScanner.kStartBlock);
+    stream.write("MSH|^~\\&|Mindray".getBytes(kCharset));
+    for (String message : corpus)
+    {
+      stream.write(HL7SegmentScanner.kStartBlock);
+      stream.write(message.getBytes(kCharset));
+      stream.write(HL7SegmentScanner.kEndBlock);
+      stream.write(HL7SegmentScanner.kSegmentTerminator);
+    }
+
+    // Deliver a few bytes at a time to split frames across reads
+    HL7SegmentScanner scanner = new HL7SegmentScanner(
+      new ByteArrayInputStream(stream.toByteArray())
+      {
+        @Override
+        public synchronized int read(final byte[] b, final int off,
+          final int len)
+        {
+          return super.read(b, off, Math.min(5, len));
+        }
+      });
+
+    for (String message : corpus)
+    {
+      assertEquals(0, scanner.NextFrame());
+      assertEquals(message, scanner.MessageText());
+      assertEquals(message.split("\r").length, scanner.get_segment_count());
+      assertTrue(scanner.SegmentIs(0, "MSH"));
+    }
+    assertEquals(-1, scanner.NextFrame());
+  }
+
+
+  @Test
+  public void testFields() throws IOException
+  {
+    HL7SegmentScanner scanner = Scan(ReadCorpus().get(0));
+    assertEquals(15, scanner.get_segment_count());
+
+    scanner.SelectSegment(0);
+    assertTrue(scanner.Locate(1, 0, 0, 0));
+    assertEquals("|", scanner.Text());
+    assertTrue(scanner.Locate(2, 0, 0, 0));
+    assertEquals("^~\\&", scanner.Text());
+    assertTrue(scanner.Locate(3, 0, 0, 0));
+    assertEquals("Mindray", scanner.Text());
+    assertFalse(scanner.Locate(5, 0, 0, 0));
+    assertTrue(scanner.Locate(9, 0, 3, 0));
+    assertEquals("ORU_R01", scanner.Text());
+    assertTrue(scanner.Locate(21, 0, 3, 0));
+    assertEquals("1.3.6.1.4.1.19376.1.6.1.1.1", scanner.Text());
+    assertFalse(scanner.Locate(22, 0, 0, 0));
+
+    assertTrue(scanner.SegmentIs(1, "PID"));
+    assertFalse(scanner.SegmentIs(1, "PV1"));
+    scanner.SelectSegment(1);
+    assertEquals(11, scanner.get_field_count());
+    assertEquals(1, scanner.get_repetition_count(3));
+    assertEquals(0, scanner.get_repetition_count(4));
+    assertTrue(scanner.Locate(3, 0, 4, 0));
+    assertEquals("Hospital", scanner.Text());
+    assertFalse(scanner.Locate(3, 1, 1, 0));
+    assertTrue(scanner.Locate(5, 0, 1, 1));
+    assertTrue(scanner.Equals("Smith"));
+    assertTrue(scanner.Locate(5, 0, 0, 0));
+    assertFalse(scanner.IsPlain());
+    assertTrue(scanner.Locate(8, 0, 0, 0));
+    assertTrue(scanner.EqualsIgnoreCase("m"));
+
+    scanner.SelectSegment(8);
+    assertTrue(scanner.Locate(4, 0, 0, 0));
+    assertTrue(scanner.SelectAfterLast('.'));
+    assertEquals(151880, scanner.IntValue());
+    assertTrue(scanner.Locate(5, 0, 0, 0));
+    assertEquals(5.98f, scanner.FloatValue(), 0f);
+    assertTrue(scanner.Locate(3, 0, 3, 0));
+    assertEquals(1, scanner.IndexIn(new byte[][] {
+      "99MNDRY".getBytes(kCharset), "MDC".getBytes(kCharset) }));
+
+    scanner = Scan("MSH#*@!$#A5##B*C@D*E$F\nOBX#1##!F!\r\n");
+    assertEquals(2, scanner.get_segment_count());
+    scanner.SelectSegment(0);
+    assertTrue(scanner.Locate(5, 1, 2, 2));
+    assertEquals("F", scanner.Text());
+    scanner.SelectSegment(1);
+    assertTrue(scanner.Locate(3, 0, 0, 0));
+    assertFalse(scanner.IsPlain());
+  }
+
+
+  @Test
+  public void testNumbers()
+  {
+    HL7SegmentScanner scanner;
+    Random random = new Random(2014);
+    for (int ix = 0; ix < 20000; ix++)
+    {
+      String value = new BigDecimal(random.nextInt(200000000) - 100000000)
+        .movePointLeft(random.nextInt(10)).toPlainString();
+      scanner = Scan("OBX|" + value);
+      scanner.SelectSegment(0);
+      scanner.Locate(1, 0, 0, 0);
+      assertEquals(value, Float.floatToIntBits(Float.parseFloat(value)),
+        Float.floatToIntBits(scanner.FloatValue()));
+    }
+
+    String[] not_numbers = { "", "-", ".", "1.2.3", "1e3", "NaN", " 1" };
+    for (String value : not_numbers)
+    {
+      scanner = Scan("OBX|" + value);
+      scanner.SelectSegment(0);
+      scanner.Locate(1, 0, 0, 0);
+      assertTrue(value, Float.isNaN(scanner.FloatValue()));
+    }
+
+    scanner = Scan("OBX|-262144|+7|2147483647|12a");
+    scanner.SelectSegment(0);
+    scanner.Locate(1, 0, 0, 0);
+    assertEquals(-262144, scanner.IntValue());
+    scanner.Locate(2, 0, 0, 0);
+    assertEquals(7, scanner.IntValue());
+    scanner.Locate(3, 0, 0, 0);
+    assertEquals(Integer.MAX_VALUE, scanner.IntValue());
+    scanner.Locate(4, 0, 0, 0);
+    try
+    {
+      scanner.IntValue();
+      fail("12a is not an integer");
+    }
+    catch (NumberFormatException exc)
+    {
+      // expected
+    }
+  }
+
+
+  @Test
+  public void testDateTime()
+  {
+    String[] valid = { "", "2014", "201403", "20140328", "20160229",
+      "20140328153049", "20140328153049.25",
+      "20140328153049.1234-0500", "201403281530+0100" };
+    int[][] fields = { { 0, 0, 0, 0, 0, 0 }, { 2014, 0, 0, 0, 0, 0 },
+      { 2014, 3, 0, 0, 0, 0 }, { 2014, 3, 28, 0, 0, 0 },
+      { 2016, 2, 29, 0, 0, 0 }, { 2014, 3, 28, 15, 30, 49 },
+      { 2014, 3, 28, 15, 30, 49 }, { 2014, 3, 28, 15, 30, 49 },
+      { 2014, 3, 28, 15, 30, 0 } };
+    int[] result = new int[6];
+    for (int ix = 0; ix < valid.length; ix++)
+    {
+      HL7SegmentScanner scanner = Scan("OBX|" + valid[ix]);
+      scanner.SelectSegment(0);
+      scanner.Locate(1, 0, 0, 0);
+      assertTrue(valid[ix], scanner.DateTimeValue(result));
+      for (int jx = 0; jx < 6; jx++)
+        assertEquals(valid[ix], fields[ix][jx], result[jx]);
+    }
+
+    String[] invalid = { "201", "20143", "20141301", "20140229",
+      "20140328246000", "20140328153060", "201403281530.5",
+      "20140328153049.", "20140328153049.12345", "20140328153049+01",
+      "20140328153049+2400", "2014-03-28" };
+    for (String value : invalid)
+    {
+      HL7SegmentScanner scanner = Scan("OBX|" + value);
+      scanner.SelectSegment(0);
+      scanner.Locate(1, 0, 0, 0);
+      assertFalse(value, scanner.DateTimeValue(result));
+    }
+  }
+}
@@ -15,19 +15,23 @@ package org.mdpnp.devices.philips.intellivue;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mdpnp.devices.io.util.HexUtil;
+import org.mdpnp.devices.net.DatagramBatch;
 import org.mdpnp.devices.net.NetworkConnection;
 import org.mdpnp.devices.net.NetworkLoop;
+import org.mdpnp.devices.net.SendRing;
 import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataRequest;
 import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataResult;
 import org.mdpnp.devices.philips.intellivue.action.SinglePollDataRequest;
@@ -85,14 +89,25 @@ public class Intellivue implements NetworkConnection {
     public static final int DEFAULT_UNICAST_PORT = 24105;
     public static final int BUFFER_SIZE = 5000;
 
-    private final ByteBuffer inBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-    private final ByteBuffer outBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /**
+     * Used only until registered with a NetworkLoop, which then shares its own
+     * receive buffers among connections
+     */
+    private final DatagramBatch inBatch = new DatagramBatch(1, BUFFER_SIZE);
+    /**
+     * Outgoing datagrams, filled by any thread and drained by the NetworkLoop
+     */
+    private final SendRing sendRing = new SendRing(SEND_QUEUE_SIZE, BUFFER_SIZE);
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    /**
+     * Also guards formatting, the protocol implementations are not thread
+     * safe
+     */
     private final Protocol protocol = new CompoundProtocol();
 
-    public Intellivue() {
-        inBuffer.order(ByteOrder.BIG_ENDIAN);
-        outBuffer.order(ByteOrder.BIG_ENDIAN);
+    public static final int SEND_QUEUE_SIZE = 32;
 
+    public Intellivue() {
     }
 
     private static final Logger log = LoggerFactory.getLogger(Intellivue.class);
@@ -209,22 +224,92 @@ public class Intellivue implements NetworkConnection {
     protected void handle(ConnectIndication connectIndication, SelectionKey sk) {
     }
 
-    private int invoke = 0;
-    private int poll = 0;
+    private final AtomicInteger invoke = new AtomicInteger();
+    private final AtomicInteger poll = new AtomicInteger();
 
     private final static int MAX_U_SHORT = (1 << Short.SIZE);
 
-    private synchronized int nextInvoke() {
-        return (invoke = ++invoke >= MAX_U_SHORT ? 0 : invoke);
+    private static int next(AtomicInteger counter) {
+        while (true) {
+            int current = counter.get();
+            int next = current + 1 >= MAX_U_SHORT ? 0 : current + 1;
+            if (counter.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private int nextInvoke() {
+        return next(invoke);
     }
 
-    private synchronized int nextPoll() {
-        return (poll = ++poll >= MAX_U_SHORT ? 0 : poll);
+    private int nextPoll() {
+        return next(poll);
     }
 
     @SuppressWarnings("unused")
-    private synchronized int lastPoll() {
-        return poll;
+    private int lastPoll() {
+        return poll.get();
+    }
+
+    /**
+     * Identifies the pre-encoded form of a poll request
+     */
+    private static final class PollKey {
+        private final boolean extended;
+        private final ObjectClass objectType;
+        private final Long time;
+        private final AttributeId attrGroup;
+
+        PollKey(boolean extended, ObjectClass objectType, Long time, AttributeId attrGroup) {
+            this.extended = extended;
+            this.objectType = objectType;
+            this.time = time;
+            this.attrGroup = attrGroup;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = extended ? 1 : 0;
+            h = 31 * h + (null == objectType ? 0 : objectType.hashCode());
+            h = 31 * h + (null == time ? 0 : time.hashCode());
+            h = 31 * h + (null == attrGroup ? 0 : attrGroup.hashCode());
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PollKey)) {
+                return false;
+            }
+            PollKey k = (PollKey) obj;
+            return extended == k.extended && objectType == k.objectType && attrGroup == k.attrGroup
+                    && (null == time ? null == k.time : time.equals(k.time));
+        }
+    }
+
+    /**
+     * Polls repeat every few seconds with nothing but the invoke id and poll
+     * number changing, so each is encoded once per association
+     */
+    private final Map<PollKey, PduTemplate> pollTemplates = new ConcurrentHashMap<PollKey, PduTemplate>();
+    private volatile PduTemplate associationTemplate;
+
+    private PduTemplate template(Message message, int invokeIdOffset, int pollNumberOffset) {
+        synchronized (protocol) {
+            return PduTemplate.encode(protocol, message, invokeIdOffset, pollNumberOffset);
+        }
+    }
+
+    private PduTemplate pollTemplate(PollKey key) {
+        PduTemplate template = pollTemplates.get(key);
+        if (null == template) {
+            DataExportInvoke message = key.extended ? buildExtendedPoll(key.objectType, key.time, key.attrGroup) : buildSinglePoll(key.objectType,
+                    key.attrGroup);
+            template = template(message, PduTemplate.INVOKE_ID_OFFSET, PduTemplate.POLL_NUMBER_OFFSET);
+            pollTemplates.put(key, template);
+        }
+        return template;
     }
 
     public int requestKeepAlive() throws IOException {
@@ -232,10 +317,15 @@ public class Intellivue implements NetworkConnection {
     }
 
     public int requestSinglePoll(ObjectClass objectType, AttributeId attrGroup) throws IOException {
+        PduTemplate template = pollTemplate(new PollKey(false, objectType, null, attrGroup));
         int invoke = nextInvoke();
+        send(template, invoke, nextPoll());
+        return invoke;
+    }
+
+    static DataExportInvoke buildSinglePoll(ObjectClass objectType, AttributeId attrGroup) {
         DataExportInvoke message = new DataExportInvokeImpl();
         message.setCommandType(CommandType.ConfirmedAction);
-        message.setInvoke(invoke);
 
         Action action = (Action) CommandFactory.buildCommand(CommandType.ConfirmedAction, false);
         action.getManagedObject().setOidType(OIDType.lookup(ObjectClass.NOM_MOC_VMS_MDS.asInt()));
@@ -247,16 +337,13 @@ public class Intellivue implements NetworkConnection {
         message.setCommand(action);
 
         SinglePollDataRequest req = new SinglePollDataRequestImpl();
-        req.setPollNumber(nextPoll());
         req.setPolledAttributeGroup(null == attrGroup ? OIDType.lookup(0) : attrGroup.asOid());
         req.getPolledObjectType().setNomPartition(NomPartition.Object);
         req.getPolledObjectType().setOidType(OIDType.lookup(objectType.asInt()));
 
         action.setAction(req);
 
-        send(message);
-
-        return invoke;
+        return message;
     }
 
     public int requestExtendedPoll(ObjectClass objectType, Long time) throws IOException {
@@ -264,11 +351,15 @@ public class Intellivue implements NetworkConnection {
     }
 
     public int requestExtendedPoll(ObjectClass objectType, Long time, AttributeId attrGroup) throws IOException {
-
+        PduTemplate template = pollTemplate(new PollKey(true, objectType, time, attrGroup));
         int invoke = nextInvoke();
+        send(template, invoke, nextPoll());
+        return invoke;
+    }
+
+    static DataExportInvoke buildExtendedPoll(ObjectClass objectType, Long time, AttributeId attrGroup) {
         DataExportInvoke message = new DataExportInvokeImpl();
         message.setCommandType(CommandType.ConfirmedAction);
-        message.setInvoke(invoke);
 
         Action action = (Action) CommandFactory.buildCommand(CommandType.ConfirmedAction, false);
         action.getManagedObject().setOidType(OIDType.lookup(ObjectClass.NOM_MOC_VMS_MDS.asInt()));
@@ -280,7 +371,6 @@ public class Intellivue implements NetworkConnection {
         message.setCommand(action);
 
         ExtendedPollDataRequest req = new ExtendedPollDataRequestImpl();
-        req.setPollNumber(nextPoll());
         req.setPolledAttributeGroup(null == attrGroup ? OIDType.lookup(0) : attrGroup.asOid());
 
         req.getPolledObjectType().setNomPartition(NomPartition.Object);
@@ -294,9 +384,7 @@ public class Intellivue implements NetworkConnection {
 
         action.setAction(req);
 
-        send(message);
-
-        return invoke;
+        return message;
     }
 
     public int requestGet(OIDType oids) throws IOException {
@@ -512,6 +600,16 @@ public class Intellivue implements NetworkConnection {
     }
 
     public void requestAssociation() throws IOException {
+        // A new association, start over with the polls
+        pollTemplates.clear();
+        PduTemplate template = associationTemplate;
+        if (null == template) {
+            associationTemplate = template = template(buildAssociation(), PduTemplate.NONE, PduTemplate.NONE);
+        }
+        send(template, 0, 0);
+    }
+
+    static AssociationConnect buildAssociation() {
         AssociationConnect req = new AssociationConnectImpl();
         PollProfileSupport pps = req.getUserInfo().getPollProfileSupport();
 
@@ -538,46 +636,83 @@ public class Intellivue implements NetworkConnection {
         // obj.addClass(ObjectClass.NOM_MOC_SCAN_UCFG_ALSTAT, 1);
         // obj.addClass(ObjectClass.NOM_MOC_SCAN_UCFG_CTXT, 1);
 
-        send(req);
-
+        return req;
     }
 
-    private List<Message> messageQueue = new ArrayList<Message>();
-
-    private final synchronized int write(DatagramChannel channel, Message message) throws IOException {
-        outBuffer.clear();
-        protocol.format(message, outBuffer);
-        outBuffer.flip();
-        outBuffer.mark();
-
-        int cnt = channel.write(outBuffer);
-
-        if (cnt > 0 && log.isTraceEnabled()) {
-            outBuffer.reset();
-            time.setTime(System.currentTimeMillis());
-            log.trace("To " + channel.getRemoteAddress() + "\n" + HexUtil.dump(outBuffer, 50));
+    /**
+     * Sends whatever is queued, called by the NetworkLoop when the channel is
+     * writable and write interest has been requested
+     */
+    @Override
+    public void write(SelectionKey sk) throws IOException {
+        flushRequested.set(false);
+        drain((DatagramChannel) sk.channel());
+        sk.interestOps(sk.interestOps() & ~SelectionKey.OP_WRITE);
+        // a producer may have queued since; it will have seen the flag cleared
+        // and asked again or left its datagram for us to find here
+        if (flushRequested.get() || null != sendRing.peek()) {
+            sk.interestOps(sk.interestOps() | SelectionKey.OP_WRITE);
         }
-        return cnt;
     }
 
-    @Override
-    public synchronized void write(SelectionKey sk) throws IOException {
-        @SuppressWarnings("unused")
-        DatagramChannel channel = (DatagramChannel) sk.channel();
-
-        Message message = null;
-
-        message = messageQueue.isEmpty() ? null : messageQueue.remove(0);
+    private void drain(DatagramChannel channel) throws IOException {
+        ByteBuffer bb;
+        while (null != (bb = sendRing.peek())) {
+            if (bb.hasRemaining()) {
+                if (0 == channel.write(bb)) {
+                    // socket buffer full, try again when writable
+                    return;
+                }
+                if (log.isTraceEnabled()) {
+                    ByteBuffer sent = bb.duplicate();
+                    sent.position(0);
+                    log.trace("To " + channel.getRemoteAddress() + "\n" + HexUtil.dump(sent, 50));
+                }
+            }
+            sendRing.remove();
+        }
+    }
 
-        if (write((DatagramChannel) sk.channel(), message) == 0) {
-            messageQueue.add(0, message);
+    /**
+     * Writes right away on the NetworkLoop thread, anywhere else asks the
+     * NetworkLoop to write
+     *
+     * @return true if the queue was emptied before returning
+     */
+    private boolean flush() throws IOException {
+        SelectionKey key = registeredKey;
+        NetworkLoop loop = registeredNetworkLoop;
+        if (null == key) {
+            // unregistered meanwhile
+            return false;
+        } else if (null != loop && loop.isLoopThread()) {
+            write(key);
+            return null == sendRing.peek();
         }
+        if (!flushRequested.getAndSet(true)) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            if (null != loop) {
+                loop.wakeup();
+            }
+        }
+        return false;
+    }
 
-        if (messageQueue.isEmpty()) {
-            sk.interestOps(sk.interestOps() & ~SelectionKey.OP_WRITE);
-        } else {
-            sk.interestOps(sk.interestOps() | SelectionKey.OP_WRITE);
+    private long claim() throws IOException {
+        if (null == registeredKey) {
+            throw new IOException("Not registered with a NetworkLoop");
+        }
+        long claim = sendRing.claim();
+        if (claim < 0L) {
+            throw new IOException(sendRing.getCapacity() + " datagrams already waiting to be sent");
         }
+        return claim;
+    }
+
+    /**
+     * Called on the sending thread each time a message has been queued
+     */
+    protected void queued() {
     }
 
     protected void readyToWrite() {
@@ -587,35 +722,65 @@ public class Intellivue implements NetworkConnection {
      * Called externally to send a message
      * 
      * @param message
-     * @return
+     * @return true if the message was written before returning, false if it
+     *         was left for the NetworkLoop to write
      * @throws IOException
+     *             if the send queue is full
      */
-    public synchronized boolean send(Message message) throws IOException {
+    public boolean send(Message message) throws IOException {
         if (null == message) {
             return false;
         }
 
         if (log.isTraceEnabled()) {
-            time.setTime(System.currentTimeMillis());
-            log.trace("Out Message(" + simpleDateformat.format(time) + "):\n" + lineWrap(message.toString()));
+            log.trace("Out Message(" + now() + "):\n" + lineWrap(message.toString()));
         }
 
-        // Try to write the datagram, if unavailable then set interestOps
+        long claim = claim();
+        try {
+            synchronized (protocol) {
+                protocol.format(message, sendRing.getBuffer(claim));
+            }
+        } catch (RuntimeException e) {
+            sendRing.cancel(claim);
+            throw e;
+        }
+        sendRing.publish(claim);
+        queued();
+        return flush();
+    }
 
-        int cnt = write(registeredChannel, message);
-        if (cnt == 0) {
-            registeredKey.interestOps(registeredKey.interestOps() | SelectionKey.OP_WRITE);
-            messageQueue.add(message);
-            registeredNetworkLoop.wakeup();
-            return false;
-        } else {
-            return true;
+    private boolean send(PduTemplate template, int invokeId, int pollNumber) throws IOException {
+        if (log.isTraceEnabled()) {
+            log.trace("Out Message(" + now() + ") invoke=" + invokeId + " poll=" + pollNumber + ":\n"
+                    + lineWrap(template.toString()));
+        }
+
+        long claim = claim();
+        try {
+            template.write(sendRing.getBuffer(claim), invokeId, pollNumber);
+        } catch (RuntimeException e) {
+            sendRing.cancel(claim);
+            throw e;
         }
+        sendRing.publish(claim);
+        queued();
+        return flush();
     }
 
     private final Date time = new Date();
     private final DateFormat simpleDateformat = new SimpleDateFormat("HH:mm:ss.SSS");
 
+    /**
+     * For tracing, messages are sent from several threads
+     */
+    private String now() {
+        synchronized (simpleDateformat) {
+            time.setTime(System.currentTimeMillis());
+            return simpleDateformat.format(time);
+        }
+    }
+
     protected SelectionKey registeredKey;
     protected NetworkLoop registeredNetworkLoop;
     protected DatagramChannel registeredChannel;
@@ -649,15 +814,22 @@ public class Intellivue implements NetworkConnection {
         if (sk.channel() instanceof DatagramChannel) {
             DatagramChannel channel = (DatagramChannel) sk.channel();
 
-            inBuffer.clear();
-            SocketAddress sockaddr = channel.receive(inBuffer);
-            inBuffer.flip();
-            if (inBuffer.hasRemaining()) {
-                if (log.isTraceEnabled()) {
-                    time.setTime(System.currentTimeMillis());
-                    log.trace("From " + channel.getRemoteAddress() + " on " + channel.socket().getLocalAddress() + "\n" + HexUtil.dump(inBuffer, 50));
+            // Drain everything that is pending rather than one datagram per wakeup;
+            // messages are fully parsed before the next buffer is looked at
+            DatagramBatch batch = null == registeredNetworkLoop ? inBatch : registeredNetworkLoop.getDatagramBatch(BUFFER_SIZE);
+            int count = batch.receive(channel);
+            for (int i = 0; i < count; i++) {
+                ByteBuffer inBuffer = batch.getBuffer(i);
+                if (inBuffer.hasRemaining()) {
+                    if (log.isTraceEnabled()) {
+                        time.setTime(System.currentTimeMillis());
+                        log.trace("From " + channel.getRemoteAddress() + " on " + channel.socket().getLocalAddress() + "\n" + HexUtil.dump(inBuffer, 50));
+                    }
+                    handle(batch.getAddress(i), protocol.parse(inBuffer), sk);
+                }
+                if (!sk.isValid()) {
+                    break;
                 }
-                handle(sockaddr, protocol.parse(inBuffer), sk);
             }
         }
     }
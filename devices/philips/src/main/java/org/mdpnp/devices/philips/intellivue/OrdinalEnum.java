@@ -12,24 +12,87 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * @author Jeff Plourde
  *
  */
 public class OrdinalEnum {
+    /**
+     * Maps the ordinals of an enum back onto its constants without boxing the
+     * key or hashing. Nomenclature codes are 16 bits wide and may be qualified
+     * by a partition in the upper bits (see {@link org.mdpnp.devices.philips.intellivue.data.Label})
+     * so the key is split into partition and code; each partition holds a
+     * two-level table of 256 pages of 256 entries, and pages are only
+     * allocated where codes are defined. An enum spans a handful of partitions
+     * at most so those are scanned linearly.
+     */
+    public static final class Lookup<T> {
+        private static final int PAGE_BITS = 8;
+        private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+        private long[] partitions = new long[0];
+        private Object[][][] tables = new Object[0][][];
+        private int size;
+
+        private Lookup() {
+        }
+
+        public T get(int key) {
+            return get((long) key);
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(long key) {
+            final long partition = key >> 16;
+            final long[] partitions = this.partitions;
+            for (int i = 0; i < partitions.length; i++) {
+                if (partitions[i] == partition) {
+                    final int code = (int) key & 0xFFFF;
+                    final Object[] page = tables[i][code >>> PAGE_BITS];
+                    return null == page ? null : (T) page[code & PAGE_MASK];
+                }
+            }
+            return null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void put(long key, T value) {
+            final long partition = key >> 16;
+            int i = 0;
+            while (i < partitions.length && partitions[i] != partition) {
+                i++;
+            }
+            if (i == partitions.length) {
+                partitions = Arrays.copyOf(partitions, i + 1);
+                partitions[i] = partition;
+                tables = Arrays.copyOf(tables, i + 1);
+                tables[i] = new Object[1 << (16 - PAGE_BITS)][];
+            }
+            final int code = (int) key & 0xFFFF;
+            Object[] page = tables[i][code >>> PAGE_BITS];
+            if (null == page) {
+                page = tables[i][code >>> PAGE_BITS] = new Object[1 << PAGE_BITS];
+            }
+            if (null != page[code & PAGE_MASK]) {
+                throw new IllegalStateException("" + key + " is ordinal for " + value + " and " + page[code & PAGE_MASK]);
+            }
+            page[code & PAGE_MASK] = value;
+            size++;
+        }
+    }
+
     public interface ShortType {
         short asShort();
     }
 
-    public static final <T extends ShortType> Map<Short, T> buildShort(Class<T> cls) {
-        Map<Short, T> map = new HashMap<Short, T>();
+    public static final <T extends ShortType> Lookup<T> buildShort(Class<T> cls) {
+        Lookup<T> map = new Lookup<T>();
         for (T t : cls.getEnumConstants()) {
-            if (map.containsKey(t.asShort())) {
-                throw new IllegalStateException("" + t.asShort() + " is ordinal for " + t + " and " + map.get(t.asShort()));
-            }
             map.put(t.asShort(), t);
         }
         return map;
@@ -39,12 +102,9 @@ public class OrdinalEnum {
         int asInt();
     }
 
-    public static final <T extends IntType> Map<Integer, T> buildInt(Class<T> cls) {
-        Map<Integer, T> map = new HashMap<Integer, T>();
+    public static final <T extends IntType> Lookup<T> buildInt(Class<T> cls) {
+        Lookup<T> map = new Lookup<T>();
         for (T t : cls.getEnumConstants()) {
-            if (map.containsKey(t.asInt())) {
-                throw new IllegalStateException("" + t.asInt() + " is ordinal for " + t + " and " + map.get(t.asInt()));
-            }
             map.put(t.asInt(), t);
         }
         return map;
@@ -54,12 +114,9 @@ public class OrdinalEnum {
         long asLong();
     }
 
-    public static final <T extends LongType> Map<Long, T> buildLong(Class<T> cls) {
-        Map<Long, T> map = new HashMap<Long, T>();
+    public static final <T extends LongType> Lookup<T> buildLong(Class<T> cls) {
+        Lookup<T> map = new Lookup<T>();
         for (T t : cls.getEnumConstants()) {
-            if (map.containsKey(t.asLong())) {
-                throw new IllegalStateException("" + t.asLong() + " is ordinal for " + t + " and " + map.get(t.asLong()));
-            }
             map.put(t.asLong(), t);
         }
         return map;
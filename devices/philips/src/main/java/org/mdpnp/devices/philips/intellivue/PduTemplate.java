@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A request encoded once and then copied into the send queue as often as it
+ * is needed, with only the invoke id and (for polls) the poll number written
+ * into each copy.
+ */
+final class PduTemplate {
+    /**
+     * session header (4), remote operation (2) and length (2)
+     */
+    static final int INVOKE_ID_OFFSET = 8;
+    /**
+     * invoke id (2), command type (2), length (2), managed object (6), scope
+     * (4), action type (2) and length (2) follow the invoke id offset
+     */
+    static final int POLL_NUMBER_OFFSET = 28;
+    static final int NONE = -1;
+
+    private final byte[] pdu;
+    private final int invokeIdOffset, pollNumberOffset;
+    private final String description;
+
+    private PduTemplate(byte[] pdu, int invokeIdOffset, int pollNumberOffset, String description) {
+        this.pdu = pdu;
+        this.invokeIdOffset = invokeIdOffset;
+        this.pollNumberOffset = pollNumberOffset;
+        this.description = description;
+    }
+
+    /**
+     * Protocol implementations keep state while formatting so callers are
+     * expected to serialize access to the protocol
+     */
+    static PduTemplate encode(Protocol protocol, Message message, int invokeIdOffset, int pollNumberOffset) {
+        ByteBuffer bb = ByteBuffer.allocate(Intellivue.BUFFER_SIZE);
+        protocol.format(message, bb);
+        bb.flip();
+        byte[] pdu = new byte[bb.remaining()];
+        bb.get(pdu);
+        if (pdu.length < invokeIdOffset + 2 || pdu.length < pollNumberOffset + 2) {
+            throw new IllegalArgumentException("Encoded message of " + pdu.length + " bytes is too short for the template offsets");
+        }
+        return new PduTemplate(pdu, invokeIdOffset, pollNumberOffset, message.toString());
+    }
+
+    /**
+     * Appends a copy to bb
+     */
+    void write(ByteBuffer bb, int invokeId, int pollNumber) {
+        int start = bb.position();
+        bb.put(pdu);
+        if (invokeIdOffset != NONE) {
+            bb.putShort(start + invokeIdOffset, (short) invokeId);
+        }
+        if (pollNumberOffset != NONE) {
+            bb.putShort(start + pollNumberOffset, (short) pollNumber);
+        }
+    }
+
+    int length() {
+        return pdu.length;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -20,6 +20,7 @@ import java.util.Random;
 import java.util.concurrent.ScheduledFuture;
 
 import org.mdpnp.devices.math.DCT;
+import org.mdpnp.devices.math.FastDCT;
 import org.mdpnp.devices.net.NetworkLoop;
 import org.mdpnp.devices.net.TaskQueue;
 import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataRequest;
@@ -58,6 +59,7 @@ public class SimulatedPulseOximeterImpl extends IntellivueAcceptor {
     private int count = 0;
 
     private final static Logger log = LoggerFactory.getLogger(SimulatedPulseOximeterImpl.class);
+    private final static boolean FAST_DCT = Boolean.getBoolean("SimulatedPulseOximeterImpl.FAST_DCT");
 
     private final Attribute<RelativeTime> samplePeriod = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
     private final SampleArrayObservedValue plethSA = new SampleArrayObservedValue(); // AttributeFactory.getAttribute(0,
@@ -194,7 +196,11 @@ public class SimulatedPulseOximeterImpl extends IntellivueAcceptor {
     private final double[] pleth = new double[coeffs.length];
 
     private void initPleth() {
-        DCT.idct(coeffs, 0, 60, pleth);
+        if (FAST_DCT) {
+            FastDCT.idct(coeffs, 0, 60, pleth);
+        } else {
+            DCT.idct(coeffs, 0, 60, pleth);
+        }
 
         SampleArraySpecification plethSpec = this.plethSpec.getValue();
         int samples = 25;
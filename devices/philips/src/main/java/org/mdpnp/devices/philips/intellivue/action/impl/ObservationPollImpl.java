@@ -24,7 +24,7 @@ import org.mdpnp.devices.philips.intellivue.data.Handle;
  */
 public class ObservationPollImpl implements ObservationPoll {
     private final Handle handle = new Handle();
-    private final AttributeValueList attrList = new AttributeValueList();
+    private final AttributeValueList attrList = new AttributeValueList(true);
 
     @Override
     public void parse(ByteBuffer bb) {
@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.association;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -57,7 +55,7 @@ public enum AssociationMessageType implements OrdinalEnum.ShortType {
         this.x = x;
     }
 
-    private static final Map<Short, AssociationMessageType> map = OrdinalEnum.buildShort(AssociationMessageType.class);
+    private static final OrdinalEnum.Lookup<AssociationMessageType> map = OrdinalEnum.buildShort(AssociationMessageType.class);
 
     public final short asShort() {
         return x;
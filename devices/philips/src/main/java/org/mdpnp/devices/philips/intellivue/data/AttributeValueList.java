@@ -14,6 +14,7 @@ package org.mdpnp.devices.philips.intellivue.data;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -22,11 +23,23 @@ import org.mdpnp.devices.philips.intellivue.Formatable;
 import org.mdpnp.devices.philips.intellivue.Parseable;
 import org.mdpnp.devices.philips.intellivue.attribute.Attribute;
 import org.mdpnp.devices.philips.intellivue.attribute.AttributeFactory;
+import org.mdpnp.devices.io.util.Bits;
 import org.mdpnp.devices.philips.intellivue.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * In lazy mode a parse copies the encoded list into a buffer owned by this
+ * list and records only the OID, offset and length of each attribute; an
+ * attribute is decoded when it is first asked for. Poll results carry many
+ * attributes that are never read so this saves building an
+ * {@link AttributeValueAssertion} and a copy of the bytes for each of them.
+ * The encoded bytes are copied because linked results are parsed from
+ * successive datagrams into the same receive buffer before they are handled.
+ * Anything that needs the attributes as objects (mutation, iteration,
+ * formatting) converts the pending attributes first so both modes behave the
+ * same.
+ *
  * @author Jeff Plourde
  *
  */
@@ -35,6 +48,39 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     private final List<AttributeValueAssertion> recycle = new java.util.ArrayList<AttributeValueAssertion>();
     private final Map<OIDType, Attribute<?>> map = new java.util.HashMap<OIDType, Attribute<?>>();
 
+    private boolean lazy;
+    // lazy mode; attributes not yet moved into list and map
+    private byte[] raw = EMPTY_BYTES;
+    private ByteBuffer rawView = ByteBuffer.wrap(raw);
+    private int rawLength;
+    private int[] rawOids = EMPTY_INTS;
+    private int[] rawOffsets = EMPTY_INTS;
+    private Attribute<?>[] rawDecoded = EMPTY_ATTRIBUTES;
+    private int rawCount;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+    private static final int[] EMPTY_INTS = new int[0];
+    private static final Attribute<?>[] EMPTY_ATTRIBUTES = new Attribute<?>[0];
+
+    public AttributeValueList() {
+        this(false);
+    }
+
+    public AttributeValueList(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        if (!lazy) {
+            inflate();
+        }
+        this.lazy = lazy;
+    }
+
     @Override
     public Attribute<?> build() {
         return newAVA();
@@ -44,7 +90,7 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
         if (recycle.isEmpty()) {
             return new AttributeValueAssertion();
         } else {
-            return recycle.remove(0);
+            return recycle.remove(recycle.size() - 1);
         }
     }
 
@@ -56,10 +102,19 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
         }
         list.clear();
         map.clear();
+        for (int i = 0; i < rawCount; i++) {
+            if (rawDecoded[i] instanceof AttributeValueAssertion) {
+                recycle.add((AttributeValueAssertion) rawDecoded[i]);
+            }
+            rawDecoded[i] = null;
+        }
+        rawCount = 0;
+        rawLength = 0;
     }
 
     @Override
     public void format(ByteBuffer bb) {
+        inflate();
         Util.PrefixLengthShort.write(bb, list);
     }
 
@@ -73,6 +128,13 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     }
 
     private void parse(ByteBuffer bb, boolean clear) {
+        if (lazy) {
+            if (clear) {
+                reset();
+            }
+            parseLazy(bb);
+            return;
+        }
         Util.PrefixLengthShort.read(bb, list, clear, this);
 
         for (Attribute<?> a : list) {
@@ -81,7 +143,79 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
 
     }
 
+    private void parseLazy(ByteBuffer bb) {
+        int count = Bits.getUnsignedShort(bb);
+        // skip the list length and walk the attribute headers instead, as the
+        // eager parse does
+        bb.getShort();
+        int start = bb.position();
+        int pos = start;
+        if (rawOids.length < rawCount + count) {
+            int capacity = Math.max(rawCount + count, 2 * rawOids.length);
+            rawOids = Arrays.copyOf(rawOids, capacity);
+            rawOffsets = Arrays.copyOf(rawOffsets, capacity);
+            rawDecoded = Arrays.copyOf(rawDecoded, capacity);
+        }
+        for (int i = 0; i < count; i++) {
+            rawOids[rawCount + i] = 0xFFFF & bb.getShort(pos);
+            rawOffsets[rawCount + i] = rawLength + pos - start;
+            pos += 4 + (0xFFFF & bb.getShort(pos + 2));
+        }
+        int bytes = pos - start;
+        if (raw.length < rawLength + bytes) {
+            raw = Arrays.copyOf(raw, Math.max(rawLength + bytes, 2 * raw.length));
+            rawView = ByteBuffer.wrap(raw);
+        }
+        bb.get(raw, rawLength, bytes);
+        rawLength += bytes;
+        rawCount += count;
+    }
+
+    private int rawIndex(int oid) {
+        // the last occurrence wins as it would in the map
+        for (int i = rawCount - 1; i >= 0; i--) {
+            if (rawOids[i] == oid) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int rawAttributeLength(int i) {
+        int offset = rawOffsets[i];
+        return 4 + (((0xFF & raw[offset + 2]) << 8) | (0xFF & raw[offset + 3]));
+    }
+
+    private void decode(int i, Attribute<?> p) {
+        int offset = rawOffsets[i];
+        rawView.limit(offset + rawAttributeLength(i));
+        rawView.position(offset);
+        p.parse(rawView);
+        rawDecoded[i] = p;
+    }
+
+    /**
+     * Moves any attributes still pending from a lazy parse into the list and
+     * map.
+     */
+    private void inflate() {
+        for (int i = 0; i < rawCount; i++) {
+            Attribute<?> a = rawDecoded[i];
+            if (null == a) {
+                AttributeValueAssertion ava = newAVA();
+                decode(i, ava);
+                a = ava;
+            }
+            list.add(a);
+            map.put(a.getOid(), a);
+            rawDecoded[i] = null;
+        }
+        rawCount = 0;
+        rawLength = 0;
+    }
+
     public void put(OIDType type, Attribute<?> a) {
+        inflate();
         list.add(a);
         map.put(type, a);
 
@@ -96,6 +230,7 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     }
 
     public boolean remove(OIDType type) {
+        inflate();
         Attribute<?> a = map.remove(type);
         if (null != a) {
             list.remove(a);
@@ -116,7 +251,7 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
 
     @SuppressWarnings("unchecked")
     public <T extends Value> Attribute<T> getAttribute(OIDType oid, Class<T> valueClass, Attribute<T> attr) {
-        Attribute<?> a = get(oid);
+        Attribute<?> a = peek(oid);
         if (a != null && valueClass.isInstance(a.getValue())) {
             return (Attribute<T>) a;
         } else {
@@ -135,6 +270,24 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     }
 
     public Attribute<?> get(OIDType type) {
+        int i = rawIndex(type.getType());
+        if (i >= 0) {
+            if (null == rawDecoded[i]) {
+                decode(i, newAVA());
+            }
+            return rawDecoded[i];
+        }
+        return map.get(type);
+    }
+
+    /**
+     * Like {@link #get(OIDType)} but does not decode a pending attribute.
+     */
+    private Attribute<?> peek(OIDType type) {
+        int i = rawIndex(type.getType());
+        if (i >= 0) {
+            return rawDecoded[i];
+        }
         return map.get(type);
     }
 
@@ -143,6 +296,21 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     }
 
     public boolean get(OIDType type, Attribute<?> p) {
+        int i = rawIndex(type.getType());
+        if (i >= 0) {
+            Attribute<?> a = rawDecoded[i];
+            if (null == p) {
+                return false;
+            } else if (null == a || a instanceof AttributeValueAssertion || a.getValue() instanceof ByteArray) {
+                if (a instanceof AttributeValueAssertion) {
+                    recycle.add((AttributeValueAssertion) a);
+                }
+                decode(i, p);
+                return true;
+            } else {
+                return false;
+            }
+        }
         Attribute<?> a = map.get(type);
         if (a == null) {
             return false;
@@ -179,6 +347,7 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     }
 
     public void add(AttributeValueAssertion ava) {
+        inflate();
         list.add(ava);
         map.put(ava.getOid(), ava);
     }
@@ -188,15 +357,18 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     }
 
     public Collection<Attribute<?>> getList() {
+        inflate();
         return list;
     }
 
     public Map<OIDType, Attribute<?>> getMap() {
+        inflate();
         return map;
     }
 
     @Override
     public java.lang.String toString() {
+        inflate();
         StringBuilder sb = new StringBuilder("{");
         for (Attribute<?> a : list) {
             if (null == a) {
@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.data;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -2800,7 +2798,7 @@ public enum Label implements OrdinalEnum.LongType {
         this.x = x;
     }
 
-    private final static Map<Long, Label> map = OrdinalEnum.buildLong(Label.class);
+    private final static OrdinalEnum.Lookup<Label> map = OrdinalEnum.buildLong(Label.class);
 
     public final long asLong() {
         return x;
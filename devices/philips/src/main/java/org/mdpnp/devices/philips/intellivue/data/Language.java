@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.data;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -36,7 +34,7 @@ public enum Language implements OrdinalEnum.ShortType {
         this.x = x;
     }
 
-    private static final Map<Short, Language> map = OrdinalEnum.buildShort(Language.class);
+    private static final OrdinalEnum.Lookup<Language> map = OrdinalEnum.buildShort(Language.class);
 
     public short asShort() {
         return x;
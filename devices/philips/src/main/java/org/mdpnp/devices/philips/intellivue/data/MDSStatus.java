@@ -13,7 +13,6 @@
 package org.mdpnp.devices.philips.intellivue.data;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import org.mdpnp.devices.io.util.Bits;
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
@@ -41,7 +40,7 @@ public enum MDSStatus implements EnumMessage<MDSStatus>, OrdinalEnum.IntType {
         this.x = x;
     }
 
-    private static final Map<Integer, MDSStatus> map = OrdinalEnum.buildInt(MDSStatus.class);
+    private static final OrdinalEnum.Lookup<MDSStatus> map = OrdinalEnum.buildInt(MDSStatus.class);
 
     public static MDSStatus valueOf(int x) {
         return map.get(x);
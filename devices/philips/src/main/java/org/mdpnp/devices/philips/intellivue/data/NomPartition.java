@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.data;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -33,7 +31,7 @@ public enum NomPartition implements OrdinalEnum.ShortType {
         this.x = x;
     }
 
-    private static final Map<Short, NomPartition> map = OrdinalEnum.buildShort(NomPartition.class);
+    private static final OrdinalEnum.Lookup<NomPartition> map = OrdinalEnum.buildShort(NomPartition.class);
 
     public short asShort() {
         return x;
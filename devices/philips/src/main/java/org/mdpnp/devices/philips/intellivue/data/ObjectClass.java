@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.data;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -653,7 +651,7 @@ public enum ObjectClass implements OrdinalEnum.IntType {
         this.x = x;
     }
 
-    private static final Map<Integer, ObjectClass> map = OrdinalEnum.buildInt(ObjectClass.class);
+    private static final OrdinalEnum.Lookup<ObjectClass> map = OrdinalEnum.buildInt(ObjectClass.class);
 
     public OIDType asOID() {
         return OIDType.lookup(asInt());
@@ -13,7 +13,6 @@
 package org.mdpnp.devices.philips.intellivue.data;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import org.mdpnp.devices.io.util.Bits;
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
@@ -40,7 +39,7 @@ public enum PatientBSAFormula implements EnumMessage<PatientBSAFormula>, Ordinal
         this.x = x;
     }
 
-    private static final Map<Integer, PatientBSAFormula> map = OrdinalEnum.buildInt(PatientBSAFormula.class);
+    private static final OrdinalEnum.Lookup<PatientBSAFormula> map = OrdinalEnum.buildInt(PatientBSAFormula.class);
 
     public static PatientBSAFormula valueOf(int x) {
         return map.get(x);
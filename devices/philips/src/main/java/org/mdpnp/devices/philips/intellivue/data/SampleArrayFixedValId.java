@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.data;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -52,7 +50,7 @@ public enum SampleArrayFixedValId implements OrdinalEnum.IntType {
         this.x = x;
     }
 
-    private static final Map<Integer, SampleArrayFixedValId> map = OrdinalEnum.buildInt(SampleArrayFixedValId.class);
+    private static final OrdinalEnum.Lookup<SampleArrayFixedValId> map = OrdinalEnum.buildInt(SampleArrayFixedValId.class);
 
     public static SampleArrayFixedValId valueOf(int x) {
         return map.get(x);
@@ -13,7 +13,6 @@
 package org.mdpnp.devices.philips.intellivue.data;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import org.mdpnp.devices.io.util.Bits;
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
@@ -41,7 +40,7 @@ public enum SimpleColor implements EnumMessage<SimpleColor>, OrdinalEnum.IntType
         this.x = x;
     }
 
-    private static final Map<Integer, SimpleColor> map = OrdinalEnum.buildInt(SimpleColor.class);
+    private static final OrdinalEnum.Lookup<SimpleColor> map = OrdinalEnum.buildInt(SimpleColor.class);
 
     public static final SimpleColor valueOf(int x) {
         return map.get(x);
@@ -13,7 +13,6 @@
 package org.mdpnp.devices.philips.intellivue.data;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import org.mdpnp.devices.io.util.Bits;
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
@@ -1313,7 +1312,7 @@ public enum UnitCode implements EnumMessage<UnitCode>, OrdinalEnum.IntType {
         this.x = x;
     }
 
-    private static final Map<Integer, UnitCode> map = OrdinalEnum.buildInt(UnitCode.class);
+    private static final OrdinalEnum.Lookup<UnitCode> map = OrdinalEnum.buildInt(UnitCode.class);
 
     @Override
     public void format(ByteBuffer bb) {
@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.dataexport;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -29,7 +27,7 @@ public enum ModifyOperator implements OrdinalEnum.IntType {
         this.x = x;
     }
 
-    private static final Map<Integer, ModifyOperator> map = OrdinalEnum.buildInt(ModifyOperator.class);
+    private static final OrdinalEnum.Lookup<ModifyOperator> map = OrdinalEnum.buildInt(ModifyOperator.class);
 
     public static final ModifyOperator valueOf(int x) {
         return map.get(x);
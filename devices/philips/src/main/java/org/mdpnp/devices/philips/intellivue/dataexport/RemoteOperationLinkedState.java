@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.dataexport;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -33,7 +31,7 @@ public enum RemoteOperationLinkedState implements OrdinalEnum.ShortType {
         this.x = x;
     }
 
-    private static final Map<Short, RemoteOperationLinkedState> map = OrdinalEnum.buildShort(RemoteOperationLinkedState.class);
+    private static final OrdinalEnum.Lookup<RemoteOperationLinkedState> map = OrdinalEnum.buildShort(RemoteOperationLinkedState.class);
 
     public static final RemoteOperationLinkedState valueOf(short x) {
         return map.get(x);
@@ -12,8 +12,6 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.dataexport.error;
 
-import java.util.Map;
-
 import org.mdpnp.devices.philips.intellivue.OrdinalEnum;
 
 /**
@@ -30,7 +28,7 @@ public enum RemoteError implements OrdinalEnum.IntType {
         this.x = x;
     }
 
-    private static final Map<Integer, RemoteError> map = OrdinalEnum.buildInt(RemoteError.class);
+    private static final OrdinalEnum.Lookup<RemoteError> map = OrdinalEnum.buildInt(RemoteError.class);
 
     public static final RemoteError valueOf(int x) {
         return map.get(x);
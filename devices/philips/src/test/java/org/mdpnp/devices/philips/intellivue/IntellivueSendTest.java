@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.net.NetworkLoop;
+import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataRequest;
+import org.mdpnp.devices.philips.intellivue.action.SinglePollDataRequest;
+import org.mdpnp.devices.philips.intellivue.data.AttributeId;
+import org.mdpnp.devices.philips.intellivue.data.ObjectClass;
+import org.mdpnp.devices.philips.intellivue.data.OIDType;
+import org.mdpnp.devices.philips.intellivue.dataexport.DataExportInvoke;
+import org.mdpnp.devices.philips.intellivue.dataexport.command.Action;
+
+public class IntellivueSendTest {
+    private static byte[] bytes(ByteBuffer bb) {
+        bb.flip();
+        byte[] b = new byte[bb.remaining()];
+        bb.get(b);
+        return b;
+    }
+
+    private static byte[] format(Message message) {
+        ByteBuffer bb = ByteBuffer.allocate(Intellivue.BUFFER_SIZE);
+        new CompoundProtocol().format(message, bb);
+        return bytes(bb);
+    }
+
+    private static byte[] write(PduTemplate template, int invokeId, int pollNumber) {
+        ByteBuffer bb = ByteBuffer.allocate(Intellivue.BUFFER_SIZE);
+        template.write(bb, invokeId, pollNumber);
+        return bytes(bb);
+    }
+
+    @Test
+    public void testTemplates() {
+        int[][] ids = new int[][] { { 1, 1 }, { 0x1234, 0xFEDC }, { 0xFFFF, 0 } };
+        for (int[] id : ids) {
+            DataExportInvoke expected = Intellivue.buildSinglePoll(ObjectClass.NOM_MOC_VMO_AL_MON, AttributeId.NOM_ATTR_GRP_VMO_STATIC);
+            PduTemplate template = PduTemplate.encode(new CompoundProtocol(), expected, PduTemplate.INVOKE_ID_OFFSET, PduTemplate.POLL_NUMBER_OFFSET);
+            expected.setInvoke(id[0]);
+            ((SinglePollDataRequest) ((Action) expected.getCommand()).getAction()).setPollNumber(id[1]);
+            Assert.assertArrayEquals(format(expected), write(template, id[0], id[1]));
+
+            expected = Intellivue.buildExtendedPoll(ObjectClass.NOM_MOC_VMO_METRIC_NU, 3600000L, AttributeId.NOM_ATTR_GRP_METRIC_VAL_OBS);
+            template = PduTemplate.encode(new CompoundProtocol(), expected, PduTemplate.INVOKE_ID_OFFSET, PduTemplate.POLL_NUMBER_OFFSET);
+            expected.setInvoke(id[0]);
+            ((ExtendedPollDataRequest) ((Action) expected.getCommand()).getAction()).setPollNumber(id[1]);
+            Assert.assertArrayEquals(format(expected), write(template, id[0], id[1]));
+        }
+
+        Message association = Intellivue.buildAssociation();
+        PduTemplate template = PduTemplate.encode(new CompoundProtocol(), association, PduTemplate.NONE, PduTemplate.NONE);
+        Assert.assertArrayEquals(format(association), write(template, 17, 17));
+    }
+
+    /**
+     * An Intellivue on its own NetworkLoop sending to a channel standing in for
+     * the monitor
+     */
+    private static class Session implements AutoCloseable {
+        final NetworkLoop loop = new NetworkLoop();
+        final Thread thread = new Thread(loop, "NetworkLoop");
+        final Intellivue intellivue = new Intellivue();
+        final DatagramChannel monitor = DatagramChannel.open();
+        final DatagramChannel channel = DatagramChannel.open();
+
+        Session() throws IOException {
+            monitor.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            channel.configureBlocking(false);
+            channel.connect(monitor.getLocalAddress());
+            monitor.connect(channel.getLocalAddress());
+            loop.register(intellivue, channel);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            loop.cancelThreadAndWait();
+            channel.close();
+            monitor.close();
+        }
+    }
+
+    @Test
+    public void testSendRing() throws Exception {
+        try (Session session = new Session()) {
+            int invoke = session.intellivue.requestExtendedPoll(ObjectClass.NOM_MOC_VMO_METRIC_NU, 1000L);
+            session.intellivue.requestExtendedPoll(ObjectClass.NOM_MOC_VMO_METRIC_NU, 1000L);
+            session.intellivue.requestKeepAlive();
+            session.intellivue.requestGet(OIDType.lookup(AttributeId.NOM_ATTR_TIME_ABS.asInt()));
+
+            CompoundProtocol protocol = new CompoundProtocol();
+            ByteBuffer bb = ByteBuffer.allocate(Intellivue.BUFFER_SIZE);
+            int[] polls = new int[3];
+            for (int i = 0; i < 4; i++) {
+                bb.clear();
+                session.monitor.receive(bb);
+                bb.flip();
+                DataExportInvoke message = (DataExportInvoke) protocol.parse(bb);
+                Assert.assertEquals(invoke + i, message.getInvoke());
+                if (i < 2) {
+                    polls[i] = ((ExtendedPollDataRequest) ((Action) message.getCommand()).getAction()).getPollNumber();
+                } else if (i < 3) {
+                    polls[i] = ((SinglePollDataRequest) ((Action) message.getCommand()).getAction()).getPollNumber();
+                }
+            }
+            Assert.assertEquals(polls[0] + 1, polls[1]);
+            Assert.assertEquals(polls[1] + 1, polls[2]);
+        }
+    }
+}
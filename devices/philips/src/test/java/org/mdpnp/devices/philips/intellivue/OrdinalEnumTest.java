@@ -13,6 +13,7 @@
 package org.mdpnp.devices.philips.intellivue;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -107,4 +108,36 @@ public class OrdinalEnumTest {
             assertEquals(t, valueOf.invoke(null, t.asLong()));
         }
     }
+
+    private enum Duplicated implements OrdinalEnum.IntType {
+        A(1), B(2), C(1);
+
+        private final int x;
+
+        private Duplicated(int x) {
+            this.x = x;
+        }
+
+        public int asInt() {
+            return x;
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDuplicateOrdinal() {
+        OrdinalEnum.buildInt(Duplicated.class);
+    }
+
+    @Test
+    public void testUndefinedOrdinals() {
+        assertNull(ObservedValue.valueOf(0));
+        assertNull(ObservedValue.valueOf(0xFFFF));
+        assertNull(ObservedValue.valueOf(-1));
+        assertNull(ObservedValue.valueOf(0x10100));
+        // a defined code qualified by a partition the enum does not use
+        assertNull(Label.valueOf(0x00030100L));
+        assertNull(Label.valueOf(0x7FFFFFFF00020100L));
+        assertEquals(Label.NLS_NOM_ECG_ELEC_POTL, Label.valueOf(0x00020100L));
+        assertEquals(ObservedValue.values().length, OrdinalEnum.buildInt(ObservedValue.class).size());
+    }
 }
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue.data;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.io.util.Bits;
+import org.mdpnp.devices.philips.intellivue.attribute.Attribute;
+import org.mdpnp.devices.philips.intellivue.attribute.AttributeFactory;
+
+public class AttributeValueListTest {
+    private static final int OBSERVATIONS = 48;
+
+    private static byte[] opaque(AttributeId id, int length) {
+        byte[] b = new byte[4 + length];
+        ByteBuffer bb = ByteBuffer.wrap(b);
+        Bits.putUnsignedShort(bb, id.asInt());
+        Bits.putUnsignedShort(bb, length);
+        for (int i = 0; i < length; i++) {
+            bb.put((byte) (id.asInt() + i));
+        }
+        return b;
+    }
+
+    /**
+     * The observations of an extended numeric poll result: a handle then the
+     * attribute list for each observed metric.
+     */
+    private static ByteBuffer pollResult() {
+        ByteBuffer bb = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            Bits.putUnsignedShort(bb, 0x100 + i);
+            AttributeValueList attrs = new AttributeValueList();
+
+            Attribute<Type> type = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_ID_TYPE, Type.class);
+            type.getValue().setNomPartition(NomPartition.Scada);
+            type.getValue().setOidType(OIDType.lookup(ObservedValue.NOM_PULS_OXIM_SAT_O2.asInt()));
+            attrs.add(type);
+
+            Attribute<TextId> label = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_ID_LABEL, TextId.class);
+            label.getValue().setTextId(Label.NLS_NOM_PULS_OXIM_SAT_O2.asLong());
+            attrs.add(label);
+
+            Attribute<org.mdpnp.devices.philips.intellivue.data.String> labelString = AttributeFactory.getAttribute(
+                    AttributeId.NOM_ATTR_ID_LABEL_STRING, org.mdpnp.devices.philips.intellivue.data.String.class);
+            labelString.getValue().setString("SpO₂ r");
+            attrs.add(labelString);
+
+            attrs.add(AttributeId.NOM_ATTR_DISP_RES.asOid(), opaque(AttributeId.NOM_ATTR_DISP_RES, 2));
+            Attribute<EnumValue<SimpleColor>> color = AttributeFactory.getEnumAttribute(AttributeId.NOM_ATTR_COLOR.asOid(), SimpleColor.class);
+            color.getValue().setEnum(SimpleColor.Cyan);
+            attrs.add(color);
+            attrs.add(AttributeId.NOM_ATTR_METRIC_INFO_LABEL.asOid(), opaque(AttributeId.NOM_ATTR_METRIC_INFO_LABEL, 12));
+            attrs.add(AttributeId.NOM_ATTR_METRIC_STAT.asOid(), opaque(AttributeId.NOM_ATTR_METRIC_STAT, 2));
+            attrs.add(AttributeId.NOM_ATTR_VAL_ENUM_OBS.asOid(), opaque(AttributeId.NOM_ATTR_VAL_ENUM_OBS, 8));
+
+            Attribute<NumericObservedValue> observed = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS, NumericObservedValue.class);
+            observed.getValue().setPhysioId(OIDType.lookup(ObservedValue.NOM_PULS_OXIM_SAT_O2.asInt()));
+            observed.getValue().setUnitCode(OIDType.lookup(UnitCode.NOM_DIM_PERCENT.asInt()));
+            observed.getValue().getValue().setFloat(90 + i % 10);
+            attrs.add(observed);
+
+            Attribute<RelativeTime> time = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_STAMP_REL, RelativeTime.class);
+            time.getValue().setRelativeTime(1000L * i);
+            attrs.add(time);
+
+            attrs.format(bb);
+        }
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * The attributes the Intellivue adapter asks of every observation.
+     */
+    private static final class Reader {
+        final Attribute<NumericObservedValue> observed = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS,
+                NumericObservedValue.class);
+        final Attribute<CompoundNumericObservedValue> compoundObserved = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_CMPD_VAL_OBS,
+                CompoundNumericObservedValue.class);
+        final Attribute<RelativeTime> period = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
+        final Attribute<SampleArraySpecification> spec = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_SPECN,
+                SampleArraySpecification.class);
+        final Attribute<SampleArrayObservedValue> v = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_VAL_OBS,
+                SampleArrayObservedValue.class);
+        final Attribute<RelativeTime> time = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_STAMP_REL, RelativeTime.class);
+
+        double sum;
+
+        void read(AttributeValueList attrs) {
+            Attribute<NumericObservedValue> o = attrs.getAttribute(observed);
+            Assert.assertNull(attrs.getAttribute(compoundObserved));
+            Assert.assertNull(attrs.getAttribute(period));
+            Assert.assertNull(attrs.getAttribute(spec));
+            Assert.assertNull(attrs.getAttribute(v));
+            Attribute<RelativeTime> t = attrs.getAttribute(time);
+            sum += o.getValue().getValue().getDouble() + t.getValue().getRelativeTime();
+        }
+    }
+
+    private static double parse(ByteBuffer result, boolean lazy, Reader reader) {
+        result.rewind();
+        reader.sum = 0.0;
+        while (result.hasRemaining()) {
+            Bits.getUnsignedShort(result);
+            // as ObservationPollImpl, a new list for each observation
+            AttributeValueList attrs = new AttributeValueList(lazy);
+            attrs.parse(result);
+            reader.read(attrs);
+        }
+        return reader.sum;
+    }
+
+    @Test
+    public void testLazyMatchesEager() {
+        ByteBuffer result = pollResult();
+        while (result.hasRemaining()) {
+            Bits.getUnsignedShort(result);
+            int start = result.position();
+            AttributeValueList eager = new AttributeValueList();
+            eager.parse(result);
+            int end = result.position();
+            result.position(start);
+            AttributeValueList lazy = new AttributeValueList(true);
+            lazy.parse(result);
+            Assert.assertEquals(end, result.position());
+
+            Attribute<NumericObservedValue> eo = eager.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS, NumericObservedValue.class);
+            Attribute<NumericObservedValue> lo = lazy.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS, NumericObservedValue.class);
+            Assert.assertEquals(eo.getValue().getValue().getDouble(), lo.getValue().getValue().getDouble(), 0.0);
+            Assert.assertEquals(eo.getValue().getPhysioId(), lo.getValue().getPhysioId());
+            // a second ask returns the decoded attribute
+            Assert.assertSame(lo, lazy.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS, NumericObservedValue.class));
+            Assert.assertNull(lazy.getAttribute(AttributeId.NOM_ATTR_SA_VAL_OBS, SampleArrayObservedValue.class));
+            Assert.assertNull(lazy.get(AttributeId.NOM_ATTR_SA_VAL_OBS.asOid()));
+
+            Assert.assertTrue(lazy.get(AttributeId.NOM_ATTR_COLOR.asOid()) instanceof AttributeValueAssertion);
+
+            // attributes never asked for are written back byte for byte
+            ByteBuffer e = ByteBuffer.allocate(1024);
+            eager.format(e);
+            e.flip();
+            ByteBuffer l = ByteBuffer.allocate(1024);
+            lazy.format(l);
+            l.flip();
+            ByteBuffer original = result.duplicate();
+            original.position(start);
+            original.limit(end);
+            Assert.assertEquals(original, l);
+            Assert.assertEquals(e, l);
+            Assert.assertEquals(eager.getList().size(), lazy.getList().size());
+            Assert.assertEquals(eager.toString(), lazy.toString());
+        }
+    }
+
+    @Test
+    public void testParseMoreAndMutation() {
+        ByteBuffer result = pollResult();
+        Bits.getUnsignedShort(result);
+        AttributeValueList lazy = new AttributeValueList(true);
+        lazy.parse(result);
+        Bits.getUnsignedShort(result);
+        lazy.parseMore(result);
+
+        // the later observation wins as it does in the map of an eager list
+        Attribute<RelativeTime> t = lazy.getAttribute(AttributeId.NOM_ATTR_TIME_STAMP_REL, RelativeTime.class);
+        Assert.assertEquals(1000L, t.getValue().getRelativeTime());
+        Assert.assertTrue(lazy.remove(AttributeId.NOM_ATTR_TIME_STAMP_REL.asOid()));
+        Assert.assertNull(lazy.get(AttributeId.NOM_ATTR_TIME_STAMP_REL.asOid()));
+        // as in an eager list the earlier occurrence stays in the list
+        Assert.assertEquals(19, lazy.getList().size());
+
+        lazy.reset();
+        Assert.assertNull(lazy.get(AttributeId.NOM_ATTR_NU_VAL_OBS.asOid()));
+        Assert.assertTrue(lazy.getList().isEmpty());
+        Bits.getUnsignedShort(result);
+        lazy.parse(result);
+        Assert.assertEquals(2000L, lazy.getAttribute(AttributeId.NOM_ATTR_TIME_STAMP_REL, RelativeTime.class).getValue().getRelativeTime());
+    }
+
+    @Test
+    public void testLazyRecycle() {
+        ByteBuffer result = pollResult();
+        Bits.getUnsignedShort(result);
+        AttributeValueList lazy = new AttributeValueList(true);
+        lazy.parse(result);
+
+        // decoded on demand then released by reset
+        Attribute<?> color = lazy.get(AttributeId.NOM_ATTR_COLOR.asOid());
+        Assert.assertTrue(color instanceof AttributeValueAssertion);
+        lazy.reset();
+        Assert.assertSame(color, lazy.build());
+
+        // decoded on demand then replaced by a typed attribute
+        Bits.getUnsignedShort(result);
+        lazy.parse(result);
+        Attribute<?> observed = lazy.get(AttributeId.NOM_ATTR_NU_VAL_OBS.asOid());
+        Assert.assertTrue(observed instanceof AttributeValueAssertion);
+        Assert.assertNotNull(lazy.getAttribute(AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_VAL_OBS, NumericObservedValue.class)));
+        Assert.assertSame(observed, lazy.build());
+    }
+}
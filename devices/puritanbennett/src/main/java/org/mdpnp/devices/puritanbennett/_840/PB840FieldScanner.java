@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.puritanbennett._840;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits the CR terminated responses of the PB840 into fields in place.
+ * <p>
+ * Fields are numbered as in pb840.fields: 1 is the response type, 2 the byte count, 3 the
+ * field count and 5 the first field following the STX. Field 0, field 4 and (once the response
+ * is {@link #frame(int) framed}) the ETX and CR are placeholders. As with the regular expression
+ * this replaces a field ends at one or two of ',' and ETX and is trimmed like
+ * {@link String#trim()}.
+ * <p>
+ * Numbers are parsed straight from the bytes. Text is only decoded on request and is served from
+ * a small per-field cache while the field holds the same bytes, so responses from a ventilator
+ * with steady settings are scanned without allocation.
+ */
+class PB840FieldScanner {
+    private static final Charset ASCII = Charset.forName("ASCII");
+
+    private static final byte STX = 0x02, ETX = 0x03, CR = '\r', LF = '\n', COMMA = ',';
+
+    private static final String[] PLACEHOLDERS = new String[] { "ZERO", "<STX", "<ETX>", "<CR>" };
+    private static final int ZERO = 0, STX_FIELD = 1, ETX_FIELD = 2, CR_FIELD = 3;
+
+    private static final double[] POW10 = new double[19];
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10.0;
+        }
+    }
+
+    private final InputStream in;
+
+    private byte[] buffer = new byte[4096];
+    private int position, limit, scanned;
+    private boolean skipLF;
+    private int lineFrom, lineTo;
+
+    // A negative start marks a placeholder whose index into PLACEHOLDERS is held in end
+    private int[] start = new int[256], end = new int[256];
+    private int size;
+
+    // The two most recent distinct values of each field; MISCA and MISCF responses tend to
+    // alternate so a single entry would thrash
+    private String[] recent = new String[256], previous = new String[256];
+
+    PB840FieldScanner(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Scans the next line, terminated like {@link java.io.BufferedReader#readLine()} by CR, LF or
+     * CR LF.
+     *
+     * @return false at the end of the stream
+     */
+    boolean next() throws IOException {
+        for (;;) {
+            if (skipLF && position < limit) {
+                skipLF = false;
+                if (LF == buffer[position]) {
+                    position++;
+                }
+            }
+            for (int i = position + scanned; i < limit; i++) {
+                byte b = buffer[i];
+                if (CR == b || LF == b) {
+                    split(position, i);
+                    skipLF = CR == b;
+                    position = i + 1;
+                    scanned = 0;
+                    return true;
+                }
+            }
+            scanned = limit - position;
+            if (!fill()) {
+                skipLF = false;
+                scanned = 0;
+                if (position < limit) {
+                    split(position, limit);
+                    position = limit;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private void split(int from, int to) {
+        lineFrom = from;
+        lineTo = to;
+        size = 0;
+        placeholder(ZERO);
+        int fieldStart = from;
+        int i = from;
+        while (i < to) {
+            if (isDelimiter(buffer[i])) {
+                field(fieldStart, i);
+                if (++i < to && isDelimiter(buffer[i])) {
+                    i++;
+                }
+                fieldStart = i;
+                if (4 == size) {
+                    placeholder(STX_FIELD);
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return COMMA == b || ETX == b;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private void field(int from, int to) {
+        while (from < to && isWhitespace(buffer[from])) {
+            from++;
+        }
+        while (to > from && isWhitespace(buffer[to - 1])) {
+            to--;
+        }
+        ensureCapacity(size + 1);
+        start[size] = from;
+        end[size] = to;
+        size++;
+    }
+
+    private void placeholder(int index) {
+        ensureCapacity(size + 1);
+        start[size] = -1;
+        end[size] = index;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > start.length) {
+            int length = Math.max(capacity, 2 * start.length);
+            start = Arrays.copyOf(start, length);
+            end = Arrays.copyOf(end, length);
+            recent = Arrays.copyOf(recent, length);
+            previous = Arrays.copyOf(previous, length);
+        }
+    }
+
+    /**
+     * Truncates the response to the declared number of fields after the STX and appends the ETX
+     * and CR placeholders.
+     */
+    void frame(int fieldCount) {
+        size = Math.min(size, fieldCount + 5);
+        placeholder(ETX_FIELD);
+        placeholder(CR_FIELD);
+    }
+
+    /**
+     * @return the number of fields, including placeholders, in the current line
+     */
+    int size() {
+        return size;
+    }
+
+    private void check(int field) {
+        if (field < 0 || field >= size) {
+            throw new IndexOutOfBoundsException("Field " + field + " of " + size);
+        }
+    }
+
+    /**
+     * @return the field as text, never null
+     */
+    String text(int field) {
+        check(field);
+        int from = start[field], to = end[field];
+        if (from < 0) {
+            return PLACEHOLDERS[to];
+        }
+        String s = recent[field];
+        if (matches(s, from, to)) {
+            return s;
+        }
+        String p = previous[field];
+        if (matches(p, from, to)) {
+            previous[field] = s;
+            recent[field] = p;
+            return p;
+        }
+        p = new String(buffer, from, to - from, ASCII);
+        previous[field] = s;
+        recent[field] = p;
+        return p;
+    }
+
+    private boolean matches(String s, int from, int to) {
+        if (null == s || s.length() != to - from) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            // bytes outside of ASCII decode to U+FFFD and never match
+            if (s.charAt(i - from) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a field of the form [+-]digits[.digits].
+     *
+     * @return the value or {@link Float#NaN} where the field is blank, a placeholder or not such
+     *         a number (e.g. OFF)
+     */
+    float floatValue(int field) {
+        check(field);
+        int i = start[field], to = end[field];
+        if (i < 0 || i == to) {
+            return Float.NaN;
+        }
+        boolean negative = false;
+        if ('-' == buffer[i] || '+' == buffer[i]) {
+            negative = '-' == buffer[i];
+            i++;
+        }
+        long mantissa = 0L;
+        int digits = 0, scale = 0;
+        boolean point = false;
+        for (; i < to; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits >= POW10.length) {
+                    // Beyond what is exact in a long; never seen from the PB840
+                    try {
+                        return Float.parseFloat(text(field));
+                    } catch (NumberFormatException nfe) {
+                        return Float.NaN;
+                    }
+                }
+                mantissa = 10L * mantissa + (b - '0');
+                if (point) {
+                    scale++;
+                }
+            } else if ('.' == b && !point) {
+                point = true;
+            } else {
+                return Float.NaN;
+            }
+        }
+        if (0 == digits) {
+            return Float.NaN;
+        }
+        // Both operands are exact so the quotient is correctly rounded
+        float value = (float) (mantissa / POW10[scale]);
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the token'th part of a field split on separator, e.g. the minutes of 14:05 are
+     * intValue(field, 1, ':'). Like {@link String#split(String)} each separator delimits a token.
+     *
+     * @throws NumberFormatException
+     *             where the token is missing or is not an integer
+     */
+    int intValue(int field, int token, char separator) {
+        check(field);
+        int from = tokenStart(field, token, separator);
+        int to = tokenEnd(field, from, separator);
+        int i = from;
+        boolean negative = false;
+        if (i < to && ('-' == buffer[i] || '+' == buffer[i])) {
+            negative = '-' == buffer[i];
+            i++;
+        }
+        if (i == to || to - i > 9) {
+            throw new NumberFormatException(text(field));
+        }
+        int value = 0;
+        for (; i < to; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException(text(field));
+            }
+            value = 10 * value + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @see #intValue(int, int, char)
+     */
+    int intValue(int field) {
+        return intValue(field, 0, '\0');
+    }
+
+    /**
+     * @return whether the token'th part of a field split on separator is exactly s
+     */
+    boolean tokenEquals(int field, int token, char separator, String s) {
+        check(field);
+        int from = tokenStart(field, token, separator);
+        return matches(s, from, tokenEnd(field, from, separator));
+    }
+
+    private int tokenStart(int field, int token, char separator) {
+        int i = start[field], to = end[field];
+        if (i < 0) {
+            throw new NumberFormatException(text(field));
+        }
+        for (; token > 0; token--) {
+            while (i < to && separator != buffer[i]) {
+                i++;
+            }
+            if (i == to) {
+                throw new NumberFormatException(text(field));
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private int tokenEnd(int field, int from, char separator) {
+        int to = end[field];
+        int i = from;
+        while (i < to && separator != buffer[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the current line, without its terminator, for logging
+     */
+    String line() {
+        return new String(buffer, lineFrom, lineTo - lineFrom, ASCII);
+    }
+}
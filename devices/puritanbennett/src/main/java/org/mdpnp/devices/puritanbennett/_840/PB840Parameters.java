@@ -10,8 +10,6 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +17,7 @@ import org.slf4j.LoggerFactory;
 public class PB840Parameters extends PB840 {
     public PB840Parameters(final InputStream in, final OutputStream out) {
         super(in, out);
+        fieldValues = new PB840FieldScanner(in);
         loadFields(fields);
     }
     
@@ -40,11 +39,11 @@ public class PB840Parameters extends PB840 {
         out.flush();
     }
     
-    private static final Pattern dataField = Pattern.compile("([^,\\03]*)[,\\03]{1,2}");
-    
     private static final Logger log = LoggerFactory.getLogger(PB840Parameters.class);
     
-    protected final List<String> fieldValues = new ArrayList<String>(173);
+    private final PB840FieldScanner fieldValues;
+    // the field behind the number being passed to receiveNumeric/receiveSetting, -1 otherwise
+    private int numberField = -1;
     
     
     /**
@@ -53,68 +52,45 @@ public class PB840Parameters extends PB840 {
      * @throws IOException
      */
     public boolean receive() throws IOException {
-        for(;;) {
-            String line = in.readLine();
-            if(null == line) {
-                return true;
+        while(fieldValues.next()) {
+            if(log.isTraceEnabled()) {
+                log.trace("READ A PARAMETER LINE:"+fieldValues.line());
             }
             
-            log.trace("READ A PARAMETER LINE:"+line);
-            
-            Matcher dataFieldMatch = dataField.matcher(line);
-            
-            fieldValues.clear();
-            fieldValues.add("ZERO");
-            if(dataFieldMatch.find()) {
-                final String responseType = dataFieldMatch.group(1).trim();
+            if(fieldValues.size() > 1) {
+                final String responseType = fieldValues.text(1);
                 try {
                     // I want to generate the receiveStartResponse/receiveEndResponse sequence on EVERY LINE
                     // In this way consumers of this class can safely chain new requests to prior responses
                     // even where the response is not understood
                     receiveStartResponse(responseType);
-                    fieldValues.add(responseType);
-                    if(dataFieldMatch.find()) {
-                        fieldValues.add(dataFieldMatch.group(1).trim());
-                        @SuppressWarnings("unused")
-                        int bytes = 0;
+                    if(fieldValues.size() > 2) {
                         try {
-                            bytes = Integer.parseInt(dataFieldMatch.group(1).trim());
+                            //#bytes between <STX> and <CR>
+                            fieldValues.intValue(2);
                         } catch(NumberFormatException nfe) {
-                            log.warn(line);
+                            log.warn(fieldValues.line());
                             log.warn("Received an invalid byte count ", nfe);
                             continue;
                         }
-                        //#bytes between <STX> and <CR>
-                        if(dataFieldMatch.find()) {
-                            String s = dataFieldMatch.group(1).trim();
-                            fieldValues.add(s);
+                        if(fieldValues.size() > 3) {
                             int fieldCount = 0; 
                             try {
-                                fieldCount = Integer.parseInt(s);//#fields between <STX> and <CR>
+                                fieldCount = fieldValues.intValue(3);//#fields between <STX> and <CR>
                             } catch(NumberFormatException nfe) {
-                                log.warn(line);
+                                log.warn(fieldValues.line());
                                 log.warn("Received an invalid field count ", nfe);
                                 continue;
                             }
-                            fieldValues.add("<STX"); // This will keep field numbers consistent
                             Field field = null;
                             try {
-                                for(int i = 0; i < fieldCount; i++) {
-                                    if(dataFieldMatch.find()) {
-                                        fieldValues.add(dataFieldMatch.group(1).trim());
-                                    } else {
-                                        log.warn(line);
-                                        log.warn("Missing expected field " + (i+1) +", aborting this line...");
-                                        continue;
-                                    }
-                                }
                                 if(fieldValues.size() < (fieldCount + 5)) {
-                                    log.warn(line);
+                                    log.warn(fieldValues.line());
+                                    log.warn("Missing expected field " + (fieldValues.size() - 4) +", aborting this line...");
                                     log.warn("Received " + fieldValues.size() + " fields where " + (fieldCount+5) + " expected");
                                     continue;
                                 }
-                                fieldValues.add("<ETX>"); // for consistency
-                                fieldValues.add("<CR>");
+                                fieldValues.frame(fieldCount);
                                 final Field[] fields = this.fields.get(responseType);
                                 if(fields != null) {
                                     for (int i = 0; i < fields.length; i++) {
@@ -122,19 +98,19 @@ public class PB840Parameters extends PB840 {
                                         field.handle(fieldValues);
                                     }
                                 } else {
-                                    log.warn(line);
+                                    log.warn(fieldValues.line());
                                     log.warn("Unknown response type " + responseType);
                                 }
                             } catch(NumberFormatException nfe) {
                                 log.error("Error in field " + field);
                             }
                         } else {
-                            log.warn(line);
-                            log.warn("Not a valid response, no field count:"+line);
+                            log.warn(fieldValues.line());
+                            log.warn("Not a valid response, no field count:"+fieldValues.line());
                         }
                     } else {
-                        log.warn(line);
-                        log.warn("Not a valid response, no bytes:"+line);
+                        log.warn(fieldValues.line());
+                        log.warn("Not a valid response, no bytes:"+fieldValues.line());
                     }
                 } finally {
                     receiveEndResponse();
@@ -146,10 +122,11 @@ public class PB840Parameters extends PB840 {
                 } finally {
                     receiveEndResponse();
                 }
-                log.warn(line);
-                log.warn("Not a valid response:"+line);
+                log.warn(fieldValues.line());
+                log.warn("Not a valid response:"+fieldValues.line());
             }
         }
+        return true;
     }
     
 
@@ -173,10 +150,37 @@ public class PB840Parameters extends PB840 {
         
     }
     
+    /**
+     * Receives a setting whose field holds a number.  Unless overridden the
+     * field is handed as it was sent to {@link #receiveSetting(String, Units, String)}.
+     */
+    public void receiveSetting(String name, Units units, float value) {
+        receiveSetting(name, units, numberText(value));
+    }
+    
+    /**
+     * Receives a numeric whose field is blank or not a number (e.g. OFF) and,
+     * unless {@link #receiveNumeric(String, Units, float)} is overridden, every
+     * other numeric as well
+     */
     public void receiveNumeric(String name, Units units, String value) {
         
     }
     
+    /**
+     * Receives a numeric whose field holds a number, already parsed so that
+     * drivers need not parse the text again.  Unless overridden the field is
+     * handed as it was sent to {@link #receiveNumeric(String, Units, String)}.
+     */
+    public void receiveNumeric(String name, Units units, float value) {
+        receiveNumeric(name, units, numberText(value));
+    }
+
+    private String numberText(float value) {
+        // e.g. "05" or "0.50" as received, where Float.toString would give "5.0" and "0.5"
+        return numberField < 0 ? Float.toString(value) : fieldValues.text(numberField);
+    }
+    
 //    public void receiveAlarmSetting(String name, String lower, String upper) {
 //        
 //    }
@@ -213,7 +217,7 @@ public class PB840Parameters extends PB840 {
             this.description = description;
         }
 
-        abstract void handle(List<String> fieldValues);
+        abstract void handle(PB840FieldScanner fieldValues);
         
     }
 
@@ -229,8 +233,18 @@ public class PB840Parameters extends PB840 {
         }
 
         @Override
-        void handle(List<String> fieldValues) {
-            receiveNumeric(name, units, fieldValues.get(fieldNumber));
+        void handle(PB840FieldScanner fieldValues) {
+            float value = fieldValues.floatValue(fieldNumber);
+            if(Float.isNaN(value)) {
+                receiveNumeric(name, units, fieldValues.text(fieldNumber));
+            } else {
+                numberField = fieldNumber;
+                try {
+                    receiveNumeric(name, units, value);
+                } finally {
+                    numberField = -1;
+                }
+            }
         }
         
         @Override
@@ -250,8 +264,18 @@ public class PB840Parameters extends PB840 {
         }
 
         @Override
-        void handle(List<String> fieldValues) {
-            receiveSetting(name, units, fieldValues.get(fieldNumber));
+        void handle(PB840FieldScanner fieldValues) {
+            float value = fieldValues.floatValue(fieldNumber);
+            if(Float.isNaN(value)) {
+                receiveSetting(name, units, fieldValues.text(fieldNumber));
+            } else {
+                numberField = fieldNumber;
+                try {
+                    receiveSetting(name, units, value);
+                } finally {
+                    numberField = -1;
+                }
+            }
         }
         
         @Override
@@ -275,9 +299,9 @@ public class PB840Parameters extends PB840 {
 
 		
 	     @Override
-	        void handle(List<String> fieldValues) {
+	        void handle(PB840FieldScanner fieldValues) {
 	    	 if (value > -1)//inexistent limits are fields -1 in the PB840.fields
-	    		 receiveAlarmLimit(name, units, fieldValues.get(value), limitType);
+	    		 receiveAlarmLimit(name, units, fieldValues.text(value), limitType);
 //	    		 receiveAlarmLimit(name, units, value < 0 ? null:fieldValues.get(value), limitType);
 //	                    lowFieldNumber < 0 ? null : fieldValues.get(lowFieldNumber), 
 //	                    highFieldNumber < 0 ? null : fieldValues.get(highFieldNumber));
@@ -300,8 +324,8 @@ public class PB840Parameters extends PB840 {
         }
 
         @Override
-        void handle(List<String> fieldValues) {
-            receivePatientAlert(name, fieldValues.get(fieldNumber));
+        void handle(PB840FieldScanner fieldValues) {
+            receivePatientAlert(name, fieldValues.text(fieldNumber));
         }
         @Override
         public String toString() {
@@ -318,8 +342,8 @@ public class PB840Parameters extends PB840 {
         }
 
         @Override
-        void handle(List<String> fieldValues) {
-            receiveTechnicalAlert(name, fieldValues.get(fieldNumber));
+        void handle(PB840FieldScanner fieldValues) {
+            receiveTechnicalAlert(name, fieldValues.text(fieldNumber));
         }
         
         @Override
@@ -330,6 +354,7 @@ public class PB840Parameters extends PB840 {
     
     class VentilatorId extends Field {
         final int fieldNumber;
+        private String id, model, serial;
 
         public VentilatorId(final int fieldNumber) {
             super(null, null);
@@ -337,9 +362,16 @@ public class PB840Parameters extends PB840 {
         }
 
         @Override
-        void handle(List<String> fieldValues) {
-            String[] modelSerial = fieldValues.get(fieldNumber).split(" ");
-            receiveVentilatorId(modelSerial.length > 1 ? modelSerial[0] : "840", modelSerial.length > 1 ? modelSerial[1] : modelSerial[0]);
+        void handle(PB840FieldScanner fieldValues) {
+            String id = fieldValues.text(fieldNumber);
+            // Only split the id when it changes
+            if(id != this.id) {
+                String[] modelSerial = id.split(" ");
+                this.id = id;
+                this.model = modelSerial.length > 1 ? modelSerial[0] : "840";
+                this.serial = modelSerial.length > 1 ? modelSerial[1] : modelSerial[0];
+            }
+            receiveVentilatorId(model, serial);
         }
         
         @Override
@@ -357,9 +389,8 @@ public class PB840Parameters extends PB840 {
         }
         
         @Override
-        void handle(List<String> fieldValues) {
-            String[] hour_minute = fieldValues.get(fieldNumber).split(":");
-            receiveTime(Integer.parseInt(hour_minute[0]), Integer.parseInt(hour_minute[1]));
+        void handle(PB840FieldScanner fieldValues) {
+            receiveTime(fieldValues.intValue(fieldNumber, 0, ':'), fieldValues.intValue(fieldNumber, 1, ':'));
         }
         
         @Override
@@ -382,6 +413,13 @@ public class PB840Parameters extends PB840 {
         months.put("NOV", Calendar.NOVEMBER);
         months.put("DEC", Calendar.DECEMBER);
     }
+    // months indexed by value so they can be matched against the raw field
+    private static final String[] monthNames = new String[12];
+    static {
+        for(Map.Entry<String, Integer> month : months.entrySet()) {
+            monthNames[month.getValue()] = month.getKey();
+        }
+    }
     class Date extends Field {
         final int fieldNumber;
         
@@ -390,9 +428,14 @@ public class PB840Parameters extends PB840 {
             this.fieldNumber = fieldNumber;
         }
         @Override
-        void handle(List<String> fieldValues) {
-            String[] month_day_year = fieldValues.get(fieldNumber).split(" ");
-            receiveDate(months.get(month_day_year[0]), Integer.parseInt(month_day_year[1]), Integer.parseInt(month_day_year[2]));
+        void handle(PB840FieldScanner fieldValues) {
+            for(int month = 0; month < monthNames.length; month++) {
+                if(fieldValues.tokenEquals(fieldNumber, 0, ' ', monthNames[month])) {
+                    receiveDate(month, fieldValues.intValue(fieldNumber, 1, ' '), fieldValues.intValue(fieldNumber, 2, ' '));
+                    return;
+                }
+            }
+            throw new NumberFormatException("Unknown month in " + fieldValues.text(fieldNumber));
         }
         
         @Override
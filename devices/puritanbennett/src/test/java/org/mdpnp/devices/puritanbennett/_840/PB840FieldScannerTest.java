@@ -0,0 +1,483 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.puritanbennett._840;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class PB840FieldScannerTest {
+
+    private static PB840FieldScanner scan(String s) throws IOException {
+        PB840FieldScanner scanner = new PB840FieldScanner(new ByteArrayInputStream(s.getBytes("ASCII")));
+        assertTrue(scanner.next());
+        return scanner;
+    }
+
+    @Test
+    public void testFieldNumbering() throws IOException {
+        PB840FieldScanner scanner = scan("MISCA,30,3,\u000214:05 ,OCT 19 2026 ,  OFF  ,\u0003\r");
+        assertEquals(8, scanner.size());
+        assertEquals("ZERO", scanner.text(0));
+        assertEquals("MISCA", scanner.text(1));
+        assertEquals(30, scanner.intValue(2));
+        assertEquals(3, scanner.intValue(3));
+        assertEquals("<STX", scanner.text(4));
+        assertEquals("14:05", scanner.text(5));
+        assertEquals(5, scanner.intValue(5, 1, ':'));
+        assertTrue(scanner.tokenEquals(6, 0, ' ', "OCT"));
+        assertEquals(2026, scanner.intValue(6, 2, ' '));
+        assertEquals("OFF", scanner.text(7));
+        scanner.frame(3);
+        assertEquals(10, scanner.size());
+        assertEquals("<ETX>", scanner.text(8));
+        assertEquals("<CR>", scanner.text(9));
+        assertFalse(scanner.next());
+    }
+
+    @Test
+    public void testFloatValue() throws IOException {
+        PB840FieldScanner scanner = scan("1,-2.5,+.5,7.,OFF,,.,1.2.3,\u0003");
+        assertEquals(1f, scanner.floatValue(1), 0f);
+        assertEquals(-2.5f, scanner.floatValue(2), 0f);
+        assertEquals(0.5f, scanner.floatValue(3), 0f);
+        assertEquals(7f, scanner.floatValue(5), 0f);
+        assertTrue(Float.isNaN(scanner.floatValue(6)));
+        // ",," after OFF is a single delimiter, as it was for the regular expression
+        assertEquals(".", scanner.text(7));
+        assertTrue(Float.isNaN(scanner.floatValue(7)));
+        assertTrue(Float.isNaN(scanner.floatValue(8)));
+        assertTrue(Float.isNaN(scanner.floatValue(0)));
+        assertTrue(Float.isNaN(scanner.floatValue(4)));
+    }
+
+    @Test
+    public void testFloatValueMatchesParseFloat() throws IOException {
+        Random random = new Random(840);
+        StringBuilder line = new StringBuilder();
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            String value = new java.math.BigDecimal(random.nextInt(2000000) - 1000000).movePointLeft(random.nextInt(8)).toPlainString();
+            values.add(value);
+            line.append(value).append(',');
+        }
+        PB840FieldScanner scanner = scan(line.toString());
+        for (int i = 0; i < values.size(); i++) {
+            // field 4 is the STX placeholder
+            int field = i < 3 ? i + 1 : i + 2;
+            assertEquals(values.get(i), Float.floatToIntBits(Float.parseFloat(values.get(i))), Float.floatToIntBits(scanner.floatValue(field)));
+        }
+    }
+
+    @Test
+    public void testTextIsCached() throws IOException {
+        PB840FieldScanner scanner = new PB840FieldScanner(new ByteArrayInputStream("MISCF,NORMAL,\rMISCA,ALARM,\rMISCF,NORMAL,\r".getBytes("ASCII")));
+        assertTrue(scanner.next());
+        String miscf = scanner.text(1), normal = scanner.text(2);
+        assertTrue(scanner.next());
+        assertEquals("ALARM", scanner.text(2));
+        assertTrue(scanner.next());
+        assertSame(miscf, scanner.text(1));
+        assertSame(normal, scanner.text(2));
+    }
+
+    @Test
+    public void testLineTerminators() throws IOException {
+        InputStream in = new ByteArrayInputStream("A,\r\nB,\n\rC,\r\rD,".getBytes("ASCII")) {
+            // Deliver a byte at a time to split CR LF across reads
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(1, len));
+            }
+        };
+        PB840FieldScanner scanner = new PB840FieldScanner(in);
+        String[] expected = new String[] { "A,", "B,", "", "C,", "", "D," };
+        for (String line : expected) {
+            assertTrue(scanner.next());
+            assertEquals(line, scanner.line());
+        }
+        assertFalse(scanner.next());
+    }
+
+    @Test
+    public void testEquivalence() throws IOException {
+        String capture = capture();
+        final List<String> actual = new ArrayList<String>();
+        PB840Parameters pb840 = new Recorder(new ByteArrayInputStream(capture.getBytes("ASCII")), actual);
+        pb840.receive();
+
+        List<String> expected = new ArrayList<String>();
+        new RegexParser(pb840, expected).receive(capture);
+
+        assertTrue(expected.size() > 1000);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("event " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * A subclass that only overrides the String overloads sees numbers exactly as they were sent
+     */
+    @Test
+    public void testTextEquivalence() throws IOException {
+        String capture = capture();
+        final List<String> actual = new ArrayList<String>();
+        PB840Parameters pb840 = new Recorder(new ByteArrayInputStream(capture.getBytes("ASCII")), actual, true);
+        pb840.receive();
+
+        List<String> expected = new ArrayList<String>();
+        new RegexParser(pb840, expected, true).receive(capture);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("event " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Numbers are compared by value; otherwise by text
+     */
+    private static final Pattern number = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)");
+
+    private static String value(String s) {
+        return number.matcher(s).matches() ? value(Float.parseFloat(s)) : "'" + s;
+    }
+
+    private static String value(float f) {
+        return "#" + f;
+    }
+
+    private static class Recorder extends PB840Parameters {
+        private final List<String> events;
+        // like a driver that only overrides the String overloads
+        private final boolean textOnly;
+
+        Recorder(InputStream in, List<String> events) {
+            this(in, events, false);
+        }
+
+        Recorder(InputStream in, List<String> events, boolean textOnly) {
+            super(in, new ByteArrayOutputStream());
+            this.events = events;
+            this.textOnly = textOnly;
+        }
+
+        private String text(String value) {
+            return textOnly ? "'" + value : value(value);
+        }
+
+        @Override
+        public void receiveStartResponse(String type) {
+            events.add("start " + type);
+        }
+
+        @Override
+        public void receiveEndResponse() {
+            events.add("end");
+        }
+
+        @Override
+        public void receiveSetting(String name, Units units, String value) {
+            events.add("setting " + name + " " + units + " " + text(value));
+        }
+
+        @Override
+        public void receiveSetting(String name, Units units, float value) {
+            if (textOnly) {
+                super.receiveSetting(name, units, value);
+            } else {
+                events.add("setting " + name + " " + units + " " + value(value));
+            }
+        }
+
+        @Override
+        public void receiveNumeric(String name, Units units, String value) {
+            events.add("numeric " + name + " " + units + " " + text(value));
+        }
+
+        @Override
+        public void receiveNumeric(String name, Units units, float value) {
+            if (textOnly) {
+                super.receiveNumeric(name, units, value);
+            } else {
+                events.add("numeric " + name + " " + units + " " + value(value));
+            }
+        }
+
+        @Override
+        public void receiveAlarmLimit(String metricName, Units unitID, String value, String limitType) {
+            events.add("limit " + metricName + " " + unitID + " " + value + " " + limitType);
+        }
+
+        @Override
+        public void receivePatientAlert(String name, String value) {
+            events.add("patient " + name + " " + value);
+        }
+
+        @Override
+        public void receiveTechnicalAlert(String name, String value) {
+            events.add("technical " + name + " " + value);
+        }
+
+        @Override
+        public void receiveVentilatorId(String model, String id) {
+            events.add("id " + model + " " + id);
+        }
+
+        @Override
+        public void receiveDate(int month, int day, int year) {
+            events.add("date " + month + " " + day + " " + year);
+        }
+
+        @Override
+        public void receiveTime(int hour, int minute) {
+            events.add("time " + hour + " " + minute);
+        }
+    }
+
+    /**
+     * The regular expression and String.split based parser that PB840FieldScanner replaced,
+     * producing the same events as {@link Recorder}
+     */
+    private static class RegexParser {
+        private static final Pattern dataField = Pattern.compile("([^,\\03]*)[,\\03]{1,2}");
+
+        private final PB840Parameters pb840;
+        private final List<String> events;
+        private final boolean textOnly;
+
+        RegexParser(PB840Parameters pb840, List<String> events) {
+            this(pb840, events, false);
+        }
+
+        RegexParser(PB840Parameters pb840, List<String> events, boolean textOnly) {
+            this.pb840 = pb840;
+            this.events = events;
+            this.textOnly = textOnly;
+        }
+
+        private String text(String value) {
+            return textOnly ? "'" + value : value(value);
+        }
+
+        void receive(String capture) throws IOException {
+            BufferedReader in = new BufferedReader(new StringReader(capture));
+            String line;
+            while (null != (line = in.readLine())) {
+                Matcher m = dataField.matcher(line);
+                List<String> fieldValues = new ArrayList<String>();
+                fieldValues.add("ZERO");
+                if (!m.find()) {
+                    events.add("start ");
+                    events.add("end");
+                    continue;
+                }
+                String responseType = m.group(1).trim();
+                events.add("start " + responseType);
+                try {
+                    fieldValues.add(responseType);
+                    if (!m.find()) {
+                        continue;
+                    }
+                    fieldValues.add(m.group(1).trim());
+                    try {
+                        Integer.parseInt(m.group(1).trim());
+                    } catch (NumberFormatException nfe) {
+                        continue;
+                    }
+                    if (!m.find()) {
+                        continue;
+                    }
+                    String s = m.group(1).trim();
+                    fieldValues.add(s);
+                    int fieldCount;
+                    try {
+                        fieldCount = Integer.parseInt(s);
+                    } catch (NumberFormatException nfe) {
+                        continue;
+                    }
+                    fieldValues.add("<STX");
+                    for (int i = 0; i < fieldCount; i++) {
+                        if (m.find()) {
+                            fieldValues.add(m.group(1).trim());
+                        }
+                    }
+                    if (fieldValues.size() < (fieldCount + 5)) {
+                        continue;
+                    }
+                    fieldValues.add("<ETX>");
+                    fieldValues.add("<CR>");
+                    PB840Parameters.Field[] fields = pb840.fields.get(responseType);
+                    if (null != fields) {
+                        try {
+                            for (PB840Parameters.Field field : fields) {
+                                handle(field, fieldValues);
+                            }
+                        } catch (NumberFormatException nfe) {
+                            // the rest of the response is abandoned
+                        }
+                    }
+                } finally {
+                    events.add("end");
+                }
+            }
+        }
+
+        private void handle(PB840Parameters.Field field, List<String> fieldValues) {
+            if (field instanceof PB840Parameters.Numeric) {
+                PB840Parameters.Numeric n = (PB840Parameters.Numeric) field;
+                events.add("numeric " + n.name + " " + n.units + " " + text(fieldValues.get(n.fieldNumber)));
+            } else if (field instanceof PB840Parameters.Setting) {
+                PB840Parameters.Setting n = (PB840Parameters.Setting) field;
+                events.add("setting " + n.name + " " + n.units + " " + text(fieldValues.get(n.fieldNumber)));
+            } else if (field instanceof PB840Parameters.AlarmLimit) {
+                PB840Parameters.AlarmLimit a = (PB840Parameters.AlarmLimit) field;
+                if (a.value > -1) {
+                    events.add("limit " + a.name + " " + a.units + " " + fieldValues.get(a.value) + " " + a.limitType);
+                }
+            } else if (field instanceof PB840Parameters.PatientAlert) {
+                PB840Parameters.PatientAlert a = (PB840Parameters.PatientAlert) field;
+                events.add("patient " + a.name + " " + fieldValues.get(a.fieldNumber));
+            } else if (field instanceof PB840Parameters.TechnicalAlert) {
+                PB840Parameters.TechnicalAlert a = (PB840Parameters.TechnicalAlert) field;
+                events.add("technical " + a.name + " " + fieldValues.get(a.fieldNumber));
+            } else if (field instanceof PB840Parameters.VentilatorId) {
+                String[] modelSerial = fieldValues.get(((PB840Parameters.VentilatorId) field).fieldNumber).split(" ");
+                events.add("id " + (modelSerial.length > 1 ? modelSerial[0] : "840") + " " + (modelSerial.length > 1 ? modelSerial[1] : modelSerial[0]));
+            } else if (field instanceof PB840Parameters.Time) {
+                String[] hour_minute = fieldValues.get(((PB840Parameters.Time) field).fieldNumber).split(":");
+                events.add("time " + Integer.parseInt(hour_minute[0]) + " " + Integer.parseInt(hour_minute[1]));
+            } else if (field instanceof PB840Parameters.Date) {
+                String[] month_day_year = fieldValues.get(((PB840Parameters.Date) field).fieldNumber).split(" ");
+                events.add("date " + PB840Parameters.months.get(month_day_year[0]) + " " + Integer.parseInt(month_day_year[1]) + " "
+                        + Integer.parseInt(month_day_year[2]));
+            } else {
+                throw new IllegalArgumentException(field.toString());
+            }
+        }
+    }
+
+    private static final String[] ALERTS = new String[] { "NORMAL", "ALARM ", "RESET ", "      " };
+    private static final String[] TEXT = new String[] { "A/C   ", "SIMV  ", "SPONT ", "VC+   ", "RAMP  ", "ON    ", "OFF   ", "      " };
+
+    /**
+     * MISCF and MISCA responses of the sort recorded from a PB840 in service, each field padded
+     * to its fixed width, interleaved with the damaged lines a serial link produces.
+     */
+    private static String capture() {
+        Random random = new Random(1840);
+        PB840Parameters pb840 = new PB840Parameters(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        StringBuilder capture = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            boolean miscf = 0 == i % 2;
+            String type = miscf ? "MISCF" : "MISCA";
+            String response = response(type, miscf ? 169 : 97, pb840.fields.get(type), random, i);
+            switch (i % 25) {
+            case 7:
+                // truncated by a dropped connection
+                capture.append(response.substring(0, response.length() / 2)).append('\r');
+                break;
+            case 11:
+                capture.append("\r\n");
+                break;
+            case 13:
+                capture.append(response.replaceFirst(",[0-9]+,", ",12x4,"));
+                break;
+            case 17:
+                capture.append(response.replaceFirst("," + (miscf ? 169 : 97) + ",", ",??,"));
+                break;
+            case 19:
+                capture.append("MISCX,20,2,\u0002123   ,456   ,\u0003\r");
+                break;
+            case 23:
+                capture.append("garbage\r");
+                break;
+            default:
+                capture.append(response);
+            }
+        }
+        return capture.toString();
+    }
+
+    private static String response(String type, int fieldCount, PB840Parameters.Field[] fields, Random random, int seq) {
+        String[] values = new String[fieldCount + 5];
+        for (int i = 5; i < values.length; i++) {
+            values[i] = TEXT[random.nextInt(TEXT.length)];
+        }
+        for (PB840Parameters.Field field : fields) {
+            if (field instanceof PB840Parameters.Numeric) {
+                values[((PB840Parameters.Numeric) field).fieldNumber] = number(random);
+            } else if (field instanceof PB840Parameters.AlarmLimit) {
+                int n = ((PB840Parameters.AlarmLimit) field).value;
+                if (n > -1) {
+                    values[n] = random.nextInt(4) == 0 ? "OFF   " : number(random);
+                }
+            } else if (field instanceof PB840Parameters.PatientAlert) {
+                values[((PB840Parameters.PatientAlert) field).fieldNumber] = ALERTS[random.nextInt(ALERTS.length)];
+            } else if (field instanceof PB840Parameters.TechnicalAlert) {
+                values[((PB840Parameters.TechnicalAlert) field).fieldNumber] = ALERTS[random.nextInt(ALERTS.length)];
+            } else if (field instanceof PB840Parameters.VentilatorId) {
+                values[((PB840Parameters.VentilatorId) field).fieldNumber] = 0 == seq % 3 ? "3510083331        " : "840 3510083331    ";
+            } else if (field instanceof PB840Parameters.Time) {
+                values[((PB840Parameters.Time) field).fieldNumber] = String.format("%02d:%02d ", (seq / 60) % 24, seq % 60);
+            } else if (field instanceof PB840Parameters.Date) {
+                Calendar c = Calendar.getInstance();
+                c.set(2026, Calendar.JANUARY, 1);
+                c.add(Calendar.DAY_OF_YEAR, seq);
+                values[((PB840Parameters.Date) field).fieldNumber] = String.format(Locale.US, "%1$tb %1$td %1$tY ", c).toUpperCase(Locale.US);
+            }
+        }
+        StringBuilder body = new StringBuilder();
+        body.append('\u0002');
+        for (int i = 5; i < values.length; i++) {
+            body.append(values[i]).append(',');
+        }
+        body.append('\u0003').append('\r');
+        return type + "," + body.length() + "," + fieldCount + "," + body;
+    }
+
+    private static String number(Random random) {
+        switch (random.nextInt(6)) {
+        case 0:
+            return "      ";
+        case 1:
+            return "OFF   ";
+        case 2:
+            return String.format(Locale.US, "%-6d", random.nextInt(120));
+        case 3:
+            return String.format(Locale.US, "%-6.2f", random.nextFloat() * 2f);
+        case 4:
+            return String.format(Locale.US, "%-6.1f", random.nextFloat() * 60f - 10f);
+        default:
+            return String.format(Locale.US, "%-6.3f", random.nextFloat());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.simulation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One cycle of a simulated waveform as immutable primitive samples, shared by
+ * every simulator instance that asks for the same (shape, rate, frequency,
+ * amplitude). Simulators keep their own phase into the cycle.
+ */
+public final class Wavetable {
+
+    /**
+     * A waveform recorded at a known sample frequency. The cycle is generated
+     * once, on first use.
+     */
+    public static abstract class Shape {
+        private final String name;
+        private final int frequency;
+        private volatile double[] cycle;
+
+        protected Shape(String name, int frequency) {
+            this.name = name;
+            this.frequency = frequency;
+        }
+
+        /**
+         * @return one cycle sampled at {@link #getFrequency()}
+         */
+        protected abstract double[] generate();
+
+        final double[] cycle() {
+            double[] cycle = this.cycle;
+            if (null == cycle) {
+                this.cycle = cycle = generate();
+            }
+            return cycle;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+
+        /**
+         * @return cycles per minute when played back at the recorded frequency
+         */
+        public double getNativeRate() {
+            return 60.0 * frequency / cycle().length;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + frequency + "Hz";
+        }
+    }
+
+    private static final class Key {
+        private final String shape;
+        private final double rate;
+        private final int frequency;
+        private final double amplitude;
+
+        Key(String shape, double rate, int frequency, double amplitude) {
+            this.shape = shape;
+            this.rate = rate;
+            this.frequency = frequency;
+            this.amplitude = amplitude;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = shape.hashCode();
+            h = 31 * h + Double.hashCode(rate);
+            h = 31 * h + frequency;
+            h = 31 * h + Double.hashCode(amplitude);
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return shape.equals(k.shape) && frequency == k.frequency && Double.compare(rate, k.rate) == 0
+                    && Double.compare(amplitude, k.amplitude) == 0;
+        }
+    }
+
+    private static final ConcurrentMap<Key, Wavetable> cache = new ConcurrentHashMap<Key, Wavetable>();
+
+    /**
+     * @return the shape as recorded, unscaled
+     */
+    public static Wavetable get(Shape shape) {
+        return get(shape, shape.getNativeRate(), shape.getFrequency(), 1.0);
+    }
+
+    /**
+     * @param rate
+     *            cycles per minute
+     * @param frequency
+     *            samples per second
+     * @param amplitude
+     *            gain applied to the recorded values
+     */
+    public static Wavetable get(Shape shape, double rate, int frequency, double amplitude) {
+        if (rate <= 0.0 || frequency <= 0) {
+            throw new IllegalArgumentException("rate " + rate + " and frequency " + frequency + " must be positive");
+        }
+        Key key = new Key(shape.getName(), rate, frequency, amplitude);
+        Wavetable table = cache.get(key);
+        if (null == table) {
+            table = new Wavetable(resample(shape.cycle(), (int) Math.max(1L, Math.round(60.0 * frequency / rate)), amplitude));
+            Wavetable existing = cache.putIfAbsent(key, table);
+            if (null != existing) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+
+    static int cacheSize() {
+        return cache.size();
+    }
+
+    private static float[] resample(double[] cycle, int length, double amplitude) {
+        float[] samples = new float[length];
+        double step = (double) cycle.length / length;
+        for (int i = 0; i < length; i++) {
+            double pos = i * step;
+            int j = (int) pos;
+            double frac = pos - j;
+            double a = cycle[j], b = cycle[j + 1 < cycle.length ? j + 1 : 0];
+            samples[i] = (float) (amplitude * (a + frac * (b - a)));
+        }
+        return samples;
+    }
+
+    private final float[] samples;
+    private final Float[] boxed;
+
+    private Wavetable(float[] samples) {
+        this.samples = samples;
+        // shared boxes so publishing a block of samples allocates nothing
+        this.boxed = new Float[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            boxed[i] = samples[i];
+        }
+    }
+
+    public int length() {
+        return samples.length;
+    }
+
+    public float get(int index) {
+        return samples[index];
+    }
+
+    /**
+     * @param phase
+     *            position in samples, wrapped into the cycle
+     * @return linear interpolation between the neighbouring samples
+     */
+    public float get(double phase) {
+        double pos = phase % samples.length;
+        if (pos < 0.0) {
+            pos += samples.length;
+        }
+        int i = (int) pos;
+        if (i >= samples.length) {
+            i = 0;
+            pos = 0.0;
+        }
+        float a = samples[i], b = samples[i + 1 < samples.length ? i + 1 : 0];
+        return (float) (a + (pos - i) * (b - a));
+    }
+
+    /**
+     * Copies values.length consecutive samples starting at phase.
+     *
+     * @return the phase following the last sample copied
+     */
+    public int fill(int phase, Number[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = boxed[phase];
+            if (++phase >= boxed.length) {
+                phase = 0;
+            }
+        }
+        return phase;
+    }
+}
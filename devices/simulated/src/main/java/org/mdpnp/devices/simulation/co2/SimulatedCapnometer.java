@@ -18,8 +18,10 @@ import java.util.concurrent.TimeUnit;
 
 import org.mdpnp.devices.DeviceClock;
 import org.mdpnp.devices.math.DCT;
+import org.mdpnp.devices.math.FastDCT;
 import org.mdpnp.devices.simulation.NumberWithGradient;
 import org.mdpnp.devices.simulation.NumberWithJitter;
+import org.mdpnp.devices.simulation.Wavetable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,12 +35,6 @@ public class SimulatedCapnometer {
 
     private int count;
 
-    protected int postIncrCount() {
-        int count = this.count;
-        this.count = ++this.count >= co2.length ? 0 : this.count;
-        return count;
-    }
-
     private final class DataPublisher implements Runnable {
         private final Number[] values = new Number[SAMPLES_PER_UPDATE];
 
@@ -48,9 +44,7 @@ public class SimulatedCapnometer {
         @Override
         public void run() {
 
-            for (int i = 0; i < values.length; i++) {
-                values[i] = SimulatedCapnometer.this.co2[postIncrCount()];
-            }
+            count = SimulatedCapnometer.this.co2.fill(count, values);
 
             DeviceClock.Reading  t = deviceClock.instant();
 
@@ -72,8 +66,9 @@ public class SimulatedCapnometer {
     protected static final double MILLISECONDS_PER_SAMPLE = 50;
     protected static final int FREQUENCY = (int)(1000.0 / MILLISECONDS_PER_SAMPLE);
     protected static final int SAMPLES_PER_UPDATE = (int) Math.floor(UPDATE_PERIOD / MILLISECONDS_PER_SAMPLE);
+    private static final boolean FAST_DCT = Boolean.getBoolean("SimulatedCapnometer.FAST_DCT");
 
-    private final double[] co2Coeffs = new double[] { 149.66002885691225, -25.293660981458554, -85.58222030802641, 10.266184380818338,
+    private static final double[] CO2_COEFFS = new double[] { 149.66002885691225, -25.293660981458554, -85.58222030802641, 10.266184380818338,
             -19.487174406798864, 23.466991505742733, 6.862712563574145, 8.216199199092642, 6.851492164494071, -11.068777425796783,
             1.5119842193989312, -10.113962673328832, 0.8300844077075563, 0.4504107143987201, 2.0660365676358983, 4.75309854339552,
             -0.5793457742858097, 1.8213028259766824, -3.934241619502538, -1.2334706430103939, -0.24483186289061662, -0.1801127442535287,
@@ -89,15 +84,25 @@ public class SimulatedCapnometer {
             0.26939036897293916, -0.0904701971793937, -0.7810921669698734, 0.1120738113242933, -0.6479773726649353, 0.27856716837197787,
             -0.7656824829134345, -0.2350246570389894, 0.5032357613707102, -0.41155231296386235, 0.24359894481602737, -0.17759148348524065,
             -0.33315287258643744, 0.04515924646026637, -0.561927692186718, 0.7799330968687627, -0.33990498476784836, 0.32590698371138915 };
-    private final double[] co2 = new double[co2Coeffs.length];
+
+    private static final Wavetable.Shape CO2 = new Wavetable.Shape("SimulatedCapnometer.CO2", FREQUENCY) {
+        @Override
+        protected double[] generate() {
+            double[] co2 = new double[CO2_COEFFS.length];
+            if (FAST_DCT) {
+                FastDCT.idct(CO2_COEFFS, co2);
+            } else {
+                DCT.idct(CO2_COEFFS, co2);
+            }
+            return co2;
+        }
+    };
+
+    private final Wavetable co2 = Wavetable.get(CO2);
 
     private Number respiratoryRate = new NumberWithJitter(13, 1, 5);
     private Number etCO2 = new NumberWithJitter(29, 1, 5);
 
-    private void initWaves() {
-        DCT.idct(co2Coeffs, co2);
-    }
-
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
@@ -125,7 +130,6 @@ public class SimulatedCapnometer {
             }
 
         };
-        initWaves();
     }
 
     public void setEndTidalCO2(Number targetEndTidalCO2) {
@@ -18,8 +18,10 @@ import java.util.concurrent.TimeUnit;
 
 import org.mdpnp.devices.DeviceClock;
 import org.mdpnp.devices.math.DCT;
+import org.mdpnp.devices.math.FastDCT;
 import org.mdpnp.devices.simulation.NumberWithGradient;
 import org.mdpnp.devices.simulation.NumberWithJitter;
+import org.mdpnp.devices.simulation.Wavetable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,28 +35,11 @@ public class SimulatedElectroCardioGram {
 
     private int counti = 0, countii = 0, countiii = 0;
 
-    protected int postIncrCounti() {
-        int counti = this.counti;
-        this.counti = ++this.counti >= i.length ? 0 : this.counti;
-        return counti;
-    }
-
-    protected int postIncrCountii() {
-        int countii = this.countii;
-        this.countii = ++this.countii >= ii.length ? 0 : this.countii;
-        return countii;
-    }
-
-    protected int postIncrCountiii() {
-        int countiii = this.countiii;
-        this.countiii = ++this.countiii >= iii.length ? 0 : this.countiii;
-        return countiii;
-    }
-
     private final class DataPublisher implements Runnable {
         private final Number[] iValues = new Number[samplesPerUpdate];
         private final Number[] iiValues = new Number[samplesPerUpdate];
         private final Number[] iiiValues = new Number[samplesPerUpdate];
+        private final DeviceClock.MutableReading sampleTime = new DeviceClock.MutableReading();
 
         public DataPublisher() {
         }
@@ -62,17 +47,11 @@ public class SimulatedElectroCardioGram {
         @Override
         public void run() {
 
-            for (int i = 0; i < iValues.length; i++) {
-                iValues[i] = SimulatedElectroCardioGram.this.i[postIncrCounti()];
-            }
-            for (int i = 0; i < iiValues.length; i++) {
-                iiValues[i] = ii[postIncrCountii()];
-            }
-            for (int i = 0; i < iiiValues.length; i++) {
-                iiiValues[i] = iii[postIncrCountiii()];
-            }
+            counti = i.fill(counti, iValues);
+            countii = ii.fill(countii, iiValues);
+            countiii = iii.fill(countiii, iiiValues);
 
-            DeviceClock.Reading  t = deviceClock.instant();
+            DeviceClock.Reading  t = deviceClock.instant(sampleTime);
 
             int hr = heartRate.intValue();
             int rr = respiratoryRate.intValue();
@@ -82,11 +61,14 @@ public class SimulatedElectroCardioGram {
 
     }
 
+    /**
+     * @param sampleTime refilled for the next update, copy it to keep it
+     */
     protected void receiveECG(DeviceClock.Reading sampleTime, Number[] i, Number[] ii, Number[] iii, int heartRate, int respiratoryRate, int frequency) {
 
     }
 
-    private final double[] iCoeffs = new double[] { 1754.6228740250176, -1.8702723856853978, -17.30350351479403, 0.9639533281850988,
+    private static final double[] I_COEFFS = new double[] { 1754.6228740250176, -1.8702723856853978, -17.30350351479403, 0.9639533281850988,
             3.840507863935154, 7.934373158467186, -6.404393385136917, -11.414941750464283, 19.496520796069138, 3.7409186531276273,
             -18.234562841118052, -4.362215895841856, 8.39314891173553, 14.737666088188181, -7.307634318759682, -16.010281409927607, 9.04731657025821,
             10.28516860754574, -7.238889662498312, -9.986662338548209, 5.690957489663056, 14.343622168399994, -5.856023926443699,
@@ -119,7 +101,7 @@ public class SimulatedElectroCardioGram {
             0.483245097265392, -0.4033357718930025, -0.2781298095914827, 0.07371141072286519, 0.3453851804331789, -0.031228267124204182,
             -0.25678741665677995, 0.1584739609314728, 0.038595049674687076, -0.05286297126684661, -0.2325566295620568, 0.10557431746476192,
             0.31626014910619904 };
-    private final double[] iiCoeffs = new double[] { 1755.4866529259161, 1.1114976697242938, -21.999291501350186, 3.7507486839073074,
+    private static final double[] II_COEFFS = new double[] { 1755.4866529259161, 1.1114976697242938, -21.999291501350186, 3.7507486839073074,
             -1.8131820563363779, 11.251136998741035, -3.205596146011037, -16.681573202041967, 25.839291433877786, 2.005658436474591,
             -22.613071041216433, -5.007243441076134, 10.581428489807765, 20.12816133502909, -9.928758931517631, -21.646820067368832,
             12.879011611670665, 12.787396847272962, -11.072140687539134, -11.541833577616403, 8.425692422105051, 20.48521938727036,
@@ -152,7 +134,7 @@ public class SimulatedElectroCardioGram {
             0.2519897562467573, 0.4174469286338692, -0.3649123884704047, 7.809641218092968E-4, -0.11674158075986803, 0.29424730068092586,
             -0.1836097952302513, -0.10336013198023253, 0.07555684213526162, 0.2299148241397147, -0.10278534578585176, -0.16333516600326944,
             -0.028995223825419515, 0.2105531030934267 };
-    private final double[] iiiCoeffs = new double[] { 1744.9053613899102, -2.3697642076067447, -4.894468636077983, 1.8614564805868414,
+    private static final double[] III_COEFFS = new double[] { 1744.9053613899102, -2.3697642076067447, -4.894468636077983, 1.8614564805868414,
             -4.196468724764692, 3.5616726828990606, 1.5422435672343275, -3.689243531692336, 6.002892425929955, -0.4460341122404997,
             -6.469194279593086, -0.7103107296677198, 2.7077675490021407, 5.636627433252962, -1.9271042954637103, -5.744871978818023,
             2.5093726972049737, 2.533778125582368, -1.738725889139828, -3.0551035076636452, 1.8584400062409798, 6.19368874584013, -3.013962954759492,
@@ -185,9 +167,30 @@ public class SimulatedElectroCardioGram {
             -0.11147058181721038, -0.23996059740224154, -0.2074154247642755, 0.2501118934015001, 0.2473271717338924, -0.22442461488316465,
             -0.007120281258064755, 0.1735296921785799, -0.0606196345607449, -0.23888200290705983, -0.15772112481100498, 0.24694950579610214,
             0.3752874229239964 };
-    private final double[] i = new double[iCoeffs.length];
-    private final double[] ii = new double[iiCoeffs.length];
-    private final double[] iii = new double[iiiCoeffs.length];
+
+    // the leads were recorded for playback at 5ms per sample
+    private static final Wavetable.Shape I = lead("SimulatedElectroCardioGram.I", I_COEFFS);
+    private static final Wavetable.Shape II = lead("SimulatedElectroCardioGram.II", II_COEFFS);
+    private static final Wavetable.Shape III = lead("SimulatedElectroCardioGram.III", III_COEFFS);
+
+    private static Wavetable.Shape lead(String name, final double[] coeffs) {
+        return new Wavetable.Shape(name, 200) {
+            @Override
+            protected double[] generate() {
+                double[] lead = new double[coeffs.length];
+                if (FAST_DCT) {
+                    FastDCT.idct(coeffs, lead);
+                } else {
+                    DCT.idct(coeffs, lead);
+                }
+                return lead;
+            }
+        };
+    }
+
+    private final Wavetable i = Wavetable.get(I);
+    private final Wavetable ii = Wavetable.get(II);
+    private final Wavetable iii = Wavetable.get(III);
 
     private Number heartRate       = new NumberWithJitter(60, 1, 5);
     private Number respiratoryRate = new NumberWithJitter(12, 1, 2);
@@ -202,12 +205,6 @@ public class SimulatedElectroCardioGram {
         log.debug("Set respiratoryRate to " + this.respiratoryRate);
     }
 
-    private void initWaves() {
-        DCT.idct(iCoeffs, i);
-        DCT.idct(iiCoeffs, ii);
-        DCT.idct(iiiCoeffs, iii);
-    }
-
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
@@ -243,17 +240,20 @@ public class SimulatedElectroCardioGram {
         this.updatePeriod = updatePeriod;
         this.msPerSample = msPerSample;
         this.deviceClock = new DeviceClock() {
-            final DeviceClock dev=new FuzzyClock(clockDriftMs, tsPolicy);
+            final FuzzyClock dev=new FuzzyClock(clockDriftMs, tsPolicy);
             @Override
             public Reading instant() {
                 return new CombinedReading(referenceClock.instant(), dev.instant());
             }
+
+            @Override
+            public MutableReading instant(MutableReading reading) {
+                return referenceClock.instant(reading).setDeviceTime(dev.getTimeInMillis() * 1000000L);
+            }
         };
 
         this.samplesPerUpdate = (int) Math.floor(updatePeriod / msPerSample);
         this.frequency = (int)(1000.0 / msPerSample);
-
-        initWaves();
     }
 
     final long updatePeriod;
@@ -274,6 +274,7 @@ public class SimulatedElectroCardioGram {
     private static final int MS_PER_SAMPLE      = Integer.getInteger("SimulatedElectroCardioGram.UPDATE_PERIOD", 5);
     private static final TimestampType TS_TYPE  = TimestampType.valueOf(System.getProperty("SimulatedElectroCardioGram.TS_TYPE", "metronome"));
     private static final int CLOCK_DRIFT_MS     = Integer.getInteger("SimulatedElectroCardioGram.CLOCK_DRIFT_MS", 0);
+    private static final boolean FAST_DCT       = Boolean.getBoolean("SimulatedElectroCardioGram.FAST_DCT");
 
     class FuzzyClock extends DeviceClock.WallClock {
 
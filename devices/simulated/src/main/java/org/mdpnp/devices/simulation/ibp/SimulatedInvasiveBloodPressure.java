@@ -19,6 +19,7 @@ import java.util.concurrent.TimeUnit;
 import org.mdpnp.devices.DeviceClock;
 import org.mdpnp.devices.simulation.NumberWithGradient;
 import org.mdpnp.devices.simulation.NumberWithJitter;
+import org.mdpnp.devices.simulation.Wavetable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,12 +31,6 @@ public class SimulatedInvasiveBloodPressure {
     private int count = 0;
     private static final Logger log = LoggerFactory.getLogger(SimulatedInvasiveBloodPressure.class);
 
-    protected int postIncrCount() {
-        int count = this.count;
-        this.count = ++this.count >= wave.length ? 0 : this.count;
-        return count;
-    }
-
     private final class DataPublisher implements Runnable {
         private final Number[] waveValues = new Number[SAMPLES_PER_UPDATE];
 
@@ -45,9 +40,7 @@ public class SimulatedInvasiveBloodPressure {
         @Override
         public void run() {
             try {
-                for (int i = 0; i < waveValues.length; i++) {
-                    waveValues[i] = wave[postIncrCount()];
-                }
+                count = wave.fill(count, waveValues);
 
                 int val[] = nextDraw();
 
@@ -72,12 +65,21 @@ public class SimulatedInvasiveBloodPressure {
     protected static final int FREQUENCY = 120;
     protected static final int SAMPLES_PER_UPDATE = (int) Math.floor(1000L * FREQUENCY / UPDATE_PERIOD);
 
-    private final double[] wave = new double[] { 594, 594, 592, 590, 587, 584, 581, 578, 574, 569, 563, 558, 552, 546, 540, 532, 524, 517, 511, 506,
+    private static final double[] PRESSURE = new double[] { 594, 594, 592, 590, 587, 584, 581, 578, 574, 569, 563, 558, 552, 546, 540, 532, 524, 517, 511, 506,
             502, 499, 498, 500, 502, 504, 505, 507, 508, 507, 505, 502, 498, 492, 485, 478, 472, 466, 460, 456, 452, 449, 445, 441, 436, 433, 431,
             428, 427, 425, 423, 422, 421, 419, 418, 416, 415, 413, 411, 410, 409, 407, 406, 404, 403, 401, 401, 401, 401, 400, 399, 398, 397, 396,
             396, 396, 396, 396, 396, 395, 395, 396, 396, 396, 396, 396, 396, 396, 396, 395, 395, 396, 396, 396, 396, 396, 396, 396, 401, 414, 433,
             453, 472, 489, 505, 518, 529, 539, 548, 555, 562, 569, 573, 577, 581, 583, 586, 590, 592, 593, };
 
+    private static final Wavetable.Shape WAVE = new Wavetable.Shape("SimulatedInvasiveBloodPressure.WAVE", FREQUENCY) {
+        @Override
+        protected double[] generate() {
+            return PRESSURE;
+        }
+    };
+
+    private final Wavetable wave = Wavetable.get(WAVE);
+
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
@@ -18,8 +18,10 @@ import java.util.concurrent.TimeUnit;
 
 import org.mdpnp.devices.DeviceClock;
 import org.mdpnp.devices.math.DCT;
+import org.mdpnp.devices.math.FastDCT;
 import org.mdpnp.devices.simulation.NumberWithGradient;
 import org.mdpnp.devices.simulation.NumberWithJitter;
+import org.mdpnp.devices.simulation.Wavetable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,12 +33,6 @@ public class SimulatedPulseOximeter {
     private int count = 0;
     private static final Logger log = LoggerFactory.getLogger(SimulatedPulseOximeter.class);
 
-    protected int postIncrCount() {
-        int count = this.count;
-        this.count = ++this.count >= pleth.length ? 0 : this.count;
-        return count;
-    }
-
     private final class DataPublisher implements Runnable {
         private final Number[] plethValues = new Number[SAMPLES_PER_UPDATE];
 
@@ -46,9 +42,7 @@ public class SimulatedPulseOximeter {
         @Override
         public void run() {
             try {
-                for (int i = 0; i < plethValues.length; i++) {
-                    plethValues[i] = pleth[postIncrCount()];
-                }
+                count = pleth.fill(count, plethValues);
 
                 int val[] = nextDraw();
 
@@ -73,8 +67,9 @@ public class SimulatedPulseOximeter {
     protected static final double MILLISECONDS_PER_SAMPLE = 10L;
     protected static final int FREQUENCY = (int)(1000.0 / MILLISECONDS_PER_SAMPLE);
     protected static final int SAMPLES_PER_UPDATE = (int) Math.floor(UPDATE_PERIOD / MILLISECONDS_PER_SAMPLE);
+    private static final boolean FAST_DCT = Boolean.getBoolean("SimulatedPulseOximeter.FAST_DCT");
 
-    private final double[] coeffs = new double[] { 572784, -3815, -7452, -2196, 51, 2412, 3227, 4118, 3404, 11455, 30013, -28722, -1132, -5540, -125,
+    private static final double[] COEFFS = new double[] { 572784, -3815, -7452, -2196, 51, 2412, 3227, 4118, 3404, 11455, 30013, -28722, -1132, -5540, -125,
             -3859, 2048, -1922, 4651, 1557, 26806, -10959, -8725, 4525, 39, 3857, 2839, 5123, 4767, 4598, 5504, -13121, -1791, 4544, 65, 3178, 890,
             2998, 1112, 1703, 698, -422, -1836, 2910, 38, 1454, 206, 1504, 337, 1153, 664, 372, -3175, 1447, -226, 345, -263, 520, -158, 214, -431,
             -437, -1592, 894, 41, 292, -13, 396, 73, 287, 2, 269, -106, 416, 303, 360, 185, 319, 154, 267, 50, 241, -66, -53, 78, 96, -66, 84, -47,
@@ -85,11 +80,21 @@ public class SimulatedPulseOximeter {
             26, 45, 29, 44, 27, 38, 19, 29, 9, 17, -3, 5, -15, -7, -24, -13, -27, -16, -27, -12, -21, -5, -12, 6, 1, 17, 12, 27, 21, 34, 26, 36, 26,
             34, 22, 27, 14, 17, 2, 5, -9, -6, -19, -16, -25, -19, -27, -19, -23, -15, -15, -5, -5, 6, 6, 15, 16, 24, 23, 30, 26, 30, 23, 24, 18, 16,
             9, 5, -3, -6, -13, -15, -22, -22, -25, -24, -24, -22, -20, -15, -10, -5, };
-    private final double[] pleth = new double[coeffs.length];
 
-    private void initPleth() {
-        DCT.idct(coeffs, pleth);
-    }
+    private static final Wavetable.Shape PLETH = new Wavetable.Shape("SimulatedPulseOximeter.PLETH", FREQUENCY) {
+        @Override
+        protected double[] generate() {
+            double[] pleth = new double[COEFFS.length];
+            if (FAST_DCT) {
+                FastDCT.idct(COEFFS, pleth);
+            } else {
+                DCT.idct(COEFFS, pleth);
+            }
+            return pleth;
+        }
+    };
+
+    private final Wavetable pleth = Wavetable.get(PLETH);
 
     private ScheduledFuture<?> task;
 
@@ -117,7 +122,6 @@ public class SimulatedPulseOximeter {
                 return new CombinedReading(referenceClock.instant(), dev.instant());
             }
         };
-        initPleth();
     }
 
     private Number heartRate = new NumberWithJitter<Integer>(60, 5, 30, 200);
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.DeviceClock;
+import org.mdpnp.devices.simulation.co2.SimulatedCapnometer;
+import org.mdpnp.devices.simulation.ecg.SimulatedElectroCardioGram;
+import org.mdpnp.devices.simulation.ibp.SimulatedInvasiveBloodPressure;
+import org.mdpnp.devices.simulation.pulseox.SimulatedPulseOximeter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class WavetableTest {
+
+    private final static Logger log = LoggerFactory.getLogger(WavetableTest.class);
+
+    private static final Wavetable.Shape RAMP = new Wavetable.Shape("WavetableTest.RAMP", 100) {
+        @Override
+        protected double[] generate() {
+            double[] d = new double[100];
+            for (int i = 0; i < d.length; i++) {
+                d[i] = i;
+            }
+            return d;
+        }
+    };
+
+    /**
+     * Collects the publishing task instead of running it so the test can
+     * drive the simulators directly
+     */
+    private static class CapturingExecutor extends ScheduledThreadPoolExecutor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        CapturingExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            tasks.add(command);
+            return null;
+        }
+    }
+
+    @Test
+    public void testNative() {
+        Wavetable t = Wavetable.get(RAMP);
+        Assert.assertEquals(60.0, RAMP.getNativeRate(), 0.0);
+        Assert.assertEquals(100, t.length());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, t.get(i), 0f);
+        }
+        Assert.assertSame(t, Wavetable.get(RAMP, 60.0, 100, 1.0));
+    }
+
+    @Test
+    public void testResample() {
+        // twice the rate is half the samples
+        Wavetable fast = Wavetable.get(RAMP, 120.0, 100, 1.0);
+        Assert.assertEquals(50, fast.length());
+        Assert.assertEquals(2f, fast.get(1), 0f);
+        // same rate at twice the frequency interpolates between the recorded samples
+        Wavetable dense = Wavetable.get(RAMP, 60.0, 200, 0.5);
+        Assert.assertEquals(200, dense.length());
+        Assert.assertEquals(0.25f, dense.get(1), 1e-6f);
+        Assert.assertEquals(24.75f, dense.get(199), 1e-6f);
+    }
+
+    @Test
+    public void testPhase() {
+        Wavetable t = Wavetable.get(RAMP);
+        Assert.assertEquals(10.5f, t.get(10.5), 1e-6f);
+        Assert.assertEquals(10.5f, t.get(110.5), 1e-6f);
+        // the last sample blends into the start of the next cycle
+        Assert.assertEquals(49.5f, t.get(99.5), 1e-6f);
+        Assert.assertEquals(49.5f, t.get(-0.5), 1e-6f);
+
+        Number[] values = new Number[30];
+        Assert.assertEquals(10, t.fill(80, values));
+        Assert.assertEquals(80f, values[0].floatValue(), 0f);
+        Assert.assertEquals(0f, values[20].floatValue(), 0f);
+        Number[] again = new Number[30];
+        t.fill(80, again);
+        Assert.assertSame(values[0], again[0]);
+    }
+
+    @Test
+    public void testInvasivePressure() {
+        CapturingExecutor executor = new CapturingExecutor();
+        final List<Number> published = new ArrayList<Number>();
+        new SimulatedInvasiveBloodPressure(new DeviceClock.WallClock()) {
+            @Override
+            protected void receivePressure(DeviceClock.Reading timestamp, int systolic, int diastolic, Number[] waveValues, int frequency) {
+                for (Number n : waveValues) {
+                    published.add(n);
+                }
+            }
+        }.connect(executor);
+        executor.tasks.get(0).run();
+        executor.tasks.get(0).run();
+        executor.shutdown();
+        Assert.assertEquals(240, published.size());
+        Assert.assertEquals(594f, published.get(0).floatValue(), 0f);
+        Assert.assertEquals(592f, published.get(2).floatValue(), 0f);
+        // the recorded cycle is 121 samples long
+        Assert.assertEquals(594f, published.get(121).floatValue(), 0f);
+    }
+
+    private static class Bed {
+        final SimulatedElectroCardioGram ecg;
+        final SimulatedPulseOximeter pulseOx;
+        final SimulatedCapnometer capnometer;
+        final SimulatedInvasiveBloodPressure pressure;
+
+        Bed(DeviceClock clock, CapturingExecutor executor) {
+            ecg = new SimulatedElectroCardioGram(clock);
+            pulseOx = new SimulatedPulseOximeter(clock);
+            capnometer = new SimulatedCapnometer(clock);
+            pressure = new SimulatedInvasiveBloodPressure(clock);
+            ecg.connect(executor);
+            pulseOx.connect(executor);
+            capnometer.connect(executor);
+            pressure.connect(executor);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Heap and CPU per bed of ECG, SpO2, CO2 and IBP simulators
+     */
+    @Test
+    public void testBedsBenchmark() {
+        final int seconds = Integer.getInteger("WavetableTest.seconds", 10);
+        final DeviceClock clock = new DeviceClock.WallClock();
+        // warm up and populate the cache
+        new Bed(clock, new CapturingExecutor());
+        int tables = Wavetable.cacheSize();
+
+        for (int beds : new int[] { 1, 100, 1000 }) {
+            CapturingExecutor executor = new CapturingExecutor();
+            long before = usedHeap();
+            long start = System.nanoTime();
+            Bed[] b = new Bed[beds];
+            for (int i = 0; i < beds; i++) {
+                b[i] = new Bed(clock, executor);
+            }
+            long created = System.nanoTime() - start;
+            long heap = usedHeap() - before;
+
+            start = System.nanoTime();
+            for (int s = 0; s < seconds; s++) {
+                for (Runnable task : executor.tasks) {
+                    task.run();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            log.info(String.format("%4d beds: created in %.1fus/bed, %d bytes/bed, %.1fus CPU per bed-second of data", beds, created / 1e3 / beds,
+                    heap / beds, elapsed / 1e3 / beds / seconds));
+            Assert.assertEquals(4 * beds, executor.tasks.size());
+            Assert.assertEquals(b.length, beds);
+            executor.shutdown();
+        }
+        // every bed shares the same tables
+        Assert.assertEquals(tables, Wavetable.cacheSize());
+    }
+}
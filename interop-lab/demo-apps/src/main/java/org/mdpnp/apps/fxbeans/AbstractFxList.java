@@ -3,8 +3,11 @@ package org.mdpnp.apps.fxbeans;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javafx.application.Platform;
 import javafx.collections.ModifiableObservableListBase;
@@ -43,6 +46,8 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final List<F> data = new ArrayList<>();
+    // the row for each instance handle when not keeping history
+    private final Map<InstanceHandle_t, F> byHandle = new HashMap<>();
 
     private final String topicName;
 
@@ -60,6 +65,24 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
 
     protected final Method getKeyValue, returnLoan, readWCondition, readInstance;
 
+    /**
+     * Sees every live sample on the event loop thread as it is read, ahead of the
+     * copy made for the JavaFX thread.  Neither argument may be retained.
+     */
+    public interface SampleObserver<D> {
+        void sample(D data, SampleInfo sampleInfo);
+    }
+
+    private final List<SampleObserver<D>> sampleObservers = new CopyOnWriteArrayList<>();
+
+    public void addSampleObserver(SampleObserver<D> observer) {
+        sampleObservers.add(observer);
+    }
+
+    public void removeSampleObserver(SampleObserver<D> observer) {
+        sampleObservers.remove(observer);
+    }
+
     private final LogEntityStatus logEntityStatus;
 
     public AbstractFxList(final String topicName, final Class<D> dataClass, final Class<R> readerClass,
@@ -103,49 +126,7 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
                 final int sz = sampleInfoSequence.size();
 
                 for (int i = 0; i < sz; i++) {
-                    SampleInfo sampleInfo = (SampleInfo) sampleInfoSequence.get(i);
-                    D d = (D) dataSequence.get(i);
-                    if (0 != (sampleInfo.instance_state & InstanceStateKind.NOT_ALIVE_INSTANCE_STATE)) {
-                        // Keeping a history of samples makes the death of an instance immaterial
-                        if(!keepHistory) {
-                            InstanceHandle_t removeHandle = new InstanceHandle_t(sampleInfo.instance_handle);
-                            Platform.runLater(() -> {
-                                Iterator<F> itr = iterator();
-                                while (itr.hasNext()) {
-                                    if (itr.next().getHandle().equals(removeHandle)) {
-                                        itr.remove();
-                                    }
-                                }
-                            });
-                        }
-                    } else {
-                        final InstanceHandle_t addUpdateHandle = new InstanceHandle_t(sampleInfo.instance_handle);
-                        final SampleInfo si = new SampleInfo();
-                        si.copy_from(sampleInfo);
-                        final D sample = dataClass.newInstance();
-                        sample.copy_from(d);
-
-                        Platform.runLater(() -> {
-                            // Keeping a history means never updating any existing row; only add new rows
-                            if(!keepHistory) {
-                                Iterator<F> itr = iterator();
-                                while (itr.hasNext()) {
-                                    Updatable<D> x = itr.next();
-                                    if (x.getHandle().equals(addUpdateHandle)) {
-                                        x.update(d, si);
-                                        return;
-                                    }
-                                }
-                            }
-                            try {
-                                F x = fxClass.newInstance();
-                                x.update(d, si);
-                                add(0, x);
-                            } catch (Exception e) {
-                                log.error("Unable to create a new instance of fx object", e);
-                            }
-                        });
-                    }
+                    receive((D) dataSequence.get(i), (SampleInfo) sampleInfoSequence.get(i));
                 }
             } catch (InvocationTargetException ite) {
                 if (!(ite.getCause() instanceof RETCODE_NO_DATA)) {
@@ -163,6 +144,54 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
         }
     };
 
+    /**
+     * Adds, updates or removes the row for one sample.  Called on the event loop
+     * thread; neither argument is retained.
+     */
+    protected void receive(D d, SampleInfo sampleInfo) throws InstantiationException, IllegalAccessException {
+        if (0 != (sampleInfo.instance_state & InstanceStateKind.NOT_ALIVE_INSTANCE_STATE)) {
+            // Keeping a history of samples makes the death of an instance immaterial
+            if(!keepHistory) {
+                InstanceHandle_t removeHandle = new InstanceHandle_t(sampleInfo.instance_handle);
+                Platform.runLater(() -> {
+                    Iterator<F> itr = iterator();
+                    while (itr.hasNext()) {
+                        if (itr.next().getHandle().equals(removeHandle)) {
+                            itr.remove();
+                        }
+                    }
+                });
+            }
+        } else {
+            for (SampleObserver<D> observer : sampleObservers) {
+                observer.sample(d, sampleInfo);
+            }
+            final InstanceHandle_t addUpdateHandle = new InstanceHandle_t(sampleInfo.instance_handle);
+            final SampleInfo si = new SampleInfo();
+            si.copy_from(sampleInfo);
+            final D sample = dataClass.newInstance();
+            sample.copy_from(d);
+
+            Platform.runLater(() -> {
+                // Keeping a history means never updating any existing row; only add new rows
+                if(!keepHistory) {
+                    F x = byHandle.get(addUpdateHandle);
+                    if (null != x) {
+                        x.update(sample, si);
+                        return;
+                    }
+                }
+                try {
+                    F x = fxClass.newInstance();
+                    x.update(sample, si);
+                    add(0, x);
+                } catch (Exception e) {
+                    log.error("Unable to create a new instance of fx object", e);
+                }
+            });
+        }
+    }
+
     protected boolean keepHistory = false;
     
     public void setKeepHistory(boolean keepHistory) {
@@ -256,18 +285,29 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
     @Override
     protected void doAdd(int index, F element) {
         data.add(index, element);
+        byHandle.put(element.getHandle(), element);
     }
 
     @Override
     protected F doSet(int index, F element) {
         F f = data.set(index, element);
+        unindex(f);
+        byHandle.put(element.getHandle(), element);
         return f;
     }
 
     @Override
     protected F doRemove(int index) {
         F f = data.remove(index);
+        unindex(f);
         return f;
     }
 
+    private void unindex(F f) {
+        // with history several rows share a handle
+        if (null != f && byHandle.get(f.getHandle()) == f) {
+            byHandle.remove(f.getHandle());
+        }
+    }
+
 }
@@ -11,6 +11,8 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
+import org.mdpnp.devices.InstanceKeys;
+
 import com.rti.dds.subscription.SampleInfo;
 
 public class NumericFx extends AbstractFx<ice.Numeric> implements Updatable<ice.Numeric> {
@@ -127,17 +129,36 @@ public class NumericFx extends AbstractFx<ice.Numeric> implements Updatable<ice.
         this.presentation_timeProperty().set(presentation_time);
     }
     
+    private InstanceKeys.Key key;
+    /**
+     * @return the interned key of this instance; before the first update, or once
+     *         the key has been released with its device, it is interned from the
+     *         current property values on every call
+     */
+    public InstanceKeys.Key getKey() {
+        InstanceKeys.Key key = this.key;
+        if (null == key || key.isReleased()) {
+            // built through the setters, which may still change
+            key = InstanceKeys.getDefault().intern(getUnique_device_identifier(), getMetric_id(), getVendor_metric_id(), getInstance_id(),
+                    getUnit_id());
+        }
+        return key;
+    }
+
     public NumericFx() {
     }
         
     @Override
     public void update(ice.Numeric v, SampleInfo s) {
-        // Key values should be no-ops
-        setUnique_device_identifier(v.unique_device_identifier);
-        setMetric_id(v.metric_id);
-        setVendor_metric_id(v.vendor_metric_id);
-        setInstance_id(v.instance_id);
-        setUnit_id(v.unit_id);
+        // Key values only change with the instance handle
+        if (null == key || key.isReleased() || !getHandle().equals(s.instance_handle)) {
+            key = InstanceKeys.getDefault().intern(v.unique_device_identifier, v.metric_id, v.vendor_metric_id, v.instance_id, v.unit_id);
+            setUnique_device_identifier(key.getUniqueDeviceIdentifier());
+            setMetric_id(key.getMetricId());
+            setVendor_metric_id(key.getVendorMetricId());
+            setInstance_id(key.getInstanceId());
+            setUnit_id(key.getUnitId());
+        }
         setValue(v.value);
         setDevice_time(new Date(v.device_time.sec * 1000L + v.device_time.nanosec / 1000000L));
         setPresentation_time(new Date(v.presentation_time.sec * 1000L + v.presentation_time.nanosec / 1000000L));
@@ -1,12 +1,60 @@
 package org.mdpnp.apps.fxbeans;
 
+import org.mdpnp.rtiapi.data.InstanceModelListener;
+import org.mdpnp.rtiapi.data.ReaderInstanceModel;
+import org.mdpnp.rtiapi.data.SampleArrayInstanceModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rti.dds.subscription.SampleInfo;
 
 
 public class SampleArrayFxList extends AbstractFxList<ice.SampleArray, ice.SampleArrayDataReader, SampleArrayFx> {
 
+    private static final Logger log = LoggerFactory.getLogger(SampleArrayFxList.class);
+
     public SampleArrayFxList(final String topicName) {
         super(topicName, ice.SampleArray.class, ice.SampleArrayDataReader.class, 
               ice.SampleArrayTypeSupport.class, ice.SampleArraySeq.class, SampleArrayFx.class);
     }
 
+    // every live sample is also reported through instanceSample so instanceAlive is not needed
+    private final InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader> follower = new InstanceModelListener<ice.SampleArray, ice.SampleArrayDataReader>() {
+        @Override
+        public void instanceAlive(ReaderInstanceModel<ice.SampleArray, ice.SampleArrayDataReader> model, ice.SampleArrayDataReader reader,
+                ice.SampleArray data, SampleInfo sampleInfo) {
+        }
+
+        @Override
+        public void instanceNotAlive(ReaderInstanceModel<ice.SampleArray, ice.SampleArrayDataReader> model, ice.SampleArrayDataReader reader,
+                ice.SampleArray keyHolder, SampleInfo sampleInfo) {
+            follow(keyHolder, sampleInfo);
+        }
+
+        @Override
+        public void instanceSample(ReaderInstanceModel<ice.SampleArray, ice.SampleArrayDataReader> model, ice.SampleArrayDataReader reader,
+                ice.SampleArray data, SampleInfo sampleInfo) {
+            follow(data, sampleInfo);
+        }
+
+        private void follow(ice.SampleArray data, SampleInfo sampleInfo) {
+            try {
+                receive(data, sampleInfo);
+            } catch (Exception e) {
+                log.error("Unable to list a followed sample", e);
+            }
+        }
+    };
+
+    /**
+     * Lists the samples of another model alongside those read from this list's
+     * own topic, e.g. waveforms decoded by a CompactSampleArrayInstanceModelImpl.
+     */
+    public void follow(SampleArrayInstanceModel model) {
+        model.addListener(follower);
+    }
+
+    public void unfollow(SampleArrayInstanceModel model) {
+        model.removeListener(follower);
+    }
 }
@@ -1,17 +1,35 @@
 package org.mdpnp.apps.fxbeans;
 
+import org.mdpnp.rtiapi.data.CompactSampleArrayInstanceModelImpl;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 
 public class SampleArrayFxListFactory extends AbstractFxListFactory implements FactoryBean<SampleArrayFxList>, DisposableBean {
 
     private SampleArrayFxList instance;
+    private CompactSampleArrayInstanceModelImpl compact;
+
+    // Devices started with -DAbstractDevice.sampleArrayEncoding=compact only write ice::CompactSampleArray
+    private String sampleArrayEncoding = System.getProperty("AbstractDevice.sampleArrayEncoding", "float");
     
     public SampleArrayFxListFactory() {
     }
     
+    public void setSampleArrayEncoding(String sampleArrayEncoding) {
+        this.sampleArrayEncoding = sampleArrayEncoding;
+    }
+
+    public String getSampleArrayEncoding() {
+        return sampleArrayEncoding;
+    }
+
     @Override
     public void destroy() throws Exception {
+        if(null != compact) {
+            instance.unfollow(compact);
+            compact.stopReader();
+            compact = null;
+        }
         if(null != instance) {
             instance.stop();
         }
@@ -22,6 +40,12 @@ public class SampleArrayFxListFactory extends AbstractFxListFactory implements F
         if(null == instance) {
             instance = new SampleArrayFxList(topicName);
             instance.start(subscriber, eventLoop, expression, params, qosLibrary, qosProfile);
+            // with "both" every waveform already arrives on the float topic
+            if("compact".equals(sampleArrayEncoding)) {
+                compact = new CompactSampleArrayInstanceModelImpl(ice.CompactSampleArrayTopic.VALUE);
+                instance.follow(compact);
+                compact.startReader(subscriber, eventLoop, expression, params, qosLibrary, qosProfile);
+            }
         }
         return instance;
     }
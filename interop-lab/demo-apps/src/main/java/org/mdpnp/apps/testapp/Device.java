@@ -30,6 +30,7 @@ import javafx.concurrent.Task;
 import javafx.scene.image.Image;
 
 import org.mdpnp.apps.testapp.DeviceAdapterCommand.HeadlessAdapter;
+import org.mdpnp.devices.LivelinessTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -141,6 +142,26 @@ public class Device {
         connectedProperty().set(connected);
     }
 
+    private ObjectProperty<LivelinessTracker.State> liveliness;
+
+    /**
+     * Whether heartbeats from the device are arriving, as tracked by the supervisor's TimeManager
+     */
+    public ObjectProperty<LivelinessTracker.State> livelinessProperty() {
+        if (null == liveliness) {
+            liveliness = new SimpleObjectProperty<LivelinessTracker.State>(this, "liveliness", LivelinessTracker.State.ALIVE);
+        }
+        return liveliness;
+    }
+
+    public LivelinessTracker.State getLiveliness() {
+        return livelinessProperty().get();
+    }
+
+    public void setLiveliness(LivelinessTracker.State liveliness) {
+        livelinessProperty().set(liveliness);
+    }
+
     private StringProperty hostname;
 
     public StringProperty hostnameProperty() {
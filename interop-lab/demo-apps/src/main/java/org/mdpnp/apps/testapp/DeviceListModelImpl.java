@@ -17,8 +17,15 @@ import ice.DeviceConnectivityDataReader;
 import ice.DeviceIdentity;
 import ice.DeviceIdentityDataReader;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javafx.application.Platform;
 import javafx.beans.Observable;
@@ -26,6 +33,7 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.util.Callback;
 
+import org.mdpnp.devices.LivelinessTracker;
 import org.mdpnp.devices.TimeManager;
 import org.mdpnp.devices.TimeManagerListener;
 import org.mdpnp.rtiapi.data.DeviceConnectivityInstanceModel;
@@ -62,6 +70,10 @@ import com.rti.dds.subscription.Subscriber;
  * point in the future. We loose a bit on memory footprint, but the external interactions are much
  * more strait-forward.
  *
+ * Updates are not applied one FX task per sample. They are folded per device into a queue that a
+ * single outstanding FX task drains in time slices, so a domain full of devices announcing
+ * themselves at once (a supervisor restart, say) reaches the list as a handful of bulk changes.
+ *
  * @author Jeff Plourde, Mike Feinberg
  *
  */
@@ -93,11 +105,14 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
     @Override
     public void aliveHeartbeat(final String unique_device_identifier, final String type, final String host_name) {
         if("Device".equals(type)) {
-            runLaterOnPlatform(new Runnable() {
-                public void run() {
-                    createOrUpdateDevice(unique_device_identifier, null, host_name);
-                }
-            });
+            synchronized(queuedUpdates) {
+                DeviceUpdate u = queueUpdate(unique_device_identifier);
+                u.joined = true;
+                u.lost = false;
+                if(null != host_name)
+                    u.hostName = host_name;
+            }
+            postUpdates();
       } else {
           notADevice(unique_device_identifier, true);
       }
@@ -108,13 +123,10 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
     public void notAliveHeartbeat(final String unique_device_identifier, final String type) {
         if("Device".equals(type)) {
             log.debug(unique_device_identifier + " IS NO LONGER ALIVE");
-            runLaterOnPlatform(new Runnable() {
-                public void run() {
-                    Device d = findDevice(unique_device_identifier);
-                    if(d != null)
-                        deactivateDevice(d);
-                }
-            });
+            synchronized(queuedUpdates) {
+                queueUpdate(unique_device_identifier).lost = true;
+            }
+            postUpdates();
             
         } else {
             notADevice(unique_device_identifier, false);
@@ -126,20 +138,28 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
     public void synchronization(String remote_udi, Duration_t latency, Duration_t clockDifference) {
         final long clockDifferenceMs = 1000L * clockDifference.sec + clockDifference.nanosec / 1000000L;
         final long roundtripLatencyMs = 1000L * latency.sec + latency.nanosec / 1000000L;
-        runLaterOnPlatform(new Runnable() {
-            public void run() {
-                Device device = findDevice(remote_udi);
-                if(null != device) {
-                    device.setClockDifference(clockDifferenceMs);
-                    device.setRoundtripLatency(roundtripLatencyMs);
-                }
-                else
-                    pendingSynchronization.put(remote_udi, new SynchronizationData(clockDifferenceMs, roundtripLatencyMs));
-            }
-        });
+        synchronized(queuedUpdates) {
+            queueUpdate(remote_udi).synchronization = new SynchronizationData(clockDifferenceMs, roundtripLatencyMs);
+        }
+        postUpdates();
 
     }
 
+    /**
+     * Lost devices are removed by notAliveHeartbeat; this only tracks the stale state in between
+     */
+    final LivelinessTracker.Listener livelinessListener = new LivelinessTracker.Listener() {
+        @Override
+        public void livelinessChanged(final String unique_device_identifier, final String type, LivelinessTracker.State previous, final LivelinessTracker.State current) {
+            if("Device".equals(type)) {
+                synchronized(queuedUpdates) {
+                    queueUpdate(unique_device_identifier).liveliness = current;
+                }
+                postUpdates();
+            }
+        }
+    };
+
     private static class SynchronizationData {
         final long clockDifference;
         final long roundtripLatency;
@@ -150,37 +170,179 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
         }
     }
 
+    /**
+     * Everything heard about one device since the FX thread last applied updates.  Later
+     * events overwrite earlier ones, so a burst of samples for the same device costs a
+     * single pass over its properties.
+     */
+    private static class DeviceUpdate {
+        final String udi;
+        ice.DeviceIdentity identity;
+        String hostName;
+        // seen alive at some point, and whether it was lost again after that
+        boolean joined, lost;
+        ice.DeviceConnectivity connectivity;
+        SynchronizationData synchronization;
+        LivelinessTracker.State liveliness;
+
+        DeviceUpdate(String udi) {
+            this.udi = udi;
+        }
+    }
+
     protected void update(final DeviceConnectivity deviceConnectivity) {
 
         assertEventLoopThread();
 
         final ice.DeviceConnectivity dc = new ice.DeviceConnectivity(deviceConnectivity);
-        runLaterOnPlatform(new Runnable() {
-            public void run() {
-                Device device = findDevice(dc.unique_device_identifier);
-                if(device != null)
-                    device.setDeviceConnectivity(dc);
-                else
-                    pendingDeviceConnectivity.put(dc.unique_device_identifier, dc);
-            }
-        });
+        synchronized(queuedUpdates) {
+            queueUpdate(dc.unique_device_identifier).connectivity = dc;
+        }
+        postUpdates();
     }
 
-    private void update(final DeviceIdentity di, final ParticipantBuiltinTopicData data) {
+    protected void update(final DeviceIdentity di, final String hostname) {
 
         assertEventLoopThread();
 
         final ice.DeviceIdentity identity = new ice.DeviceIdentity(di);
-        final String hostname = TimeManager.getHostname(data);
 
-        runLaterOnPlatform(new Runnable() {
-            public void run() {
-                createOrUpdateDevice(identity.unique_device_identifier, identity, hostname);
+        synchronized(queuedUpdates) {
+            DeviceUpdate u = queueUpdate(identity.unique_device_identifier);
+            u.identity = identity;
+            if(null != hostname)
+                u.hostName = hostname;
+            // an identity sample (re)activates the device just as a heartbeat does
+            u.joined = true;
+            u.lost = false;
+        }
+        postUpdates();
+    }
+
+    /**
+     * Must be called while holding queuedUpdates.
+     */
+    private DeviceUpdate queueUpdate(final String udi) {
+        if(null == udi) {
+            throw new IllegalArgumentException("Missing devive id");
+        }
+        DeviceUpdate u = queuedUpdates.get(udi);
+        if(null == u) {
+            u = new DeviceUpdate(udi);
+            queuedUpdates.put(udi, u);
+        }
+        return u;
+    }
+
+    /**
+     * Posts applyUpdates to the FX thread unless it is already pending; at most one is ever outstanding.
+     */
+    private void postUpdates() {
+        synchronized(queuedUpdates) {
+            if(updatesScheduled) {
+                return;
             }
-        });
+            updatesScheduled = true;
+        }
+        runLaterOnPlatform(updatesTask);
     }
 
-    private void deactivateDevice(final Device device) {
+    private final Runnable updatesTask = new Runnable() {
+        public void run() {
+            applyUpdates();
+        }
+    };
+
+    /**
+     * Applies queued device updates on the FX thread for at most UPDATE_SLICE_NS, then yields to
+     * rendering and input by posting itself again for whatever remains.  Membership changes are
+     * collected over the slice and handed to the observable list in bulk so that listeners see one
+     * removal and one addition per slice rather than one per device.
+     */
+    void applyUpdates() {
+
+        assertPlatformThread();
+
+        final long start = System.nanoTime();
+        final List<Device> added = new ArrayList<>();
+        final Set<Device> removed = new HashSet<>();
+        boolean more;
+
+        for(;;) {
+            DeviceUpdate u;
+            synchronized(queuedUpdates) {
+                Iterator<DeviceUpdate> itr = queuedUpdates.values().iterator();
+                if(!itr.hasNext()) {
+                    updatesScheduled = false;
+                    more = false;
+                    break;
+                }
+                if(System.nanoTime() - start >= UPDATE_SLICE_NS) {
+                    more = true;
+                    break;
+                }
+                u = itr.next();
+                itr.remove();
+            }
+            applyUpdate(u, added, removed);
+        }
+
+        if(!removed.isEmpty()) {
+            contents.removeAll(removed);
+        }
+        if(!added.isEmpty()) {
+            // newest first, as when each device was added at the head of the list
+            Collections.reverse(added);
+            if(contents.isEmpty()) {
+                contents.setAll(added);
+            } else {
+                contents.addAll(0, added);
+            }
+        }
+
+        if(more) {
+            runLaterOnPlatform(updatesTask);
+        }
+    }
+
+    private void applyUpdate(final DeviceUpdate u, final List<Device> added, final Set<Device> removed) {
+
+        if(u.joined) {
+            createOrUpdateDevice(u.udi, u.identity, u.hostName, added);
+        }
+        if(u.lost) {
+            // a device that joined and left within the slice still ends up recycled
+            Device d = findDevice(u.udi);
+            if(d != null)
+                deactivateDevice(d, added, removed);
+        }
+
+        if(null != u.connectivity) {
+            Device device = findDevice(u.udi);
+            if(device != null)
+                device.setDeviceConnectivity(u.connectivity);
+            else
+                pendingDeviceConnectivity.put(u.udi, u.connectivity);
+        }
+
+        if(null != u.synchronization) {
+            Device device = findDevice(u.udi);
+            if(null != device) {
+                device.setClockDifference(u.synchronization.clockDifference);
+                device.setRoundtripLatency(u.synchronization.roundtripLatency);
+            }
+            else
+                pendingSynchronization.put(u.udi, u.synchronization);
+        }
+
+        if(null != u.liveliness) {
+            Device device = findDevice(u.udi);
+            if(null != device)
+                device.setLiveliness(u.liveliness);
+        }
+    }
+
+    private void deactivateDevice(final Device device, final List<Device> added, final Set<Device> removed) {
 
         assertPlatformThread();
 
@@ -188,8 +350,13 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
             log.debug("Tried to remove a null device");
             return;
         }
-        
-        contents.remove(device);
+
+        if(null != activeContents.remove(device.getUDI())) {
+            // not yet on the observable list if it only joined during this slice
+            if(!added.remove(device)) {
+                removed.add(device);
+            }
+        }
         recycledContents.put(device.getUDI(), device);
     }
 
@@ -201,31 +368,21 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
             throw new IllegalArgumentException("Missing devive id");
         }
 
-        for(Device d : contents) {
-            if(udi.equals(d.getUDI())) {
-                return d;
-            }
+        Device d = activeContents.get(udi);
+        if(null == d) {
+            d = recycledContents.get(udi);
         }
-
-        Device d = recycledContents.get(udi);
         return d;
     }
 
-    private Device createOrUpdateDevice(String udi, ice.DeviceIdentity data, String hostName) {
+    private Device createOrUpdateDevice(String udi, ice.DeviceIdentity data, String hostName, List<Device> added) {
 
         assertPlatformThread();
 
         // first look for the device on the list of active entities.
         //
-        boolean isActiveContent=false;
-        Device device = null;
-        for(Device d : contents) {
-            if(udi.equals(d.getUDI())) {
-                device=d;
-                isActiveContent=true;
-                break;
-            }
-        }
+        Device device = activeContents.get(udi);
+        boolean isActiveContent = device != null;
 
         // maybe it was deactivated?
         //
@@ -255,10 +412,13 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
             device.setRoundtripLatency(sd.roundtripLatency);
         }
 
-        // at the very end we can add the fully populated object to the observable list
+        // at the very end we can add the fully populated object to the observable list;
+        // a device dropped earlier in the same slice is removed and re-added at the head
         //
-        if(!isActiveContent)
-            contents.add(0, device);
+        if(!isActiveContent) {
+            activeContents.put(udi, device);
+            added.add(device);
+        }
 
         return device;
     }
@@ -285,18 +445,29 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
 
     private static final Logger log = LoggerFactory.getLogger(DeviceListModelImpl.class);
 
+    /**
+     * Time the FX thread spends applying device updates before giving a pulse back to rendering;
+     * half of a 60Hz frame.
+     */
+    static final long UPDATE_SLICE_NS = 8000000L;
+
+    // guarded by queuedUpdates
+    private final Map<String, DeviceUpdate> queuedUpdates = new LinkedHashMap<>();
+    private boolean updatesScheduled;
 
     private final Map<String, SynchronizationData> pendingSynchronization = new HashMap<>();
     private final Map<String, DeviceConnectivity> pendingDeviceConnectivity = new HashMap<>();
 
     private final Map<String, Device> pendingContents = new HashMap<>();
     private final Map<String, Device> recycledContents = new HashMap<>();
+    // the devices on (or joining during the current slice) the contents list, by UDI
+    private final Map<String, Device> activeContents = new HashMap<>();
 
     private final ObservableList<Device> contents = FXCollections.observableArrayList(new Callback<Device, Observable[]>() {
 
         @Override
         public Observable[] call(Device param) {
-            return new Observable[] { param.connectedProperty(), param.imageProperty(), param.makeAndModelProperty(), param.hostnameProperty() };
+            return new Observable[] { param.connectedProperty(), param.livelinessProperty(), param.imageProperty(), param.makeAndModelProperty(), param.hostnameProperty() };
         }
         
     });
@@ -310,6 +481,7 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
     @Override
     public void start() {
         timeManager.addListener(this);
+        timeManager.getLiveliness().addListener(livelinessListener);
         idModel.startReader(subscriber, eventLoop, QosProfiles.ice_library, QosProfiles.device_identity);
         connModel.startReader(subscriber, eventLoop, QosProfiles.ice_library, QosProfiles.state);
     }
@@ -329,6 +501,7 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
     @Override
     public void tearDown() {
         timeManager.removeListener(this);
+        timeManager.getLiveliness().removeListener(livelinessListener);
         idModel.stopReader();
         connModel.stopReader();
     }
@@ -346,7 +519,7 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
                 } catch(Exception e) {
                     log.warn("Unable to get participant information for DeviceIdentity publication");
                 }
-                update(di, data);
+                update(di, TimeManager.getHostname(data));
             }
             
         }
@@ -10,6 +10,7 @@ import ice.Patient;
 import javax.swing.event.EventListenerList;
 
 import org.mdpnp.apps.fxbeans.NumericFx;
+import org.mdpnp.devices.InstanceKeys;
 import org.mdpnp.devices.MDSHandler;
 import org.mdpnp.devices.PartitionAssignmentController;
 import org.slf4j.Logger;
@@ -47,12 +48,15 @@ abstract class DataCollector<T> implements MDSHandler.Connectivity.MDSListener {
 
         public abstract String getUniqueDeviceIdentifier();
         public abstract String getMetricId();
+        public abstract String getVendorMetricId();
         public abstract int getInstanceId();
+        public abstract String getUnitId();
         public abstract long getDevTime();
     }
 
 
-    private final Map<String, Patient> deviceUdiToPatientMRN = Collections.synchronizedMap(new HashMap<String, Patient>());
+    // indexed by InstanceKeys device ordinal
+    private volatile Patient[] devicePatients = new Patient[0];
 
     private final EventBus eventBus = new EventBus();
 
@@ -83,12 +87,29 @@ abstract class DataCollector<T> implements MDSHandler.Connectivity.MDSListener {
 
             Patient p = new Patient();
             p.mrn = PartitionAssignmentController.toMRN(mrnPartition);
-            deviceUdiToPatientMRN.put(c.unique_device_identifier, p);
+            int device = InstanceKeys.getDefault().deviceOrdinal(c.unique_device_identifier);
+            synchronized (this) {
+                Patient[] patients = devicePatients;
+                if (device >= patients.length) {
+                    patients = Arrays.copyOf(patients, Math.max(device + 1, 2 * patients.length));
+                }
+                patients[device] = p;
+                devicePatients = patients;
+            }
         }
     }
 
     Patient resolvePatient(String deviceUID) {
-        Patient p=deviceUdiToPatientMRN.get(deviceUID);
+        return resolvePatient(InstanceKeys.getDefault().findDevice(deviceUID));
+    }
+
+    Patient resolvePatient(InstanceKeys.Key key) {
+        return null == key ? DataSampleEvent.UNDEFINED : resolvePatient(key.getDeviceOrdinal());
+    }
+
+    private Patient resolvePatient(int device) {
+        Patient[] patients = devicePatients;
+        Patient p = device >= 0 && device < patients.length ? patients[device] : null;
         return p == null ? DataSampleEvent.UNDEFINED : p;
     }
 
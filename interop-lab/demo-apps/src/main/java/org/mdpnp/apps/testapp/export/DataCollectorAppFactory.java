@@ -53,7 +53,8 @@ public class DataCollectorAppFactory implements IceApplicationProvider {
                 CSVPersister.class.getResource("CSVPersister.fxml"),
                 JdbcPersister.class.getResource("JdbcPersister.fxml"),
                 VerilogVCDPersister.class.getResource("VerilogVCDPersister.fxml"),
-                MongoPersister.class.getResource("MongoPersister.fxml")
+                MongoPersister.class.getResource("MongoPersister.fxml"),
+                WaveformArchivePersister.class.getResource("WaveformArchivePersister.fxml")
         };
 
         FXMLLoader loader = new FXMLLoader(DataCollectorApp.class.getResource("DataCollectorApp.fxml"));
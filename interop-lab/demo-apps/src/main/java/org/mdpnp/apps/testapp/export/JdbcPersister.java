@@ -4,6 +4,8 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
 
 import com.google.common.eventbus.Subscribe;
 import javafx.fxml.FXML;
@@ -19,11 +21,18 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
     private Connection conn = null;
     private PreparedStatement insertVital = null;
     private PreparedStatement insertObservation = null;
+    // false for tables created before the vendor metric and unit columns
+    private boolean units;
+    // parameter index of FREQUENCY or 0 for tables created without it
+    private int frequencyIndex;
 
     @FXML TextField fDriver, fURL, fUser;
     @FXML PasswordField fPassword;
 
-    void persistVital(DataCollector.DataSampleEvent value, long ms, double v) throws Exception {
+    /**
+     * @param frequency of the waveform the value was sampled from or 0 for a numeric
+     */
+    void persistVital(DataCollector.DataSampleEvent value, long ms, double v, int frequency) throws Exception {
 
         if(insertVital != null) {
             insertVital.setString   (1, value.getUniqueDeviceIdentifier());
@@ -32,6 +41,18 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
             insertVital.setTimestamp(4, new java.sql.Timestamp(ms));
             insertVital.setString   (5, value.getPatientId());
             insertVital.setDouble   (6, v);
+            if(units) {
+                insertVital.setString(7, value.getVendorMetricId());
+                insertVital.setString(8, value.getUnitId());
+            }
+            if(frequencyIndex > 0) {
+                // waveform samples are marked so that a replay can tell them from numerics
+                if(frequency > 0) {
+                    insertVital.setInt(frequencyIndex, frequency);
+                } else {
+                    insertVital.setNull(frequencyIndex, Types.INTEGER);
+                }
+            }
 
             insertVital.execute();
 
@@ -55,13 +76,14 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
 
     @Subscribe
     public void handleDataSampleEvent(NumericsDataCollector.NumericSampleEvent evt) throws Exception {
-        persistVital(evt, evt.getDevTime(), evt.getValue());
+        persistVital(evt, evt.getDevTime(), evt.getValue(), 0);
     }
 
     @Subscribe
     public void handleDataSampleEvent(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
+        final int frequency = (int) evt.getFrequency();
         SampleArrayDataCollector.ArrayToNumeric.convert(evt, (DataCollector.DataSampleEvent meta, long ms, double v)->{
-            persistVital(meta, ms, v);
+            persistVital(meta, ms, v, frequency);
         });
     }
 
@@ -82,7 +104,10 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
                                         "INSTANCE_ID INTEGER, " +
                                         "TIME_TICK TIMESTAMP, " +
                                         "PATIENT_ID VARCHAR(25), " +
-                                        "VITAL_VALUE DOUBLE)");
+                                        "VITAL_VALUE DOUBLE, " +
+                                        "VENDOR_METRIC_ID VARCHAR(64), " +
+                                        "UNIT_ID VARCHAR(25), " +
+                                        "FREQUENCY INTEGER)");
 
         conn.createStatement().execute( "CREATE TABLE OBSERVATION_VALUES " +
                                         "(MD_ID VARCHAR(25), " +
@@ -91,6 +116,16 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
                                         "OBSERVATION VARCHAR(255))");
     }
 
+    static boolean hasColumns(Connection conn, String columns) {
+        // some drivers only check the columns on execution so run an empty query
+        try (Statement s = conn.createStatement()) {
+            s.executeQuery("SELECT " + columns + " FROM VITAL_VALUES WHERE 1 = 0").close();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
     @Override
     public String getName() {
         return "sql";
@@ -100,7 +135,27 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
     public boolean start() throws Exception {
         conn = createConnection();
         if(conn != null) {
-            insertVital = conn.prepareStatement("INSERT INTO VITAL_VALUES (DEVICE_ID, METRIC_ID, INSTANCE_ID, TIME_TICK, PATIENT_ID, VITAL_VALUE) VALUES(?,?,?,?,?,?)");
+            String columns = "DEVICE_ID, METRIC_ID, INSTANCE_ID, TIME_TICK, PATIENT_ID, VITAL_VALUE";
+            int count = 6;
+            units = hasColumns(conn, "VENDOR_METRIC_ID, UNIT_ID");
+            if(units) {
+                columns += ", VENDOR_METRIC_ID, UNIT_ID";
+                count += 2;
+            } else {
+                log.warn("VITAL_VALUES has no VENDOR_METRIC_ID and UNIT_ID columns; vendor metric and unit will not be recorded");
+            }
+            if(hasColumns(conn, "FREQUENCY")) {
+                columns += ", FREQUENCY";
+                frequencyIndex = ++count;
+            } else {
+                log.warn("VITAL_VALUES has no FREQUENCY column; waveform samples will replay as numerics");
+                frequencyIndex = 0;
+            }
+            StringBuilder values = new StringBuilder("?");
+            for(int i = 1; i < count; i++) {
+                values.append(",?");
+            }
+            insertVital = conn.prepareStatement("INSERT INTO VITAL_VALUES (" + columns + ") VALUES(" + values + ")");
             insertObservation = conn.prepareStatement("INSERT INTO OBSERVATION_VALUES (MD_ID, TIME_TICK, PATIENT_ID, OBSERVATION) VALUES(?,?,?,?)");
         }
         return conn != null;
@@ -29,7 +29,7 @@ public class NumericsDataCollector extends DataCollector<NumericFx> {
             if (log.isTraceEnabled())
                 log.trace(dateFormats.get().format(fx.getPresentation_time()) + " " + fx.getMetric_id() + "=" + fx.getValue());
 
-            Patient patient = resolvePatient(fx.getUnique_device_identifier());
+            Patient patient = resolvePatient(fx.getKey());
             NumericSampleEvent ev = new NumericSampleEvent(patient, fx);
             fireDataSampleEvent(ev);
         } catch (Exception e) {
@@ -112,12 +112,18 @@ public class NumericsDataCollector extends DataCollector<NumericFx> {
         public String getMetricId() {
             return data.getMetric_id();
         }
+        public String getVendorMetricId() {
+            return data.getVendor_metric_id();
+        }
         public long getDevTime() {
             return time;
         }
         public int getInstanceId() {
             return data.getInstance_id();
         }
+        public String getUnitId() {
+            return data.getUnit_id();
+        }
         public double getValue() {
             return value;
         }
@@ -112,12 +112,18 @@ public class PatientAssessmentDataCollector extends DataCollector<PatientAssessm
         public String getMetricId() {
             return "";
         }
+        public String getVendorMetricId() {
+            return "";
+        }
         public long getDevTime() {
             return time;
         }
         public int getInstanceId() {
             return 0;
         }
+        public String getUnitId() {
+            return null;
+        }
         public Map.Entry<String,String> getValue() {
             return value;
         }
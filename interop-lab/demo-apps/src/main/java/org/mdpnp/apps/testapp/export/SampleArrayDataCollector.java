@@ -31,7 +31,7 @@ public class SampleArrayDataCollector extends DataCollector<SampleArrayFx> {
             if (log.isTraceEnabled())
                 log.trace(dateFormats.get().format(fx.getPresentation_time()) + " " + fx.getMetric_id());
 
-            Patient patient = resolvePatient(fx.getUnique_device_identifier());
+            Patient patient = resolvePatient(fx.getKey());
             SampleArrayEvent ev = new SampleArrayEvent(patient, fx);
             fireDataSampleEvent(ev);
         } catch (Exception e) {
@@ -144,12 +144,18 @@ public class SampleArrayDataCollector extends DataCollector<SampleArrayFx> {
         public String getMetricId() {
             return data.getMetric_id();
         }
+        public String getVendorMetricId() {
+            return data.getVendor_metric_id();
+        }
         public long getDevTime() {
             return time;
         }
         public int getInstanceId() {
             return data.getInstance_id();
         }
+        public String getUnitId() {
+            return data.getUnit_id();
+        }
         public Number[] getValues() {
             return value;
         }
@@ -0,0 +1,112 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.eventbus.Subscribe;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.TextField;
+import javafx.stage.DirectoryChooser;
+
+import org.mdpnp.devices.archive.WaveformArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Full-disclosure recording of waveforms. Unlike the other persisters that write
+ * every sample as text or as a row, sample arrays are appended as raw floats to a
+ * memory-mapped {@link WaveformArchive} which discards data older than the chosen
+ * retention period.
+ */
+public class WaveformArchivePersister extends DataCollectorAppFactory.PersisterUIController {
+
+    private static final Logger log = LoggerFactory.getLogger(WaveformArchivePersister.class);
+
+    @FXML TextField filePathLabel;
+    @FXML ComboBox<String> retentionHours;
+
+    private WaveformArchive archive;
+    private float[] values = new float[1024];
+
+    private File defaultArchiveDir = new File("openicewaveforms");
+
+    @Override
+    public String getName() {
+        return "full disclosure";
+    }
+
+    @Override
+    public void setup() {
+        retentionHours.getSelectionModel().select("72");
+        filePathLabel.setText(defaultArchiveDir.getAbsolutePath());
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        long retention = TimeUnit.HOURS.toMillis(Long.parseLong(retentionHours.getSelectionModel().getSelectedItem()));
+        start(new File(filePathLabel.getText()), retention);
+        return true;
+    }
+
+    synchronized void start(File dir, long retention) throws Exception {
+        archive = new WaveformArchive(dir, retention, WaveformArchive.DEFAULT_SEGMENT_SPAN);
+        log.info("Recording waveforms to " + dir.getAbsolutePath());
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        if(archive != null)
+            archive.close();
+        archive = null;
+    }
+
+    @FXML public void clickChange(ActionEvent evt) {
+        DirectoryChooser dc = new DirectoryChooser();
+        dc.setTitle("Choose a directory");
+        File current = new File(filePathLabel.getText());
+        if(current.isDirectory())
+            dc.setInitialDirectory(current);
+
+        File f = dc.showDialog(null);
+        if(null != f) {
+            filePathLabel.setText(f.getAbsolutePath());
+        }
+    }
+
+    @Subscribe
+    public void handleDataSampleEvent(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
+        persist(evt);
+    }
+
+    synchronized void persist(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
+
+        if(archive == null)
+            return;
+
+        if(evt.getFrequency() <= 0) {
+            log.warn("Invalid frequency " + evt.getFrequency() +
+                     " for " + evt.getUniqueDeviceIdentifier() + " " +
+                     evt.getMetricId() + " " + evt.getInstanceId());
+            return;
+        }
+
+        Number[] v = evt.getValues();
+        if(v.length > values.length)
+            values = new float[v.length];
+        for(int i = 0; i < v.length; i++)
+            values[i] = v[i].floatValue();
+
+        // device time stamps the end of the array; see SampleArrayDataCollector.ArrayToNumeric
+        long startTime = evt.getDevTime() - Math.round(v.length * 1000.0 / evt.getFrequency());
+
+        WaveformArchive.Key key = new WaveformArchive.Key(evt.getUniqueDeviceIdentifier(), evt.getMetricId(),
+                                                          evt.getInstanceId(), (int) evt.getFrequency());
+        archive.append(key, evt.getVendorMetricId(), evt.getUnitId(), startTime, values, 0, v.length);
+    }
+
+    WaveformArchive getArchive() {
+        return archive;
+    }
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.apps.testapp.history;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.collections.ListChangeListener;
+import javafx.util.Callback;
+
+import org.mdpnp.apps.fxbeans.ElementObserver;
+import org.mdpnp.apps.fxbeans.NumericFx;
+import org.mdpnp.apps.fxbeans.NumericFxList;
+import org.mdpnp.apps.fxbeans.SampleArrayFx;
+import org.mdpnp.apps.fxbeans.SampleArrayFxList;
+import org.mdpnp.devices.InstanceKeys;
+import org.mdpnp.devices.LivelinessTracker;
+import org.mdpnp.devices.TimeManager;
+import org.mdpnp.devices.history.HistoryStore;
+
+/**
+ * The supervisor's shared history of numerics and waveforms.  Follows the
+ * supervisor-wide numeric and sample array lists, which are already the single
+ * subscription to those topics, and records every update into a {@link HistoryStore}
+ * keyed by presentation time.  Applications query the store for the latest value, a
+ * range of time or a downsampled range rather than keeping histories of their own.
+ * <p>
+ * The history of an instance is dropped when its row leaves the list.  When the
+ * {@link TimeManager} reports a device lost its histories are dropped and its
+ * {@link InstanceKeys} are released, so that devices coming and going don't grow
+ * either without bound.
+ */
+public class HistoryService {
+
+    private final HistoryStore store;
+    private final TimeManager timeManager;
+    private final NumericFxList numericList;
+    private final SampleArrayFxList sampleArrayList;
+    private final ElementObserver<NumericFx> numericObserver;
+    private final ElementObserver<SampleArrayFx> sampleArrayObserver;
+
+    private float[] values = new float[1024];
+
+    public HistoryService(TimeManager timeManager, NumericFxList numericList, SampleArrayFxList sampleArrayList) {
+        this(timeManager, numericList, sampleArrayList, HistoryStore.DEFAULT_NUMERIC_DURATION, HistoryStore.DEFAULT_WAVEFORM_DURATION);
+    }
+
+    /**
+     * @param numericDuration milliseconds of numerics to retain
+     * @param waveformDuration milliseconds of waveforms to retain
+     */
+    public HistoryService(TimeManager timeManager, NumericFxList numericList, SampleArrayFxList sampleArrayList, long numericDuration, long waveformDuration) {
+        this.store = new HistoryStore(numericDuration, waveformDuration);
+        this.timeManager = timeManager;
+        this.numericList = numericList;
+        this.sampleArrayList = sampleArrayList;
+        this.numericObserver = new ElementObserver<>(numericExtractor, numericListenerGenerator, numericList);
+        this.sampleArrayObserver = new ElementObserver<>(sampleArrayExtractor, sampleArrayListenerGenerator, sampleArrayList);
+        numericList.addListener(numericListener);
+        numericList.forEach((fx) -> numericObserver.attachListener(fx));
+        sampleArrayList.addListener(sampleArrayListener);
+        sampleArrayList.forEach((fx) -> sampleArrayObserver.attachListener(fx));
+        timeManager.getLiveliness().addListener(livelinessListener);
+    }
+
+    public void destroy() {
+        timeManager.getLiveliness().removeListener(livelinessListener);
+        numericList.removeListener(numericListener);
+        numericList.forEach((fx) -> numericObserver.detachListener(fx));
+        sampleArrayList.removeListener(sampleArrayListener);
+        sampleArrayList.forEach((fx) -> sampleArrayObserver.detachListener(fx));
+        store.clear();
+    }
+
+    public HistoryStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return history of the numeric or sample array instance, null if there is none
+     */
+    public HistoryStore.Series get(InstanceKeys.Key key) {
+        return null == key ? null : store.get(key);
+    }
+
+    public HistoryStore.Series get(NumericFx fx) {
+        return get(fx.getKey());
+    }
+
+    public HistoryStore.Series get(SampleArrayFx fx) {
+        return get(fx.getKey());
+    }
+
+    void add(NumericFx fx) {
+        InstanceKeys.Key key = fx.getKey();
+        if (null != key) {
+            store.addNumeric(key, fx.getPresentation_time().getTime(), fx.getValue());
+        }
+    }
+
+    void add(SampleArrayFx fx) {
+        InstanceKeys.Key key = fx.getKey();
+        Number[] v = fx.getValues();
+        if (null == key || null == v || key.getFrequency() <= 0) {
+            return;
+        }
+        // Listeners are notified on the JavaFX thread but don't count on it
+        synchronized (this) {
+            if (v.length > values.length) {
+                values = new float[v.length];
+            }
+            for (int i = 0; i < v.length; i++) {
+                values[i] = v[i].floatValue();
+            }
+            store.addSamples(key, fx.getPresentation_time().getTime(), values, 0, v.length);
+        }
+    }
+
+    // looked up rather than through getKey, which would intern the key of a lost device again
+    void remove(NumericFx fx) {
+        InstanceKeys.Key key = InstanceKeys.getDefault().find(fx.getUnique_device_identifier(), fx.getMetric_id(), fx.getVendor_metric_id(),
+                fx.getInstance_id(), fx.getUnit_id(), 0);
+        if (null != key) {
+            store.remove(key);
+        }
+    }
+
+    void remove(SampleArrayFx fx) {
+        InstanceKeys.Key key = InstanceKeys.getDefault().find(fx.getUnique_device_identifier(), fx.getMetric_id(), fx.getVendor_metric_id(),
+                fx.getInstance_id(), fx.getUnit_id(), (int) fx.getFrequency());
+        if (null != key) {
+            store.remove(key);
+        }
+    }
+
+    private final LivelinessTracker.Listener livelinessListener = new LivelinessTracker.Listener() {
+        @Override
+        public void livelinessChanged(String unique_device_identifier, String type, LivelinessTracker.State previous, LivelinessTracker.State current) {
+            if (LivelinessTracker.State.LOST == current) {
+                int device = InstanceKeys.getDefault().findDevice(unique_device_identifier);
+                // released first so that nothing is recorded for the device once its histories are gone
+                InstanceKeys.getDefault().removeDevice(unique_device_identifier);
+                if (InstanceKeys.NONE != device) {
+                    store.removeDevice(device);
+                }
+            }
+        }
+    };
+
+    private final ListChangeListener<NumericFx> numericListener = new ListChangeListener<NumericFx>() {
+        @Override
+        public void onChanged(javafx.collections.ListChangeListener.Change<? extends NumericFx> c) {
+            while (c.next()) {
+                if (c.wasAdded()) c.getAddedSubList().forEach((fx) -> numericObserver.attachListener(fx));
+                if (c.wasRemoved()) c.getRemoved().forEach((fx) -> {
+                    numericObserver.detachListener(fx);
+                    remove(fx);
+                });
+            }
+        }
+    };
+
+    private final ListChangeListener<SampleArrayFx> sampleArrayListener = new ListChangeListener<SampleArrayFx>() {
+        @Override
+        public void onChanged(javafx.collections.ListChangeListener.Change<? extends SampleArrayFx> c) {
+            while (c.next()) {
+                if (c.wasAdded()) c.getAddedSubList().forEach((fx) -> sampleArrayObserver.attachListener(fx));
+                if (c.wasRemoved()) c.getRemoved().forEach((fx) -> {
+                    sampleArrayObserver.detachListener(fx);
+                    remove(fx);
+                });
+            }
+        }
+    };
+
+    private static final Callback<NumericFx, Observable[]> numericExtractor = new Callback<NumericFx, Observable[]>() {
+        @Override
+        public Observable[] call(NumericFx param) {
+            return new Observable[] { param.presentation_timeProperty() };
+        }
+    };
+
+    private static final Callback<SampleArrayFx, Observable[]> sampleArrayExtractor = new Callback<SampleArrayFx, Observable[]>() {
+        @Override
+        public Observable[] call(SampleArrayFx param) {
+            return new Observable[] { param.presentation_timeProperty() };
+        }
+    };
+
+    private final Callback<NumericFx, InvalidationListener> numericListenerGenerator = new Callback<NumericFx, InvalidationListener>() {
+        @Override
+        public InvalidationListener call(final NumericFx param) {
+            return new InvalidationListener() {
+                @Override
+                public void invalidated(Observable observable) {
+                    add(param);
+                }
+            };
+        }
+    };
+
+    private final Callback<SampleArrayFx, InvalidationListener> sampleArrayListenerGenerator = new Callback<SampleArrayFx, InvalidationListener>() {
+        @Override
+        public InvalidationListener call(final SampleArrayFx param) {
+            return new InvalidationListener() {
+                @Override
+                public void invalidated(Observable observable) {
+                    add(param);
+                }
+            };
+        }
+    };
+}
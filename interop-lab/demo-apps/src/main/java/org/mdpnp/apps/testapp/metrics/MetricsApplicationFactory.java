@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.apps.testapp.metrics;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.Parent;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+import org.mdpnp.apps.testapp.IceApplicationProvider;
+import org.mdpnp.devices.metrics.LatencyHistogram;
+import org.mdpnp.devices.metrics.StreamMetrics;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Table of the {@link MetricsService}'s figures, refreshed every second.  Disabled with
+ * -DNOMETRICS like any other app.
+ */
+public class MetricsApplicationFactory implements IceApplicationProvider {
+    private final IceApplicationProvider.AppType MetricsApplication = new IceApplicationProvider.AppType("Data Latency", "NOMETRICS",
+            (URL) MetricsApplicationFactory.class.getResource("/org/mdpnp/apps/testapp/diag/diag.png"), 0.75, false);
+
+    @Override
+    public IceApplicationProvider.AppType getAppType() {
+        return MetricsApplication;
+    }
+
+    /**
+     * Figures of one stream at the time of a refresh
+     */
+    static class Row {
+        final String device, topic;
+        final double rate;
+        final long count;
+        final LatencyHistogram transport, deviceLag;
+
+        Row(StreamMetrics m, long now) {
+            device = m.getUniqueDeviceIdentifier();
+            topic = m.getTopic();
+            rate = m.getRate(now);
+            count = m.getCount();
+            transport = m.getTransport();
+            deviceLag = m.getDeviceLag();
+        }
+    }
+
+    private static TableColumn<Row, String> column(String name, Function<Row, String> value) {
+        TableColumn<Row, String> column = new TableColumn<>(name);
+        column.setCellValueFactory((features) -> new ReadOnlyObjectWrapper<>(value.apply(features.getValue())));
+        return column;
+    }
+
+    private static String millis(LatencyHistogram h, double percentile) {
+        return 0L == h.getCount() ? "" : String.format("%.1f", h.getValueAtPercentile(percentile) / 1e6);
+    }
+
+    private static String max(LatencyHistogram h) {
+        return 0L == h.getCount() ? "" : String.format("%.1f", h.getMax() / 1e6);
+    }
+
+    @Override
+    public IceApplicationProvider.IceApp create(ApplicationContext parentContext) throws IOException {
+
+        final MetricsService metricsService = parentContext.getBean("metricsService", MetricsService.class);
+
+        final TableView<Row> table = new TableView<>();
+        List<TableColumn<Row, String>> columns = new ArrayList<>();
+        columns.add(column("Device", (r) -> r.device));
+        columns.add(column("Topic", (r) -> r.topic));
+        columns.add(column("Samples/s", (r) -> String.format("%.1f", r.rate)));
+        columns.add(column("Samples", (r) -> Long.toString(r.count)));
+        columns.add(column("Transport 50% (ms)", (r) -> millis(r.transport, 50.0)));
+        columns.add(column("Transport 99% (ms)", (r) -> millis(r.transport, 99.0)));
+        columns.add(column("Transport max (ms)", (r) -> max(r.transport)));
+        columns.add(column("Device lag 50% (ms)", (r) -> millis(r.deviceLag, 50.0)));
+        columns.add(column("Device lag 99% (ms)", (r) -> millis(r.deviceLag, 99.0)));
+        columns.add(column("Device lag max (ms)", (r) -> max(r.deviceLag)));
+        table.getColumns().addAll(columns);
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+
+        final Timeline refresh = new Timeline(new KeyFrame(Duration.seconds(1.0), (event) -> {
+            long now = System.currentTimeMillis() * 1000000L;
+            List<Row> rows = new ArrayList<>();
+            metricsService.getStreams().forEach((m) -> rows.add(new Row(m, now)));
+            table.getItems().setAll(rows);
+        }));
+        refresh.setCycleCount(Animation.INDEFINITE);
+
+        return new IceApplicationProvider.IceApp() {
+
+            @Override
+            public IceApplicationProvider.AppType getDescriptor() {
+                return MetricsApplication;
+            }
+
+            @Override
+            public Parent getUI() {
+                return table;
+            }
+
+            @Override
+            public void activate(ApplicationContext context) {
+                refresh.play();
+            }
+
+            @Override
+            public void stop() {
+                refresh.stop();
+            }
+
+            @Override
+            public void destroy() throws Exception {
+                refresh.stop();
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.apps.testapp.metrics;
+
+import java.util.List;
+
+import org.mdpnp.apps.fxbeans.AbstractFxList;
+import org.mdpnp.apps.fxbeans.NumericFxList;
+import org.mdpnp.apps.fxbeans.SampleArrayFxList;
+import org.mdpnp.devices.ClockOffsetEstimator;
+import org.mdpnp.devices.LivelinessTracker;
+import org.mdpnp.devices.TimeManager;
+import org.mdpnp.devices.metrics.DataMetrics;
+import org.mdpnp.devices.metrics.StreamMetrics;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.rti.dds.infrastructure.Time_t;
+import com.rti.dds.subscription.SampleInfo;
+
+/**
+ * Receive rate and latency of every device's numerics and waveforms as seen by this
+ * supervisor.  Samples are observed on the event loop as the supervisor-wide lists read
+ * them, so the cost is a couple of map lookups and histogram increments per sample.
+ * Transport latency runs from the writer's source timestamp to reception, device lag
+ * from the sample's device_time to reception; both are corrected by the
+ * {@link TimeManager}'s estimate of the remote clock's offset where it has one.
+ */
+@ManagedResource(description="Device publication rate and latency")
+public class MetricsService {
+
+    private final DataMetrics metrics = new DataMetrics();
+    private final TimeManager timeManager;
+    private final NumericFxList numericList;
+    private final SampleArrayFxList sampleArrayList;
+
+    public MetricsService(TimeManager timeManager, NumericFxList numericList, SampleArrayFxList sampleArrayList) {
+        this.timeManager = timeManager;
+        this.numericList = numericList;
+        this.sampleArrayList = sampleArrayList;
+        numericList.addSampleObserver(numericObserver);
+        sampleArrayList.addSampleObserver(sampleArrayObserver);
+        timeManager.getLiveliness().addListener(livelinessListener);
+    }
+
+    public void destroy() {
+        numericList.removeSampleObserver(numericObserver);
+        sampleArrayList.removeSampleObserver(sampleArrayObserver);
+        timeManager.getLiveliness().removeListener(livelinessListener);
+        metrics.clear();
+    }
+
+    public DataMetrics getMetrics() {
+        return metrics;
+    }
+
+    public List<StreamMetrics> getStreams() {
+        return metrics.getStreams();
+    }
+
+    @ManagedAttribute(description="Number of device and topic pairs being measured")
+    public int getStreamCount() {
+        return metrics.getStreams().size();
+    }
+
+    @ManagedAttribute(description="Rate, then median/99th percentile/max transport latency and device lag per device and topic")
+    public String[] getReport() {
+        return metrics.report(System.currentTimeMillis() * 1000000L);
+    }
+
+    @ManagedOperation(description="Start measuring afresh")
+    public void reset() {
+        metrics.reset();
+    }
+
+    void record(String unique_device_identifier, String topic, SampleInfo sampleInfo, ice.Time_t deviceTime) {
+        long received = toNanoseconds(sampleInfo.reception_timestamp);
+        ClockOffsetEstimator estimator = timeManager.getClockOffset(unique_device_identifier);
+        // offsets are remote minus local so they move remote times onto our clock
+        long offset = null == estimator ? 0L : estimator.getOffset(received);
+        long transport = received - toNanoseconds(sampleInfo.source_timestamp) + offset;
+
+        StreamMetrics m = metrics.get(unique_device_identifier, topic);
+        if (0 == deviceTime.sec && 0 == deviceTime.nanosec) {
+            m.record(received, transport);
+        } else {
+            m.record(received, transport, received - (deviceTime.sec * 1000000000L + deviceTime.nanosec) + offset);
+        }
+    }
+
+    private static long toNanoseconds(Time_t t) {
+        return t.sec * 1000000000L + t.nanosec;
+    }
+
+    private final AbstractFxList.SampleObserver<ice.Numeric> numericObserver = new AbstractFxList.SampleObserver<ice.Numeric>() {
+        @Override
+        public void sample(ice.Numeric data, SampleInfo sampleInfo) {
+            record(data.unique_device_identifier, ice.NumericTopic.VALUE, sampleInfo, data.device_time);
+        }
+    };
+
+    private final AbstractFxList.SampleObserver<ice.SampleArray> sampleArrayObserver = new AbstractFxList.SampleObserver<ice.SampleArray>() {
+        @Override
+        public void sample(ice.SampleArray data, SampleInfo sampleInfo) {
+            record(data.unique_device_identifier, ice.SampleArrayTopic.VALUE, sampleInfo, data.device_time);
+        }
+    };
+
+    private final LivelinessTracker.Listener livelinessListener = new LivelinessTracker.Listener() {
+        @Override
+        public void livelinessChanged(String unique_device_identifier, String type, LivelinessTracker.State previous, LivelinessTracker.State current) {
+            if (LivelinessTracker.State.LOST == current) {
+                metrics.remove(unique_device_identifier);
+            }
+        }
+    };
+}
@@ -39,6 +39,7 @@ import org.mdpnp.apps.fxbeans.ElementObserver;
 import org.mdpnp.apps.fxbeans.NumericFx;
 import org.mdpnp.apps.testapp.Device;
 import org.mdpnp.apps.testapp.DeviceListModel;
+import org.mdpnp.devices.InstanceKeys;
 import org.mdpnp.rtiapi.data.EventLoop;
 import org.mdpnp.rtiapi.data.QosProfiles;
 import org.mdpnp.rtiapi.data.TopicUtil;
@@ -121,17 +122,16 @@ public class VitalModelImpl extends ModifiableObservableListBase<Vital> implemen
     @Override
     public void addNumeric(final NumericFx numeric) {
         final String metric_id = numeric.getMetric_id();
-        final String udi = numeric.getUnique_device_identifier();
-        final String unit_id = numeric.getUnit_id();
-        final int instance_id = numeric.getInstance_id();
+        final InstanceKeys.Key key = numeric.getKey();
         for (Vital v : this) {
             if (v != null) {
                 for (String x : v.getMetricIds()) {
                     // Change to this vital from a source
                     if (x.equals(metric_id)) {
                         for (Value va : v) {
-                            if (va.getInstanceId() == instance_id && va.getMetricId().equals(metric_id)
-                                    && va.getUniqueDeviceIdentifier().equals(udi)) {
+                            InstanceKeys.Key k = va.getNumeric().getKey();
+                            if (k.getInstanceId() == key.getInstanceId() && k.getMetricOrdinal() == key.getMetricOrdinal()
+                                    && k.getDeviceOrdinal() == key.getDeviceOrdinal()) {
                                 if(!numeric.equals(va.getNumeric())) {
                                     log.warn("duplicate numeric added {} {}", va.getNumeric(), numeric);
                                     
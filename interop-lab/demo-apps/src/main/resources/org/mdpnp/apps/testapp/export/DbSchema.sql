@@ -8,7 +8,10 @@ CREATE TABLE VITAL_VALUES (
         INSTANCE_ID INTEGER,
         TIME_TICK TIMESTAMP,
         PATIENT_ID VARCHAR(25),
-        VITAL_VALUE DOUBLE
+        VITAL_VALUE DOUBLE,
+        VENDOR_METRIC_ID VARCHAR(64),
+        UNIT_ID VARCHAR(25),
+        FREQUENCY INTEGER
         );
 
 CREATE TABLE OBSERVATION_VALUES (
@@ -1,8 +1,18 @@
 package org.mdpnp.apps.testapp;
 
 import ice.DeviceConnectivity;
+import ice.DeviceIdentity;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javafx.collections.ListChangeListener;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.mdpnp.devices.LivelinessTracker;
+
+import com.rti.dds.infrastructure.Duration_t;
 
 /**
  *
@@ -35,6 +45,151 @@ public class DeviceListModelImplTest {
         Assert.assertSame(d, dlm.getContents().get(0));
     }
 
+    @Test
+    public void testCoalescedUpdates() throws Exception {
+
+        Deque<Runnable> platform = new ArrayDeque<>();
+        DeviceListModelImpl dlm = createDeviceListModelImpl(platform);
+        ChangeCounter changes = new ChangeCounter();
+        dlm.getContents().addListener(changes);
+
+        DeviceConnectivity deviceConnectivity = new DeviceConnectivity();
+        deviceConnectivity.unique_device_identifier = "A";
+        deviceConnectivity.state = ice.ConnectionState.Connected;
+        dlm.update(deviceConnectivity);
+        DeviceIdentity deviceIdentity = new DeviceIdentity();
+        deviceIdentity.unique_device_identifier = "A";
+        deviceIdentity.manufacturer = "Acme";
+        deviceIdentity.model = "Monitor";
+        dlm.update(deviceIdentity, "hostA");
+
+        // the last verdict on a device within a pulse is the one that counts
+        dlm.aliveHeartbeat("B", "Device", "hostB");
+        dlm.notAliveHeartbeat("B", "Device");
+        dlm.aliveHeartbeat("B", "Device", "hostB");
+        dlm.aliveHeartbeat("C", "Device", "hostC");
+        dlm.notAliveHeartbeat("C", "Device");
+        dlm.synchronization("C", new Duration_t(0, 2000000), new Duration_t(1, 0));
+
+        Assert.assertEquals("one FX task for the whole burst", 1, platform.size());
+        runAll(platform);
+
+        Assert.assertEquals(2, dlm.getContents().size());
+        Assert.assertEquals("B", dlm.getContents().get(0).getUDI());
+        Assert.assertEquals("A", dlm.getContents().get(1).getUDI());
+        Assert.assertEquals(1, changes.count);
+
+        Device a = dlm.getContents().get(1);
+        Assert.assertTrue(a.getConnected());
+        Assert.assertEquals("Acme Monitor", a.getMakeAndModel());
+        Assert.assertEquals("hostA", a.getHostname());
+
+        Device c = dlm.findDevice("C");
+        Assert.assertNotNull("a lost device is recycled", c);
+        Assert.assertEquals(1000L, c.getClockDifference());
+
+        dlm.notAliveHeartbeat("A", "Device");
+        dlm.livelinessListener.livelinessChanged("B", "Device", LivelinessTracker.State.ALIVE, LivelinessTracker.State.STALE);
+        dlm.aliveHeartbeat("C", "Device", "hostC");
+        Assert.assertEquals(1, platform.size());
+        runAll(platform);
+
+        Assert.assertEquals(2, dlm.getContents().size());
+        Assert.assertSame(c, dlm.getContents().get(0));
+        Assert.assertEquals("B", dlm.getContents().get(1).getUDI());
+        Assert.assertEquals(LivelinessTracker.State.STALE, dlm.getContents().get(1).getLiveliness());
+        // a removal, an addition and the liveliness update on B
+        Assert.assertEquals(4, changes.count);
+    }
+
+    /**
+     * A supervisor starting on a busy domain; every device announces its identity, connectivity,
+     * heartbeat and clock synchronization at once.
+     */
+    @Test
+    public void testStartupBurst() throws Exception {
+
+        final int devices = 400;
+
+        Deque<Runnable> platform = new ArrayDeque<>();
+        DeviceListModelImpl dlm = createDeviceListModelImpl(platform);
+        ChangeCounter changes = new ChangeCounter();
+        dlm.getContents().addListener(changes);
+
+        Duration_t latency = new Duration_t(0, 3000000);
+        Duration_t clockDifference = new Duration_t(0, 1000000);
+        for (int i = 0; i < devices; i++) {
+            String udi = "DEVICE-" + i;
+            DeviceIdentity deviceIdentity = new DeviceIdentity();
+            deviceIdentity.unique_device_identifier = udi;
+            deviceIdentity.model = "Simulated";
+            dlm.update(deviceIdentity, "host" + (i % 20));
+            DeviceConnectivity deviceConnectivity = new DeviceConnectivity();
+            deviceConnectivity.unique_device_identifier = udi;
+            deviceConnectivity.state = ice.ConnectionState.Connected;
+            dlm.update(deviceConnectivity);
+            dlm.aliveHeartbeat(udi, "Device", "host" + (i % 20));
+            dlm.synchronization(udi, latency, clockDifference);
+        }
+        // and a second round of heartbeats while the first is still queued
+        for (int i = 0; i < devices; i++) {
+            dlm.aliveHeartbeat("DEVICE-" + i, "Device", "host" + (i % 20));
+        }
+
+        Assert.assertEquals("one FX task for the whole burst", 1, platform.size());
+        Assert.assertEquals(0, changes.count);
+
+        // the burst may span several time slices, each reposting the task once
+        int tasks = runAll(platform);
+        Assert.assertTrue(tasks >= 1 && tasks <= devices);
+        Assert.assertEquals("one list change per FX task", tasks, changes.count);
+
+        Assert.assertEquals(devices, dlm.getContents().size());
+        Assert.assertEquals("DEVICE-" + (devices - 1), dlm.getContents().get(0).getUDI());
+        for (Device d : dlm.getContents()) {
+            Assert.assertTrue(d.getConnected());
+            Assert.assertEquals(1L, d.getClockDifference());
+        }
+    }
+
+    private static int runAll(Deque<Runnable> platform) {
+        int tasks = 0;
+        while (!platform.isEmpty()) {
+            platform.poll().run();
+            tasks++;
+        }
+        return tasks;
+    }
+
+    private static class ChangeCounter implements ListChangeListener<Device> {
+        int count;
+
+        @Override
+        public void onChanged(ListChangeListener.Change<? extends Device> c) {
+            count++;
+        }
+    }
+
+    DeviceListModelImpl createDeviceListModelImpl(final Deque<Runnable> platform) {
+
+        DeviceListModelImpl v = new DeviceListModelImpl(null, null, null) {
+
+            @Override
+            protected void runLaterOnPlatform(Runnable r) {
+                platform.add(r);
+            }
+
+            @Override
+            protected void assertEventLoopThread() {
+            }
+
+            @Override
+            protected void assertPlatformThread() {
+            }
+        };
+
+        return v;
+    }
 
     DeviceListModelImpl createDeviceListModelImpl() {
 
@@ -63,6 +63,69 @@ public class JdbcPersisterTest {
     }
 
 
+    @Test
+    public void testWaveformMarked() throws Exception {
+
+        JdbcPersister p = new JdbcPersisterExt();
+        p.start();
+
+        try {
+            long now = System.currentTimeMillis();
+            p.handleDataSampleEvent(NumericsDataCollector.toEvent("DEVICE1", "METRIC1", 101, now, 3.14));
+            p.handleDataSampleEvent(SampleArrayDataCollector.toEvent("DEVICE1", "WAVE1", 0, now, new Double[] { 1.0, 2.0, 3.0, 4.0 }));
+
+            ResultSet rs = p.getConnection().createStatement().executeQuery(
+                    "select METRIC_ID,count(*),max(FREQUENCY) from VITAL_VALUES group by METRIC_ID order by METRIC_ID");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("METRIC1", rs.getString(1));
+            Assert.assertEquals(1, rs.getInt(2));
+            rs.getInt(3);
+            Assert.assertTrue("a numeric has no frequency", rs.wasNull());
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("WAVE1", rs.getString(1));
+            Assert.assertEquals(4, rs.getInt(2));
+            Assert.assertEquals(4, rs.getInt(3));
+            Assert.assertFalse(rs.next());
+        } finally {
+            p.stop();
+        }
+    }
+
+
+    @Test
+    public void testVitalUpdateWithoutUnits() throws Exception {
+
+        // a table created before the vendor metric and unit columns were added
+        final Connection legacy = DriverManager.getConnection("jdbc:hsqldb:mem:legacy", "sa", "");
+        legacy.createStatement().execute("CREATE TABLE VITAL_VALUES (DEVICE_ID VARCHAR(25), METRIC_ID VARCHAR(25), " +
+                                         "INSTANCE_ID INTEGER, TIME_TICK TIMESTAMP, PATIENT_ID VARCHAR(25), VITAL_VALUE DOUBLE)");
+        legacy.createStatement().execute("CREATE TABLE OBSERVATION_VALUES (MD_ID VARCHAR(25), TIME_TICK TIMESTAMP, " +
+                                         "PATIENT_ID VARCHAR(25), OBSERVATION VARCHAR(255))");
+
+        JdbcPersister p = new JdbcPersister() {
+            @Override
+            Connection createConnection() throws Exception {
+                return legacy;
+            }
+        };
+
+        try {
+            Assert.assertTrue(p.start());
+
+            long now = System.currentTimeMillis();
+            p.handleDataSampleEvent(NumericsDataCollector.toEvent("DEVICE1", "METRIC1", 101, now, 3.14));
+
+            ResultSet rs = legacy.createStatement().executeQuery("select DEVICE_ID,VITAL_VALUE from VITAL_VALUES");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("DEVICE1", rs.getString(1));
+            Assert.assertEquals(3.14, rs.getDouble(2), 0.0001);
+            Assert.assertFalse(rs.next());
+        } finally {
+            p.stop();
+        }
+    }
+
+
     @Test
     public void testObservationUpdate() throws Exception {
 
@@ -0,0 +1,57 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.archive.WaveformArchive;
+
+public class WaveformArchivePersisterTest {
+
+    @Test
+    public void testPersistArrays() throws Exception {
+
+        File root = File.createTempFile("WaveformArchivePersisterTest-", "");
+        root.delete();
+        root.mkdirs();
+
+        WaveformArchivePersister p = new WaveformArchivePersister();
+        try {
+            p.start(root, TimeUnit.HOURS.toMillis(1));
+
+            // toEvent makes arrays of one second worth of samples
+            long now = System.currentTimeMillis();
+            for (int n = 0; n < 10; n++) {
+                Double[] values = new Double[50];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (double) (n * values.length + i);
+                }
+                p.persist(SampleArrayDataCollector.toEvent("DEVICE0", "METRIC0", 0, now + n * 1000L, values));
+            }
+
+            Collection<WaveformArchive.Channel> channels = p.getArchive().getChannels();
+            Assert.assertEquals(1, channels.size());
+            WaveformArchive.Channel c = channels.iterator().next();
+            Assert.assertEquals(new WaveformArchive.Key("DEVICE0", "METRIC0", 0, 50), c.getKey());
+
+            // the event time is the time of the end of the array
+            Assert.assertEquals(now - 1000L, c.getFirstTime());
+            float[] last = new float[1];
+            int n = c.read(now, now + 9000L, (t, f, v, o, l) -> last[0] = v[o + l - 1]);
+            Assert.assertEquals(450, n);
+            Assert.assertEquals(499f, last[0], 0f);
+        }
+        finally {
+            p.stop();
+            for (File d : root.listFiles()) {
+                for (File f : d.listFiles()) {
+                    f.delete();
+                }
+                d.delete();
+            }
+            root.delete();
+        }
+    }
+}
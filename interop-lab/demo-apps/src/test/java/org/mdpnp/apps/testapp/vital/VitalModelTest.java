@@ -104,6 +104,31 @@ public class VitalModelTest {
         });
     }
 
+    private static NumericFx heartRate(String udi, float value) {
+        NumericFx numeric = new NumericFx();
+        numeric.setUnique_device_identifier(udi);
+        numeric.setMetric_id(rosetta.MDC_ECG_HEART_RATE.VALUE);
+        numeric.setInstance_id(0);
+        numeric.setPresentation_time(new Date());
+        numeric.setSource_timestamp(new Date());
+        numeric.setDevice_time(new Date());
+        numeric.setValue(value);
+        return numeric;
+    }
+
+    @Test
+    public void testAddNumericsBuiltWithSetters() throws InterruptedException {
+        testOnFxThread(() -> {
+            heartRateVital = VitalSign.HeartRate.addToModel(model);
+            model.addNumeric(heartRate("ABC", 60f));
+            model.addNumeric(heartRate("DEF", 70f));
+            assertEquals(2, heartRateVital.size());
+            // the same instance again, as another bean
+            model.addNumeric(heartRate("DEF", 71f));
+            assertEquals(2, heartRateVital.size());
+        });
+    }
+
     @Test
     public void testVitalSignLookupTable() {
 
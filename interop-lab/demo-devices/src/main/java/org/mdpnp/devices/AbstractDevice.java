@@ -33,16 +33,21 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import org.mdpnp.rtiapi.data.EventLoop;
 import org.mdpnp.rtiapi.data.EventLoop.ConditionHandler;
 import org.mdpnp.rtiapi.data.QosProfiles;
 import org.mdpnp.rtiapi.data.TopicUtil;
+import org.mdpnp.rtiapi.data.WaveformCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 
 import com.rti.dds.domain.DomainParticipant;
@@ -51,7 +56,6 @@ import com.rti.dds.infrastructure.InstanceHandle_t;
 import com.rti.dds.infrastructure.RETCODE_NO_DATA;
 import com.rti.dds.infrastructure.ResourceLimitsQosPolicy;
 import com.rti.dds.infrastructure.StatusKind;
-import com.rti.dds.infrastructure.Time_t;
 import com.rti.dds.publication.Publisher;
 import com.rti.dds.subscription.InstanceStateKind;
 import com.rti.dds.subscription.ReadCondition;
@@ -97,6 +101,15 @@ public abstract class AbstractDevice {
     protected final Topic sampleArrayTopic;
     protected final SampleArrayDataWriter sampleArrayDataWriter;
 
+    /**
+     * Waveforms are written as ice::CompactSampleArray instead of, or alongside, ice::SampleArray
+     * as selected by -DAbstractDevice.sampleArrayEncoding=float|compact|both (float by default).
+     * Null unless compact waveforms were selected.
+     */
+    protected final Topic compactSampleArrayTopic;
+    protected final ice.CompactSampleArrayDataWriter compactSampleArrayDataWriter;
+    private final boolean writeFloatSampleArrays;
+
     private final DeviceClock timestampFactory;
 
     protected final Topic alarmLimitTopic;
@@ -179,6 +192,11 @@ public abstract class AbstractDevice {
         holder.handle = numericDataWriter.register_instance(holder.data);
 
         registeredNumericInstances.add(holder);
+
+        NumericPublicationPolicy policy = getNumericPublication(metric_id);
+        if (policy.isEnabled()) {
+            numericFilters.put(holder, policy.newFilter());
+        }
         return holder;
     }
 
@@ -261,6 +279,7 @@ public abstract class AbstractDevice {
     protected void unregisterNumericInstance(InstanceHolder<Numeric> holder) {
         if (null != holder) {
             registeredNumericInstances.remove(holder);
+            numericFilters.remove(holder);
             numericDataWriter.unregister_instance(holder.data, holder.handle);
         }
     }
@@ -269,6 +288,16 @@ public abstract class AbstractDevice {
 
         registeredSampleArrayInstances.remove(holder);
 
+        SampleArrayBatch batch = sampleArrayBatches.remove(holder);
+        if (null != batch) {
+            flush(holder, batch);
+        }
+
+        InstanceHolder<ice.CompactSampleArray> compact = compactSampleArrayInstances.remove(holder);
+        if (null != compact && null != compact.handle) {
+            compactSampleArrayDataWriter.unregister_instance(compact.data, compact.handle);
+        }
+
         sampleArrayDataWriter.unregister_instance(holder.data, holder.handle);
     }
 
@@ -291,6 +320,109 @@ public abstract class AbstractDevice {
     private final Set<String> oldPatientAlertInstances = new HashSet<String>();
     private final Set<String> oldTechnicalAlertInstances = new HashSet<String>();
 
+    private final Map<InstanceHolder<Numeric>, NumericPublicationPolicy.Filter> numericFilters = new ConcurrentHashMap<InstanceHolder<Numeric>, NumericPublicationPolicy.Filter>();
+    private final Map<String, NumericPublicationPolicy> numericPublicationPolicies = new ConcurrentHashMap<String, NumericPublicationPolicy>();
+    private volatile NumericPublicationPolicy defaultNumericPublicationPolicy = new NumericPublicationPolicy(
+            Float.parseFloat(System.getProperty("AbstractDevice.numericDeadband", "0")),
+            Float.parseFloat(System.getProperty("AbstractDevice.numericRelativeDeadband", "0")),
+            Long.getLong("AbstractDevice.numericMinInterval", 0L),
+            Long.getLong("AbstractDevice.numericHeartbeat", 0L));
+    private final AtomicLong numericSamplesWritten = new AtomicLong();
+    private final AtomicLong numericSamplesSuppressed = new AtomicLong();
+
+    /**
+     * Publication policy for the numerics of every metric without a policy of its own.  Every
+     * observation is written unless configured here or with -DAbstractDevice.numericDeadband,
+     * numericRelativeDeadband, numericMinInterval and numericHeartbeat.  Only instances registered
+     * after the call are affected.
+     *
+     * @see NumericPublicationPolicy
+     */
+    @ManagedOperation(description="Set the default numeric publication policy; deadband, relative deadband, min interval (ms), heartbeat (ms).")
+    public void setNumericPublication(float deadband, float relativeDeadband, long minInterval, long heartbeat) {
+        defaultNumericPublicationPolicy = new NumericPublicationPolicy(deadband, relativeDeadband, minInterval, heartbeat);
+    }
+
+    /**
+     * Publication policy for the numerics of one metric, overriding the default.
+     *
+     * @see #setNumericPublication(float, float, long, long)
+     */
+    @ManagedOperation(description="Set the numeric publication policy of a metric; metric_id, deadband, relative deadband, min interval (ms), heartbeat (ms).")
+    public void setNumericPublication(String metric_id, float deadband, float relativeDeadband, long minInterval, long heartbeat) {
+        numericPublicationPolicies.put(metric_id, new NumericPublicationPolicy(deadband, relativeDeadband, minInterval, heartbeat));
+    }
+
+    protected NumericPublicationPolicy getNumericPublication(String metric_id) {
+        NumericPublicationPolicy policy = numericPublicationPolicies.get(metric_id);
+        return null == policy ? defaultNumericPublicationPolicy : policy;
+    }
+
+    @ManagedAttribute(description="Numeric samples written.")
+    public long getNumericSamplesWritten() {
+        return numericSamplesWritten.get();
+    }
+
+    @ManagedAttribute(description="Numeric samples held back by publication policies.")
+    public long getNumericSamplesSuppressed() {
+        return numericSamplesSuppressed.get();
+    }
+
+    private final Map<InstanceHolder<SampleArray>, SampleArrayBatch> sampleArrayBatches = new ConcurrentHashMap<InstanceHolder<SampleArray>, SampleArrayBatch>();
+    private final Map<String, SampleArrayBatch.Policy> sampleArrayBatchPolicies = new ConcurrentHashMap<String, SampleArrayBatch.Policy>();
+    private final Map<InstanceHolder<SampleArray>, InstanceHolder<ice.CompactSampleArray>> compactSampleArrayInstances = new ConcurrentHashMap<InstanceHolder<SampleArray>, InstanceHolder<ice.CompactSampleArray>>();
+    private final Map<String, Float> sampleArrayResolutions = new ConcurrentHashMap<String, Float>();
+    private final WaveformCodec waveformCodec = new WaveformCodec();
+    private float[] waveformCodecValues = new float[1024];
+    private volatile SampleArrayBatch.Policy defaultSampleArrayBatchPolicy = new SampleArrayBatch.Policy(
+            Integer.getInteger("AbstractDevice.sampleArrayBatchBytes", 0),
+            Long.getLong("AbstractDevice.sampleArrayBatchLatency", 100L));
+
+    /**
+     * Batch the SampleArray instances of every metric without a policy of its own.  Batching is
+     * off unless configured here or with -DAbstractDevice.sampleArrayBatchBytes (and optionally
+     * -DAbstractDevice.sampleArrayBatchLatency in milliseconds).  Only instances registered after
+     * the call are affected.
+     *
+     * @param maxBytes payload size at which a batch is written, zero to write every block as it arrives
+     * @param maxLatency milliseconds a sample may be held back before it is written
+     */
+    public void setSampleArrayBatching(int maxBytes, long maxLatency) {
+        defaultSampleArrayBatchPolicy = new SampleArrayBatch.Policy(maxBytes, maxLatency);
+    }
+
+    /**
+     * Batching policy for the SampleArray instances of one metric, overriding the default.  Waves that
+     * feed alarms should be given a small latency or a maxBytes of zero so that they are never held back.
+     *
+     * @see #setSampleArrayBatching(int, long)
+     */
+    public void setSampleArrayBatching(String metric_id, int maxBytes, long maxLatency) {
+        sampleArrayBatchPolicies.put(metric_id, new SampleArrayBatch.Policy(maxBytes, maxLatency));
+    }
+
+    /**
+     * The value of one converter step of a metric's waveform, lets compact waveforms carry device
+     * counts exactly rather than fitting a scale to every block.
+     */
+    public void setSampleArrayResolution(String metric_id, float resolution) {
+        sampleArrayResolutions.put(metric_id, resolution);
+    }
+
+    protected SampleArrayBatch.Policy getSampleArrayBatching(String metric_id) {
+        SampleArrayBatch.Policy policy = sampleArrayBatchPolicies.get(metric_id);
+        return null == policy ? defaultSampleArrayBatchPolicy : policy;
+    }
+
+    /**
+     * Writes out any SampleArray samples held back by batching
+     */
+    protected void flushSampleArrayBatches() {
+        for (Map.Entry<InstanceHolder<SampleArray>, SampleArrayBatch> e : sampleArrayBatches.entrySet()) {
+            flush(e.getKey(), e.getValue());
+        }
+    }
+
 
     protected InstanceHolder<SampleArray> createSampleArrayInstance(String metric_id, String vendor_metric_id, int instance_id, String unit_id, int frequency) {
         if (deviceIdentity == null || deviceIdentity.unique_device_identifier == null || "".equals(deviceIdentity.unique_device_identifier)) {
@@ -314,25 +446,50 @@ public abstract class AbstractDevice {
         } else {
             registeredSampleArrayInstances.add(holder);
         }
+
+        if (null != compactSampleArrayDataWriter) {
+            InstanceHolder<ice.CompactSampleArray> compact = new InstanceHolder<ice.CompactSampleArray>();
+            compact.data = new ice.CompactSampleArray();
+            compact.data.unique_device_identifier = deviceIdentity.unique_device_identifier;
+            compact.data.metric_id = metric_id;
+            compact.data.vendor_metric_id = vendor_metric_id;
+            compact.data.instance_id = instance_id;
+            compact.data.unit_id = unit_id;
+            compact.data.frequency = frequency;
+            compact.handle = compactSampleArrayDataWriter.register_instance(compact.data);
+            if (compact.handle.is_nil()) {
+                log.warn("Unable to register instance " + compact.data);
+                compact.handle = null;
+            }
+            compactSampleArrayInstances.put(holder, compact);
+        }
+
+        SampleArrayBatch.Policy policy = getSampleArrayBatching(metric_id);
+        if (policy.isEnabled()) {
+            sampleArrayBatches.put(holder, new SampleArrayBatch(policy));
+        }
         return holder;
     }
 
     protected void numericSample(InstanceHolder<Numeric> holder, float newValue, DeviceClock.Reading time) {
+        NumericPublicationPolicy.Filter filter = numericFilters.get(holder);
+        if (null != filter && !filter.offer(newValue, time.getTimeNanos() / 1000000L)) {
+            numericSamplesSuppressed.incrementAndGet();
+            return;
+        }
+
         holder.data.value = newValue;
         if(time.hasDeviceTime()) {
-            Time_t t = DomainClock.toDDSTime(time.getDeviceTime());
-            holder.data.device_time.sec = t.sec;
-            holder.data.device_time.nanosec = t.nanosec;
+            DomainClock.toDDSTimeNanos(time.getDeviceTimeNanos(), holder.data.device_time);
         } else {
             holder.data.device_time.sec = 0;
             holder.data.device_time.nanosec = 0;
         }
         
-        Time_t t = DomainClock.toDDSTime(time.getTime());
-        holder.data.presentation_time.sec = t.sec;
-        holder.data.presentation_time.nanosec = t.nanosec;
+        DomainClock.toDDSTimeNanos(time.getTimeNanos(), holder.data.presentation_time);
         
         numericDataWriter.write(holder.data, holder.handle);
+        numericSamplesWritten.incrementAndGet();
     }
 
     protected void alarmLimitSample(InstanceHolder<ice.AlarmLimit> holder, String unit_id, Float newValue) {
@@ -574,8 +731,55 @@ public abstract class AbstractDevice {
     }
 
     private void sampleArraySample(InstanceHolder<ice.SampleArray> holder, NullSaveContainer<Number> newValues, DeviceClock.Reading deviceTimestamp) {
-        fill(holder, newValues);
-        publish(holder, deviceTimestamp);
+        SampleArrayBatch batch = sampleArrayBatches.get(holder);
+        if (null == batch) {
+            fill(holder, newValues);
+            publish(holder, deviceTimestamp);
+            return;
+        }
+
+        synchronized (batch) {
+            if (newValues.isNull()) {
+                // Pending samples are older than the gap, write them first
+                flush(holder, batch);
+                fill(holder, newValues);
+                publish(holder, deviceTimestamp);
+                return;
+            }
+            if (!batch.fits(newValues.size())) {
+                flush(holder, batch);
+            }
+            boolean first = batch.isEmpty();
+            long now = System.nanoTime();
+            batch.add(newValues.iterator(), deviceTimestamp, now);
+            if (batch.isDue(now)) {
+                flush(holder, batch);
+            } else if (first && null != executor) {
+                // Without an executor the deadline is only checked as blocks arrive
+                executor.schedule(() -> {
+                    synchronized (batch) {
+                        if (batch.isDue(System.nanoTime())) {
+                            flush(holder, batch);
+                        }
+                    }
+                }, batch.remaining(now), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void flush(InstanceHolder<SampleArray> holder, SampleArrayBatch batch) {
+        synchronized (batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            holder.data.values.userData.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                holder.data.values.userData.addFloat(batch.get(i));
+            }
+            // publish refines the reading of the last block for the size of the merged block
+            publish(holder, batch.getReading());
+            batch.clear();
+        }
     }
 
     private void fill(InstanceHolder<SampleArray> holder, NullSaveContainer<Number> newValues) {
@@ -592,9 +796,7 @@ public abstract class AbstractDevice {
     private void publish(InstanceHolder<ice.SampleArray> holder, DeviceClock.Reading deviceTimestamp) {
 
         if (deviceTimestamp.hasDeviceTime()) {
-            Time_t t = DomainClock.toDDSTime(deviceTimestamp.getDeviceTime());
-            holder.data.device_time.sec = t.sec;
-            holder.data.device_time.nanosec = t.nanosec;
+            DomainClock.toDDSTimeNanos(deviceTimestamp.getDeviceTimeNanos(), holder.data.device_time);
         } else {
 
             holder.data.device_time.sec = 0;
@@ -604,10 +806,45 @@ public abstract class AbstractDevice {
         DeviceClock.Reading adjusted = deviceTimestamp.refineResolutionForFrequency(holder.data.frequency,
                                                                                     holder.data.values.userData.size());
         
-        DomainClock.toDDSTime(adjusted.getTime(), holder.data.presentation_time);
+        DomainClock.toDDSTimeNanos(adjusted.getTimeNanos(), holder.data.presentation_time);
 
-        sampleArrayDataWriter.write(holder.data,
+        if (writeFloatSampleArrays) {
+            sampleArrayDataWriter.write(holder.data,
                                                 holder.handle==null?InstanceHandle_t.HANDLE_NIL:holder.handle);
+        }
+
+        InstanceHolder<ice.CompactSampleArray> compact = compactSampleArrayInstances.get(holder);
+        if (null != compact) {
+            publish(holder, compact);
+        }
+    }
+
+    private void publish(InstanceHolder<ice.SampleArray> holder, InstanceHolder<ice.CompactSampleArray> compact) {
+        synchronized (waveformCodec) {
+            int count = holder.data.values.userData.size();
+            if (waveformCodecValues.length < count) {
+                waveformCodecValues = new float[count];
+            }
+            for (int i = 0; i < count; i++) {
+                waveformCodecValues[i] = holder.data.values.userData.getFloat(i);
+            }
+            Float resolution = sampleArrayResolutions.get(holder.data.metric_id);
+            waveformCodec.encode(waveformCodecValues, count, null == resolution ? 0f : resolution);
+
+            compact.data.scale = waveformCodec.getScale();
+            compact.data.offset = waveformCodec.getOffset();
+            compact.data.encoding = waveformCodec.getEncoding();
+            compact.data.sample_count = count;
+            compact.data.payload.userData.clear();
+            compact.data.payload.userData.addAllByte(waveformCodec.getPayload(), 0, waveformCodec.getLength());
+            compact.data.device_time.sec = holder.data.device_time.sec;
+            compact.data.device_time.nanosec = holder.data.device_time.nanosec;
+            compact.data.presentation_time.sec = holder.data.presentation_time.sec;
+            compact.data.presentation_time.nanosec = holder.data.presentation_time.nanosec;
+
+            compactSampleArrayDataWriter.write(compact.data,
+                                                compact.handle==null?InstanceHandle_t.HANDLE_NIL:compact.handle);
+        }
     }
 
     private InstanceHolder<SampleArray> ensureHolderConsistency(InstanceHolder<SampleArray> holder,
@@ -656,8 +893,15 @@ public abstract class AbstractDevice {
         // TODO Where a participant is shared it is not safe to unregister types
 //        ice.AlarmLimitTypeSupport.unregister_type(domainParticipant, ice.AlarmLimitTypeSupport.get_type_name());
 
+        flushSampleArrayBatches();
+        sampleArrayBatches.clear();
         publisher.delete_datawriter(sampleArrayDataWriter);
         domainParticipant.delete_topic(sampleArrayTopic);
+        if (null != compactSampleArrayDataWriter) {
+            compactSampleArrayInstances.clear();
+            publisher.delete_datawriter(compactSampleArrayDataWriter);
+            domainParticipant.delete_topic(compactSampleArrayTopic);
+        }
         // TODO Where a participant is shared it is not safe to unregister types
 //        SampleArrayTypeSupport.unregister_type(domainParticipant, SampleArrayTypeSupport.get_type_name());
 
@@ -721,6 +965,21 @@ public abstract class AbstractDevice {
             throw new RuntimeException("sampleArrayDataWriter not created");
         }
 
+        String sampleArrayEncoding = System.getProperty("AbstractDevice.sampleArrayEncoding", "float");
+        writeFloatSampleArrays = !"compact".equals(sampleArrayEncoding);
+        if ("compact".equals(sampleArrayEncoding) || "both".equals(sampleArrayEncoding)) {
+            ice.CompactSampleArrayTypeSupport.register_type(domainParticipant, ice.CompactSampleArrayTypeSupport.get_type_name());
+            compactSampleArrayTopic = TopicUtil.findOrCreateTopic(domainParticipant, ice.CompactSampleArrayTopic.VALUE, ice.CompactSampleArrayTypeSupport.class);
+            compactSampleArrayDataWriter = (ice.CompactSampleArrayDataWriter) publisher.create_datawriter_with_profile(compactSampleArrayTopic, QosProfiles.ice_library,
+                    QosProfiles.waveform_data, null, StatusKind.STATUS_MASK_NONE);
+            if (null == compactSampleArrayDataWriter) {
+                throw new RuntimeException("compactSampleArrayDataWriter not created");
+            }
+        } else {
+            compactSampleArrayTopic = null;
+            compactSampleArrayDataWriter = null;
+        }
+
         ice.AlarmLimitTypeSupport.register_type(domainParticipant, ice.AlarmLimitTypeSupport.get_type_name());
         alarmLimitTopic = TopicUtil.findOrCreateTopic(domainParticipant, ice.AlarmLimitTopic.VALUE, ice.AlarmLimitTypeSupport.class);
         alarmLimitDataWriter = (ice.AlarmLimitDataWriter) publisher.create_datawriter_with_profile(alarmLimitTopic, QosProfiles.ice_library,
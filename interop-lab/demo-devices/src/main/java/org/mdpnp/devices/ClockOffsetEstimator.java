@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+/**
+ * Filtered estimate of the offset and drift of a remote clock from a stream of
+ * round trip measurements, in the manner of the NTP clock filter.  Of the last
+ * few measurements only the one with the smallest round trip delay is trusted,
+ * since queuing on either leg of the trip skews the offset by up to half of the
+ * extra delay.  Each newly trusted measurement is kept and the drift is the least
+ * squares slope through them.
+ * <p>
+ * All times are in nanoseconds of the local clock; offsets are remote minus local.
+ */
+public class ClockOffsetEstimator {
+
+    public static final int DEFAULT_FILTER = 8;
+    public static final int DEFAULT_HISTORY = 16;
+    /**
+     * A slope through fewer trusted measurements than this is mostly noise
+     */
+    public static final int MIN_DRIFT_POINTS = 4;
+
+    private final long[] sampleTime, sampleOffset, sampleDelay;
+    private int samples, nextSample;
+
+    private final long[] pointTime, pointOffset;
+    private int points, nextPoint;
+    private long lastPointTime = Long.MIN_VALUE;
+
+    private long estimateTime, estimateOffset, delay;
+    private double drift;
+    private long count;
+
+    public ClockOffsetEstimator() {
+        this(DEFAULT_FILTER, DEFAULT_HISTORY);
+    }
+
+    /**
+     * @param filter number of recent measurements the minimum delay is chosen from
+     * @param history number of chosen measurements the drift is fitted to
+     */
+    public ClockOffsetEstimator(int filter, int history) {
+        if (filter < 1 || history < 1) {
+            throw new IllegalArgumentException("filter and history must be positive");
+        }
+        sampleTime = new long[filter];
+        sampleOffset = new long[filter];
+        sampleDelay = new long[filter];
+        pointTime = new long[history];
+        pointOffset = new long[history];
+    }
+
+    /**
+     * @param time local time at which the measurement completed
+     * @param offset measured remote minus local clock
+     * @param delay round trip delay excluding time spent at the remote end
+     */
+    public synchronized void add(long time, long offset, long delay) {
+        sampleTime[nextSample] = time;
+        sampleOffset[nextSample] = offset;
+        sampleDelay[nextSample] = Math.max(0L, delay);
+        nextSample = (nextSample + 1) % sampleTime.length;
+        samples = Math.min(samples + 1, sampleTime.length);
+        count++;
+
+        int best = -1;
+        for (int i = 0; i < samples; i++) {
+            if (best < 0 || sampleDelay[i] < sampleDelay[best] || (sampleDelay[i] == sampleDelay[best] && sampleTime[i] > sampleTime[best])) {
+                best = i;
+            }
+        }
+        this.delay = sampleDelay[best];
+        if (sampleTime[best] != lastPointTime) {
+            lastPointTime = sampleTime[best];
+            pointTime[nextPoint] = sampleTime[best];
+            pointOffset[nextPoint] = sampleOffset[best];
+            nextPoint = (nextPoint + 1) % pointTime.length;
+            points = Math.min(points + 1, pointTime.length);
+            fit();
+        }
+    }
+
+    private void fit() {
+        int newest = (nextPoint + pointTime.length - 1) % pointTime.length;
+        if (points < MIN_DRIFT_POINTS) {
+            estimateTime = pointTime[newest];
+            estimateOffset = pointOffset[newest];
+            drift = 0.0;
+            return;
+        }
+        // relative to the newest point to keep the sums well conditioned
+        long t0 = pointTime[newest], o0 = pointOffset[newest];
+        double st = 0.0, so = 0.0, stt = 0.0, sto = 0.0;
+        for (int i = 0; i < points; i++) {
+            double t = pointTime[i] - t0, o = pointOffset[i] - o0;
+            st += t;
+            so += o;
+            stt += t * t;
+            sto += t * o;
+        }
+        double d = points * stt - st * st;
+        if (d <= 0.0) {
+            drift = 0.0;
+            estimateOffset = o0;
+        } else {
+            drift = (points * sto - st * so) / d;
+            double intercept = (so - drift * st) / points;
+            estimateOffset = o0 + Math.round(intercept);
+        }
+        estimateTime = t0;
+    }
+
+    /**
+     * @return estimated remote minus local clock at the given local time
+     */
+    public synchronized long getOffset(long time) {
+        return estimateOffset + Math.round(drift * (time - estimateTime));
+    }
+
+    /**
+     * @return estimated remote minus local clock as of the latest trusted measurement
+     */
+    public synchronized long getOffset() {
+        return estimateOffset;
+    }
+
+    /**
+     * @return drift of the remote clock relative to the local clock, nanoseconds per nanosecond
+     */
+    public synchronized double getDrift() {
+        return drift;
+    }
+
+    /**
+     * @return round trip delay of the measurement the estimate rests on
+     */
+    public synchronized long getDelay() {
+        return delay;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the local time corresponding to a time read from the remote clock
+     */
+    public synchronized long toLocalTime(long remoteTime) {
+        // first order is plenty for drift in the parts per million
+        return remoteTime - getOffset(remoteTime - estimateOffset);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[offset=" + estimateOffset + "ns,drift=" + (drift * 1e6) + "ppm,delay=" + delay + "ns,count=" + count + "]";
+    }
+}
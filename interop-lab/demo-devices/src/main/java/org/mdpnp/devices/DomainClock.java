@@ -42,6 +42,16 @@ public class DomainClock implements DeviceClock  {
         return t;
     }
 
+    public static void toDDSTimeNanos(long epochNanos, Time_t t) {
+        t.sec = (int) Math.floorDiv(epochNanos, 1000000000L);
+        t.nanosec = (int) Math.floorMod(epochNanos, 1000000000L);
+    }
+
+    public static void toDDSTimeNanos(long epochNanos, ice.Time_t t) {
+        t.sec = (int) Math.floorDiv(epochNanos, 1000000000L);
+        t.nanosec = (int) Math.floorMod(epochNanos, 1000000000L);
+    }
+
     public static long toMilliseconds(Time_t timestamp) {
         long t = 1000L*timestamp.sec+timestamp.nanosec/1000000L;
         return t;
@@ -118,41 +128,62 @@ public class DomainClock implements DeviceClock  {
     }
 
 
+    static long timeSampleArrayResolution(int resolutionNsPerSample, long epochNanos) {
+
+        long sec     = Math.floorDiv(epochNanos, 1000000000L);
+        long nanosec = Math.floorMod(epochNanos, 1000000000L);
+
+        if(resolutionNsPerSample >=1000000000) {
+            int secondsMod = resolutionNsPerSample / 1000000000;
+            int nanosecondsMod = resolutionNsPerSample % 1000000000;
+
+            sec -= 0 == secondsMod ? 0 : (sec % secondsMod);
+            if(nanosecondsMod == 0) {
+                // max res (min sample period) is an even number of seconds
+                nanosec = 0;
+            } else {
+                nanosec -= 0 == nanosecondsMod ? 0 : (nanosec % nanosecondsMod);
+            }
+        } else {
+            nanosec -= 0 == resolutionNsPerSample ? 0 : (nanosec % resolutionNsPerSample);
+        }
+        return sec * 1000000000L + nanosec;
+    }
+
     Instant currentTime() {
-        Time_t dds = new Time_t(0, 0);
-        domainParticipant.get_current_time(dds);
-        Instant t = Instant.ofEpochSecond(dds.sec, dds.nanosec);
-        return t;
+        return DeviceClock.toInstant(currentTimeNanos());
     }
 
-    @Override
-    public DeviceClock.Reading instant() {
-        return new DeviceClock.Reading() {
+    private final Time_t currentTime = new Time_t(0, 0);
 
-            private final Instant ms = currentTime();
+    long currentTimeNanos() {
+        synchronized (currentTime) {
+            domainParticipant.get_current_time(currentTime);
+            return currentTime.sec * 1000000000L + currentTime.nanosec;
+        }
+    }
 
-            @Override
-            public Instant getDeviceTime() {
-                return null;
-            }
+    // Time is coarsened when it is read, after the sample path has had a chance to refine the resolution
+    private final DeviceClock.MutableReading.Resolution resolution = new DeviceClock.MutableReading.Resolution() {
+        @Override
+        public void ensureResolutionForFrequency(int hertz, int size) {
+            currentArrayResolutionNsPerSample = DomainClock.ensureResolutionForFrequency(currentArrayResolutionNsPerSample, hertz, size);
+        }
 
-            @Override
-            public boolean hasDeviceTime() {
-                return false;
-            }
+        @Override
+        public long truncate(long epochNanos) {
+            return timeSampleArrayResolution(currentArrayResolutionNsPerSample, epochNanos);
+        }
+    };
 
-            @Override
-            public Instant getTime() {
-                Instant adjusted = timeSampleArrayResolution(currentArrayResolutionNsPerSample, ms);
-                return adjusted;
-            }
+    @Override
+    public DeviceClock.Reading instant() {
+        return instant(new DeviceClock.MutableReading());
+    }
 
-            @Override
-            public DeviceClock.Reading refineResolutionForFrequency(int hertz, int size) {
-                currentArrayResolutionNsPerSample = ensureResolutionForFrequency(currentArrayResolutionNsPerSample, hertz, size);
-                return this;
-            }
-        };
+    @Override
+    public DeviceClock.MutableReading instant(DeviceClock.MutableReading reading) {
+        return reading.set(currentTimeNanos(), resolution);
     }
 
 }
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A set of {@link EventLoop}s each serviced by its own thread, so that a slow
+ * handler for one topic no longer delays every other reader in the process.
+ * Readers are placed on a lane by topic name: alerts and alarm limits get a
+ * lane of their own, high rate data topics are spread across the data lanes and
+ * everything else stays on the default loop this group was given.
+ * <p>
+ * Each lane is still an ordinary EventLoop so doLater/doNow keep their meaning;
+ * a component that needs thread confinement must do all of its work through the
+ * one loop it was handed, not through a loop it looked up for another topic.
+ */
+public class EventLoopGroup {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLoopGroup.class);
+
+    public enum Lane {
+        DEFAULT, ALERT, DATA
+    }
+
+    private final EventLoop defaultEventLoop;
+    private final EventLoop alertEventLoop;
+    private final EventLoop[] dataEventLoops;
+    private final List<EventLoopHandler> handlers = new ArrayList<EventLoopHandler>();
+
+    private final ConcurrentMap<String, Lane> placement = new ConcurrentHashMap<String, Lane>();
+    private final ConcurrentMap<String, EventLoop> dataAssignment = new ConcurrentHashMap<String, EventLoop>();
+    private final AtomicInteger nextDataLane = new AtomicInteger();
+
+    public EventLoopGroup(EventLoop eventLoop) {
+        this(eventLoop, Integer.getInteger("EventLoopGroup.dataLanes", 2));
+    }
+
+    /**
+     * @param eventLoop the default lane, serviced by whoever created it
+     * @param dataLanes number of loops the data topics are spread across; with none
+     *                  they stay on the default loop
+     */
+    public EventLoopGroup(EventLoop eventLoop, int dataLanes) {
+        this.defaultEventLoop = eventLoop;
+        this.alertEventLoop = new EventLoop();
+        handlers.add(new EventLoopHandler(alertEventLoop, "EventLoopHandler-alert", Thread.MAX_PRIORITY));
+        this.dataEventLoops = new EventLoop[Math.max(0, dataLanes)];
+        for (int i = 0; i < dataEventLoops.length; i++) {
+            dataEventLoops[i] = new EventLoop();
+            handlers.add(new EventLoopHandler(dataEventLoops[i], "EventLoopHandler-data-" + i, Thread.NORM_PRIORITY));
+        }
+
+        placement.put(ice.PatientAlertTopic.VALUE, Lane.ALERT);
+        placement.put(ice.TechnicalAlertTopic.VALUE, Lane.ALERT);
+        placement.put(ice.DeviceAlertConditionTopic.VALUE, Lane.ALERT);
+        placement.put(ice.AlarmLimitTopic.VALUE, Lane.ALERT);
+        placement.put(ice.LocalAlarmLimitObjectiveTopic.VALUE, Lane.ALERT);
+        placement.put(ice.GlobalAlarmLimitObjectiveTopic.VALUE, Lane.ALERT);
+        placement.put(ice.NumericTopic.VALUE, Lane.DATA);
+        placement.put(ice.SampleArrayTopic.VALUE, Lane.DATA);
+        placement.put(ice.CompactSampleArrayTopic.VALUE, Lane.DATA);
+        log.info("EventLoopGroup with an alert lane and " + dataEventLoops.length + " data lanes");
+    }
+
+    /**
+     * Overrides the lane of the given topics; takes effect for readers started afterwards.
+     */
+    public void setPlacement(Map<String, Lane> placement) {
+        this.placement.putAll(placement);
+    }
+
+    public void setPlacement(String topicName, Lane lane) {
+        placement.put(topicName, lane);
+    }
+
+    public Lane getPlacement(String topicName) {
+        Lane lane = placement.get(topicName);
+        return null == lane ? Lane.DEFAULT : lane;
+    }
+
+    public EventLoop getEventLoop() {
+        return defaultEventLoop;
+    }
+
+    public EventLoop getEventLoop(Lane lane) {
+        switch (lane) {
+        case ALERT:
+            return alertEventLoop;
+        case DATA:
+            return dataEventLoops.length > 0 ? dataEventLoops[0] : defaultEventLoop;
+        case DEFAULT:
+        default:
+            return defaultEventLoop;
+        }
+    }
+
+    /**
+     * @return the loop that services readers of the named topic. Data topics are
+     *         assigned to data lanes round robin the first time they are asked for and
+     *         keep that lane from then on.
+     */
+    public EventLoop getEventLoop(String topicName) {
+        Lane lane = getPlacement(topicName);
+        if (Lane.DATA != lane || dataEventLoops.length == 0) {
+            return getEventLoop(lane);
+        }
+        EventLoop eventLoop = dataAssignment.get(topicName);
+        if (null == eventLoop) {
+            EventLoop candidate = dataEventLoops[(nextDataLane.getAndIncrement() & Integer.MAX_VALUE) % dataEventLoops.length];
+            eventLoop = dataAssignment.putIfAbsent(topicName, candidate);
+            if (null == eventLoop) {
+                eventLoop = candidate;
+            }
+        }
+        return eventLoop;
+    }
+
+    public int getDataLanes() {
+        return dataEventLoops.length;
+    }
+
+    /**
+     * Stops the threads of the lanes this group created; the default loop is left to its owner.
+     */
+    public void shutdown() throws InterruptedException {
+        for (EventLoopHandler handler : handlers) {
+            handler.shutdown();
+        }
+        handlers.clear();
+    }
+}
@@ -40,10 +40,15 @@ public class EventLoopHandler implements Runnable, ConditionHandler {
     }
 
     public EventLoopHandler(EventLoop eventLoop, ThreadGroup group) {
+        this(eventLoop, "EventLoopHandler", Thread.NORM_PRIORITY);
+    }
+
+    public EventLoopHandler(EventLoop eventLoop, String name, int priority) {
         this.eventLoop = eventLoop;
 
-        thread = new Thread(this, "EventLoopHandler");
+        thread = new Thread(this, name);
         thread.setDaemon(true);
+        thread.setPriority(priority);
         thread.start();
         // Add this only after service thread is in place
         eventLoop.addHandler(exitCondition, this);
@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application level liveliness of heartbeating peers.  Every peer has a single
+ * pending deadline held in a hashed timing wheel, so a heartbeat moves the peer to
+ * a new slot and a tick only visits the slots that came due; both are O(1) in the
+ * number of peers.  A peer that misses its heartbeats for staleAfter milliseconds
+ * becomes {@link State#STALE} and after lostAfter milliseconds {@link State#LOST}.
+ * A lost peer is forgotten and starts over as a new peer with its next heartbeat.
+ * <p>
+ * Listeners are notified on the calling thread once the tracker has been updated.
+ * Any thread may call in, but transitions are only reported in order when a single
+ * thread drives the tracker, as TimeManager does from its EventLoop.
+ */
+public class LivelinessTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(LivelinessTracker.class);
+
+    public enum State {
+        ALIVE, STALE, LOST
+    }
+
+    public interface Listener {
+        /**
+         * @param previous null the first time a peer is seen, or seen again after it was lost
+         */
+        void livelinessChanged(String unique_device_identifier, String type, State previous, State current);
+    }
+
+    private static final class Peer {
+        final String udi;
+        String type;
+        State state;
+        long lastHeartbeat;
+        long deadline;
+        Peer prev, next;
+        int slot = -1;
+
+        Peer(String udi) {
+            this.udi = udi;
+        }
+    }
+
+    private static final class Transition {
+        final String udi, type;
+        final State previous, current;
+
+        Transition(Peer peer, State previous) {
+            this.udi = peer.udi;
+            this.type = peer.type;
+            this.previous = previous;
+            this.current = peer.state;
+        }
+    }
+
+    private final long staleAfter, lostAfter, resolution;
+    private final Peer[] wheel;
+    private final int mask;
+    private long cursor = Long.MIN_VALUE;
+
+    private final Map<String, Peer> peers = new HashMap<String, Peer>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final List<Transition> transitions = new ArrayList<Transition>();
+    private long expirations;
+
+    /**
+     * @param staleAfter milliseconds without a heartbeat before a peer is stale
+     * @param lostAfter milliseconds without a heartbeat before a peer is lost
+     * @param resolution milliseconds per slot of the wheel; deadlines are late by up to this much
+     */
+    public LivelinessTracker(long staleAfter, long lostAfter, long resolution) {
+        if (resolution <= 0L || staleAfter <= 0L || lostAfter < staleAfter) {
+            throw new IllegalArgumentException("Expected 0 < staleAfter <= lostAfter and a positive resolution");
+        }
+        this.staleAfter = staleAfter;
+        this.lostAfter = lostAfter;
+        this.resolution = resolution;
+        // room for the longest a deadline is ever set ahead so no slot holds a later round
+        long span = Math.max(staleAfter, lostAfter - staleAfter) / resolution + 2L;
+        int size = Integer.highestOneBit((int) Math.min(1 << 20, span)) << 1;
+        this.wheel = new Peer[size];
+        this.mask = size - 1;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void heartbeat(String unique_device_identifier, String type, long now) {
+        synchronized (this) {
+            advance(now);
+            Peer peer = peers.get(unique_device_identifier);
+            if (null == peer) {
+                peer = new Peer(unique_device_identifier);
+                peers.put(unique_device_identifier, peer);
+            }
+            if (null != type) {
+                peer.type = type;
+            }
+            peer.lastHeartbeat = now;
+            schedule(peer, now + staleAfter);
+            transition(peer, State.ALIVE);
+        }
+        fire();
+    }
+
+    /**
+     * The peer is known to be gone, for instance because its heartbeat instance was disposed.
+     */
+    public void remove(String unique_device_identifier) {
+        synchronized (this) {
+            Peer peer = peers.get(unique_device_identifier);
+            if (null != peer) {
+                unlink(peer);
+                lose(peer);
+            }
+        }
+        fire();
+    }
+
+    /**
+     * Forgets everything, reporting every peer as lost.
+     */
+    public void clear() {
+        synchronized (this) {
+            for (Peer peer : peers.values()) {
+                unlink(peer);
+                transition(peer, State.LOST);
+            }
+            peers.clear();
+        }
+        fire();
+    }
+
+    /**
+     * Expires the deadlines that have passed; call at least every resolution milliseconds.
+     */
+    public void tick(long now) {
+        synchronized (this) {
+            advance(now);
+        }
+        fire();
+    }
+
+    public synchronized State getState(String unique_device_identifier) {
+        Peer peer = peers.get(unique_device_identifier);
+        return null == peer ? null : peer.state;
+    }
+
+    public synchronized Map<String, State> getStates() {
+        Map<String, State> states = new HashMap<String, State>();
+        for (Peer peer : peers.values()) {
+            states.put(peer.udi, peer.state);
+        }
+        return states;
+    }
+
+    public synchronized int size() {
+        return peers.size();
+    }
+
+    /**
+     * @return deadlines that came due, a measure of the work done by ticks
+     */
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+
+    public long getStaleAfter() {
+        return staleAfter;
+    }
+
+    public long getLostAfter() {
+        return lostAfter;
+    }
+
+    private void advance(long now) {
+        long target = now / resolution;
+        if (cursor == Long.MIN_VALUE) {
+            cursor = target;
+            return;
+        }
+        // after a long pause every slot is due once
+        long from = Math.max(cursor + 1L, target - mask);
+        for (long t = from; t <= target; t++) {
+            int slot = (int) (t & mask);
+            Peer peer = wheel[slot];
+            while (null != peer) {
+                Peer next = peer.next;
+                if (peer.deadline <= now) {
+                    expirations++;
+                    unlink(peer);
+                    expire(peer, now);
+                }
+                peer = next;
+            }
+        }
+        cursor = Math.max(cursor, target);
+    }
+
+    private void expire(Peer peer, long now) {
+        switch (peer.state) {
+        case ALIVE:
+            transition(peer, State.STALE);
+            if (peer.lastHeartbeat + lostAfter <= now) {
+                // both deadlines passed during a pause
+                lose(peer);
+            } else {
+                schedule(peer, peer.lastHeartbeat + lostAfter);
+            }
+            break;
+        case STALE:
+            lose(peer);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void schedule(Peer peer, long deadline) {
+        unlink(peer);
+        peer.deadline = deadline;
+        // never in a slot the cursor has already passed
+        long t = Math.max(cursor + 1L, (deadline + resolution - 1L) / resolution);
+        int slot = (int) (t & mask);
+        peer.slot = slot;
+        peer.prev = null;
+        peer.next = wheel[slot];
+        if (null != peer.next) {
+            peer.next.prev = peer;
+        }
+        wheel[slot] = peer;
+    }
+
+    private void unlink(Peer peer) {
+        if (peer.slot < 0) {
+            return;
+        }
+        if (null != peer.prev) {
+            peer.prev.next = peer.next;
+        } else {
+            wheel[peer.slot] = peer.next;
+        }
+        if (null != peer.next) {
+            peer.next.prev = peer.prev;
+        }
+        peer.prev = peer.next = null;
+        peer.slot = -1;
+    }
+
+    private void transition(Peer peer, State state) {
+        State previous = peer.state;
+        if (previous != state) {
+            peer.state = state;
+            transitions.add(new Transition(peer, previous));
+        }
+    }
+
+    private void lose(Peer peer) {
+        transition(peer, State.LOST);
+        peers.remove(peer.udi);
+    }
+
+    private void fire() {
+        Transition[] fired;
+        synchronized (this) {
+            if (transitions.isEmpty()) {
+                return;
+            }
+            fired = transitions.toArray(new Transition[transitions.size()]);
+            transitions.clear();
+        }
+        for (Transition t : fired) {
+            log.trace("{} {} -> {}", t.udi, t.previous, t.current);
+            for (Listener listener : listeners) {
+                listener.livelinessChanged(t.udi, t.type, t.previous, t.current);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+/**
+ * Decides which numeric observations are worth writing.  Many devices are polled
+ * faster than their numerics change so the same value would otherwise be written
+ * again and again to every subscriber.
+ * <p>
+ * An observation is written if it is the first for its instance, if it differs from
+ * the last written value by more than the deadband (the larger of the absolute and
+ * the relative deadband, any change at all when both are zero) and at least
+ * minInterval has passed, or if heartbeat has passed since the last write no matter
+ * what the value.  Observations held back are not written later; the next
+ * observation that passes is.  Times are those of the observations in milliseconds.
+ */
+public class NumericPublicationPolicy {
+
+    /**
+     * Every observation is written
+     */
+    public static final NumericPublicationPolicy NONE = new NumericPublicationPolicy(0f, 0f, 0L, 0L);
+
+    private final float deadband;
+    private final float relativeDeadband;
+    private final long minInterval;
+    private final long heartbeat;
+
+    /**
+     * @param deadband absolute change in value below which an observation is held back
+     * @param relativeDeadband change as a fraction of the last written value below which an observation is held back
+     * @param minInterval milliseconds that must pass between changed values
+     * @param heartbeat milliseconds after which a value is written even if unchanged, zero for never
+     */
+    public NumericPublicationPolicy(float deadband, float relativeDeadband, long minInterval, long heartbeat) {
+        if (deadband < 0f || relativeDeadband < 0f || minInterval < 0L || heartbeat < 0L) {
+            throw new IllegalArgumentException("Negative publication policy " + deadband + " " + relativeDeadband + " " + minInterval + " " + heartbeat);
+        }
+        this.deadband = deadband;
+        this.relativeDeadband = relativeDeadband;
+        this.minInterval = minInterval;
+        this.heartbeat = heartbeat;
+    }
+
+    public boolean isEnabled() {
+        return deadband > 0f || relativeDeadband > 0f || minInterval > 0L || heartbeat > 0L;
+    }
+
+    public float getDeadband() {
+        return deadband;
+    }
+
+    public float getRelativeDeadband() {
+        return relativeDeadband;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public long getHeartbeat() {
+        return heartbeat;
+    }
+
+    boolean changed(float last, float value) {
+        boolean lastNaN = Float.isNaN(last), valueNaN = Float.isNaN(value);
+        if (lastNaN || valueNaN) {
+            return lastNaN != valueNaN;
+        }
+        float threshold = Math.max(deadband, relativeDeadband * Math.abs(last));
+        float change = Math.abs(value - last);
+        return 0f == threshold ? change != 0f : change > threshold;
+    }
+
+    /**
+     * @return state to track one numeric instance under this policy
+     */
+    public Filter newFilter() {
+        return new Filter(this);
+    }
+
+    @Override
+    public String toString() {
+        return "[deadband=" + deadband + ",relativeDeadband=" + relativeDeadband + ",minInterval=" + minInterval + "ms,heartbeat=" + heartbeat + "ms]";
+    }
+
+    /**
+     * The last written value and time of one numeric instance
+     */
+    public static final class Filter {
+        private final NumericPublicationPolicy policy;
+        private boolean written;
+        private float value;
+        private long time;
+
+        private Filter(NumericPublicationPolicy policy) {
+            this.policy = policy;
+        }
+
+        public NumericPublicationPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * @param value the observed value
+         * @param time time of the observation in milliseconds
+         * @return true if the observation should be written, in which case it becomes the reference for the next one
+         */
+        public synchronized boolean offer(float value, long time) {
+            long elapsed = time - this.time;
+            // Time running backwards (a device clock reset, replay restarting) starts over
+            if (written && elapsed >= 0L && (0L == policy.heartbeat || elapsed < policy.heartbeat)) {
+                if (elapsed < policy.minInterval || !policy.changed(this.value, value)) {
+                    return false;
+                }
+            }
+            this.written = true;
+            this.value = value;
+            this.time = time;
+            return true;
+        }
+    }
+}
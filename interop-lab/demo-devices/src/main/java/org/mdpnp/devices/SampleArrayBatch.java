@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates consecutive blocks of a single SampleArray instance so that they can
+ * be written as one larger sample.  A batch is due once it holds the byte budget
+ * of its {@link Policy} or once the oldest pending sample has waited for the
+ * policy's maximum latency, whichever comes first.
+ * <p>
+ * A SampleArray is stamped with the time of its last sample so the reading of the
+ * most recent block, refined for the size of the merged block, is the correct
+ * presentation time for the whole batch.
+ * <p>
+ * Not thread safe; callers synchronize on the batch.
+ */
+public class SampleArrayBatch {
+
+    /**
+     * Samples travel as 32-bit floats on the wire
+     */
+    public static final int BYTES_PER_SAMPLE = 4;
+
+    /**
+     * Bound of ice::Values, the most samples a single SampleArray can carry
+     */
+    public static final int MAX_SAMPLES = 1024;
+
+    public static final class Policy {
+        public static final Policy NONE = new Policy(0, 0L);
+
+        private final int maxBytes;
+        private final long maxLatency;
+
+        /**
+         * @param maxBytes payload size at which a batch is written, budgets over
+         *        {@link #MAX_SAMPLES} samples are capped at that bound
+         * @param maxLatency milliseconds the oldest sample in a batch may be held back
+         */
+        public Policy(int maxBytes, long maxLatency) {
+            this.maxBytes = maxBytes;
+            this.maxLatency = maxLatency;
+        }
+
+        /**
+         * @return false if blocks should be written as they arrive
+         */
+        public boolean isEnabled() {
+            return maxBytes > BYTES_PER_SAMPLE && maxLatency > 0L;
+        }
+
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+
+        public long getMaxLatency() {
+            return maxLatency;
+        }
+
+        @Override
+        public String toString() {
+            return isEnabled() ? "[maxBytes=" + maxBytes + ",maxLatency=" + maxLatency + "ms]" : "[unbatched]";
+        }
+    }
+
+    private final Policy policy;
+    private final int maxSamples;
+    private final long maxLatencyNanos;
+
+    private float[] values;
+    private int size;
+    private int blocks;
+    // copied so that drivers are free to reuse their readings
+    private final DeviceClock.MutableReading reading = new DeviceClock.MutableReading();
+    private long deadline;
+
+    public SampleArrayBatch(Policy policy) {
+        if (!policy.isEnabled()) {
+            throw new IllegalArgumentException("Batching is not enabled by " + policy);
+        }
+        this.policy = policy;
+        this.maxSamples = Math.min(policy.getMaxBytes() / BYTES_PER_SAMPLE, MAX_SAMPLES);
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(policy.getMaxLatency());
+        this.values = new float[Math.min(maxSamples, 64)];
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param count number of samples in the next block
+     * @return false if appending the block would take a non-empty batch over its byte budget,
+     *         in which case the pending samples should be written first
+     */
+    public boolean fits(int count) {
+        return 0 == size || size + count <= maxSamples;
+    }
+
+    /**
+     * Appends a block to the batch.
+     *
+     * @param newValues samples of the block in order
+     * @param reading timestamp of the block, the time of its last sample
+     * @param now current value of {@link System#nanoTime()}
+     */
+    public void add(Iterator<? extends Number> newValues, DeviceClock.Reading reading, long now) {
+        if (0 == size) {
+            deadline = now + maxLatencyNanos;
+        }
+        while (newValues.hasNext()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length << 1, 1));
+            }
+            values[size++] = newValues.next().floatValue();
+        }
+        this.reading.set(reading);
+        blocks++;
+    }
+
+    /**
+     * @param now current value of {@link System#nanoTime()}
+     * @return true if the pending samples should be written now
+     */
+    public boolean isDue(long now) {
+        return size > 0 && (size >= maxSamples || now - deadline >= 0L);
+    }
+
+    /**
+     * @param now current value of {@link System#nanoTime()}
+     * @return nanoseconds until the oldest pending sample reaches the maximum latency
+     */
+    public long remaining(long now) {
+        return Math.max(0L, deadline - now);
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * @return number of pending samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of blocks merged into the pending samples
+     */
+    public int blocks() {
+        return blocks;
+    }
+
+    public float get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * @return reading of the most recent block, null if the batch is empty
+     */
+    public DeviceClock.Reading getReading() {
+        return 0 == blocks ? null : reading;
+    }
+
+    /**
+     * Discards the pending samples once they have been written
+     */
+    public void clear() {
+        size = 0;
+        blocks = 0;
+    }
+}
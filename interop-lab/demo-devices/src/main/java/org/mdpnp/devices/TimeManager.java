@@ -9,10 +9,8 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.WeakHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -54,7 +52,7 @@ import org.springframework.jmx.export.annotation.ManagedResource;
 @ManagedResource(description="TimeManager Controller")
 public class TimeManager {
     private final ScheduledExecutorService executor;
-    private ScheduledFuture<?> heartbeatTask;
+    private ScheduledFuture<?> heartbeatTask, livelinessTask;
     private final EventLoop eventLoop;
     private final Subscriber subscriber;
     private final Publisher publisher;
@@ -76,6 +74,26 @@ public class TimeManager {
 
     private Map<InstanceHandle_t, ice.HeartBeat> heartbeats = new java.util.concurrent.ConcurrentHashMap<>();
 
+    /**
+     * Peers are stale after this many milliseconds without a heartbeat and lost after
+     * -DTimeManager.lostAfter, independent of the DDS liveliness settings.
+     */
+    private static final long STALE_AFTER = Long.getLong("TimeManager.staleAfter", 5000L);
+    private static final long LOST_AFTER = Long.getLong("TimeManager.lostAfter", 10000L);
+    private static final long LIVELINESS_RESOLUTION = 250L;
+
+    private final LivelinessTracker liveliness = new LivelinessTracker(STALE_AFTER, Math.max(STALE_AFTER, LOST_AFTER), LIVELINESS_RESOLUTION);
+
+    private final Map<String, ClockOffsetEstimator> clockOffsets = new java.util.concurrent.ConcurrentHashMap<>();
+
+    /**
+     * Which heartbeats are answered with a TimeSync; Chatty answers all of them,
+     * SupervisorAware those of supervisors and Reference only those of the time
+     * reference(s) given by -DTimeManager.timeReference or else elected among the supervisors.
+     */
+    private static final TimeSyncHandler.HandlerType TIME_SYNC =
+            TimeSyncHandler.HandlerType.parse(System.getProperty("TimeManager.timeSync"), TimeSyncHandler.HandlerType.SupervisorAware);
+
 
     public void addListener(TimeManagerListener listener) {
         this.listeners.add(listener);
@@ -107,6 +125,7 @@ public class TimeManager {
         this.publisher = publisher;
         this.uniqueDeviceIdentifier = deviceIdentifier;
         this.type = type;
+        liveliness.addListener(livelinessListener);
     }
     
     private static int instanceCounter = 0;
@@ -148,7 +167,7 @@ public class TimeManager {
                 tsReader = (TimeSyncDataReader) subscriber.create_datareader_with_profile(cfTsTopic, QosProfiles.ice_library, QosProfiles.timesync, null, StatusKind.STATUS_MASK_NONE);
 
 				ice.TimeSyncDataWriter tsWriter = (TimeSyncDataWriter) publisher.create_datawriter_with_profile(tsTopic, QosProfiles.ice_library, QosProfiles.timesync, null, StatusKind.STATUS_MASK_NONE);
-				timeSyncHandler = TimeSyncHandler.makeTimeSyncHandler(TimeSyncHandler.HandlerType.SupervisorAware,
+				timeSyncHandler = TimeSyncHandler.makeTimeSyncHandler(TIME_SYNC,
 						                                              uniqueDeviceIdentifier,
 						                                              tsWriter);
 
@@ -161,6 +180,10 @@ public class TimeManager {
             }
             
             hbReader.enable();
+
+            // Ticks run on the EventLoop along with the heartbeats themselves
+            livelinessTask = executor.scheduleAtFixedRate(() -> eventLoop.doLater(livelinessTick),
+                    LIVELINESS_RESOLUTION, LIVELINESS_RESOLUTION, TimeUnit.MILLISECONDS);
             
             
             sQos.entity_factory.autoenable_created_entities = wasSubscriberAutoenable;
@@ -171,12 +194,14 @@ public class TimeManager {
     
     public void stop() {
         eventLoop.doNow( () -> {
-            Iterator<Entry<InstanceHandle_t, HeartBeat>> itr = heartbeats.entrySet().iterator();
-            while(itr.hasNext()) {
-                Entry<InstanceHandle_t, HeartBeat> hb = itr.next();
-                processNotAliveHeartbeat(hb.getValue().unique_device_identifier, hb.getValue().type);
-                itr.remove();
+            if(null != livelinessTask) {
+                livelinessTask.cancel(false);
+                livelinessTask = null;
             }
+            // Reports every peer not already lost as lost
+            liveliness.clear();
+            heartbeats.clear();
+            clockOffsets.clear();
             
             if(null != heartbeatTask) {
                 heartbeatTask.cancel(true);
@@ -292,17 +317,62 @@ public class TimeManager {
     
     protected void processNotAliveHeartbeat(final String unique_device_identifier, final String type) {
         log.trace("NOT ALIVE:{}",unique_device_identifier);
+        clockOffsets.remove(unique_device_identifier);
         for(TimeManagerListener listener : listeners) {
             listener.notAliveHeartbeat(unique_device_identifier, type);
         }
     }
     
+    /**
+     * @return the authoritative liveliness of every peer whose heartbeats this TimeManager sees
+     */
+    public LivelinessTracker getLiveliness() {
+        return liveliness;
+    }
+
+    private final Runnable livelinessTick = () -> liveliness.tick(System.currentTimeMillis());
+
+    /**
+     * Lost peers, whether timed out here or disposed in DDS, are reported exactly once
+     */
+    private final LivelinessTracker.Listener livelinessListener = new LivelinessTracker.Listener() {
+        @Override
+        public void livelinessChanged(String unique_device_identifier, String type, LivelinessTracker.State previous, LivelinessTracker.State current) {
+            if(LivelinessTracker.State.LOST == current) {
+                processNotAliveHeartbeat(unique_device_identifier, type);
+                if(timeSyncHandler != null)
+                    timeSyncHandler.processNotAliveHeartbeat(unique_device_identifier);
+            }
+        }
+    };
+
     protected void processSynchronization(String remote_udi, Duration_t latency, Duration_t clockDifference) {
         for(TimeManagerListener listener : listeners) {
             listener.synchronization(remote_udi, latency, clockDifference);
         }
     }
     
+    /**
+     * @return the filtered clock offset of a participant that answers this one's heartbeats,
+     *         null if there is none; use it to map that participant's device_time to local time
+     */
+    public ClockOffsetEstimator getClockOffset(String unique_device_identifier) {
+        return clockOffsets.get(unique_device_identifier);
+    }
+
+    private static final long toNanoseconds(Duration_t d) {
+        return d.sec * 1000000000L + d.nanosec;
+    }
+
+    private static final long toNanoseconds(Time_t t) {
+        return t.sec * 1000000000L + t.nanosec;
+    }
+
+    private static final void toDuration(long nanoseconds, Duration_t d) {
+        d.sec = (int) Math.floorDiv(nanoseconds, 1000000000L);
+        d.nanosec = (int) Math.floorMod(nanoseconds, 1000000000L);
+    }
+
     private DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"); 
 
     private final ConditionHandler hbReadHandler = new ConditionHandler() {
@@ -342,9 +412,7 @@ public class TimeManager {
                         }
 
 						if(0!=(InstanceStateKind.NOT_ALIVE_INSTANCE_STATE&sampleInfo.instance_state)) {
-                            processNotAliveHeartbeat(heartbeat.unique_device_identifier, heartbeat.type);
-							if(timeSyncHandler != null)
-								timeSyncHandler.processNotAliveHeartbeat(heartbeat.unique_device_identifier);
+                            liveliness.remove(heartbeat.unique_device_identifier);
                         }
 						else if(0!=(InstanceStateKind.ALIVE_INSTANCE_STATE&sampleInfo.instance_state)) {
                             String host_name = hostnameByPublicationHandle.get(sampleInfo.publication_handle);
@@ -375,6 +443,8 @@ public class TimeManager {
                             }
                             
                             
+                            if(sampleInfo.valid_data)
+                                liveliness.heartbeat(heartbeat.unique_device_identifier, heartbeat.type, System.currentTimeMillis());
                             processAliveHeartbeat(heartbeat.unique_device_identifier, heartbeat.type, host_name);
 							if(timeSyncHandler != null)
 								timeSyncHandler.handleTimeSync(sampleInfo, heartbeat);
@@ -420,7 +490,17 @@ public class TimeManager {
                             
                             elapsedTime(timeSync.source_source_timestamp, timeSync.recipient_receipt_timestamp, clockDifference);
                             subtract(clockDifference, latencyTime);
-                            
+
+                            // Listeners get the filtered estimate rather than this one noisy measurement
+                            ClockOffsetEstimator estimator = clockOffsets.get(timeSync.heartbeat_recipient);
+                            if(null == estimator) {
+                                estimator = new ClockOffsetEstimator();
+                                clockOffsets.put(timeSync.heartbeat_recipient, estimator);
+                            }
+                            estimator.add(toNanoseconds(sampleInfo.reception_timestamp), toNanoseconds(clockDifference), 2L * toNanoseconds(latencyTime));
+                            toDuration(estimator.getOffset(toNanoseconds(sampleInfo.reception_timestamp)), clockDifference);
+                            toDuration(estimator.getDelay() / 2L, latencyTime);
+
                             processSynchronization(timeSync.heartbeat_recipient, latencyTime, clockDifference);
                         }
                     }
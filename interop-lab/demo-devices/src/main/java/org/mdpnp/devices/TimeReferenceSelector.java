@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Decides which participants are time references, the only ones a participant
+ * answers heartbeats from with a TimeSync.  Either the references are designated
+ * by unique device identifier or, when none are, every participant independently
+ * picks the live participant of the reference type with the lowest identifier so
+ * that they all agree without any further exchange.
+ */
+public class TimeReferenceSelector {
+
+    private final String referenceType;
+    private final Set<String> designated;
+    private final TreeSet<String> candidates = new TreeSet<String>();
+
+    public TimeReferenceSelector(String referenceType) {
+        this(referenceType, Collections.<String>emptySet());
+    }
+
+    public TimeReferenceSelector(String referenceType, Collection<String> designated) {
+        this.referenceType = referenceType;
+        this.designated = Collections.unmodifiableSet(new HashSet<String>(designated));
+    }
+
+    /**
+     * @param references comma separated unique device identifiers, may be null
+     */
+    public static Set<String> parse(String references) {
+        Set<String> set = new HashSet<String>();
+        if (null != references) {
+            for (String s : references.split(",")) {
+                s = s.trim();
+                if (!s.isEmpty()) {
+                    set.add(s);
+                }
+            }
+        }
+        return set;
+    }
+
+    public void alive(String unique_device_identifier, String type) {
+        if (referenceType.equalsIgnoreCase(type)) {
+            candidates.add(unique_device_identifier);
+        }
+    }
+
+    public void notAlive(String unique_device_identifier) {
+        candidates.remove(unique_device_identifier);
+    }
+
+    public boolean isReference(String unique_device_identifier) {
+        if (!designated.isEmpty()) {
+            return designated.contains(unique_device_identifier);
+        }
+        return !candidates.isEmpty() && candidates.first().equals(unique_device_identifier);
+    }
+
+    /**
+     * @return the elected reference, null if references are designated or none is known
+     */
+    public String getElectedReference() {
+        return designated.isEmpty() && !candidates.isEmpty() ? candidates.first() : null;
+    }
+
+    public Set<String> getDesignated() {
+        return designated;
+    }
+}
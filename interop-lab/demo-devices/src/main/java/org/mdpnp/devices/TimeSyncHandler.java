@@ -16,7 +16,24 @@ abstract class TimeSyncHandler {
 
 	private final Logger log = LoggerFactory.getLogger(TimeSyncHandler.class);
 
-	enum HandlerType { Chatty, SupervisorAware }
+	enum HandlerType {
+		Chatty, SupervisorAware, Reference;
+
+		/**
+		 * @return the type named by value, or fallback (with a warning) when value names none
+		 */
+		static HandlerType parse(String value, HandlerType fallback) {
+			if(null == value) {
+				return fallback;
+			}
+			try {
+				return valueOf(value.trim());
+			} catch (IllegalArgumentException e) {
+				LoggerFactory.getLogger(TimeSyncHandler.class).warn("Unknown TimeSync handler '" + value + "', using " + fallback);
+				return fallback;
+			}
+		}
+	}
 
 	private static final class TimeSyncHolder {
 		final TimeSync timeSync;
@@ -54,13 +71,6 @@ abstract class TimeSyncHandler {
 			return;
 
 		TimeSyncHolder holder = sync.get(heartbeat.unique_device_identifier);
-		if(holder == null) {
-			TimeSync ts = new TimeSync();
-			ts.heartbeat_source = heartbeat.unique_device_identifier;
-			ts.heartbeat_recipient = this.uniqueDeviceIdentifier;
-			holder = new TimeSyncHolder(ts, tsWriter.register_instance(ts));
-			sync.put(heartbeat.unique_device_identifier, holder);
-		}
 
 		boolean b = shouldRespondTo(holder, heartbeat);
 		if(log.isDebugEnabled())
@@ -68,6 +78,14 @@ abstract class TimeSyncHandler {
 					  "respond to ping from " + heartbeat.unique_device_identifier);
 
 		if(b) {
+			// Only register instances for the participants actually answered
+			if(holder == null) {
+				TimeSync ts = new TimeSync();
+				ts.heartbeat_source = heartbeat.unique_device_identifier;
+				ts.heartbeat_recipient = this.uniqueDeviceIdentifier;
+				holder = new TimeSyncHolder(ts, tsWriter.register_instance(ts));
+				sync.put(heartbeat.unique_device_identifier, holder);
+			}
 			fill(sampleInfo, holder);
 
 			tsWriter.write(holder.timeSync, holder.handle);
@@ -81,6 +99,9 @@ abstract class TimeSyncHandler {
 		holder.timeSync.recipient_receipt_timestamp.nanosec = sampleInfo.reception_timestamp.nanosec;
 	}
 
+	/**
+	 * @param holder previous response to the same participant, null if there was none
+	 */
 	abstract boolean shouldRespondTo(TimeSyncHolder holder, HeartBeat heartbeat);
 
 	ice.TimeSyncDataWriter shutdown() {
@@ -95,6 +116,10 @@ abstract class TimeSyncHandler {
 		switch(t) {
 			case SupervisorAware:
 				return new TypeAware("Supervisor", uniqueDeviceIdentifier, tsWriter);
+			case Reference:
+				return new ReferenceAware(new TimeReferenceSelector("Supervisor",
+						TimeReferenceSelector.parse(System.getProperty("TimeManager.timeReference"))),
+						uniqueDeviceIdentifier, tsWriter);
 			case Chatty:
 			default:
 				return new Chatty(uniqueDeviceIdentifier, tsWriter);
@@ -128,6 +153,35 @@ abstract class TimeSyncHandler {
 	}
 
 
+	/**
+	 * Answers time references only, so the number of TimeSync instances grows with the
+	 * number of participants rather than with its square.  Only the references learn
+	 * the clock offsets of the others.
+	 */
+	private static class ReferenceAware extends TimeSyncHandler {
+
+		private final TimeReferenceSelector selector;
+
+		public ReferenceAware(TimeReferenceSelector selector, String uniqueDeviceIdentifier, TimeSyncDataWriter tsWriter) {
+			super(uniqueDeviceIdentifier, tsWriter);
+			this.selector = selector;
+		}
+
+		void processNotAliveHeartbeat(final String unique_device_identifier) {
+			selector.notAlive(unique_device_identifier);
+			super.processNotAliveHeartbeat(unique_device_identifier);
+		}
+
+		boolean shouldRespondTo(TimeSyncHolder holder, HeartBeat heartbeat) {
+			String previous = selector.getElectedReference();
+			selector.alive(heartbeat.unique_device_identifier, heartbeat.type);
+			// Stop answering a reference that has been superseded
+			if(null != previous && !previous.equals(selector.getElectedReference()))
+				super.processNotAliveHeartbeat(previous);
+			return selector.isReference(heartbeat.unique_device_identifier);
+		}
+	}
+
 	private static class Infrequent extends TimeSyncHandler {
 
 		private final long deltaMs;
@@ -139,7 +193,7 @@ abstract class TimeSyncHandler {
 
 		boolean shouldRespondTo(TimeSyncHolder holder, HeartBeat heartbeat) {
 			long now = System.currentTimeMillis();
-			return (now-holder.lastSync)>deltaMs;
+			return null == holder || (now-holder.lastSync)>deltaMs;
 		}
 
 		void fill(SampleInfo sampleInfo, TimeSyncHolder holder) {
@@ -122,6 +122,22 @@ public class DemoBernoulli extends AbstractConnectedDevice implements Runnable {
 
         }
 
+        @Override
+        protected void setting(String name, float value) {
+            measurement(name, value);
+        }
+
+        @Override
+        protected void measurement(String name, float value) {
+            InstanceHolder<Numeric> numeric = numerics.get(name);
+            if (null != numeric) {
+                numeric.data.value = value;
+                numericDataWriter.write(numeric.data, numeric.handle);
+            } else {
+                log.warn("Orphaned Measure:" + name + "=" + value);
+            }
+        }
+
         @Override
         protected void measurementGroup(String name, Number[] n, int frequency) {
             super.measurementGroup(name, n, frequency);
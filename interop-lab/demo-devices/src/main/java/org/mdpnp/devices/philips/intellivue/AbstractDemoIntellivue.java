@@ -20,7 +20,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.*;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.text.Normalizer;
 import java.util.ArrayList;
@@ -40,6 +42,7 @@ import org.mdpnp.devices.DeviceClock;
 import org.mdpnp.devices.connected.AbstractConnectedDevice;
 import org.mdpnp.devices.io.util.StateMachine;
 import org.mdpnp.devices.net.NetworkLoop;
+import org.mdpnp.devices.net.NetworkLoopGroup;
 import org.mdpnp.devices.net.TaskQueue;
 import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataResult;
 import org.mdpnp.devices.philips.intellivue.action.ObservationPoll;
@@ -162,7 +165,7 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
     private long lastDataPoll = 0L;
     private long lastMessageReceived = 0L;
     private long lastKeepAlive = 0L;
-    private long lastMessageSentTime = 0L;
+    private volatile long lastMessageSentTime = 0L;
     
     
     private enum DisconnectState {
@@ -260,6 +263,8 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         private final Logger log = LoggerFactory.getLogger(IntellivueExt.class);
 
         private final DemoIntellivueClock deviceClock;
+        // refilled for every poll result, which are handled one at a time
+        private final DeviceClock.MutableReading pollTime = new DeviceClock.MutableReading();
 
         public IntellivueExt(DeviceClock referenceClock) {
             super();
@@ -274,9 +279,8 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         }
 
         @Override
-        public synchronized boolean send(Message message) throws IOException {
+        protected void queued() {
             lastMessageSentTime = System.currentTimeMillis();
-            return super.send(message);
         }
 
         @Override
@@ -529,7 +533,7 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         @Override
         protected void handle(ExtendedPollDataResult result) {
 
-            DeviceClock.Reading sampleTime = deviceClock.instant(result.getRelativeTime());
+            DeviceClock.Reading sampleTime = deviceClock.instant(result.getRelativeTime(), pollTime);
 
             long now = System.currentTimeMillis();
             // we could track gaps in poll sequence numbers but instead we're
@@ -780,12 +784,13 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
 
         private ObservedValue[] observedValues = new ObservedValue[10];
         private Integer[] handles = new Integer[10];
+        private final DeviceClock.MutableReading sampleTime = new DeviceClock.MutableReading();
         
         @Override
         public void run() {
             try {
                 observedValues = sampleArrayCache.keySet().toArray(observedValues);
-                DeviceClock.Reading fakeSampleTime = getClockProvider().instant();
+                DeviceClock.Reading fakeSampleTime = getClockProvider().instant(sampleTime);
                 
                 for(ObservedValue ov : observedValues) {
                     if(null == ov) {
@@ -965,9 +970,26 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
     protected static final Logger log = LoggerFactory.getLogger(DemoEthernetIntellivue.class);
 
     protected final NetworkLoop networkLoop;
-    private final Thread networkLoopThread;
+    // null where the adapter was given a NetworkLoop of its own
+    private final NetworkLoopGroup networkLoopGroup;
     private final TaskQueue.Task<?> watchdogTask; // ,    serviceSampleArrays;
 
+    private static NetworkLoopGroup sharedNetworkLoops;
+
+    /**
+     * The loops shared by every adapter in this process that was not given a
+     * NetworkLoop of its own, started on first use and left running. Sized by
+     * the AbstractDemoIntellivue.networkLoops system property.
+     */
+    protected static synchronized NetworkLoopGroup getSharedNetworkLoops() throws IOException {
+        if (null == sharedNetworkLoops) {
+            int shards = Integer.getInteger("AbstractDemoIntellivue.networkLoops", Math.min(4, Runtime.getRuntime().availableProcessors()));
+            sharedNetworkLoops = new NetworkLoopGroup(AbstractDevice.threadGroup, "Network Loop", shards);
+            sharedNetworkLoops.start();
+        }
+        return sharedNetworkLoops;
+    }
+
     public AbstractDemoIntellivue(final Subscriber subscriber, final Publisher publisher, EventLoop eventLoop) throws IOException {
         this(subscriber, publisher, eventLoop, null);
     }
@@ -981,27 +1003,18 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         AbstractSimulatedDevice.randomUDI(deviceIdentity);
         writeDeviceIdentity();
 
+        myIntellivue = new IntellivueExt(getClockProvider());
+
         if (null == loop) {
-            networkLoop = new NetworkLoop();
-            networkLoopThread = new Thread(AbstractDevice.threadGroup, new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        networkLoop.runLoop();
-                    } finally {
-                        log.info("NetworkLoop.runLoop ended");
-                    }
-                }
-            }, "Network Loop");
-            networkLoopThread.setDaemon(true);
-            networkLoopThread.start();
+            // The watchdog and every channel of the connection stay on this
+            // loop across reconnects
+            networkLoopGroup = getSharedNetworkLoops();
+            networkLoop = networkLoopGroup.bind(myIntellivue);
         } else {
+            networkLoopGroup = null;
             networkLoop = loop;
-            networkLoopThread = null;
         }
 
-        myIntellivue = new IntellivueExt(getClockProvider());
-
         watchdogTask = new TaskQueue.TaskImpl<Object>() {
             @Override
             public Object doExecute(TaskQueue queue) {
@@ -1222,11 +1235,23 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
 
     protected void unregisterAll() {
         for (SelectionKey key : registrationKeys) {
-            networkLoop.unregister(key, myIntellivue);
+            if (null == networkLoopGroup) {
+                networkLoop.unregister(key, myIntellivue);
+            } else {
+                networkLoopGroup.unregister(key, myIntellivue);
+            }
         }
         registrationKeys.clear();
     }
 
+    protected void register(DatagramChannel channel) throws ClosedChannelException {
+        if (null == networkLoopGroup) {
+            registrationKeys.add(networkLoop.register(myIntellivue, channel));
+        } else {
+            registrationKeys.add(networkLoopGroup.register(myIntellivue, channel));
+        }
+    }
+
     protected static long minPollPeriodToTimeout(long minPollPeriod) {
         if (minPollPeriod <= 3300L) {
             return 10000L;
@@ -1276,7 +1301,7 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         channel.bind(local);
         channel.connect(remote);
 
-        registrationKeys.add(networkLoop.register(myIntellivue, channel));
+        register(channel);
 
         state(ice.ConnectionState.Negotiating, "Requesting Association");
     }
@@ -1304,17 +1329,38 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
 
     @Override
     public void shutdown() {
-        networkLoop.clearTasks();
-        networkLoop.cancelThread();
-        if (null != networkLoopThread) {
-            try {
-                networkLoopThread.join();
-            } catch (InterruptedException e) {
-                log.error("Interrupted", e);
+        if (null == networkLoopGroup) {
+            networkLoop.clearTasks();
+            networkLoop.cancelThread();
+        } else {
+            // The loop carries on for the other adapters, so the channels
+            // are not left to it
+            List<SelectableChannel> channels = new ArrayList<SelectableChannel>();
+            for (SelectionKey key : registrationKeys) {
+                channels.add(key.channel());
+            }
+            unregisterAll();
+            for (SelectableChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.error("Closing channel", e);
+                }
             }
+            TaskQueue.Task<Boolean> cancelWatchdog = new TaskQueue.TaskImpl<Boolean>() {
+                @Override
+                public Boolean doExecute(TaskQueue queue) {
+                    // On the loop thread, so a watchdog due in the same pass
+                    // sees the cleared interval and does not add itself back
+                    watchdogTask.setInterval(0L);
+                    return queue.remove(watchdogTask);
+                }
+            };
+            networkLoop.add(cancelWatchdog);
+            cancelWatchdog.waitForResult();
+            networkLoopGroup.unbind(myIntellivue);
         }
 
-
         super.shutdown();
     }
 
@@ -1346,6 +1392,18 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
             return new CombinedReading(instant(), deviceTime);
         }
 
+        /**
+         * Fills the holder in place of the CombinedReading made by {@link #instant(RelativeTime)}
+         */
+        public MutableReading instant(RelativeTime time, MutableReading reading) {
+            return ref.instant(reading).setDeviceTime(receiveDateTime(time) * 1000000L);
+        }
+
+        @Override
+        public MutableReading instant(MutableReading reading) {
+            return ref.instant(reading);
+        }
+
         void receiveDateTime(AttributeValueList attrs) {
 
             Attribute<AbsoluteTime> clockTime = attrs.getAttribute(AttributeId.NOM_ATTR_TIME_ABS, AbsoluteTime.class);
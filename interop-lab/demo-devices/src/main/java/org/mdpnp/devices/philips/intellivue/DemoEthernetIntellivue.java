@@ -97,7 +97,7 @@ public class DemoEthernetIntellivue extends AbstractDemoIntellivue {
                 channel.configureBlocking(false);
                 channel.socket().setReuseAddress(true);
                 channel.socket().bind(new InetSocketAddress(address.getInetAddress(), Intellivue.BROADCAST_PORT));
-                registrationKeys.add(networkLoop.register(myIntellivue, channel));
+                register(channel);
 
                 hosts.add(address.getInetAddress().getHostAddress());
             }
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Block oriented version of the Intellivue RS-232 framing that
+ * {@link FCSOutputStream} over a {@link org.mdpnp.devices.io.SplitBytesOutputStream}
+ * and {@link FCSInputStream} over a
+ * {@link org.mdpnp.devices.io.MergeBytesInputStream} implement a byte at a
+ * time. Frames are
+ * 
+ * <pre>
+ * BOF | 0x11 | 0x01 | length (2) | body | FCS (2, LSB first) | EOF
+ * </pre>
+ * 
+ * with 0xC0, 0xC1 and 0x7D escaped between BOF and EOF. The PPP FCS-16 is
+ * computed eight bytes at a time (slicing-by-8) and runs of bytes that need no
+ * escaping are copied in bulk.
+ */
+public final class FCSFrameCodec {
+    public static final int BOF = 0xC0;
+    public static final int EOF = 0xC1;
+    public static final int ESCAPE = 0x7D;
+    public static final int ESCAPE_XOR = 0x20;
+
+    public static final int PROTOCOL_ID = 0x11;
+    public static final int MESSAGE_TYPE = 0x01;
+    public static final int HEADER_LENGTH = 4;
+    public static final int FCS_LENGTH = 2;
+
+    private static final Logger log = LoggerFactory.getLogger(FCSFrameCodec.class);
+
+    /**
+     * Eight tables of 256, table k advances the FCS over a byte followed by k
+     * zero bytes
+     */
+    private static final int[] FCS_TABLES = new int[8 * 256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int fcs = i;
+            for (int bit = 0; bit < 8; bit++) {
+                fcs = 0 != (fcs & 1) ? (fcs >>> 1) ^ 0x8408 : fcs >>> 1;
+            }
+            FCS_TABLES[i] = fcs;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int i = 0; i < 256; i++) {
+                int prev = FCS_TABLES[(k - 1) * 256 + i];
+                FCS_TABLES[k * 256 + i] = (prev >>> 8) ^ FCS_TABLES[prev & 0xFF];
+            }
+        }
+    }
+
+    private FCSFrameCodec() {
+    }
+
+    public static int fcs(int fcs, byte b) {
+        return (fcs >>> 8) ^ FCS_TABLES[(fcs ^ b) & 0xFF];
+    }
+
+    /**
+     * Same result as {@link FCSOutputStream#pppfcs(int, byte)} applied to each
+     * byte in turn
+     */
+    public static int fcs(int fcs, byte[] b, int off, int len) {
+        final int[] t = FCS_TABLES;
+        int i = off;
+        final int end = off + len;
+        for (; i + 8 <= end; i += 8) {
+            int x = fcs ^ ((b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8);
+            fcs = t[7 * 256 + (x & 0xFF)] ^ t[6 * 256 + ((x >>> 8) & 0xFF)] ^ t[5 * 256 + (b[i + 2] & 0xFF)] ^ t[4 * 256 + (b[i + 3] & 0xFF)]
+                    ^ t[3 * 256 + (b[i + 4] & 0xFF)] ^ t[2 * 256 + (b[i + 5] & 0xFF)] ^ t[256 + (b[i + 6] & 0xFF)] ^ t[b[i + 7] & 0xFF];
+        }
+        for (; i < end; i++) {
+            fcs = (fcs >>> 8) ^ t[(fcs ^ b[i]) & 0xFF];
+        }
+        return fcs;
+    }
+
+    /**
+     * FCS over the remaining bytes of bb, its position is not changed
+     */
+    public static int fcs(int fcs, ByteBuffer bb) {
+        if (bb.hasArray()) {
+            return fcs(fcs, bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+        }
+        final int[] t = FCS_TABLES;
+        int i = bb.position();
+        final int end = bb.limit();
+        for (; i + 8 <= end; i += 8) {
+            int x = fcs ^ ((bb.get(i) & 0xFF) | (bb.get(i + 1) & 0xFF) << 8);
+            fcs = t[7 * 256 + (x & 0xFF)] ^ t[6 * 256 + ((x >>> 8) & 0xFF)] ^ t[5 * 256 + (bb.get(i + 2) & 0xFF)]
+                    ^ t[4 * 256 + (bb.get(i + 3) & 0xFF)] ^ t[3 * 256 + (bb.get(i + 4) & 0xFF)] ^ t[2 * 256 + (bb.get(i + 5) & 0xFF)]
+                    ^ t[256 + (bb.get(i + 6) & 0xFF)] ^ t[bb.get(i + 7) & 0xFF];
+        }
+        for (; i < end; i++) {
+            fcs = (fcs >>> 8) ^ t[(fcs ^ bb.get(i)) & 0xFF];
+        }
+        return fcs;
+    }
+
+    private static boolean special(int x) {
+        return x == BOF || x == EOF || x == ESCAPE;
+    }
+
+    /**
+     * Copies src into dst escaping as it goes, dst needs room for up to twice
+     * len bytes
+     * 
+     * @return the number of bytes written to dst
+     */
+    public static int escape(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        int d = dstOff;
+        int run = off;
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            int x = src[i] & 0xFF;
+            if (special(x)) {
+                if (i > run) {
+                    System.arraycopy(src, run, dst, d, i - run);
+                    d += i - run;
+                }
+                dst[d++] = (byte) ESCAPE;
+                dst[d++] = (byte) (ESCAPE_XOR ^ x);
+                run = i + 1;
+            }
+        }
+        if (end > run) {
+            System.arraycopy(src, run, dst, d, end - run);
+            d += end - run;
+        }
+        return d - dstOff;
+    }
+
+    private static int escape(int x, byte[] dst, int d) {
+        if (special(x)) {
+            dst[d++] = (byte) ESCAPE;
+            dst[d++] = (byte) (ESCAPE_XOR ^ x);
+        } else {
+            dst[d++] = (byte) x;
+        }
+        return d;
+    }
+
+    /**
+     * @return the most bytes a frame around a body of the specified length can
+     *         take once escaped
+     */
+    public static int maxFrameLength(int bodyLength) {
+        return 2 + 2 * (HEADER_LENGTH + bodyLength + FCS_LENGTH);
+    }
+
+    /**
+     * Frames the remaining bytes of body into dst, the position of body is not
+     * changed
+     * 
+     * @return the number of bytes written to dst
+     */
+    public static int encodeFrame(ByteBuffer body, byte[] dst, int dstOff) {
+        if (body.hasArray()) {
+            return encodeFrame(body.array(), body.arrayOffset() + body.position(), body.remaining(), dst, dstOff);
+        } else {
+            byte[] b = new byte[body.remaining()];
+            body.duplicate().get(b);
+            return encodeFrame(b, 0, b.length, dst, dstOff);
+        }
+    }
+
+    public static int encodeFrame(byte[] body, int off, int len, byte[] dst, int dstOff) {
+        if (len > 0xFFFF) {
+            throw new IllegalArgumentException("Frame body of " + len + " bytes is too long");
+        }
+        int fcs = FCSOutputStream.INITIAL_FCS_VALUE;
+        fcs = fcs(fcs, (byte) PROTOCOL_ID);
+        fcs = fcs(fcs, (byte) MESSAGE_TYPE);
+        fcs = fcs(fcs, (byte) (len >> 8));
+        fcs = fcs(fcs, (byte) len);
+        fcs = fcs(fcs, body, off, len);
+        fcs = ~fcs;
+
+        int d = dstOff;
+        dst[d++] = (byte) BOF;
+        d = escape(PROTOCOL_ID, dst, d);
+        d = escape(MESSAGE_TYPE, dst, d);
+        d = escape(0xFF & (len >> 8), dst, d);
+        d = escape(0xFF & len, dst, d);
+        d += escape(body, off, len, dst, d);
+        // LSB first
+        d = escape(0xFF & fcs, dst, d);
+        d = escape(0xFF & (fcs >> 8), dst, d);
+        dst[d++] = (byte) EOF;
+        return d - dstOff;
+    }
+
+    /**
+     * Receives the body of each valid frame, the contents of the array are only
+     * valid for the duration of the call
+     */
+    public interface FrameHandler {
+        void frame(byte[] body, int off, int len);
+    }
+
+    /**
+     * Reassembles frames from serial input fed to it in blocks of any size.
+     * Bytes outside of a frame are ignored; a BOF always starts a new frame
+     * and an escaped EOF aborts the current one.
+     */
+    public static final class Deframer {
+        private final FrameHandler handler;
+        private final byte[] frame;
+        private int length;
+        private boolean inFrame, escaped, overflow;
+        private long frames, invalidFrames, abortedFrames;
+
+        public Deframer(int maxBodyLength, FrameHandler handler) {
+            this.frame = new byte[HEADER_LENGTH + maxBodyLength + FCS_LENGTH];
+            this.handler = handler;
+        }
+
+        public void feed(ByteBuffer bb) {
+            if (bb.hasArray()) {
+                feed(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+            } else {
+                while (bb.hasRemaining()) {
+                    feed(bb.get());
+                }
+            }
+        }
+
+        public void feed(byte[] b, int off, int len) {
+            final int end = off + len;
+            int i = off;
+            while (i < end) {
+                if (!inFrame || escaped) {
+                    feed(b[i++]);
+                    continue;
+                }
+                // copy up to the next byte that needs attention in one go
+                int run = i;
+                while (i < end && !special(b[i] & 0xFF)) {
+                    i++;
+                }
+                append(b, run, i - run);
+                if (i < end) {
+                    feed(b[i++]);
+                }
+            }
+        }
+
+        private void append(byte[] b, int off, int len) {
+            if (len > 0) {
+                if (length + len > frame.length) {
+                    overflow = true;
+                    len = frame.length - length;
+                }
+                System.arraycopy(b, off, frame, length, len);
+                length += len;
+            }
+        }
+
+        private void append(byte b) {
+            if (length < frame.length) {
+                frame[length++] = b;
+            } else {
+                overflow = true;
+            }
+        }
+
+        private void feed(byte b) {
+            int x = 0xFF & b;
+            if (x == BOF) {
+                if (inFrame) {
+                    log.info("Aborted Frame");
+                    abortedFrames++;
+                }
+                inFrame = true;
+                escaped = false;
+                overflow = false;
+                length = 0;
+            } else if (!inFrame) {
+                // Unknown byte
+            } else if (x == EOF) {
+                inFrame = false;
+                if (escaped) {
+                    log.info("Aborted Frame");
+                    abortedFrames++;
+                } else {
+                    endFrame();
+                }
+                escaped = false;
+            } else if (escaped) {
+                escaped = false;
+                append((byte) (ESCAPE_XOR ^ x));
+            } else if (x == ESCAPE) {
+                escaped = true;
+            } else {
+                append(b);
+            }
+        }
+
+        private void endFrame() {
+            if (length < HEADER_LENGTH + FCS_LENGTH) {
+                log.warn("Short frame of " + length + " bytes");
+                invalidFrames++;
+                return;
+            }
+            int protocolId = 0xFF & frame[0];
+            int msgType = 0xFF & frame[1];
+            int bodyLength = ((0xFF & frame[2]) << 8) | (0xFF & frame[3]);
+            if (bodyLength <= 0 || overflow || HEADER_LENGTH + bodyLength + FCS_LENGTH > length) {
+                log.warn("Invalid frame length:" + bodyLength);
+                invalidFrames++;
+                return;
+            }
+            if (HEADER_LENGTH + bodyLength + FCS_LENGTH < length) {
+                log.warn("Frame not properly ended");
+            }
+            int calculatedFCS = fcs(FCSOutputStream.INITIAL_FCS_VALUE, frame, 0, HEADER_LENGTH + bodyLength);
+            int receivedFCS = (0xFF & frame[HEADER_LENGTH + bodyLength]) | (0xFF00 & (frame[HEADER_LENGTH + bodyLength + 1] << 8));
+            if (PROTOCOL_ID != protocolId) {
+                log.warn("Unknown Protocol Id:" + Integer.toHexString(protocolId));
+                invalidFrames++;
+                return;
+            }
+            if (MESSAGE_TYPE != msgType) {
+                log.warn("Unknown message type:" + Integer.toHexString(msgType));
+                invalidFrames++;
+                return;
+            }
+            if ((0xFFFF ^ receivedFCS) != calculatedFCS) {
+                log.warn("Invalid CRC Received:" + Integer.toHexString((0xFFFF ^ receivedFCS)) + " but calculated: " + Integer.toHexString(calculatedFCS));
+                invalidFrames++;
+                return;
+            }
+            frames++;
+            handler.frame(frame, HEADER_LENGTH, bodyLength);
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getInvalidFrames() {
+            return invalidFrames;
+        }
+
+        public long getAbortedFrames() {
+            return abortedFrames;
+        }
+    }
+}
@@ -73,19 +73,11 @@ public class FCSOutputStream extends java.io.FilterOutputStream {
     }
 
     public static final int pppfcs(int fcs, ByteBuffer cp) {
-        cp.mark();
-        while (cp.hasRemaining()) {
-            fcs = pppfcs(fcs, cp.get());
-        }
-        cp.reset();
-        return fcs;
+        return FCSFrameCodec.fcs(fcs, cp);
     }
 
     public static final int pppfcs(int fcs, byte[] cp, int off, int len) {
-        for (int i = 0; i < len; i++) {
-            fcs = pppfcs(fcs, cp[off + i]);
-        }
-        return fcs;
+        return FCSFrameCodec.fcs(fcs, cp, off, len);
     }
 
     public void resetFCS() {
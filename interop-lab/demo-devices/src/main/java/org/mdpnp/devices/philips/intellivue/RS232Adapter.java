@@ -23,8 +23,6 @@ import java.nio.channels.SelectionKey;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.mdpnp.devices.io.MergeBytesInputStream;
-import org.mdpnp.devices.io.SplitBytesOutputStream;
 import org.mdpnp.devices.io.TeeInputStream;
 import org.mdpnp.devices.io.TeeOutputStream;
 import org.mdpnp.devices.io.util.HexUtil;
@@ -61,12 +59,7 @@ import org.slf4j.LoggerFactory;
  * 
  */
 public class RS232Adapter implements NetworkConnection {
-    private static final int BOF = 0xC0;
-    private static final int EOF = 0xC1;
-
     private static final int BUFFER_SIZE = 8192;
-    
-    private final byte[] header = new byte[4];
 
     private final List<ByteBuffer> writeToChannel = new ArrayList<ByteBuffer>();
     private final List<ByteBuffer> writeToSerial = new ArrayList<ByteBuffer>();
@@ -219,80 +212,11 @@ public class RS232Adapter implements NetworkConnection {
         }
     }
 
-    private int readFrame(FCSInputStream is, DatagramChannel channel) throws IOException {
-        int count = 0;
-        int r = 0;
-
-        is.resetFCS();
-
-        while (count < header.length) {
-            r = is.read(header, count, header.length - count);
-            if (r < 0) {
-                return r;
-            }
-            count += r;
-        }
-
-        short protocolId = (short) (0xFF & header[0]);
-        short msgType = (short) (0xFF & header[1]);
-        int length = 0xFF00 & (header[2] << 8);
-        length += (0xFF & header[3]);
-
+    private void frame(byte[] b, int off, int len) {
         ByteBuffer body = newBuffer();
-
-        if (length <= 0) {
-            log.warn("Invalid frame length:" + length);
-            deleteBuffer(body);
-            return count;
-        }
-
-        body.limit(length);
-
-        while (body.hasRemaining()) {
-            r = is.read(body.array(), body.arrayOffset() + body.position(), body.remaining());
-            if (r < 0) {
-                return r;
-            } else {
-                count += r;
-                if (r > body.remaining()) {
-                    log.warn("Read of length=" + body.remaining() + " returned " + r + " bytes ... forced to extend the buffer limit");
-                    body.limit(body.position() + r);
-                }
-                body.position(body.position() + r);
-            }
-        }
-
-        int calculatedFCS = is.currentFCS();
-
-        if ((r = is.read()) < 0) {
-            deleteBuffer(body);
-            return r;
-        }
-        int receivedFCS = 0xFF & r;
-        if ((r = is.read()) < 0) {
-            deleteBuffer(body);
-            return r;
-        }
-        receivedFCS |= 0xFF00 & (r << 8);
-
-        if (0x11 != protocolId) {
-            log.warn("Unknown Protocol Id:" + Integer.toHexString(0xFF & protocolId));
-            deleteBuffer(body);
-            return count;
-        }
-        if (0x01 != msgType) {
-            log.warn("Unknown message type:" + Integer.toHexString(0xFF & msgType));
-            deleteBuffer(body);
-            return count;
-        }
+        body.put(b, off, len);
         body.flip();
 
-        if ((0xFFFF ^ receivedFCS) != calculatedFCS) {
-            log.warn("Invalid CRC Received:" + Integer.toHexString((0xFFFF ^ receivedFCS)) + " but calculated: " + Integer.toHexString(calculatedFCS));
-            deleteBuffer(body);
-            return count;
-        }
-
         if (log.isTraceEnabled()) {
             log.trace("Received frame from RS232 len=" + body.remaining() + "\n" + HexUtil.dump(body, 50));
         }
@@ -300,58 +224,32 @@ public class RS232Adapter implements NetworkConnection {
             writeToChannel.add(body);
         }
         selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
-        return count;
     }
 
     protected void processSerialToUDP() {
-        InputStream is = new MergeBytesInputStream(serialIn, 0xC0, 0xC1, 0x7D, new MergeBytesInputStream.Merger() {
-
+        FCSFrameCodec.Deframer deframer = new FCSFrameCodec.Deframer(BUFFER_SIZE, new FCSFrameCodec.FrameHandler() {
             @Override
-            public byte merge(byte b1, byte b2) {
-                return (byte) (0x20 ^ b2);
+            public void frame(byte[] body, int off, int len) {
+                RS232Adapter.this.frame(body, off, len);
             }
-
         });
-        FCSInputStream fcsin = new FCSInputStream(is);
-        int r = 0;
-        boolean eof = false;
+        byte[] raw = new byte[BUFFER_SIZE];
+        int n;
 
         try {
-            while (!eof) {
-                if (null != traceIn) {
-                    traceIn.reset();
-                }
-                r = is.read();
-                switch (r) {
-                case MergeBytesInputStream.END_OF_FILE:
-                    eof = true;
-                    continue;
-                case MergeBytesInputStream.BEGIN_FRAME:
-                    switch (readFrame(fcsin, channel)) {
-                    case MergeBytesInputStream.END_OF_FILE:
-                        eof = true;
-                        continue;
-                    case MergeBytesInputStream.END_FRAME:
-                        log.info("Aborted Frame");
-                        break;
-                    default:
-                        if (MergeBytesInputStream.END_FRAME != is.read()) {
-                            log.warn("Frame not properly ended");
-                        }
-                        break;
-                    }
+            while ((n = serialIn.read(raw)) >= 0) {
+                deframer.feed(raw, 0, n);
 
-                    if (null != traceIn && log.isTraceEnabled()) {
-                        byte[] bytes = traceIn.toByteArray();
+                if (null != traceIn && log.isTraceEnabled()) {
+                    byte[] bytes = traceIn.toByteArray();
+                    traceIn.reset();
+                    if (bytes.length > 0) {
                         log.trace("from raw RS232 len=" + bytes.length + "\n" + HexUtil.dump(bytes, 50));
                     }
-                    break;
-                default:
-                    // Unknown byte
                 }
             }
             try {
-                fcsin.close();
+                serialIn.close();
             } catch (IOException e) {
                 log.error("closing serial port", e);
             }
@@ -361,12 +259,9 @@ public class RS232Adapter implements NetworkConnection {
     }
 
     protected void processUDPToSerial() {
-        final SplitBytesOutputStream sbos = new SplitBytesOutputStream(serialOut, new IntellivueByteSplitter());
-
-        // FCS is calculated without escape sequences
-        // This is closed elsewhere
-        @SuppressWarnings("resource")
-        final FCSOutputStream fcsout = new FCSOutputStream(sbos);
+        // Frames are escaped and the FCS computed (over the unescaped bytes)
+        // into this buffer so each goes to the serial port in a single write
+        final byte[] frame = new byte[FCSFrameCodec.maxFrameLength(BUFFER_SIZE)];
 
         ByteBuffer[] buffers = new ByteBuffer[0];
 
@@ -387,18 +282,7 @@ public class RS232Adapter implements NetworkConnection {
                             log.trace("Datagram len=" + length + "\n" + HexUtil.dump(bb, 50));
                         }
                         try {
-                            serialOut.write(BOF);
-                            fcsout.resetFCS();
-                            fcsout.write(0x11);
-                            fcsout.write(0x01);
-
-                            fcsout.write(0xFF & (length >> 8));
-                            fcsout.write(0xFF & length);
-                            fcsout.write(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
-                            // CRC
-                            fcsout.writeFCS();
-                            serialOut.write(EOF);
-
+                            serialOut.write(frame, 0, FCSFrameCodec.encodeFrame(bb, frame, 0));
                         } catch (IOException ioe) {
                             log.error("Writing to the serial", ioe);
                         } finally {
@@ -414,7 +298,7 @@ public class RS232Adapter implements NetworkConnection {
                 }
             }
             try {
-                fcsout.flush();
+                serialOut.flush();
             } catch (IOException e1) {
                 log.error("flushing serial", e1);
             }
@@ -161,6 +161,27 @@ public class DemoPB840 extends AbstractDelegatingSerialDevice<PB840> {
             receiveNumeric(name, units, value);
         }
         
+        @Override
+        public void receiveSetting(String name, Units units, float value) {
+            receiveNumeric(name, units, value);
+        }
+        
+        @Override
+        public void receiveNumeric(String name, Units units, float value) {
+            DeviceClock.Reading sampleTime = deviceClock.instant();
+            InstanceHolder<ice.Numeric> holder = numericInstances.get(name);
+            String unitId = unitsMap.get(units);
+            // The metric and vendor metric ids of a registered instance follow from its name
+            if (null != holder && holder.data.unit_id.equals(unitId)) {
+                numericSample(holder, value, sampleTime);
+            } else {
+                String canonicalName = terms.get(name);
+                canonicalName = null == canonicalName ? name : canonicalName;
+                numericInstances.put(name,
+                        numericSample(holder, value, canonicalName, name, unitId, sampleTime));
+            }
+        }
+        
         @Override
         public void receiveNumeric(String name, Units units, String value) {
             String canonicalName = terms.get(name);
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mdpnp.devices.AbstractDevice;
+import org.mdpnp.devices.DeviceClock;
+import org.mdpnp.devices.archive.WaveformArchive;
+import org.mdpnp.devices.connected.AbstractConnectedDevice;
+import org.mdpnp.devices.simulation.AbstractSimulatedDevice;
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+
+import com.rti.dds.publication.Publisher;
+import com.rti.dds.subscription.Subscriber;
+
+/**
+ * Plays recorded vitals back onto DDS. The address is a ';' separated list of
+ * recordings; a jdbc: URL is read as the VITAL_VALUES table of the data
+ * recorder and anything else as the directory of a full-disclosure waveform
+ * archive. Every recorded UDI is published by its own {@link ReplayedDevice}
+ * so downstream applications see the original devices. Presentation times are
+ * moved onto the replay timeline while the recorded times are carried as the
+ * device time.
+ * <p>
+ * The speed is taken from the mdpnp.replay.speed system property (a multiple
+ * of real time or "max") and can be changed over JMX while replaying. Where
+ * no address is given (e.g. headless) the recording is taken from the
+ * mdpnp.replay.source system property.
+ *
+ */
+public class DemoReplay extends AbstractConnectedDevice {
+    private static final Logger log = LoggerFactory.getLogger(DemoReplay.class);
+
+    private final Map<String, ReplayedDevice> devices = new ConcurrentHashMap<String, ReplayedDevice>();
+    private final List<Closeable> resources = new ArrayList<Closeable>();
+    private volatile double speed = parseSpeed(System.getProperty("mdpnp.replay.speed", "1"));
+    private volatile Replayer replayer;
+    private Thread replayThread;
+
+    public DemoReplay(final Subscriber subscriber, final Publisher publisher, final EventLoop eventLoop) {
+        super(subscriber, publisher, eventLoop);
+        deviceIdentity.manufacturer = "Replay";
+        deviceIdentity.model = "Recorded Vitals";
+        AbstractSimulatedDevice.randomUDI(deviceIdentity);
+        writeDeviceIdentity();
+    }
+
+    static double parseSpeed(String s) {
+        if ("max".equalsIgnoreCase(s.trim())) {
+            return Replayer.MAX_SPEED;
+        }
+        return Double.parseDouble(s);
+    }
+
+    @Override
+    protected ice.ConnectionType getConnectionType() {
+        return ice.ConnectionType.Network;
+    }
+
+    @Override
+    public synchronized boolean connect(String address) {
+        if (null == address || "".equals(address.trim())) {
+            address = System.getProperty("mdpnp.replay.source");
+        }
+        ice.ConnectionState state = getState();
+        if (ice.ConnectionState.Connected.equals(state) || ice.ConnectionState.Connecting.equals(state)
+                || ice.ConnectionState.Negotiating.equals(state)) {
+            return true;
+        }
+        if (!stateMachine.transitionWhenLegal(ice.ConnectionState.Connecting, 1000L, "connect requested to " + address)) {
+            throw new RuntimeException("Unable to enter Connecting State");
+        }
+        final ReplaySource source;
+        try {
+            source = open(address);
+        } catch (Exception e) {
+            log.error("Unable to open recording " + address, e);
+            closeResources();
+            stateMachine.transitionWhenLegal(ice.ConnectionState.Terminal, 1000L, "unable to open " + address);
+            return false;
+        }
+        if (!stateMachine.transitionWhenLegal(ice.ConnectionState.Negotiating, 1000L, "opened " + address)) {
+            throw new RuntimeException("Unable to enter Negotiating State");
+        }
+
+        final Replayer replayer = new Replayer(source, new Replayer.Sink() {
+            @Override
+            public void publish(ReplayRecord record, long replayTime) {
+                DeviceClock.Reading time = new DeviceClock.CombinedReading(new DeviceClock.ReadingImpl(replayTime),
+                        new DeviceClock.ReadingImpl(record.getTime()));
+                device(record.getUniqueDeviceIdentifier()).publish(record, time);
+            }
+        });
+        replayer.setSpeed(speed);
+        this.replayer = replayer;
+
+        replayThread = new Thread(AbstractDevice.threadGroup, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replayer.replay();
+                } catch (InterruptedException e) {
+                    log.info("Replay interrupted");
+                } catch (Exception e) {
+                    log.error("Replay failed", e);
+                } finally {
+                    try {
+                        source.close();
+                    } catch (IOException e) {
+                        log.warn("Unable to close recording", e);
+                    }
+                    closeResources();
+                }
+                stateMachine.transitionWhenLegal(ice.ConnectionState.Terminal, 1000L, "replay ended " + replayer.getStatistics());
+            }
+        }, "Replay");
+        replayThread.setDaemon(true);
+
+        if (!stateMachine.transitionWhenLegal(ice.ConnectionState.Connected, 1000L, "replaying " + address)) {
+            throw new RuntimeException("Unable to enter Connected State");
+        }
+        replayThread.start();
+        return true;
+    }
+
+    private ReplaySource open(String address) throws Exception {
+        if (null == address || "".equals(address.trim())) {
+            throw new IllegalArgumentException("No recording specified");
+        }
+        List<ReplaySource> sources = new ArrayList<ReplaySource>();
+        for (String location : address.split(";")) {
+            location = location.trim();
+            if (location.isEmpty()) {
+                continue;
+            }
+            if (location.startsWith("jdbc:")) {
+                final Connection conn = DriverManager.getConnection(location);
+                addResource(new Closeable() {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            conn.close();
+                        } catch (java.sql.SQLException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                });
+                sources.add(new JdbcReplaySource(conn));
+            } else {
+                File dir = new File(location);
+                if (!dir.isDirectory()) {
+                    throw new IOException("No waveform archive at " + dir);
+                }
+                WaveformArchive archive = new WaveformArchive(dir);
+                addResource(archive);
+                sources.add(new ArchiveReplaySource(archive));
+            }
+        }
+        return 1 == sources.size() ? sources.get(0) : new MergedReplaySource(sources.toArray(new ReplaySource[sources.size()]));
+    }
+
+    private void addResource(Closeable c) {
+        synchronized (resources) {
+            resources.add(c);
+        }
+    }
+
+    private void closeResources() {
+        synchronized (resources) {
+            for (Closeable c : resources) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close " + c, e);
+                }
+            }
+            resources.clear();
+        }
+    }
+
+    private ReplayedDevice device(String udi) {
+        ReplayedDevice d = devices.get(udi);
+        if (null == d) {
+            d = new ReplayedDevice(subscriber, publisher, eventLoop, udi);
+            devices.put(udi, d);
+            log.info("Replaying device " + udi);
+        }
+        return d;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        Replayer replayer = this.replayer;
+        if (null != replayer) {
+            replayer.stop();
+        }
+        if (null != replayThread) {
+            replayThread.interrupt();
+            try {
+                replayThread.join(5000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            replayThread = null;
+        }
+        for (ReplayedDevice d : devices.values()) {
+            d.unregisterAll();
+        }
+        if (!ice.ConnectionState.Terminal.equals(getState())) {
+            if (!stateMachine.transitionWhenLegal(ice.ConnectionState.Terminal, 2000L, "disconnect requested")) {
+                throw new RuntimeException("Unable to enter Terminal State");
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (ReplayedDevice d : devices.values()) {
+            d.shutdown();
+        }
+        devices.clear();
+        super.shutdown();
+    }
+
+    @ManagedAttribute(description = "Replay speed as a multiple of real time, Infinity for as fast as possible")
+    public double getSpeed() {
+        return speed;
+    }
+
+    @ManagedAttribute(description = "Replay speed as a multiple of real time, Infinity for as fast as possible")
+    public void setSpeed(double speed) {
+        if (!(speed > 0.0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        Replayer replayer = this.replayer;
+        if (null != replayer) {
+            replayer.setSpeed(speed);
+        }
+        this.speed = speed;
+    }
+
+    @ManagedAttribute(description = "Recorded time (ms) of the last published observation")
+    public long getRecordTime() {
+        Replayer replayer = this.replayer;
+        return null == replayer ? 0L : replayer.getStatistics().getRecordTime();
+    }
+
+    @ManagedAttribute(description = "Observations published")
+    public long getPublished() {
+        Replayer replayer = this.replayer;
+        return null == replayer ? 0L : replayer.getStatistics().getPublished();
+    }
+
+    @ManagedAttribute(description = "Observations published per second")
+    public double getPublishRate() {
+        Replayer replayer = this.replayer;
+        return null == replayer ? 0.0 : replayer.getStatistics().getPublishRate();
+    }
+
+    @ManagedAttribute(description = "Values (numerics and waveform samples) published per second")
+    public double getSampleRate() {
+        Replayer replayer = this.replayer;
+        return null == replayer ? 0.0 : replayer.getStatistics().getSampleRate();
+    }
+
+    @ManagedAttribute(description = "Mean lateness of publication against the recorded timing in microseconds")
+    public double getMeanDriftMicros() {
+        Replayer replayer = this.replayer;
+        return null == replayer ? 0.0 : replayer.getStatistics().getMeanDriftMicros();
+    }
+
+    @ManagedAttribute(description = "Worst lateness of publication against the recorded timing in microseconds")
+    public long getMaxDriftMicros() {
+        Replayer replayer = this.replayer;
+        return null == replayer ? 0L : replayer.getStatistics().getMaxDriftMicros();
+    }
+}
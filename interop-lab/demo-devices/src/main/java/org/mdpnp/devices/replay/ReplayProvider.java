@@ -0,0 +1,28 @@
+package org.mdpnp.devices.replay;
+
+import org.mdpnp.devices.AbstractDevice;
+import org.mdpnp.devices.DeviceDriverProvider;
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.springframework.context.support.AbstractApplicationContext;
+
+import com.rti.dds.publication.Publisher;
+import com.rti.dds.subscription.Subscriber;
+
+/**
+ * The address is the recording to play back, see {@link DemoReplay}.
+ */
+public class ReplayProvider extends DeviceDriverProvider.SpringLoadedDriver {
+
+    @Override
+    public DeviceType getDeviceType(){
+        return new DeviceType(ice.ConnectionType.Network, "Replay", "Recorded Vitals", "Replay", 1);
+    }
+
+    @Override
+    public AbstractDevice newInstance(AbstractApplicationContext context) throws Exception {
+        EventLoop eventLoop = context.getBean("eventLoop", EventLoop.class);
+        Subscriber subscriber = context.getBean("subscriber", Subscriber.class);
+        Publisher publisher = context.getBean("publisher", Publisher.class);
+        return new DemoReplay(subscriber, publisher, eventLoop);
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.replay;
+
+import ice.Numeric;
+import ice.SampleArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mdpnp.devices.AbstractDevice;
+import org.mdpnp.devices.DeviceClock;
+import org.mdpnp.rtiapi.data.EventLoop;
+
+import com.rti.dds.publication.Publisher;
+import com.rti.dds.subscription.Subscriber;
+
+/**
+ * Stands in for one recorded device, publishing its numerics and sample arrays
+ * under the device's original UDI. Only called from the replay thread.
+ *
+ */
+class ReplayedDevice extends AbstractDevice {
+    private final Map<String, InstanceHolder<Numeric>> numerics = new HashMap<String, InstanceHolder<Numeric>>();
+    private final Map<String, InstanceHolder<SampleArray>> sampleArrays = new HashMap<String, InstanceHolder<SampleArray>>();
+    private Number[] buffer = new Number[0];
+
+    ReplayedDevice(final Subscriber subscriber, final Publisher publisher, final EventLoop eventLoop, String udi) {
+        super(subscriber, publisher, eventLoop);
+        deviceIdentity.unique_device_identifier = udi;
+        deviceIdentity.manufacturer = "Replay";
+        deviceIdentity.model = "Recorded " + udi;
+        writeDeviceIdentity();
+    }
+
+    private static String key(ReplayRecord record) {
+        return record.getMetricId() + "-" + record.getInstanceId();
+    }
+
+    /**
+     * @param time
+     *            the instant of publication; carries the recorded time as the
+     *            device time
+     */
+    void publish(ReplayRecord record, DeviceClock.Reading time) {
+        String key = key(record);
+        String vendorMetricId = null == record.getVendorMetricId() ? "" : record.getVendorMetricId();
+        // older recordings did not keep the unit
+        String unitId = null == record.getUnitId() ? rosetta.MDC_DIM_DIMLESS.VALUE : record.getUnitId();
+        if (record.isSampleArray()) {
+            float[] values = record.getValues();
+            if (buffer.length < values.length) {
+                buffer = new Number[values.length];
+            }
+            for (int i = 0; i < values.length; i++) {
+                buffer[i] = values[i];
+            }
+            sampleArrays.put(key, sampleArraySample(sampleArrays.get(key), buffer, values.length, record.getMetricId(), vendorMetricId,
+                    record.getInstanceId(), unitId, record.getFrequency(), time));
+        } else {
+            numerics.put(key, numericSample(numerics.get(key), record.getValue(), record.getMetricId(), vendorMetricId, record.getInstanceId(),
+                    unitId, time));
+        }
+    }
+
+    void unregisterAll() {
+        numerics.clear();
+        sampleArrays.clear();
+        unregisterAllInstances();
+    }
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClockOffsetEstimatorTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testMinimumDelayWins() {
+        ClockOffsetEstimator e = new ClockOffsetEstimator(4, 8);
+        // queuing on one leg skews the offset by half of the extra delay
+        e.add(0L, 100 * MS + 5 * MS, 12 * MS);
+        e.add(1000 * MS, 100 * MS, 2 * MS);
+        e.add(2000 * MS, 100 * MS - 20 * MS, 42 * MS);
+        Assert.assertEquals(100 * MS, e.getOffset(2000 * MS), 0L);
+        Assert.assertEquals(2 * MS, e.getDelay());
+        Assert.assertEquals(3L, e.getCount());
+    }
+
+    @Test
+    public void testDrift() {
+        ClockOffsetEstimator e = new ClockOffsetEstimator();
+        Random random = new Random(1L);
+        // remote clock runs 40ppm fast and starts 250ms ahead
+        for (int i = 0; i < 60; i++) {
+            long t = i * 2000 * MS;
+            long delay = MS + (long) (random.nextDouble() * 5 * MS);
+            long asymmetry = (long) ((random.nextDouble() - 0.5) * (delay - MS));
+            e.add(t, 250 * MS + t / 25000 + asymmetry, delay);
+        }
+        long t = 120000 * MS;
+        Assert.assertEquals(40e-6, e.getDrift(), 10e-6);
+        Assert.assertEquals(250 * MS + t / 25000, e.getOffset(t), MS);
+
+        long remote = t + 250 * MS + t / 25000;
+        Assert.assertEquals(t, e.toLocalTime(remote), MS);
+    }
+}
@@ -18,6 +18,11 @@ public class DomainClockTest {
         long l1 = DomainClock.toMilliseconds(t);
 
         Assert.assertEquals(l0, l1);
+
+        Time_t t2 = new Time_t(0, 0);
+        DomainClock.toDDSTimeNanos(l0 * 1000000L + 123456L, t2);
+        Assert.assertEquals(t.sec, t2.sec);
+        Assert.assertEquals(t.nanosec + 123456, t2.nanosec);
     }
 
     @Test
@@ -39,6 +44,9 @@ public class DomainClockTest {
             Instant i1 = DomainClock.timeSampleArrayResolution(resolutionNsPerSample, i0);
 
             Assert.assertEquals("Failed @resolutionNs=" + resolutionNsPerSample, DomainClock.toMilliseconds(t1), i1.toEpochMilli());
+
+            long n1 = DomainClock.timeSampleArrayResolution(resolutionNsPerSample, DeviceClock.toEpochNanos(i0));
+            Assert.assertEquals("Failed @resolutionNs=" + resolutionNsPerSample, i1, DeviceClock.toInstant(n1));
         }
     }
 
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rti.dds.infrastructure.Condition;
+import com.rti.dds.infrastructure.GuardCondition;
+
+public class EventLoopGroupTest {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLoopGroupTest.class);
+
+    private EventLoop eventLoop;
+    private EventLoopHandler eventLoopHandler;
+    private EventLoopGroup group;
+
+    @Before
+    public void setUp() {
+        eventLoop = new EventLoop();
+        eventLoopHandler = new EventLoopHandler(eventLoop);
+        group = new EventLoopGroup(eventLoop, 2);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        group.shutdown();
+        eventLoopHandler.shutdown();
+    }
+
+    @Test
+    public void testPlacement() {
+        Assert.assertSame(eventLoop, group.getEventLoop(ice.DeviceIdentityTopic.VALUE));
+        EventLoop alerts = group.getEventLoop(ice.PatientAlertTopic.VALUE);
+        Assert.assertNotSame(eventLoop, alerts);
+        Assert.assertSame(alerts, group.getEventLoop(ice.AlarmLimitTopic.VALUE));
+
+        EventLoop numerics = group.getEventLoop(ice.NumericTopic.VALUE);
+        EventLoop waveforms = group.getEventLoop(ice.SampleArrayTopic.VALUE);
+        Assert.assertNotSame(numerics, waveforms);
+        Assert.assertNotSame(alerts, numerics);
+        // a topic keeps its lane
+        Assert.assertSame(numerics, group.getEventLoop(ice.NumericTopic.VALUE));
+
+        group.setPlacement(ice.InfusionStatusTopic.VALUE, EventLoopGroup.Lane.ALERT);
+        Assert.assertSame(alerts, group.getEventLoop(ice.InfusionStatusTopic.VALUE));
+    }
+
+    @Test
+    public void testThreadConfinement() throws InterruptedException {
+        final EventLoop lane = group.getEventLoop(ice.SampleArrayTopic.VALUE);
+        final AtomicBoolean confined = new AtomicBoolean();
+        lane.doNow(new Runnable() {
+            public void run() {
+                confined.set(lane.isCurrentServiceThread() && !eventLoop.isCurrentServiceThread());
+            }
+        });
+        Assert.assertTrue(confined.get());
+
+        final CountDownLatch later = new CountDownLatch(1);
+        lane.doLater(new Runnable() {
+            public void run() {
+                if (lane.isCurrentServiceThread()) {
+                    later.countDown();
+                }
+            }
+        });
+        Assert.assertTrue(later.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A waveform handler that takes 250ms per call must not hold up alerts.
+     */
+    @Test
+    public void testAlertLatencyWithSlowWaveformHandler() throws InterruptedException {
+        final long slowHandlerMs = 250L;
+        final int alerts = 20;
+
+        final GuardCondition waveform = new GuardCondition();
+        final AtomicLong waveformCalls = new AtomicLong();
+        group.getEventLoop(ice.SampleArrayTopic.VALUE).addHandler(waveform, new EventLoop.ConditionHandler() {
+            @Override
+            public void conditionChanged(Condition condition) {
+                waveformCalls.incrementAndGet();
+                try {
+                    Thread.sleep(slowHandlerMs);
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+
+        final GuardCondition alert = new GuardCondition();
+        final AtomicLong triggered = new AtomicLong();
+        final long[] latencies = new long[alerts];
+        final CountDownLatch delivered = new CountDownLatch(alerts);
+        group.getEventLoop(ice.PatientAlertTopic.VALUE).addHandler(alert, new EventLoop.ConditionHandler() {
+            @Override
+            public void conditionChanged(Condition condition) {
+                ((GuardCondition) condition).set_trigger_value(false);
+                int n = (int) (alerts - delivered.getCount());
+                if (n < alerts) {
+                    latencies[n] = System.nanoTime() - triggered.get();
+                    delivered.countDown();
+                }
+            }
+        });
+
+        // the waveform condition stays triggered so its lane is continuously busy
+        waveform.set_trigger_value(true);
+        try {
+            for (int i = 0; i < alerts; i++) {
+                long count = delivered.getCount();
+                triggered.set(System.nanoTime());
+                alert.set_trigger_value(true);
+                long giveup = System.currentTimeMillis() + 5000L;
+                while (delivered.getCount() == count && System.currentTimeMillis() < giveup) {
+                    Thread.sleep(1L);
+                }
+                Thread.sleep(20L);
+            }
+            Assert.assertTrue("Alerts were not delivered", delivered.await(5, TimeUnit.SECONDS));
+        } finally {
+            waveform.set_trigger_value(false);
+        }
+
+        long max = 0L, sum = 0L;
+        for (long l : latencies) {
+            max = Math.max(max, l);
+            sum += l;
+        }
+        log.info(String.format("alert latency mean %.2fms max %.2fms while waveform handler ran %d times at %dms each", sum / 1e6 / alerts,
+                max / 1e6, waveformCalls.get(), slowHandlerMs));
+        Assert.assertTrue("Waveform handler never ran", waveformCalls.get() > 0);
+        Assert.assertTrue("Alert latency " + max / 1000000L + "ms", max < TimeUnit.MILLISECONDS.toNanos(slowHandlerMs / 2));
+    }
+}
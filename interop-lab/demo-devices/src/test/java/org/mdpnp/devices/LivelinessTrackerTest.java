@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.LivelinessTracker.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class LivelinessTrackerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LivelinessTrackerTest.class);
+
+    private static class Recorder implements LivelinessTracker.Listener {
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void livelinessChanged(String unique_device_identifier, String type, State previous, State current) {
+            events.add(unique_device_identifier + ":" + previous + "->" + current);
+        }
+    }
+
+    @Test
+    public void testTransitions() {
+        LivelinessTracker tracker = new LivelinessTracker(5000L, 10000L, 250L);
+        Recorder r = new Recorder();
+        tracker.addListener(r);
+
+        tracker.heartbeat("A", "Device", 0L);
+        tracker.heartbeat("B", "Device", 0L);
+        tracker.heartbeat("A", "Device", 2000L);
+        tracker.tick(5000L);
+        Assert.assertEquals(State.STALE, tracker.getState("B"));
+        Assert.assertEquals(State.ALIVE, tracker.getState("A"));
+
+        tracker.tick(10000L);
+        // lost peers are forgotten
+        Assert.assertNull(tracker.getState("B"));
+        Assert.assertEquals(State.STALE, tracker.getState("A"));
+        Assert.assertEquals(1, tracker.size());
+
+        // A comes back before it is lost
+        tracker.heartbeat("A", "Device", 10000L);
+        tracker.tick(15000L);
+        Assert.assertEquals(State.STALE, tracker.getState("A"));
+        tracker.heartbeat("B", "Device", 15000L);
+        tracker.remove("A");
+
+        Assert.assertEquals("[A:null->ALIVE, B:null->ALIVE, B:ALIVE->STALE, A:ALIVE->STALE, B:STALE->LOST, A:STALE->ALIVE, A:ALIVE->STALE, B:null->ALIVE, A:STALE->LOST]",
+                r.events.toString());
+
+        // a pause longer than the wheel goes around
+        tracker.tick(60000L);
+        Assert.assertNull(tracker.getState("B"));
+        Assert.assertEquals(0, tracker.size());
+    }
+
+    /**
+     * Thousands of peers heartbeating every 2s with jitter, some of them dropping out for
+     * a while; every dropout must be reported within one resolution of its threshold and
+     * nobody else may be reported at all.
+     */
+    @Test
+    public void testDropouts() {
+        final int peers = Integer.getInteger("LivelinessTrackerTest.peers", 5000);
+        final long interval = 2000L, staleAfter = 5000L, lostAfter = 10000L, resolution = 250L;
+        final long duration = 180000L, step = 10L;
+
+        Random random = new Random(0L);
+        long[] next = new long[peers];
+        long[] last = new long[peers];
+        long[] dropFrom = new long[peers], dropTo = new long[peers];
+        int[] expectStale = new int[peers], expectLost = new int[peers];
+        String[] udis = new String[peers];
+        for (int i = 0; i < peers; i++) {
+            udis[i] = "UDI" + i;
+            next[i] = random.nextInt((int) interval);
+            dropFrom[i] = dropTo[i] = Long.MAX_VALUE;
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                // a short dropout, stale but not lost even with the jitter on either side
+                dropFrom[i] = 30000L + random.nextInt(60000);
+                dropTo[i] = dropFrom[i] + 5500L;
+                expectStale[i] = 1;
+            } else if (kind == 1) {
+                // a long dropout, lost and then back again
+                dropFrom[i] = 30000L + random.nextInt(60000);
+                dropTo[i] = dropFrom[i] + 20000L;
+                expectStale[i] = 1;
+                expectLost[i] = 1;
+            }
+        }
+
+        final int[] stale = new int[peers], lost = new int[peers];
+        final long[] detectedLate = new long[1];
+        final long[] now = new long[1];
+        final LivelinessTracker tracker = new LivelinessTracker(staleAfter, lostAfter, resolution);
+        tracker.addListener(new LivelinessTracker.Listener() {
+            @Override
+            public void livelinessChanged(String udi, String type, State previous, State current) {
+                int i = Integer.parseInt(udi.substring(3));
+                long threshold;
+                if (State.STALE == current) {
+                    stale[i]++;
+                    threshold = staleAfter;
+                } else if (State.LOST == current) {
+                    lost[i]++;
+                    threshold = lostAfter;
+                } else {
+                    return;
+                }
+                long late = now[0] - last[i] - threshold;
+                Assert.assertTrue(udi + " reported " + current + " " + late + "ms early", late >= 0L);
+                detectedLate[0] = Math.max(detectedLate[0], late);
+            }
+        });
+
+        long heartbeats = 0L, ticks = 0L, heartbeatTime = 0L, tickTime = 0L;
+        for (long t = 0L; t < duration; t += step) {
+            now[0] = t;
+            for (int i = 0; i < peers; i++) {
+                if (next[i] <= t) {
+                    next[i] += interval + random.nextInt(400) - 200;
+                    if (t < dropFrom[i] || t >= dropTo[i]) {
+                        last[i] = t;
+                        long s = System.nanoTime();
+                        tracker.heartbeat(udis[i], "Device", t);
+                        heartbeatTime += System.nanoTime() - s;
+                        heartbeats++;
+                    }
+                }
+            }
+            if (t % resolution == 0L) {
+                long s = System.nanoTime();
+                tracker.tick(t);
+                tickTime += System.nanoTime() - s;
+                ticks++;
+            }
+        }
+
+        for (int i = 0; i < peers; i++) {
+            Assert.assertEquals(udis[i] + " stale", expectStale[i], stale[i]);
+            Assert.assertEquals(udis[i] + " lost", expectLost[i], lost[i]);
+            Assert.assertEquals(State.ALIVE, tracker.getState(udis[i]));
+        }
+        Assert.assertTrue("Reported " + detectedLate[0] + "ms late", detectedLate[0] <= resolution);
+        log.info(String.format("%d peers, %d heartbeats at %.0fns each, %d ticks at %.1fus each, %d deadlines expired, detection at most %dms late",
+                peers, heartbeats, (double) heartbeatTime / heartbeats, ticks, tickTime / 1e3 / ticks, tracker.getExpirations(), detectedLate[0]));
+    }
+}
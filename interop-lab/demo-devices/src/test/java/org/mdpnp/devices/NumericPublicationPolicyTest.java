@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.simulation.NumberWithJitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class NumericPublicationPolicyTest {
+
+    private static final Logger log = LoggerFactory.getLogger(NumericPublicationPolicyTest.class);
+
+    @Test
+    public void testDeadband() {
+        NumericPublicationPolicy.Filter f = new NumericPublicationPolicy(1f, 0f, 0L, 0L).newFilter();
+        Assert.assertTrue(f.offer(60f, 0L));
+        Assert.assertFalse(f.offer(60.5f, 1000L));
+        Assert.assertFalse(f.offer(61f, 2000L));
+        Assert.assertTrue(f.offer(61.5f, 3000L));
+        // compared with the last written value, not the last observed
+        Assert.assertFalse(f.offer(61f, 4000L));
+        Assert.assertFalse(f.offer(60.6f, 5000L));
+        Assert.assertTrue(f.offer(60.4f, 6000L));
+
+        f = new NumericPublicationPolicy(0f, 0.1f, 0L, 0L).newFilter();
+        Assert.assertTrue(f.offer(100f, 0L));
+        Assert.assertFalse(f.offer(109f, 1L));
+        Assert.assertTrue(f.offer(111f, 2L));
+        Assert.assertFalse(f.offer(120f, 3L));
+
+        // zero deadband only suppresses repeats
+        f = new NumericPublicationPolicy(0f, 0f, 0L, 5000L).newFilter();
+        Assert.assertTrue(f.offer(98f, 0L));
+        Assert.assertFalse(f.offer(98f, 1000L));
+        Assert.assertTrue(f.offer(97f, 2000L));
+    }
+
+    @Test
+    public void testNaN() {
+        NumericPublicationPolicy.Filter f = new NumericPublicationPolicy(5f, 0f, 0L, 0L).newFilter();
+        Assert.assertTrue(f.offer(Float.NaN, 0L));
+        Assert.assertFalse(f.offer(Float.NaN, 1L));
+        Assert.assertTrue(f.offer(1f, 2L));
+        Assert.assertTrue(f.offer(Float.NaN, 3L));
+    }
+
+    @Test
+    public void testIntervals() {
+        NumericPublicationPolicy.Filter f = new NumericPublicationPolicy(0f, 0f, 1000L, 10000L).newFilter();
+        Assert.assertTrue(f.offer(1f, 0L));
+        // changed but too soon
+        Assert.assertFalse(f.offer(2f, 500L));
+        Assert.assertTrue(f.offer(2f, 1000L));
+        Assert.assertFalse(f.offer(2f, 10999L));
+        // heartbeat
+        Assert.assertTrue(f.offer(2f, 11000L));
+        Assert.assertFalse(f.offer(2f, 11001L));
+        // clock going backwards starts over
+        Assert.assertTrue(f.offer(2f, 0L));
+
+        try {
+            new NumericPublicationPolicy(-1f, 0f, 0L, 0L);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertFalse(NumericPublicationPolicy.NONE.isEnabled());
+    }
+
+    /**
+     * An hour of a multiparameter monitor whose numerics update once a second, polled
+     * three times a second and republished on every poll as the Intellivue and Medibus
+     * drivers do.  Counts the samples each subscriber would receive under a few policies.
+     */
+    @Test
+    public void testSimulatedMultiparameter() {
+        final int seconds = Integer.getInteger("NumericPublicationPolicyTest.seconds", 3600);
+        final int pollsPerSecond = 3;
+
+        NumericPublicationPolicy[] policies = new NumericPublicationPolicy[] {
+                NumericPublicationPolicy.NONE,
+                new NumericPublicationPolicy(0f, 0f, 0L, 10000L),
+                new NumericPublicationPolicy(1f, 0f, 1000L, 10000L),
+                new NumericPublicationPolicy(0f, 0.02f, 1000L, 10000L) };
+
+        for (NumericPublicationPolicy policy : policies) {
+            // heart rate, SpO2, pulse rate, respiratory rate, etCO2, ABP systolic/diastolic/mean,
+            // NIBP systolic/diastolic/mean, temperature
+            Number[] sources = new Number[] { new NumberWithJitter<Integer>(60, 5, 30, 200), new NumberWithJitter<Integer>(98, 2, 60, 100),
+                    new NumberWithJitter<Integer>(60, 5, 30, 200), new NumberWithJitter<Integer>(13, 1, 5), new NumberWithJitter<Integer>(29, 1, 5),
+                    new NumberWithJitter<Integer>(120, 2, 60, 180), new NumberWithJitter<Integer>(80, 2, 40, 100),
+                    new NumberWithJitter<Integer>(93, 2, 50, 130), null, null, null, null };
+            int n = sources.length;
+            float[] current = new float[n];
+            long[] lastWrite = new long[n];
+            long maxGap = 0L;
+            NumericPublicationPolicy.Filter[] filters = new NumericPublicationPolicy.Filter[n];
+            for (int i = 0; i < n; i++) {
+                filters[i] = policy.isEnabled() ? policy.newFilter() : null;
+            }
+
+            long offered = 0L, written = 0L;
+            for (int s = 0; s < seconds; s++) {
+                // the monitor updates its numerics once a second, reported as integers
+                for (int i = 0; i < 8; i++) {
+                    current[i] = Math.round(sources[i].floatValue());
+                }
+                // a cuff measurement every 5 minutes
+                if (0 == s % 300) {
+                    current[8] = 110 + s / 300 % 10;
+                    current[9] = 70 + s / 300 % 7;
+                    current[10] = 85 + s / 300 % 8;
+                }
+                // a slowly drifting temperature with tenths of a degree resolution
+                current[11] = Math.round(369f + 3f * (float) Math.sin(s / 1800.0)) / 10f;
+
+                for (int p = 0; p < pollsPerSecond; p++) {
+                    long time = s * 1000L + p * 1000L / pollsPerSecond;
+                    for (int i = 0; i < n; i++) {
+                        offered++;
+                        if (null == filters[i] || filters[i].offer(current[i], time)) {
+                            written++;
+                            if (s > 0) {
+                                maxGap = Math.max(maxGap, time - lastWrite[i]);
+                            }
+                            lastWrite[i] = time;
+                        }
+                    }
+                }
+            }
+            log.info(String.format("%s %d of %d numeric samples written (%.1f%% suppressed), %.2f per second, longest silence %.1fs", policy,
+                    written, offered, 100.0 * (offered - written) / offered, written / (double) seconds, maxGap / 1000.0));
+            if (policy.isEnabled()) {
+                // at least the two repeated polls of every update are dropped
+                Assert.assertTrue(policy + " wrote " + written + " of " + offered, written * 3 <= offered);
+                // subscribers still hear about every instance within the heartbeat
+                Assert.assertTrue(policy + " was silent for " + maxGap + "ms", maxGap <= policy.getHeartbeat() + 1000L / pollsPerSecond);
+            } else {
+                Assert.assertEquals(offered, written);
+            }
+        }
+    }
+}
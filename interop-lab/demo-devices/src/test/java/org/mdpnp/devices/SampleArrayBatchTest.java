@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SampleArrayBatchTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SampleArrayBatchTest.class);
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private static Number[] block(int first, int size) {
+        Number[] values = new Number[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = first + i;
+        }
+        return values;
+    }
+
+    @Test
+    public void testPolicy() {
+        Assert.assertFalse(SampleArrayBatch.Policy.NONE.isEnabled());
+        Assert.assertFalse(new SampleArrayBatch.Policy(1024, 0L).isEnabled());
+        Assert.assertTrue(new SampleArrayBatch.Policy(1024, 50L).isEnabled());
+        try {
+            new SampleArrayBatch(SampleArrayBatch.Policy.NONE);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testByteBudget() {
+        // 50 samples, the deadline is out of reach
+        SampleArrayBatch batch = new SampleArrayBatch(new SampleArrayBatch.Policy(200, 10000L));
+        Assert.assertTrue(batch.isEmpty());
+        Assert.assertFalse(batch.isDue(0L));
+        for (int i = 0; i < 4; i++) {
+            batch.add(Arrays.asList(block(i * 10, 10)).iterator(), new DeviceClock.ReadingImpl(i), i * 20 * MS);
+            Assert.assertFalse(batch.isDue(i * 20 * MS));
+        }
+        Assert.assertTrue(batch.fits(10));
+        Assert.assertFalse(batch.fits(11));
+        batch.add(Arrays.asList(block(40, 10)).iterator(), new DeviceClock.ReadingImpl(4), 80 * MS);
+        Assert.assertTrue(batch.isDue(80 * MS));
+        Assert.assertEquals(50, batch.size());
+        Assert.assertEquals(5, batch.blocks());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(i, batch.get(i), 0f);
+        }
+        // the merged block carries the time of its last sample
+        Assert.assertEquals(4L, batch.getReading().getTime().toEpochMilli());
+
+        batch.clear();
+        Assert.assertTrue(batch.isEmpty());
+        Assert.assertNull(batch.getReading());
+        // a single block larger than the budget is accepted whole
+        Assert.assertTrue(batch.fits(100));
+        batch.add(Arrays.asList(block(0, 100)).iterator(), new DeviceClock.ReadingImpl(5), 100 * MS);
+        Assert.assertEquals(100, batch.size());
+        Assert.assertTrue(batch.isDue(100 * MS));
+    }
+
+    @Test
+    public void testSampleBound() {
+        // 2048 samples worth of bytes, more than one ice::Values can hold
+        SampleArrayBatch batch = new SampleArrayBatch(new SampleArrayBatch.Policy(8192, 10000L));
+        int blocks = SampleArrayBatch.MAX_SAMPLES / 64;
+        for (int i = 0; i < blocks; i++) {
+            Assert.assertTrue(batch.fits(64));
+            Assert.assertFalse(batch.isDue(i * MS));
+            batch.add(Arrays.asList(block(i * 64, 64)).iterator(), new DeviceClock.ReadingImpl(i), i * MS);
+        }
+        Assert.assertEquals(SampleArrayBatch.MAX_SAMPLES, batch.size());
+        Assert.assertFalse(batch.fits(1));
+        Assert.assertTrue(batch.isDue(blocks * MS));
+    }
+
+    // coarsens time to the shortest block period it has been refined for, like DomainClock
+    private static final class BlockResolution implements DeviceClock.MutableReading.Resolution {
+        long periodNs = 1000000000L;
+
+        @Override
+        public void ensureResolutionForFrequency(int hertz, int size) {
+            periodNs = Math.min(periodNs, 1000000000L * size / hertz);
+        }
+
+        @Override
+        public long truncate(long epochNanos) {
+            return epochNanos - epochNanos % periodNs;
+        }
+    }
+
+    @Test
+    public void testRefineCombinedReading() {
+        SampleArrayBatch batch = new SampleArrayBatch(new SampleArrayBatch.Policy(1 << 20, 100L));
+        DeviceClock.MutableReading ref = new DeviceClock.MutableReading().set(12345678901L, new BlockResolution());
+        DeviceClock.Reading reading = new DeviceClock.CombinedReading(ref, new DeviceClock.ReadingImpl(5L));
+        batch.add(Arrays.asList(block(0, 10)).iterator(), reading, 0L);
+        // the driver reuses its reading
+        ref.set(99000000000L);
+
+        Assert.assertEquals(12000000000L, batch.getReading().getTimeNanos());
+        Assert.assertEquals(5000000L, batch.getReading().getDeviceTimeNanos());
+        // 10 samples at 500Hz
+        Assert.assertEquals(12340000000L, batch.getReading().refineResolutionForFrequency(500, 10).getTimeNanos());
+    }
+
+    @Test
+    public void testRefineOtherReading() {
+        SampleArrayBatch batch = new SampleArrayBatch(new SampleArrayBatch.Policy(1 << 20, 100L));
+        DeviceClock.Reading reading = new DeviceClock.ReadingImpl(12345L) {
+            @Override
+            public DeviceClock.Reading refineResolutionForFrequency(int hertz, int size) {
+                return new DeviceClock.ReadingImpl(12340L);
+            }
+        };
+        batch.add(Arrays.asList(block(0, 10)).iterator(), reading, 0L);
+        Assert.assertEquals(12345L, batch.getReading().getTime().toEpochMilli());
+        Assert.assertEquals(12340L, batch.getReading().refineResolutionForFrequency(500, 10).getTime().toEpochMilli());
+    }
+
+    @Test
+    public void testDeadline() {
+        SampleArrayBatch batch = new SampleArrayBatch(new SampleArrayBatch.Policy(1 << 20, 100L));
+        long t0 = 123456789L;
+        batch.add(Arrays.asList(block(0, 10)).iterator(), new DeviceClock.ReadingImpl(0), t0);
+        Assert.assertEquals(100 * MS, batch.remaining(t0));
+        // later blocks don't push the deadline back
+        batch.add(Arrays.asList(block(10, 10)).iterator(), new DeviceClock.ReadingImpl(1), t0 + 60 * MS);
+        Assert.assertEquals(40 * MS, batch.remaining(t0 + 60 * MS));
+        Assert.assertFalse(batch.isDue(t0 + 99 * MS));
+        Assert.assertTrue(batch.isDue(t0 + 100 * MS));
+        Assert.assertEquals(0L, batch.remaining(t0 + 150 * MS));
+
+        batch.clear();
+        batch.add(Arrays.asList(block(20, 10)).iterator(), new DeviceClock.ReadingImpl(2), t0 + 150 * MS);
+        Assert.assertFalse(batch.isDue(t0 + 200 * MS));
+        Assert.assertTrue(batch.isDue(t0 + 250 * MS));
+    }
+
+    /**
+     * A 500Hz wave delivered in 20ms blocks, written through AbstractDevice's batching
+     * logic with a deadline sweep every millisecond of simulated time.  Reports writes per
+     * second and how long samples were held back for each policy.
+     */
+    @Test
+    public void testThroughputAndLatency() {
+        final int frequency = 500, blockSize = 10;
+        final int seconds = Integer.getInteger("SampleArrayBatchTest.seconds", 600);
+        final long period = blockSize * 1000L / frequency * MS;
+        final int blocks = seconds * frequency / blockSize;
+        Number[] values = block(0, blockSize);
+
+        int[][] policies = new int[][] { { 0, 0 }, { 256, 50 }, { 1024, 100 }, { 8192, 250 } };
+        for (int[] p : policies) {
+            SampleArrayBatch.Policy policy = new SampleArrayBatch.Policy(p[0], p[1]);
+            SampleArrayBatch batch = policy.isEnabled() ? new SampleArrayBatch(policy) : null;
+
+            long writes = 0L, samples = 0L, heldBack = 0L, maxHeldBack = 0L;
+            long oldest = 0L;
+            long start = System.nanoTime();
+            for (int b = 0; b < blocks; b++) {
+                long now = b * period;
+                if (null == batch) {
+                    writes++;
+                    samples += blockSize;
+                    continue;
+                }
+                // deadline sweep for the time since the previous block
+                for (long t = now - period + MS; b > 0 && t <= now; t += MS) {
+                    if (batch.isDue(t)) {
+                        writes++;
+                        samples += batch.size();
+                        heldBack += t - oldest;
+                        maxHeldBack = Math.max(maxHeldBack, t - oldest);
+                        batch.clear();
+                    }
+                }
+                if (!batch.fits(blockSize)) {
+                    writes++;
+                    samples += batch.size();
+                    heldBack += now - oldest;
+                    maxHeldBack = Math.max(maxHeldBack, now - oldest);
+                    batch.clear();
+                }
+                if (batch.isEmpty()) {
+                    oldest = now;
+                }
+                batch.add(Arrays.asList(values).iterator(), new DeviceClock.ReadingImpl(now / MS), now);
+                if (batch.isDue(now)) {
+                    writes++;
+                    samples += batch.size();
+                    heldBack += now - oldest;
+                    maxHeldBack = Math.max(maxHeldBack, now - oldest);
+                    batch.clear();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (null != batch) {
+                samples += batch.size();
+                writes += batch.isEmpty() ? 0 : 1;
+            }
+
+            Assert.assertEquals((long) blocks * blockSize, samples);
+            log.info(String.format("%s %.1f writes/s, %.1f samples/write, oldest sample held back %.1fms on average, %.1fms at most, %.1fns per sample", policy,
+                    writes / (double) seconds, samples / (double) writes, heldBack / (double) writes / MS, maxHeldBack / (double) MS,
+                    elapsed / (double) samples));
+            if (null != batch) {
+                Assert.assertTrue("Nothing was batched with " + policy, writes < blocks);
+                Assert.assertTrue(policy + " held samples back for " + maxHeldBack / MS + "ms", maxHeldBack <= policy.getMaxLatency() * MS);
+            }
+        }
+    }
+}
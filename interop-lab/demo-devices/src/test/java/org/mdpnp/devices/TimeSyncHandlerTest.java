@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mdpnp.devices.TimeSyncHandler.HandlerType;
+
+public class TimeSyncHandlerTest {
+
+    @Test
+    public void testParseHandlerType() {
+        assertEquals(HandlerType.Reference, HandlerType.parse("Reference", HandlerType.SupervisorAware));
+        assertEquals(HandlerType.Chatty, HandlerType.parse(" Chatty ", HandlerType.SupervisorAware));
+    }
+
+    @Test
+    public void testParseFallsBack() {
+        assertEquals(HandlerType.SupervisorAware, HandlerType.parse(null, HandlerType.SupervisorAware));
+        assertEquals(HandlerType.SupervisorAware, HandlerType.parse("", HandlerType.SupervisorAware));
+        assertEquals(HandlerType.SupervisorAware, HandlerType.parse("supervisoraware", HandlerType.SupervisorAware));
+    }
+}
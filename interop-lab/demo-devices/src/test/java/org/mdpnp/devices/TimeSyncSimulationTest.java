@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulates the heartbeat / TimeSync exchange of TimeManager on a shared bus with
+ * drifting clocks and jittery, asymmetric delivery.  Counts the TimeSync samples
+ * written per heartbeat interval by the all-pairs, supervisor-aware and reference
+ * policies and measures the accuracy of the offsets the reference ends up with.
+ */
+public class TimeSyncSimulationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeSyncSimulationTest.class);
+
+    private static final long MS = 1000000L;
+    private static final long HEARTBEAT_INTERVAL = 2000L * MS;
+
+    private static class Participant {
+        final String udi, type;
+        final long offset;
+        final double drift;
+        final TimeReferenceSelector selector = new TimeReferenceSelector("Supervisor");
+
+        Participant(String udi, String type, Random random) {
+            this.udi = udi;
+            this.type = type;
+            this.offset = (long) ((random.nextDouble() - 0.5) * 1000 * MS);
+            this.drift = (random.nextDouble() - 0.5) * 100e-6;
+        }
+
+        long clock(long t) {
+            return t + offset + (long) (drift * t);
+        }
+    }
+
+    private final Random random = new Random(0L);
+
+    private long oneWayDelay() {
+        // 200us on the wire plus exponentially distributed queuing with a 1ms mean
+        return 200000L - (long) (Math.log(1.0 - random.nextDouble()) * MS);
+    }
+
+    private void simulate(int n, int rounds) {
+        List<Participant> participants = new ArrayList<Participant>();
+        int supervisors = Math.max(1, n / 50);
+        for (int i = 0; i < n; i++) {
+            participants.add(new Participant(String.format("UDI%04d", i), i < supervisors ? "Supervisor" : "Device", random));
+        }
+        // everybody has seen everybody's heartbeat
+        for (Participant p : participants) {
+            for (Participant q : participants) {
+                if (p != q) {
+                    p.selector.alive(q.udi, q.type);
+                }
+            }
+        }
+
+        long chatty = 0L, supervisorAware = 0L, reference = 0L;
+        Participant ref = participants.get(0);
+        ClockOffsetEstimator[] estimators = new ClockOffsetEstimator[n];
+        for (int i = 1; i < n; i++) {
+            estimators[i] = new ClockOffsetEstimator();
+        }
+
+        for (int r = 0; r < rounds; r++) {
+            for (Participant source : participants) {
+                for (Participant recipient : participants) {
+                    if (source == recipient) {
+                        continue;
+                    }
+                    chatty++;
+                    if ("Supervisor".equals(source.type)) {
+                        supervisorAware++;
+                    }
+                    if (recipient.selector.isReference(source.udi)) {
+                        reference++;
+                    }
+                }
+            }
+
+            // the exchange the reference takes part in, reduced as in TimeManager.tsReadHandler
+            long sent = r * HEARTBEAT_INTERVAL + (long) (random.nextDouble() * 10 * MS);
+            for (int i = 1; i < n; i++) {
+                Participant p = participants.get(i);
+                long received = sent + oneWayDelay();
+                long responded = received + (long) (random.nextDouble() * MS);
+                long returned = responded + oneWayDelay();
+
+                long sourceSource = ref.clock(sent), recipientReceipt = p.clock(received);
+                long remoteProcessing = p.clock(responded) - recipientReceipt;
+                long roundtrip = ref.clock(returned) - sourceSource;
+                long latency = (roundtrip - remoteProcessing) / 2L;
+                long clockDifference = recipientReceipt - sourceSource - latency;
+                estimators[i].add(ref.clock(returned), clockDifference, 2L * latency);
+            }
+        }
+
+        long now = rounds * HEARTBEAT_INTERVAL;
+        double sum = 0.0, max = 0.0;
+        for (int i = 1; i < n; i++) {
+            Participant p = participants.get(i);
+            long truth = p.clock(now) - ref.clock(now);
+            double error = Math.abs(estimators[i].getOffset(ref.clock(now)) - truth) / 1e6;
+            sum += error;
+            max = Math.max(max, error);
+        }
+        log.info(String.format("%d participants (%d supervisors), TimeSync samples per heartbeat interval: all pairs %d, supervisor aware %d, reference %d; offset error mean %.3fms max %.3fms",
+                n, supervisors, chatty / rounds, supervisorAware / rounds, reference / rounds, sum / (n - 1), max));
+
+        Assert.assertEquals((long) n * (n - 1), chatty / rounds);
+        // plus one when the reference itself answers another supervisor
+        Assert.assertTrue(reference / rounds <= n);
+        Assert.assertTrue("Offset error " + max + "ms", max < 1.0);
+    }
+
+    @Test
+    public void testTenParticipants() {
+        simulate(10, 60);
+    }
+
+    @Test
+    public void testHundredParticipants() {
+        simulate(100, 60);
+    }
+
+    @Test
+    public void testFiveHundredParticipants() {
+        simulate(500, 60);
+    }
+}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mdpnp.devices.io.MergeBytesInputStream;
+import org.mdpnp.devices.io.SplitBytesOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TestFCSFrameCodec {
+    private static final Logger log = LoggerFactory.getLogger(TestFCSFrameCodec.class);
+
+    /**
+     * Random bytes with plenty of the ones that need escaping
+     */
+    private static byte[] body(Random random, int length) {
+        byte[] b = new byte[length];
+        random.nextBytes(b);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(8)) {
+            case 0:
+                b[i] = (byte) 0xC0;
+                break;
+            case 1:
+                b[i] = (byte) 0xC1;
+                break;
+            case 2:
+                b[i] = 0x7D;
+                break;
+            default:
+            }
+        }
+        return b;
+    }
+
+    /**
+     * How RS232Adapter framed datagrams with the streams
+     */
+    private static byte[] streamFrame(byte[] body) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SplitBytesOutputStream sbos = new SplitBytesOutputStream(baos, new IntellivueByteSplitter());
+        FCSOutputStream fcsout = new FCSOutputStream(sbos);
+        baos.write(0xC0);
+        fcsout.resetFCS();
+        fcsout.write(0x11);
+        fcsout.write(0x01);
+        fcsout.write(0xFF & (body.length >> 8));
+        fcsout.write(0xFF & body.length);
+        fcsout.write(body, 0, body.length);
+        fcsout.writeFCS();
+        baos.write(0xC1);
+        fcsout.close();
+        return baos.toByteArray();
+    }
+
+    private static byte[] codecFrame(byte[] body) {
+        byte[] frame = new byte[FCSFrameCodec.maxFrameLength(body.length)];
+        int n = FCSFrameCodec.encodeFrame(ByteBuffer.wrap(body), frame, 0);
+        return Arrays.copyOf(frame, n);
+    }
+
+    /**
+     * How RS232Adapter read frames with the streams
+     */
+    private static List<byte[]> streamDeframe(byte[] raw) throws IOException {
+        List<byte[]> bodies = new ArrayList<byte[]>();
+        InputStream is = new MergeBytesInputStream(new ByteArrayInputStream(raw), 0xC0, 0xC1, 0x7D, new MergeBytesInputStream.Merger() {
+            @Override
+            public byte merge(byte b1, byte b2) {
+                return (byte) (0x20 ^ b2);
+            }
+        });
+        FCSInputStream fcsin = new FCSInputStream(is);
+        byte[] header = new byte[4];
+        int r;
+        while ((r = is.read()) != MergeBytesInputStream.END_OF_FILE) {
+            if (MergeBytesInputStream.BEGIN_FRAME != r) {
+                continue;
+            }
+            fcsin.resetFCS();
+            int count = 0;
+            while (count < header.length) {
+                r = fcsin.read(header, count, header.length - count);
+                Assert.assertTrue(r >= 0);
+                count += r;
+            }
+            int length = (0xFF00 & (header[2] << 8)) + (0xFF & header[3]);
+            byte[] body = new byte[length];
+            count = 0;
+            while (count < length) {
+                r = fcsin.read(body, count, length - count);
+                Assert.assertTrue(r >= 0);
+                count += r;
+            }
+            int calculatedFCS = fcsin.currentFCS();
+            int receivedFCS = 0xFF & fcsin.read();
+            receivedFCS |= 0xFF00 & (fcsin.read() << 8);
+            Assert.assertEquals(MergeBytesInputStream.END_FRAME, is.read());
+            if ((0xFFFF ^ receivedFCS) == calculatedFCS && 0x11 == header[0] && 0x01 == header[1]) {
+                bodies.add(body);
+            }
+        }
+        fcsin.close();
+        return bodies;
+    }
+
+    private static List<byte[]> codecDeframe(byte[] raw, Random random) {
+        final List<byte[]> bodies = new ArrayList<byte[]>();
+        FCSFrameCodec.Deframer deframer = new FCSFrameCodec.Deframer(8192, new FCSFrameCodec.FrameHandler() {
+            @Override
+            public void frame(byte[] body, int off, int len) {
+                bodies.add(Arrays.copyOfRange(body, off, off + len));
+            }
+        });
+        // serial reads come back in arbitrary pieces
+        for (int i = 0; i < raw.length;) {
+            int n = Math.min(raw.length - i, 1 + random.nextInt(64));
+            deframer.feed(raw, i, n);
+            i += n;
+        }
+        return bodies;
+    }
+
+    @Test
+    public void testKnownFrames() throws IOException {
+        byte[] frame = codecFrame(new byte[] { 0x3A, 0x71 });
+        Assert.assertArrayEquals(new byte[] { (byte) 0xc0, 0x11, 0x01, 0x00, 0x02, 0x3a, 0x71 }, Arrays.copyOf(frame, 7));
+        Assert.assertEquals((byte) 0xc1, frame[frame.length - 1]);
+        Assert.assertArrayEquals(streamFrame(new byte[] { 0x3A, 0x71 }), frame);
+        // the FCS of the TestFCSOutputStream cases, which frame the data alone
+        Assert.assertEquals(0x269b, 0xFFFF & ~FCSFrameCodec.fcs(FCSOutputStream.INITIAL_FCS_VALUE, new byte[] { 0x3A, 0x71 }, 0, 2));
+        Assert.assertEquals(0xc195, 0xFFFF & ~FCSFrameCodec.fcs(FCSOutputStream.INITIAL_FCS_VALUE, new byte[] { 0x3A, (byte) 0x91 }, 0, 2));
+
+        byte[] escaped = new byte[8];
+        Assert.assertEquals(6, FCSFrameCodec.escape(new byte[] { 0x7D, (byte) 0xC0, (byte) 0xC1 }, 0, 3, escaped, 0));
+        Assert.assertArrayEquals(new byte[] { 0x7D, 0x5D, 0x7D, (byte) 0xE0, 0x7D, (byte) 0xE1, 0, 0 }, escaped);
+    }
+
+    @Test
+    public void testFCSEquivalence() {
+        Random random = new Random(0L);
+        for (int n = 0; n < 1000; n++) {
+            byte[] b = body(random, random.nextInt(300));
+            int off = b.length > 0 ? random.nextInt(b.length) : 0;
+            int len = b.length - off > 0 ? random.nextInt(b.length - off) : 0;
+            int initial = random.nextBoolean() ? FCSOutputStream.INITIAL_FCS_VALUE : random.nextInt(0x10000);
+
+            int expected = initial;
+            for (int i = off; i < off + len; i++) {
+                expected = FCSOutputStream.pppfcs(expected, b[i]);
+            }
+            Assert.assertEquals(expected, FCSFrameCodec.fcs(initial, b, off, len));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+            direct.put(b);
+            direct.position(off);
+            direct.limit(off + len);
+            Assert.assertEquals(expected, FCSFrameCodec.fcs(initial, direct));
+            Assert.assertEquals(off, direct.position());
+        }
+    }
+
+    @Test
+    public void testFramingEquivalence() throws IOException {
+        Random random = new Random(1L);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        List<byte[]> bodies = new ArrayList<byte[]>();
+        for (int n = 0; n < 500; n++) {
+            byte[] body = body(random, 1 + random.nextInt(random.nextBoolean() ? 16 : 1500));
+            byte[] frame = streamFrame(body);
+            Assert.assertArrayEquals(frame, codecFrame(body));
+            bodies.add(body);
+            stream.write(frame);
+            // line noise between frames
+            if (random.nextInt(4) == 0) {
+                stream.write(new byte[] { 0x00, 0x7D, 0x55, (byte) 0xC1 });
+            }
+        }
+        // one with a bad FCS is dropped by both
+        byte[] corrupt = codecFrame(body(random, 100));
+        corrupt[50] = (byte) (corrupt[50] == 0x00 ? 0x01 : 0x00);
+        stream.write(corrupt);
+
+        byte[] raw = stream.toByteArray();
+        List<byte[]> expected = streamDeframe(raw);
+        List<byte[]> actual = codecDeframe(raw, random);
+        Assert.assertEquals(bodies.size(), expected.size());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(bodies.get(i), expected.get(i));
+            Assert.assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testAbortedFrame() {
+        final List<byte[]> bodies = new ArrayList<byte[]>();
+        FCSFrameCodec.Deframer deframer = new FCSFrameCodec.Deframer(64, new FCSFrameCodec.FrameHandler() {
+            @Override
+            public void frame(byte[] body, int off, int len) {
+                bodies.add(Arrays.copyOfRange(body, off, off + len));
+            }
+        });
+        byte[] good = codecFrame(new byte[] { 1, 2, 3 });
+        deframer.feed(new byte[] { (byte) 0xC0, 0x11, 0x7D, (byte) 0xC1 }, 0, 4);
+        deframer.feed(new byte[] { (byte) 0xC0, 0x11, 0x01 }, 0, 3);
+        deframer.feed(good, 0, good.length);
+        Assert.assertEquals(1, bodies.size());
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, bodies.get(0));
+        Assert.assertEquals(2L, deframer.getAbortedFrames());
+    }
+
+    @Test
+    public void testThroughput() throws IOException {
+        Random random = new Random(2L);
+        final int frames = 2000;
+        byte[][] bodies = new byte[frames][];
+        int total = 0;
+        for (int i = 0; i < frames; i++) {
+            // numerics and waveform sized datagrams, byte values as they come
+            bodies[i] = new byte[100 + random.nextInt(1300)];
+            random.nextBytes(bodies[i]);
+            total += bodies[i].length;
+        }
+        int rounds = Integer.getInteger("TestFCSFrameCodec.rounds", 10);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(2 * total);
+        for (byte[] body : bodies) {
+            raw.write(streamFrame(body));
+        }
+        byte[] stream = raw.toByteArray();
+        byte[] frame = new byte[FCSFrameCodec.maxFrameLength(1500)];
+        final int[] received = new int[1];
+        FCSFrameCodec.Deframer deframer = new FCSFrameCodec.Deframer(8192, new FCSFrameCodec.FrameHandler() {
+            @Override
+            public void frame(byte[] body, int off, int len) {
+                received[0] += len;
+            }
+        });
+
+        for (int warm = 0; warm < 2; warm++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (byte[] body : bodies) {
+                    streamFrame(body);
+                }
+            }
+            long streamEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (byte[] body : bodies) {
+                    FCSFrameCodec.encodeFrame(body, 0, body.length, frame, 0);
+                }
+            }
+            long codecEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                streamDeframe(stream);
+            }
+            long streamDecode = System.nanoTime() - start;
+            start = System.nanoTime();
+            received[0] = 0;
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < stream.length; i += 4096) {
+                    deframer.feed(stream, i, Math.min(4096, stream.length - i));
+                }
+            }
+            long codecDecode = System.nanoTime() - start;
+            Assert.assertEquals((long) rounds * total, received[0]);
+            if (warm > 0) {
+                double mb = (double) rounds * total / 1e6;
+                log.info(String.format("encode: streams %.1f MB/s, codec %.1f MB/s; decode: streams %.1f MB/s, codec %.1f MB/s", mb * 1e9 / streamEncode, mb
+                        * 1e9 / codecEncode, mb * 1e9 / streamDecode, mb * 1e9 / codecDecode));
+            }
+        }
+    }
+}
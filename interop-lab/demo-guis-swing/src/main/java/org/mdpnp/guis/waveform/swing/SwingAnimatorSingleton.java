@@ -2,6 +2,7 @@ package org.mdpnp.guis.waveform.swing;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -24,6 +25,7 @@ public class SwingAnimatorSingleton {
     
     public void setTargetFramesPerSecond(long targetFramesPerSeconds) {
         this.targetFramesPerSecond = targetFramesPerSeconds;
+        repaintScheduler.setTargetFramesPerSecond(targetFramesPerSeconds);
     }
     
     public long getTargetFramesPerSecond() {
@@ -45,6 +47,37 @@ public class SwingAnimatorSingleton {
     private ScheduledExecutorService executorService;
     private int executorServiceReferences = 0;
     private final Logger log = LoggerFactory.getLogger(SwingAnimatorSingleton.class);
+
+    private final SwingRepaintScheduler repaintScheduler = new SwingRepaintScheduler(targetFramesPerSecond);
+    private ScheduledFuture<?> frameFuture;
+
+    /**
+     * Draws a frame of every SwingRepaintable and schedules the next one for as
+     * long as any remain on the same executor.
+     */
+    private class Frame implements Runnable {
+        private final ScheduledExecutorService executor;
+
+        Frame(ScheduledExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            long delay = repaintScheduler.frame();
+            synchronized (SwingAnimatorSingleton.this) {
+                if (executor == executorService && !repaintScheduler.isEmpty()) {
+                    frameFuture = executor.schedule(this, delay, TimeUnit.NANOSECONDS);
+                } else if (executor == executorService) {
+                    frameFuture = null;
+                }
+            }
+        }
+    }
+
+    public SwingRepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
+    }
     
     public synchronized ScheduledExecutorService reference(SwingAnimatable dp) {
         if (0 == executorServiceReferences) {
@@ -52,18 +85,33 @@ public class SwingAnimatorSingleton {
         }
         executorServiceReferences++;
         log.debug("Now " + executorServiceReferences + " references to the SwingAnimator");
-        dp.setScheduledFuture(executorService.scheduleAtFixedRate(dp, 0, 1000L/targetFramesPerSecond, TimeUnit.MILLISECONDS));
+        if (dp instanceof SwingRepaintable) {
+            // drawn and repainted with the others on the shared frame
+            repaintScheduler.add((SwingRepaintable) dp);
+            if (null == frameFuture) {
+                frameFuture = executorService.schedule(new Frame(executorService), 0L, TimeUnit.NANOSECONDS);
+            }
+        } else {
+            dp.setScheduledFuture(executorService.scheduleAtFixedRate(dp, 0, 1000L/targetFramesPerSecond, TimeUnit.MILLISECONDS));
+        }
         return executorService;
     }
 
     public synchronized void release(SwingAnimatable dp) {
         executorServiceReferences--;
         log.debug("Now " + executorServiceReferences + " references to the SwingAnimator");
+        if (dp instanceof SwingRepaintable) {
+            repaintScheduler.remove((SwingRepaintable) dp);
+        }
         if (null != dp.getScheduledFuture()) {
             dp.getScheduledFuture().cancel(true);
             dp.setScheduledFuture(null);
         }
         if (0 == executorServiceReferences) {
+            if (null != frameFuture) {
+                frameFuture.cancel(false);
+                frameFuture = null;
+            }
             executorService.shutdown();
             executorService = null;
         }
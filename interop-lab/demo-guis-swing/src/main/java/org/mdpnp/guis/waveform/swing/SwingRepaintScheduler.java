@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.guis.waveform.swing;
+
+import java.awt.Frame;
+import java.awt.Window;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Draws every registered {@link SwingRepaintable} in a single frame on the
+ * animator thread and then repaints all of the panels that changed in one
+ * {@link RepaintManager} pass on the event dispatch thread.
+ * 
+ * Panels that are hidden, scrolled out of view or in a minimized window are
+ * not drawn at all. Panels without new data are drawn at the idle rate only, so
+ * that what they show still ages. When drawing and painting take more than half
+ * of the frame period, or the event dispatch thread has not yet painted the
+ * previous frame, the frame rate backs off toward the minimum. It recovers
+ * toward the target once the load drops again.
+ */
+public class SwingRepaintScheduler {
+    private static final Logger log = LoggerFactory.getLogger(SwingRepaintScheduler.class);
+
+    private static final long SECOND = 1000000000L;
+
+    private static class Entry {
+        final SwingRepaintable panel;
+        boolean rendered;
+        long lastRender;
+
+        Entry(SwingRepaintable panel) {
+            this.panel = panel;
+        }
+    }
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<Entry>();
+    // components drawn in the current frame; animator thread only
+    private final List<JComponent> due = new ArrayList<JComponent>();
+
+    private final AtomicBoolean paintPending = new AtomicBoolean(false);
+
+    private volatile long targetPeriod;
+    private volatile long minimumPeriod = SECOND / 2L;
+    private volatile long idlePeriod = SECOND;
+    private volatile long period;
+
+    private volatile long lastPaintTime;
+    private volatile long frameCount, skippedFrameCount, renderCount, renderTime, paintTime;
+
+    public SwingRepaintScheduler(long targetFramesPerSecond) {
+        setTargetFramesPerSecond(targetFramesPerSecond);
+    }
+
+    public void setTargetFramesPerSecond(long targetFramesPerSecond) {
+        this.targetPeriod = SECOND / targetFramesPerSecond;
+        this.period = targetPeriod;
+    }
+
+    /**
+     * @param minimumFramesPerSecond the rate the scheduler backs off to under load
+     */
+    public void setMinimumFramesPerSecond(long minimumFramesPerSecond) {
+        this.minimumPeriod = SECOND / minimumFramesPerSecond;
+    }
+
+    /**
+     * @param idleFramesPerSecond the rate at which visible panels without new data are drawn
+     */
+    public void setIdleFramesPerSecond(long idleFramesPerSecond) {
+        this.idlePeriod = SECOND / idleFramesPerSecond;
+    }
+
+    public void add(SwingRepaintable panel) {
+        entries.add(new Entry(panel));
+    }
+
+    public void remove(SwingRepaintable panel) {
+        for (Entry e : entries) {
+            if (e.panel == panel) {
+                entries.remove(e);
+                return;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Draws one frame; call only from the animator thread.
+     * 
+     * @return nanoseconds until the next frame is due
+     */
+    public long frame() {
+        final long start = System.nanoTime();
+
+        if (paintPending.get()) {
+            // the event dispatch thread is still behind on the previous frame
+            skippedFrameCount++;
+            slowDown();
+            return period;
+        }
+
+        for (Entry e : entries) {
+            try {
+                JComponent component = e.panel.getComponent();
+                if (!isOnScreen(component)) {
+                    continue;
+                }
+                if (!e.panel.isDirty() && e.rendered && start - e.lastRender < idlePeriod) {
+                    continue;
+                }
+                e.panel.render();
+                e.rendered = true;
+                e.lastRender = start;
+                due.add(component);
+            } catch (Throwable t) {
+                log.error("drawing " + e.panel, t);
+            }
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        renderTime += elapsed;
+        frameCount++;
+
+        if (!due.isEmpty()) {
+            renderCount += due.size();
+            final JComponent[] components = due.toArray(new JComponent[due.size()]);
+            due.clear();
+            paintPending.set(true);
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    paint(components);
+                }
+            });
+        }
+
+        final long load = elapsed + lastPaintTime;
+        if (load > period / 2L) {
+            slowDown();
+        } else if (load < period / 4L && period > targetPeriod) {
+            period = Math.max(targetPeriod, period - period / 8L);
+        }
+        return Math.max(0L, period - elapsed);
+    }
+
+    private void slowDown() {
+        period = Math.min(minimumPeriod, period + period / 4L);
+    }
+
+    private void paint(JComponent[] components) {
+        final long start = System.nanoTime();
+        try {
+            RepaintManager repaintManager = RepaintManager.currentManager(components[0]);
+            for (JComponent component : components) {
+                repaintManager.addDirtyRegion(component, 0, 0, component.getWidth(), component.getHeight());
+            }
+            repaintManager.paintDirtyRegions();
+        } finally {
+            lastPaintTime = System.nanoTime() - start;
+            paintTime += lastPaintTime;
+            paintPending.set(false);
+        }
+    }
+
+    private static boolean isOnScreen(JComponent component) {
+        if (!component.isShowing() || component.getVisibleRect().isEmpty()) {
+            return false;
+        }
+        Window window = SwingUtilities.getWindowAncestor(component);
+        return !(window instanceof Frame) || 0 == (((Frame) window).getExtendedState() & Frame.ICONIFIED);
+    }
+
+    /**
+     * @return the current frame rate, between the minimum and the target
+     */
+    public double getFramesPerSecond() {
+        return (double) SECOND / period;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return frames dropped because the previous one was not yet painted
+     */
+    public long getSkippedFrameCount() {
+        return skippedFrameCount;
+    }
+
+    /**
+     * @return panels drawn over all frames
+     */
+    public long getRenderCount() {
+        return renderCount;
+    }
+
+    /**
+     * @return nanoseconds spent drawing on the animator thread
+     */
+    public long getRenderTime() {
+        return renderTime;
+    }
+
+    /**
+     * @return nanoseconds spent painting on the event dispatch thread
+     */
+    public long getPaintTime() {
+        return paintTime;
+    }
+}
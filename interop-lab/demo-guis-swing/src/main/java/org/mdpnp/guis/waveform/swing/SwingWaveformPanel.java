@@ -44,7 +44,7 @@ import org.mdpnp.guis.waveform.WaveformSource;
  * @author Jeff Plourde
  *
  */
-public class SwingWaveformPanel extends JComponent implements WaveformPanel, SwingAnimatable {
+public class SwingWaveformPanel extends JComponent implements WaveformPanel, SwingRepaintable {
     private final WaveformRenderer renderer = new WaveformRenderer();
     private final SwingWaveformCanvas canvas = new SwingVectorWaveformCanvas(this);
     private WaveformSource source;
@@ -55,6 +55,7 @@ public class SwingWaveformPanel extends JComponent implements WaveformPanel, Swi
 
     public void setSource(WaveformSource source) {
         this.source = source;
+        this.invalidated = true;
     }
 
     @Override
@@ -86,6 +87,7 @@ public class SwingWaveformPanel extends JComponent implements WaveformPanel, Swi
             @Override
             public void actionPerformed(ActionEvent e) {
                 renderer.setOverwrite(overwriteMode.isSelected());
+                invalidated = true;
             }
             
         });
@@ -113,6 +115,7 @@ public class SwingWaveformPanel extends JComponent implements WaveformPanel, Swi
                         @Override
                         public void stateChanged(ChangeEvent arg0) {
                             canvas.setTimeDomain(slider.getValue() * 1000L);
+                            invalidated = true;
                             valueLabel.setText(Long.toString(canvas.getTimeDomain() / 1000) + " seconds");
                         }
 
@@ -164,6 +167,7 @@ public class SwingWaveformPanel extends JComponent implements WaveformPanel, Swi
             Dimension dim = getSize();
 //            System.err.println("Component resized:"+dim);
             offscreenBuffer = new BufferedImage(dim.width, dim.height, BufferedImage.TYPE_INT_ARGB);
+            invalidated = true;
             break;
         }
     }
@@ -178,6 +182,7 @@ public class SwingWaveformPanel extends JComponent implements WaveformPanel, Swi
                 popup.show(this, e.getX(), e.getY());
             } else {
                 renderer.rescaleValue();
+                invalidated = true;
             }
         }
     }
@@ -212,10 +217,7 @@ public class SwingWaveformPanel extends JComponent implements WaveformPanel, Swi
     public void run() {
         try {
             if(null != source && null != renderer) {
-                
-                Graphics2D graphics = offscreenBuffer.createGraphics();
-                canvas.run(renderer, graphics);
-                graphics.dispose();
+                render();
                 repaint();
             }
         } catch(Throwable t) {
@@ -224,6 +226,69 @@ public class SwingWaveformPanel extends JComponent implements WaveformPanel, Swi
         
     }
 
+    /**
+     * Notes the newest sample and how many samples the source holds, either of
+     * which changes when data arrives.
+     */
+    private static class Watermark implements WaveformSource.WaveformIterator {
+        long newest;
+        int count;
+
+        @Override
+        public void begin() {
+            newest = Long.MIN_VALUE;
+            count = 0;
+        }
+
+        @Override
+        public void sample(long time, float value) {
+            newest = Math.max(newest, time);
+            count++;
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    private final Watermark watermark = new Watermark();
+    // the watermark as of the last render
+    private long renderedNewest = Long.MIN_VALUE;
+    private int renderedCount = -1;
+    // resized, rescaled or otherwise in need of drawing whatever the data
+    private volatile boolean invalidated = true;
+
+    @Override
+    public JComponent getComponent() {
+        return this;
+    }
+
+    @Override
+    public boolean isDirty() {
+        if(null == source) {
+            return false;
+        }
+        if(invalidated) {
+            return true;
+        }
+        // far cheaper than drawing; nothing is rendered here
+        source.iterate(watermark);
+        return watermark.newest != renderedNewest || watermark.count != renderedCount;
+    }
+
+    @Override
+    public void render() {
+        if(null == source) {
+            return;
+        }
+        invalidated = false;
+        renderedNewest = watermark.newest;
+        renderedCount = watermark.count;
+        Graphics2D graphics = offscreenBuffer.createGraphics();
+        canvas.run(renderer, graphics);
+        graphics.dispose();
+    }
+
     private ScheduledFuture<?> future;
     @Override
     public void setScheduledFuture(ScheduledFuture<?> future) {
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.guis.waveform.swing;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.GridLayout;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+
+import org.mdpnp.guis.waveform.WaveformSource;
+
+import com.sun.management.OperatingSystemMXBean;
+
+/**
+ * Frame time and CPU for 32 waveform panels, repainted at a fixed rate each
+ * (as before SwingRepaintScheduler) and then by the scheduler. 16 panels show
+ * live data, 8 show a device that stopped sending and 8 live ones sit on a tab
+ * that is not selected.
+ * 
+ * Needs a display; on a server run it under Xvfb:
+ * 
+ * xvfb-run java -cp ... org.mdpnp.guis.waveform.swing.SwingRepaintBenchmark [seconds]
+ */
+public class SwingRepaintBenchmark {
+
+    private static final int LIVE = 16, IDLE = 8, HIDDEN = 8;
+
+    /**
+     * 250Hz samples published in 4Hz chunks, like a SampleArray, keeping the
+     * last 12 seconds.
+     */
+    private static class SimulatedSource implements WaveformSource, Runnable {
+        private static final int FREQUENCY = 250, CHUNK = 62, HISTORY = 12 * FREQUENCY;
+        private final long[] times = new long[HISTORY];
+        private final float[] values = new float[HISTORY];
+        private final String identifier;
+        private final double phase;
+        private int next, size;
+        private volatile boolean live = true;
+
+        SimulatedSource(String identifier, double phase) {
+            this.identifier = identifier;
+            this.phase = phase;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!live) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < CHUNK; i++) {
+                long t = now - (CHUNK - i) * 1000L / FREQUENCY;
+                times[next] = t;
+                values[next] = (float) Math.sin(phase + 2.0 * Math.PI * (t % 1000L) / 1000.0);
+                next = (next + 1) % HISTORY;
+                size = Math.min(HISTORY, size + 1);
+            }
+        }
+
+        @Override
+        public synchronized void iterate(WaveformIterator itr) {
+            itr.begin();
+            for (int i = 0; i < size; i++) {
+                int j = (next - size + i + HISTORY) % HISTORY;
+                itr.sample(times[j], values[j]);
+            }
+            itr.end();
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public boolean loadingHistoricalData() {
+            return false;
+        }
+    }
+
+    /**
+     * Times paintComponent, which runs on the event dispatch thread.
+     */
+    @SuppressWarnings("serial")
+    private static class TimedPanel extends SwingWaveformPanel {
+        static final AtomicLong paintTime = new AtomicLong();
+
+        TimedPanel(WaveformSource source) {
+            super(source);
+            setPreferredSize(new Dimension(240, 120));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            long start = System.nanoTime();
+            super.paintComponent(g);
+            paintTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Hides the panel from the scheduler so that it is run at a fixed rate and
+     * repaints itself, as every panel used to be.
+     */
+    private static class FixedRate implements SwingAnimatable {
+        static final AtomicLong renderTime = new AtomicLong(), renderCount = new AtomicLong();
+        private final SwingWaveformPanel panel;
+        private ScheduledFuture<?> future;
+
+        FixedRate(SwingWaveformPanel panel) {
+            this.panel = panel;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            panel.run();
+            renderTime.addAndGet(System.nanoTime() - start);
+            renderCount.incrementAndGet();
+        }
+
+        @Override
+        public void setScheduledFuture(ScheduledFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public ScheduledFuture<?> getScheduledFuture() {
+            return future;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("No display; run under xvfb-run");
+            return;
+        }
+        final long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10L;
+
+        final List<SimulatedSource> sources = new ArrayList<SimulatedSource>();
+        final List<SwingWaveformPanel> panels = new ArrayList<SwingWaveformPanel>();
+        for (int i = 0; i < LIVE + IDLE + HIDDEN; i++) {
+            SimulatedSource source = new SimulatedSource("SIM-" + i, i * 0.3);
+            sources.add(source);
+            panels.add(new TimedPanel(source));
+        }
+
+        final JFrame[] frame = new JFrame[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                JPanel shown = new JPanel(new GridLayout(0, 4));
+                JPanel hidden = new JPanel(new GridLayout(0, 4));
+                for (int i = 0; i < panels.size(); i++) {
+                    (i < LIVE + IDLE ? shown : hidden).add(panels.get(i));
+                }
+                JTabbedPane tabs = new JTabbedPane();
+                tabs.addTab("Shown", shown);
+                tabs.addTab("Hidden", hidden);
+                frame[0] = new JFrame(SwingRepaintBenchmark.class.getSimpleName());
+                frame[0].getContentPane().add(tabs);
+                frame[0].pack();
+                frame[0].setVisible(true);
+            }
+        });
+
+        // the devices keep publishing for the whole run
+        ScheduledExecutorService devices = Executors.newSingleThreadScheduledExecutor();
+        devices.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (SimulatedSource source : sources) {
+                    source.run();
+                }
+            }
+        }, 0L, 250L, TimeUnit.MILLISECONDS);
+        Thread.sleep(1000L);
+        // these devices stop sending
+        for (int i = LIVE; i < LIVE + IDLE; i++) {
+            sources.get(i).live = false;
+        }
+
+        SwingAnimatorSingleton animator = SwingAnimatorSingleton.getInstance();
+        animator.setTargetFramesPerSecond(20L);
+        for (int pass = 0; pass < 2; pass++) {
+            // fixed rate, each panel repainting itself
+            List<FixedRate> fixed = new ArrayList<FixedRate>();
+            for (SwingWaveformPanel panel : panels) {
+                FixedRate f = new FixedRate(panel);
+                fixed.add(f);
+                animator.reference(f);
+            }
+            FixedRate.renderTime.set(0L);
+            FixedRate.renderCount.set(0L);
+            Sample before = new Sample();
+            Thread.sleep(seconds * 1000L);
+            Sample after = new Sample();
+            for (FixedRate f : fixed) {
+                animator.release(f);
+            }
+            report("fixed", 20.0 * seconds, FixedRate.renderCount.get(), FixedRate.renderTime.get(), before, after);
+
+            // the repaint scheduler
+            SwingRepaintScheduler scheduler = animator.getRepaintScheduler();
+            for (SwingWaveformPanel panel : panels) {
+                panel.start();
+            }
+            long frames = scheduler.getFrameCount(), renders = scheduler.getRenderCount(), renderTime = scheduler.getRenderTime();
+            before = new Sample();
+            Thread.sleep(seconds * 1000L);
+            after = new Sample();
+            report("scheduled", scheduler.getFrameCount() - frames, scheduler.getRenderCount() - renders, scheduler.getRenderTime()
+                    - renderTime, before, after);
+            for (SwingWaveformPanel panel : panels) {
+                panel.stop();
+            }
+        }
+
+        devices.shutdown();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                frame[0].dispose();
+            }
+        });
+    }
+
+    private static class Sample {
+        final long wall = System.nanoTime();
+        final long cpu = ((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        final long paint = TimedPanel.paintTime.get();
+    }
+
+    private static void report(String name, double frames, long renders, long renderTime, Sample before, Sample after) {
+        double wall = (after.wall - before.wall) / 1e9;
+        long paintTime = after.paint - before.paint;
+        System.out.printf("%-9s %5.1f frames/s %6.1f panels drawn/s draw %5.2fms paint %5.2fms per frame, CPU %5.1f%%%n", name, frames / wall,
+                renders / wall, renderTime / 1e6 / Math.max(1.0, frames), paintTime / 1e6 / Math.max(1.0, frames), 100.0
+                        * (after.cpu - before.cpu) / (after.wall - before.wall));
+    }
+}